@@ -49,4 +49,13 @@ public abstract class CacheFactory {
      * @return cache the cache
      */
     public abstract Cache createCache();
+
+    /**
+     * Creates a cache for the datasets SigPep sessions load from the database. The
+     * datasets are loaded once per key however many sessions ask for them at the
+     * same time and are evicted by their approximate size in bytes.
+     *
+     * @return the dataset cache
+     */
+    public abstract LoadingCache<String, Object> createDatasetCache();
 }
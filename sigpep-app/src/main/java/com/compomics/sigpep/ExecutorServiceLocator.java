@@ -1,6 +1,8 @@
 package com.compomics.sigpep;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Provides access to an ExecutorService that provides methods to manage termination
@@ -24,6 +26,16 @@ public abstract class ExecutorServiceLocator {
      */
     protected static ExecutorService executorService;
 
+    /**
+     * the time of the previous metrics snapshot
+     */
+    private long lastSampleTime = System.nanoTime();
+
+    /**
+     * the completed task count of the previous metrics snapshot
+     */
+    private long lastCompletedTaskCount = 0;
+
     /**
      * Returns the singleton instance of the executor service locator.
      *
@@ -59,4 +71,63 @@ public abstract class ExecutorServiceLocator {
      * @return the executor service
      */
     public abstract ExecutorService getExecutorService();
+
+    /**
+     * Returns a snapshot of the load of the executor service. The task throughput
+     * is calculated over the time since the previous snapshot.
+     * <p/>
+     * A fork join pool doesn't count its completed tasks, its metrics report 0 completed
+     * tasks. The metrics of other executor services are all 0.
+     *
+     * @return the executor service metrics
+     */
+    public synchronized ExecutorServiceMetrics getMetrics() {
+
+        ExecutorService service = getExecutorService();
+
+        if (service instanceof ThreadPoolExecutor) {
+
+            ThreadPoolExecutor threadPool = (ThreadPoolExecutor) service;
+
+            return createMetrics(threadPool.getPoolSize(),
+                    threadPool.getActiveCount(),
+                    threadPool.getQueue().size(),
+                    threadPool.getCompletedTaskCount());
+
+        } else if (service instanceof ForkJoinPool) {
+
+            ForkJoinPool pool = (ForkJoinPool) service;
+
+            return createMetrics(pool.getPoolSize(),
+                    pool.getActiveThreadCount(),
+                    pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount(),
+                    0);
+        }
+
+        return createMetrics(0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a metrics snapshot and calculates the task throughput since the previous snapshot.
+     *
+     * @param poolSize           the number of worker threads in the pool
+     * @param activeWorkerCount  the number of worker threads executing tasks
+     * @param queueDepth         the number of tasks waiting to be executed
+     * @param completedTaskCount the number of tasks completed since the executor service has been created
+     * @return the executor service metrics
+     */
+    protected synchronized ExecutorServiceMetrics createMetrics(int poolSize,
+                                                                int activeWorkerCount,
+                                                                long queueDepth,
+                                                                long completedTaskCount) {
+
+        long sampleTime = System.nanoTime();
+        double elapsedSeconds = (sampleTime - lastSampleTime) / 1e9;
+        double tasksPerSecond = elapsedSeconds > 0 ? (completedTaskCount - lastCompletedTaskCount) / elapsedSeconds : 0;
+
+        lastSampleTime = sampleTime;
+        lastCompletedTaskCount = completedTaskCount;
+
+        return new ExecutorServiceMetrics(poolSize, activeWorkerCount, queueDepth, completedTaskCount, tasksPerSecond);
+    }
 }
@@ -0,0 +1,108 @@
+package com.compomics.sigpep;
+
+/**
+ * Snapshot of the load of the executor service provided by the ExecutorServiceLocator.
+ */
+public class ExecutorServiceMetrics {
+
+    /**
+     * the number of worker threads in the pool
+     */
+    private int poolSize;
+
+    /**
+     * the number of worker threads executing tasks
+     */
+    private int activeWorkerCount;
+
+    /**
+     * the number of tasks waiting to be executed
+     */
+    private long queueDepth;
+
+    /**
+     * the number of tasks completed since the executor service has been created
+     */
+    private long completedTaskCount;
+
+    /**
+     * the number of tasks completed per second since the previous snapshot
+     */
+    private double tasksPerSecond;
+
+    /**
+     * Constructs a snapshot.
+     *
+     * @param poolSize           the number of worker threads in the pool
+     * @param activeWorkerCount  the number of worker threads executing tasks
+     * @param queueDepth         the number of tasks waiting to be executed
+     * @param completedTaskCount the number of tasks completed since the executor service has been created
+     * @param tasksPerSecond     the number of tasks completed per second since the previous snapshot
+     */
+    public ExecutorServiceMetrics(int poolSize,
+                                  int activeWorkerCount,
+                                  long queueDepth,
+                                  long completedTaskCount,
+                                  double tasksPerSecond) {
+        this.poolSize = poolSize;
+        this.activeWorkerCount = activeWorkerCount;
+        this.queueDepth = queueDepth;
+        this.completedTaskCount = completedTaskCount;
+        this.tasksPerSecond = tasksPerSecond;
+    }
+
+    /**
+     * Returns the number of worker threads in the pool.
+     *
+     * @return the pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of worker threads executing tasks.
+     *
+     * @return the active worker count
+     */
+    public int getActiveWorkerCount() {
+        return activeWorkerCount;
+    }
+
+    /**
+     * Returns the number of tasks waiting to be executed.
+     *
+     * @return the queue depth
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of tasks completed since the executor service has been created.
+     *
+     * @return the completed task count
+     */
+    public long getCompletedTaskCount() {
+        return completedTaskCount;
+    }
+
+    /**
+     * Returns the number of tasks completed per second since the previous snapshot.
+     *
+     * @return the task throughput
+     */
+    public double getTasksPerSecond() {
+        return tasksPerSecond;
+    }
+
+    public String toString() {
+        return "ExecutorServiceMetrics{" +
+                "poolSize=" + poolSize +
+                ", activeWorkerCount=" + activeWorkerCount +
+                ", queueDepth=" + queueDepth +
+                ", completedTaskCount=" + completedTaskCount +
+                ", tasksPerSecond=" + tasksPerSecond +
+                '}';
+    }
+}
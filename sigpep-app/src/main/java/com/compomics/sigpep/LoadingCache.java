@@ -0,0 +1,489 @@
+package com.compomics.sigpep;
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache that loads missing values on demand.
+ * <p/>
+ * Loads are single-flight: the first caller asking for a missing key runs the loader,
+ * concurrent callers asking for the same key wait for its result instead of loading the
+ * value again. A failed load is not cached, the callers waiting for it get the exception
+ * and the next call loads the value again.
+ * <p/>
+ * Loaded values are weighed in bytes by a weigher. When the total weight of the cache
+ * exceeds the maximum weight the least recently used values are evicted. The cache is
+ * meant for few large values, so eviction is a scan of all entries.
+ * <p/>
+ * Values can be refreshed asynchronously on an executor: the old value is returned until
+ * the new one has been loaded and replaces it. If a refresh interval is set, values older
+ * than the interval are refreshed when they are accessed.
+ */
+public class LoadingCache<K, V> {
+
+    /**
+     * Loads the value of a key.
+     */
+    public interface Loader<K, V> {
+
+        /**
+         * Loads the value of a key.
+         *
+         * @param key the key
+         * @return the value, not null
+         * @throws Exception if the value can't be loaded
+         */
+        V load(K key) throws Exception;
+    }
+
+    /**
+     * Calculates the weight of a value.
+     */
+    public interface Weigher<K, V> {
+
+        /**
+         * Returns the weight of a value.
+         *
+         * @param key   the key
+         * @param value the value
+         * @return the approximate number of bytes taken by the value
+         */
+        long weigh(K key, V value);
+    }
+
+    private static Logger logger = Logger.getLogger(LoadingCache.class);
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+    private final long maximumWeight;
+    private final long refreshInterval;
+    private final Weigher<? super K, ? super V> weigher;
+    private final Executor executor;
+
+    /**
+     * the logical clock the entry access order is kept with
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * the total weight of the loaded entries, guarded by this
+     */
+    private long totalWeight = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadSuccessCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs a cache.
+     *
+     * @param maximumWeight   the maximum total weight of the values in bytes
+     * @param refreshInterval the number of milliseconds after which a value is refreshed
+     *                        when it is accessed, 0 to refresh values on request only
+     * @param weigher         the weigher calculating the weight of the values
+     * @param executor        the executor running the asynchronous refreshs
+     */
+    public LoadingCache(long maximumWeight,
+                        long refreshInterval,
+                        Weigher<? super K, ? super V> weigher,
+                        Executor executor) {
+        this.maximumWeight = maximumWeight;
+        this.refreshInterval = refreshInterval;
+        this.weigher = weigher;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the value of a key, loading it with the loader if it is not in the cache.
+     * If another thread is loading the value already, waits for its result.
+     *
+     * @param key    the key
+     * @param loader the loader loading the value if it is missing
+     * @return the value
+     * @throws RuntimeException if the value could not be loaded
+     */
+    public V get(K key, Loader<? super K, ? extends V> loader) {
+
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            Entry<K, V> created = new Entry<K, V>(key, loader, clock.incrementAndGet());
+            entry = putIfAbsent(key, created);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                entry = created;
+                if (load(entry)) {
+                    //a long load must not make the loaded value the least recently used one
+                    entry.lastAccess = clock.incrementAndGet();
+                    addWeight(entry);
+                } else {
+                    entries.remove(key, entry);
+                }
+            } else {
+                hitCount.incrementAndGet();
+            }
+        } else {
+            hitCount.incrementAndGet();
+        }
+
+        entry.lastAccess = clock.incrementAndGet();
+        V retVal = getValue(entry);
+
+        //the load time is set after the callers waiting for the load have been released
+        long loadTime = entry.loadTime;
+        if (refreshInterval > 0 && loadTime > 0 && System.currentTimeMillis() - loadTime > refreshInterval) {
+            refresh(key);
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the value of a key if it has been loaded.
+     *
+     * @param key the key
+     * @return the value or null if it is not in the cache or still being loaded
+     */
+    public V getIfPresent(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null || !entry.future.isDone()) {
+            return null;
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        return getValue(entry);
+    }
+
+    /**
+     * Reloads the value of a key on the executor. The old value is returned until the
+     * new one has been loaded, if the reload fails the old value is kept. Keys not in the
+     * cache, still being loaded or already being refreshed are ignored.
+     *
+     * @param key the key
+     */
+    public void refresh(final K key) {
+
+        final Entry<K, V> entry = entries.get(key);
+        if (entry == null || !entry.future.isDone() || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+
+                Entry<K, V> refreshed = new Entry<K, V>(key, entry.loader, entry.lastAccess);
+                if (load(refreshed)) {
+                    synchronized (LoadingCache.this) {
+                        if (entries.get(key) == entry) {
+                            refreshed.lastAccess = entry.lastAccess;
+                            entries.put(key, refreshed);
+                            removeWeight(entry);
+                            addWeight(refreshed);
+                            return;
+                        }
+                    }
+                }
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Refreshes the values of all keys on the executor.
+     */
+    public void refreshAll() {
+        for (K key : entries.keySet()) {
+            refresh(key);
+        }
+    }
+
+    /**
+     * Removes the value of a key. A load in progress is not cancelled, but its
+     * value is not cached.
+     *
+     * @param key the key
+     */
+    public synchronized void invalidate(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry != null) {
+            removeWeight(entry);
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void invalidateAll() {
+        for (K key : entries.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the number of entries, including the ones still being loaded.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the loaded values.
+     *
+     * @return the weight in bytes
+     */
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns the maximum total weight of the values.
+     *
+     * @return the maximum weight in bytes
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the statistics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(hitCount.get(),
+                missCount.get(),
+                loadSuccessCount.get(),
+                loadFailureCount.get(),
+                totalLoadTime.get() / 1000000,
+                evictionCount.get());
+    }
+
+    private synchronized Entry<K, V> putIfAbsent(K key, Entry<K, V> entry) {
+        Entry<K, V> retVal = entries.get(key);
+        if (retVal == null) {
+            entries.put(key, entry);
+        }
+        return retVal;
+    }
+
+    /**
+     * Runs the loader of an entry in the calling thread.
+     *
+     * @param entry the entry
+     * @return true if the value has been loaded
+     */
+    private boolean load(Entry<K, V> entry) {
+
+        long start = System.nanoTime();
+        entry.future.run();
+        long loadTime = System.nanoTime() - start;
+        totalLoadTime.addAndGet(loadTime);
+
+        try {
+            V value = entry.future.get();
+            entry.weight = weigher.weigh(entry.key, value);
+            entry.loadTime = System.currentTimeMillis();
+            loadSuccessCount.incrementAndGet();
+            logger.info("loaded " + entry.key + " in " + loadTime / 1000000 + " ms, approx. "
+                    + entry.weight / (1024 * 1024) + " MB");
+            return true;
+        } catch (ExecutionException e) {
+            loadFailureCount.incrementAndGet();
+            logger.warn("failed to load " + entry.key, e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            //the future has completed already
+            Thread.currentThread().interrupt();
+            loadFailureCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Adds the weight of a loaded entry still in the cache and evicts the least recently
+     * used entries until the total weight doesn't exceed the maximum weight.
+     *
+     * @param entry the entry
+     */
+    private synchronized void addWeight(Entry<K, V> entry) {
+
+        if (entries.get(entry.key) != entry || entry.weighed) {
+            return;
+        }
+        entry.weighed = true;
+        totalWeight += entry.weight;
+
+        while (totalWeight > maximumWeight) {
+
+            Entry<K, V> leastRecentlyUsed = null;
+            for (Entry<K, V> candidate : entries.values()) {
+                if (candidate.weighed && (leastRecentlyUsed == null || candidate.lastAccess < leastRecentlyUsed.lastAccess)) {
+                    leastRecentlyUsed = candidate;
+                }
+            }
+
+            entries.remove(leastRecentlyUsed.key);
+            removeWeight(leastRecentlyUsed);
+            evictionCount.incrementAndGet();
+            logger.info("evicted " + leastRecentlyUsed.key + ", approx. " + leastRecentlyUsed.weight / (1024 * 1024) + " MB");
+        }
+    }
+
+    private synchronized void removeWeight(Entry<K, V> entry) {
+        if (entry.weighed) {
+            entry.weighed = false;
+            totalWeight -= entry.weight;
+        }
+    }
+
+    private V getValue(Entry<K, V> entry) {
+        try {
+            return entry.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + entry.key + " to be loaded.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Exception while loading " + entry.key + ".", e.getCause());
+        }
+    }
+
+    /**
+     * A cache entry, the value is loaded by a future run by the first caller.
+     */
+    private static class Entry<K, V> {
+
+        private final K key;
+        private final Loader<? super K, ? extends V> loader;
+        private final FutureTask<V> future;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastAccess;
+        private volatile long loadTime;
+
+        /**
+         * the weight of the value and whether it has been added to the total weight, guarded by the cache
+         */
+        private long weight;
+        private boolean weighed = false;
+
+        private Entry(final K key, final Loader<? super K, ? extends V> loader, long lastAccess) {
+            this.key = key;
+            this.loader = loader;
+            this.lastAccess = lastAccess;
+            this.future = new FutureTask<V>(new Callable<V>() {
+                public V call() throws Exception {
+                    return loader.load(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Snapshot of the cache statistics.
+     */
+    public static class Statistics {
+
+        private long hitCount;
+        private long missCount;
+        private long loadSuccessCount;
+        private long loadFailureCount;
+        private long totalLoadTime;
+        private long evictionCount;
+
+        /**
+         * Constructs a snapshot.
+         *
+         * @param hitCount         the number of values returned from the cache, including the
+         *                         ones returned to callers waiting for another caller's load
+         * @param missCount        the number of values loaded because they were missing
+         * @param loadSuccessCount the number of values loaded, including refreshs
+         * @param loadFailureCount the number of failed loads
+         * @param totalLoadTime    the time spent loading values in milliseconds
+         * @param evictionCount    the number of values evicted
+         */
+        public Statistics(long hitCount,
+                          long missCount,
+                          long loadSuccessCount,
+                          long loadFailureCount,
+                          long totalLoadTime,
+                          long evictionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadSuccessCount = loadSuccessCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTime = totalLoadTime;
+            this.evictionCount = evictionCount;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the share of requests answered from the cache.
+         *
+         * @return the hit rate, 1 if there haven't been any requests
+         */
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        public long getLoadSuccessCount() {
+            return loadSuccessCount;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * Returns the time spent loading values.
+         *
+         * @return the load time in milliseconds
+         */
+        public long getTotalLoadTime() {
+            return totalLoadTime;
+        }
+
+        /**
+         * Returns the average time spent per load.
+         *
+         * @return the average load time in milliseconds, 0 if nothing has been loaded
+         */
+        public double getAverageLoadTime() {
+            long loadCount = loadSuccessCount + loadFailureCount;
+            return loadCount == 0 ? 0.0 : (double) totalLoadTime / loadCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public String toString() {
+            return "hits=" + hitCount
+                    + ", misses=" + missCount
+                    + ", hitRate=" + String.format("%.3f", getHitRate())
+                    + ", loads=" + loadSuccessCount
+                    + ", loadFailures=" + loadFailureCount
+                    + ", totalLoadTime=" + totalLoadTime + " ms"
+                    + ", evictions=" + evictionCount;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.compomics.sigpep.model.Peptide;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Created by IntelliJ IDEA.<br/>
@@ -121,6 +122,32 @@ public interface PeptideGenerator {
      */
     Set<Peptide> getPeptides();
 
+    /**
+     * Returns a lazy stream of the distinct proteolytic peptide objects (including
+     * post-translational modifications) generated by a digest of all protein sequences
+     * of the organism. The peptide objects are created while the stream is consumed,
+     * the stream can be processed in parallel.
+     *
+     * @return a stream of peptide objects
+     */
+    Stream<Peptide> streamPeptides();
+
+    /**
+     * Returns a lazy stream of the distinct proteolytic peptide objects (including
+     * post-translational modifications) generated by a digest of the protein sequences
+     * identified by the protein accessions with the specified degeneracy across the
+     * protein sequence space of the organism and a neutral mass of the unmodified
+     * peptide within the mass range. The filters are applied to the peptide sequences
+     * before any peptide object is created, the stream can be processed in parallel.
+     *
+     * @param proteinAccessions the protein accessions, null for all protein sequences
+     * @param degeneracy        the peptide sequence degeneracy, -1 for all degeneracy levels
+     * @param lowerMassCutOff   the lower limit of the unmodified peptide mass (inclusive)
+     * @param upperMassCutOff   the upper limit of the unmodified peptide mass (inclusive)
+     * @return a stream of peptide objects
+     */
+    Stream<Peptide> streamPeptides(Set<String> proteinAccessions, int degeneracy, double lowerMassCutOff, double upperMassCutOff);
+
     /**
      * Returns a map of protein accessions and sets of proteolytic peptide object
      * (including post-translational modifications) generated by a digest of all
@@ -141,6 +168,21 @@ public interface PeptideGenerator {
      */
     Map<String, Set<Peptide>> getProteinAccessionToPeptideMap(int degeneracy);
 
+    /**
+     * Returns a map of protein accessions and sets of proteolytic peptide object
+     * (including post-translational modifications) generated by a digest of all
+     * protein sequences of the organism with the specified degeneracy
+     * across the protein sequence space of the organism and a neutral mass of
+     * the unmodified peptide within the mass range. Peptide objects are only
+     * created for peptides within the mass range.
+     *
+     * @param degeneracy      peptide sequence degeneracy
+     * @param lowerMassCutOff the lower limit of the unmodified peptide mass (inclusive)
+     * @param upperMassCutOff the upper limit of the unmodified peptide mass (inclusive)
+     * @return a map of protein accessions and sets of peptide objects
+     */
+    Map<String, Set<Peptide>> getProteinAccessionToPeptideMap(int degeneracy, double lowerMassCutOff, double upperMassCutOff);
+
     /**
      * Returns a map of protein accessions and sets of proteolytic peptide object
      * (including post-translational modifications) generated by a digest of the
@@ -1,6 +1,5 @@
 package com.compomics.sigpep;
 
-import com.opensymphony.oscache.base.Cache;
 import com.compomics.sigpep.analysis.SignatureTransitionFinder;
 import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
 import com.compomics.sigpep.model.Organism;
@@ -85,11 +84,19 @@ public interface SigPepSession {
     SigPepQueryService createSigPepQueryService();
 
     /**
-     * Returns the session cache.
+     * Returns the cache of the datasets loaded from the database.
      *
-     * @return the cache
+     * @return the dataset cache
      */
-    Cache getCache();
+    LoadingCache<String, Object> getDatasetCache();
+
+    /**
+     * Returns the version of the session database. The version changes when proteins,
+     * genes, protein sequences or peptides are added to or removed from the database.
+     *
+     * @return the database version
+     */
+    String getDatabaseVersion();
 
     /**
      * Returns a signature transition finder.
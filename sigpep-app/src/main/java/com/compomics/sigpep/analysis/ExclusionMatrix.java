@@ -0,0 +1,118 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.List;
+
+/**
+ * A matrix that specifies which background peptides are excluded by the product
+ * ions of a target peptide.
+ * <p/>
+ * The matrix has a row for each target product ion and a column for each background
+ * peptide. A cell is <code>true</code> if the presence of the target product ion
+ * excludes the presence of the background peptide, i.e. if none of the product ions
+ * of the background peptide overlap with the target product ion. Product ions and
+ * background peptides are addressed by dense, zero based indexes in the order they
+ * have been passed to the matrix when it was created, duplicates are ignored.
+ * <p/>
+ * A newly created matrix excludes every background peptide for every target
+ * product ion. Overlaps are recorded by calling <code>setExcludes(i, j, false)</code>.
+ * <p/>
+ * Implementations are created by the <code>ExclusionScoreCalculatorFactory</code>
+ * configured in the sigpep-app.properties file.
+ */
+public interface ExclusionMatrix {
+
+    /**
+     * Returns the target product ions in row order.
+     *
+     * @return the target product ions
+     */
+    List<ProductIon> getProductIons();
+
+    /**
+     * Returns the background peptides in column order.
+     *
+     * @return the background peptides
+     */
+    List<Peptide> getBackgroundPeptides();
+
+    /**
+     * Returns the number of target product ions (rows).
+     *
+     * @return the product ion count
+     */
+    int getProductIonCount();
+
+    /**
+     * Returns the number of background peptides (columns).
+     *
+     * @return the background peptide count
+     */
+    int getBackgroundPeptideCount();
+
+    /**
+     * Returns the row index of a target product ion.
+     *
+     * @param productIon the product ion
+     * @return the row index or -1 if the product ion is not part of the matrix
+     */
+    int getProductIonIndex(ProductIon productIon);
+
+    /**
+     * Returns the column index of a background peptide.
+     *
+     * @param backgroundPeptide the background peptide
+     * @return the column index or -1 if the peptide is not part of the matrix
+     */
+    int getBackgroundPeptideIndex(Peptide backgroundPeptide);
+
+    /**
+     * Sets whether a target product ion excludes a background peptide.
+     *
+     * @param productIonIndex        the row index of the target product ion
+     * @param backgroundPeptideIndex the column index of the background peptide
+     * @param excludes               true if the product ion excludes the peptide
+     */
+    void setExcludes(int productIonIndex, int backgroundPeptideIndex, boolean excludes);
+
+    /**
+     * Returns whether a target product ion excludes a background peptide.
+     *
+     * @param productIonIndex        the row index of the target product ion
+     * @param backgroundPeptideIndex the column index of the background peptide
+     * @return true if the product ion excludes the peptide
+     */
+    boolean excludes(int productIonIndex, int backgroundPeptideIndex);
+
+    /**
+     * Returns the number of background peptides excluded by a target product ion.
+     *
+     * @param productIonIndex the row index of the target product ion
+     * @return the number of excluded background peptides
+     */
+    int getExclusionCount(int productIonIndex);
+
+    /**
+     * Returns whether the combination of target product ions excludes every
+     * background peptide, i.e. whether every column is excluded by at least
+     * one of the rows.
+     *
+     * @param productIonIndexes the row indexes of the product ion combination
+     * @return true if all background peptides are excluded
+     */
+    boolean excludesAll(int[] productIonIndexes);
+
+    /**
+     * Returns the exclusion score of a product ion combination, the combined number
+     * of exclusions of all rows divided by the number of cells covered by the rows.
+     * <p/>
+     * The score does not check whether the combination excludes all background
+     * peptides, use <code>excludesAll(int[])</code> for that.
+     *
+     * @param productIonIndexes the row indexes of the product ion combination
+     * @return a score between 0 and 1
+     */
+    double getExclusionScore(int[] productIonIndexes);
+}
@@ -4,6 +4,8 @@ import com.compomics.sigpep.Configuration;
 import com.compomics.sigpep.model.ProductIon;
 import com.compomics.sigpep.model.Peptide;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 
@@ -45,6 +47,17 @@ public abstract class ExclusionScoreCalculatorFactory {
         return ourInstance;
     }
 
+    /**
+     * Creates an exclusion matrix in which every target product ion excludes
+     * every background peptide.
+     *
+     * @param targetProductIons  the target product ions (matrix rows)
+     * @param backgroundPeptides the background peptides (matrix columns)
+     * @return the exclusion matrix
+     */
+    public abstract ExclusionMatrix createExclusionMatrix(List<ProductIon> targetProductIons,
+                                                          Collection<Peptide> backgroundPeptides);
+
     /**
      * @param productIonCombination
      * @param exclusionMatrix
@@ -52,5 +65,5 @@ public abstract class ExclusionScoreCalculatorFactory {
      * @TODO: JavaDoc missing.
      */
     public abstract ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> getCalculator(Set<ProductIon> productIonCombination,
-                                                                                         Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix);
+                                                                                         ExclusionMatrix exclusionMatrix);
 }
@@ -18,6 +18,22 @@ public interface PeptideIonStore<P extends PeptideIon> {
 
     void populate(Collection<P> peptides);
 
+    /**
+     * Adds peptide ions to the store without rebuilding it. Peptide ions
+     * already in the store are ignored.
+     *
+     * @param peptides the peptide ions to add
+     */
+    void add(Collection<P> peptides);
+
+    /**
+     * Removes peptide ions from the store without rebuilding it. Peptide ions
+     * not in the store are ignored.
+     *
+     * @param peptides the peptide ions to remove
+     */
+    void remove(Collection<P> peptides);
+
     Set<P> getPeptideIonsInMassRange(double lowerMassLimit, double upperMassLimit);
 
     Set<P> getPeptideIonsWithMass(double peptideMass);
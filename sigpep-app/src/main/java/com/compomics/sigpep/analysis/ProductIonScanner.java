@@ -28,4 +28,15 @@ public interface ProductIonScanner {
      * @return a list of signature transitions
      */
     List<SignatureTransition> findSignatureTransitions(Peptide targetPeptide, Set<Peptide> isobaricPeptides);
+
+    /**
+     * Finds the sets of product ions that can distinguish a target sequence
+     * from a set of isobaric background sequences and passes each of them to
+     * the handler as a SignatureTransition object as soon as it has been scored.
+     *
+     * @param targetPeptide    the target peptide
+     * @param isobaricPeptides the isobaric peptides
+     * @param handler          the handler receiving the signature transitions
+     */
+    void findSignatureTransitions(Peptide targetPeptide, Set<Peptide> isobaricPeptides, SignatureTransitionHandler handler);
 }
@@ -32,4 +32,28 @@ public interface SignatureTransitionFinder {
      *         empty if no signature transition exists for a given peptide
      */
     List<SignatureTransition> findSignatureTransitions(Collection<Peptide> peptides);
+
+    /**
+     * Finds signature transitions for a collection of peptides and passes each
+     * transition to the handler as soon as it has been found, without keeping
+     * the transitions found so far.
+     *
+     * @param peptides the peptides to identify a signature transition for
+     * @param handler  the handler receiving the signature transitions
+     */
+    void findSignatureTransitions(Collection<Peptide> peptides, SignatureTransitionHandler handler);
+
+    /**
+     * Adds peptides to the background of the finder without rebuilding it.
+     *
+     * @param peptides the peptides to add to the background
+     */
+    void addBackgroundPeptides(Collection<Peptide> peptides);
+
+    /**
+     * Removes peptides from the background of the finder without rebuilding it.
+     *
+     * @param peptides the peptides to remove from the background
+     */
+    void removeBackgroundPeptides(Collection<Peptide> peptides);
 }
@@ -287,10 +287,11 @@ public class SignatureTransitionFinderExecutor {
 
             //connection.close();
 
-            //get signature peptides
+            //get signature peptides in mass range, the generator filters on the
+            //feature masses before it creates any peptide objects
             logger.info("signature peptides...");
             //peptideGenerator.setPostTranslationalModifications(staticPtms);
-            Map<String, Set<Peptide>> signaturePeptides = peptideGenerator.getProteinAccessionToPeptideMap(1);
+            Map<String, Set<Peptide>> signaturePeptidesInMassRange = peptideGenerator.getProteinAccessionToPeptideMap(1, lowerMassCutOff, upperMassCutOff);
 
 
             logger.info("background peptides...");
@@ -318,33 +319,20 @@ public class SignatureTransitionFinderExecutor {
                     5,
                     SignatureTransitionFinderType.ALL);
 
-            PrintWriter outputPrintWriter = new PrintWriter(output);
+            final PrintWriter outputPrintWriter = new PrintWriter(output);
 //            PrintWriter outputPrintWriter = new PrintWriter(System.out);
 
             int processedPeptideCounter = 0;
-            int transitionCounter = 0;
+            final int[] transitionCounter = new int[1];
 
-            //filter for pepides in mass range
+            //count pepides in mass range
             int peptidesInMassRangeCount = 0;
-            Map<String, Set<Peptide>> signaturePeptidesInMassRange = new HashMap<String, Set<Peptide>>();
-            for (String proteinAccession : signaturePeptides.keySet()) {
-
-                Set<Peptide> peptidesInMassRange = new HashSet<Peptide>();
-                for (Peptide signaturePeptide : signaturePeptides.get(proteinAccession)) {
-                    if (signaturePeptide.getPrecursorIon().getNeutralMassPeptide() >= lowerMassCutOff &&
-                            signaturePeptide.getPrecursorIon().getNeutralMassPeptide() <= upperMassCutOff) {
-
-                        peptidesInMassRange.add(signaturePeptide);
-                        peptidesInMassRangeCount++;
-                    }
-                }
-
-                signaturePeptidesInMassRange.put(proteinAccession, peptidesInMassRange);
-
+            for (Set<Peptide> peptidesInMassRange : signaturePeptidesInMassRange.values()) {
+                peptidesInMassRangeCount += peptidesInMassRange.size();
             }
             logger.info(peptidesInMassRangeCount + " signature peptides in mass interval");
 
-            for (String proteinAccession : signaturePeptidesInMassRange.keySet()) {
+            for (final String proteinAccession : signaturePeptidesInMassRange.keySet()) {
                 for (Peptide signaturePeptide : signaturePeptidesInMassRange.get(proteinAccession)) {
 
                     List<Peptide> targetPeptide = new ArrayList<Peptide>();
@@ -355,25 +343,26 @@ public class SignatureTransitionFinderExecutor {
                         targetPeptide.add(signaturePeptide);
                     }
 
-                    List<SignatureTransition> signatureTransitions = finder.findSignatureTransitions(targetPeptide);
-
                     //get gene accession
                     String geneAccession = "null";
                     if (proteinAccessionToGeneAccessionMap.containsKey(proteinAccession)) {
                         geneAccession = proteinAccessionToGeneAccessionMap.get(proteinAccession);
                     }
+                    final String targetGeneAccession = geneAccession;
 
-                    for (Transition signatureTransition : signatureTransitions) {
-                        transitionCounter++;
-                        SignatureTransition transition = (SignatureTransition) signatureTransition;
-                        writeResultEntry(outputPrintWriter, proteinAccession, geneAccession, transition);
-                    }
+                    //write the transitions as they are found instead of collecting them first
+                    finder.findSignatureTransitions(targetPeptide, new SignatureTransitionHandler() {
+                        public void handleSignatureTransition(SignatureTransition signatureTransition) {
+                            transitionCounter[0]++;
+                            writeResultEntry(outputPrintWriter, proteinAccession, targetGeneAccession, signatureTransition);
+                        }
+                    });
 
                     processedPeptideCounter++;
 
                     //some user feedback
                     if (processedPeptideCounter % 100 == 0) {
-                        logger.info(processedPeptideCounter + " target peptides of " + peptidesInMassRangeCount + " processed, " + transitionCounter + " transitions found ...");
+                        logger.info(processedPeptideCounter + " target peptides of " + peptidesInMassRangeCount + " processed, " + transitionCounter[0] + " transitions found ...");
                     }
 
                 }
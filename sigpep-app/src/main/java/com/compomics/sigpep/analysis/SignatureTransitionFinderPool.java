@@ -0,0 +1,586 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.PeptideGenerator;
+import com.compomics.sigpep.SigPepSession;
+import com.compomics.sigpep.model.Modification;
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIonType;
+import com.compomics.sigpep.model.SignatureTransition;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Application wide pool of ready-to-use signature transition finders.
+ * <p/>
+ * A finder is built once per organism, protease set, post-translational modifications and
+ * finder parameters together with the peptide generator and background peptides it is built
+ * from, and shared by all callers asking for the same key. Callers asking for a finder that
+ * is being built wait for it instead of building it again.
+ * <p/>
+ * Finders are leased: the pool counts the leases of each finder and only evicts finders
+ * without leases. A lease that adds or removes background peptides gets a finder of its own
+ * built on a copy of the background, the pooled finder stays as it is. The memory taken by a finder is estimated from the number of its background
+ * peptides, when the total exceeds the maximum size the least recently used idle finders are
+ * evicted. The most recently used finder is never evicted, so a finder larger than the maximum
+ * size stays in the pool until another finder is used.
+ */
+public class SignatureTransitionFinderPool {
+
+    private static Logger logger = Logger.getLogger(SignatureTransitionFinderPool.class);
+
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the singleton instance
+     */
+    private static SignatureTransitionFinderPool instance;
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+    private final long maximumSize;
+    private final long backgroundPeptideSize;
+
+    /**
+     * the logical clock the entry access order is kept with, guarded by this
+     */
+    private long clock = 0;
+
+    /**
+     * the total estimated size of the built finders, guarded by this
+     */
+    private long totalSize = 0;
+
+    /**
+     * Constructs a finder pool.
+     *
+     * @param maximumSize           the maximum total size of the finders in bytes
+     * @param backgroundPeptideSize the approximate number of bytes a background peptide takes in a finder
+     */
+    public SignatureTransitionFinderPool(long maximumSize, long backgroundPeptideSize) {
+        this.maximumSize = maximumSize;
+        this.backgroundPeptideSize = backgroundPeptideSize;
+    }
+
+    /**
+     * Returns the singleton instance of the finder pool, sized by the sigpep.app.finder.pool.*
+     * properties.
+     *
+     * @return the finder pool
+     */
+    public static synchronized SignatureTransitionFinderPool getInstance() {
+        if (instance == null) {
+            instance = new SignatureTransitionFinderPool(
+                    config.getLong("sigpep.app.finder.pool.maximum.size", 8192) * 1024 * 1024,
+                    config.getLong("sigpep.app.finder.pool.background.peptide.size", 4096));
+        }
+        return instance;
+    }
+
+    /**
+     * Leases the finder of a key, building it with the session if it is not in the pool.
+     * If another caller is building the finder already, waits for it. The lease has to be
+     * released when the caller is done with the finder.
+     *
+     * @param session the session of the key's organism the finder is built with if it is missing
+     * @param key     the key
+     * @return the lease of the finder
+     * @throws RuntimeException if the finder could not be built
+     */
+    public Lease acquire(final SigPepSession session, final Key key) {
+
+        Entry entry;
+        boolean created = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, new FutureTask<Lease>(new Callable<Lease>() {
+                    public Lease call() {
+                        return build(session, key);
+                    }
+                }));
+                entries.put(key, entry);
+                created = true;
+            }
+            entry.leaseCount++;
+            entry.lastAccess = ++clock;
+        }
+
+        if (created) {
+            long start = System.currentTimeMillis();
+            entry.future.run();
+            if (addSize(entry)) {
+                logger.info("built signature transition finder for " + key + " in "
+                        + (System.currentTimeMillis() - start) + " ms, approx. " + entry.size / (1024 * 1024) + " MB");
+            }
+        }
+
+        try {
+            return new Lease(entry, session, entry.future.get());
+        } catch (InterruptedException e) {
+            release(entry);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the signature transition finder for " + key + ".", e);
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            release(entry);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Exception while building the signature transition finder for " + key + ".", e.getCause());
+        }
+    }
+
+    /**
+     * Removes the finders without leases from the pool.
+     */
+    public synchronized void evictIdle() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.leaseCount == 0 && entry.sized) {
+                it.remove();
+                totalSize -= entry.size;
+                entry.sized = false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the finder of a key has been built.
+     *
+     * @param key the key
+     * @return true if the finder is in the pool and ready to use
+     */
+    public synchronized boolean contains(Key key) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.future.isDone();
+    }
+
+    /**
+     * Returns the number of finders in the pool, including the ones being built.
+     *
+     * @return the finder count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated total size of the finders in the pool.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Builds the peptide generator, background peptides and finder of a key.
+     *
+     * @param session the session the finder is built with
+     * @param key     the key
+     * @return the lease holding the built objects, not attached to an entry
+     */
+    private Lease build(SigPepSession session, Key key) {
+
+        if (session.getOrganism().getTaxonId() != key.taxonId) {
+            throw new IllegalArgumentException("Session of organism " + session.getOrganism().getTaxonId()
+                    + " can't build the signature transition finder for " + key + ".");
+        }
+
+        PeptideGenerator generator = session.createPeptideGenerator(key.proteaseShortNames);
+        if (!key.modifications.isEmpty()) {
+            generator.setPostTranslationalModifications(key.modifications);
+        }
+        Set<Peptide> backgroundPeptides = generator.getPeptides();
+
+        SignatureTransitionFinder finder = session.createSignatureTransitionFinder(backgroundPeptides,
+                key.targetProductIonTypes,
+                key.backgroundProductIonTypes,
+                key.precursorIonChargeStates,
+                key.productIonChargeStates,
+                key.massAccuracy,
+                key.minimumCombinationSize,
+                key.maximumCombinationSize,
+                key.type);
+
+        return new Lease(null, session, generator, Collections.unmodifiableSet(backgroundPeptides), finder);
+    }
+
+    /**
+     * Adds the estimated size of a built entry still in the pool and evicts the least recently
+     * used entries without leases until the total size doesn't exceed the maximum size.
+     *
+     * @param entry the entry
+     * @return true if the entry has been built successfully
+     */
+    private synchronized boolean addSize(Entry entry) {
+
+        long size;
+        try {
+            size = entry.future.get().getBackgroundPeptides().size() * backgroundPeptideSize;
+        } catch (Exception e) {
+            //failed builds are removed by the callers
+            return false;
+        }
+        if (entries.get(entry.key) == entry && !entry.sized) {
+            entry.size = size;
+            entry.sized = true;
+            totalSize += size;
+            evict();
+        }
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used entries without leases until the total size doesn't
+     * exceed the maximum size or all remaining entries are leased or the most recently used one.
+     */
+    private synchronized void evict() {
+
+        while (totalSize > maximumSize) {
+
+            Entry mostRecentlyUsed = null;
+            for (Entry candidate : entries.values()) {
+                if (mostRecentlyUsed == null || candidate.lastAccess > mostRecentlyUsed.lastAccess) {
+                    mostRecentlyUsed = candidate;
+                }
+            }
+
+            Entry leastRecentlyUsed = null;
+            for (Entry candidate : entries.values()) {
+                if (candidate.sized && candidate.leaseCount == 0 && candidate != mostRecentlyUsed
+                        && (leastRecentlyUsed == null || candidate.lastAccess < leastRecentlyUsed.lastAccess)) {
+                    leastRecentlyUsed = candidate;
+                }
+            }
+            if (leastRecentlyUsed == null) {
+                return;
+            }
+
+            entries.remove(leastRecentlyUsed.key);
+            totalSize -= leastRecentlyUsed.size;
+            leastRecentlyUsed.sized = false;
+            logger.info("evicted signature transition finder for " + leastRecentlyUsed.key
+                    + ", approx. " + leastRecentlyUsed.size / (1024 * 1024) + " MB");
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.leaseCount--;
+        entry.lastAccess = ++clock;
+        if (entry.leaseCount == 0) {
+            evict();
+        }
+    }
+
+    /**
+     * A pooled finder, built by a future run by the first caller.
+     */
+    private static class Entry {
+
+        private final Key key;
+        private final FutureTask<Lease> future;
+
+        /**
+         * the lease count, access time and estimated size, guarded by the pool
+         */
+        private int leaseCount = 0;
+        private long lastAccess;
+        private long size;
+        private boolean sized = false;
+
+        private Entry(Key key, FutureTask<Lease> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+
+    /**
+     * A lease of a pooled finder. The finder, its peptide generator and background peptides are
+     * shared with other callers. The first time background peptides are added or removed the
+     * lease builds a finder of its own with its session on a copy of the background and uses
+     * it from then on.
+     */
+    public class Lease implements SignatureTransitionFinder {
+
+        private final Entry entry;
+        private final SigPepSession session;
+        private final PeptideGenerator peptideGenerator;
+        private volatile Set<Peptide> backgroundPeptides;
+        private volatile SignatureTransitionFinder finder;
+
+        /**
+         * the background peptides of the finder of this lease, null until it has one of its own
+         */
+        private Set<Peptide> copiedBackgroundPeptides;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Entry entry, SigPepSession session, PeptideGenerator peptideGenerator,
+                      Set<Peptide> backgroundPeptides, SignatureTransitionFinder finder) {
+            this.entry = entry;
+            this.session = session;
+            this.peptideGenerator = peptideGenerator;
+            this.backgroundPeptides = backgroundPeptides;
+            this.finder = finder;
+        }
+
+        private Lease(Entry entry, SigPepSession session, Lease built) {
+            this(entry, session, built.peptideGenerator, built.backgroundPeptides, built.finder);
+        }
+
+        /**
+         * Returns the peptide generator the background peptides were generated with.
+         *
+         * @return the peptide generator
+         */
+        public PeptideGenerator getPeptideGenerator() {
+            return peptideGenerator;
+        }
+
+        /**
+         * Returns the background peptides of the finder, including the peptides added to and
+         * excluding the ones removed from this lease.
+         *
+         * @return an unmodifiable set of the background peptides
+         */
+        public Set<Peptide> getBackgroundPeptides() {
+            return backgroundPeptides;
+        }
+
+        public List<SignatureTransition> findSignatureTransitions(Peptide peptide) {
+            return finder.findSignatureTransitions(peptide);
+        }
+
+        public List<SignatureTransition> findSignatureTransitions(Collection<Peptide> peptides) {
+            return finder.findSignatureTransitions(peptides);
+        }
+
+        public void findSignatureTransitions(Collection<Peptide> peptides, SignatureTransitionHandler handler) {
+            finder.findSignatureTransitions(peptides, handler);
+        }
+
+        /**
+         * Adds peptides to the background of this lease only. Must not be called while
+         * signature transitions are being found.
+         *
+         * @param peptides the peptides to add to the background
+         */
+        public synchronized void addBackgroundPeptides(Collection<Peptide> peptides) {
+            if (copiedBackgroundPeptides == null) {
+                Set<Peptide> background = new HashSet<Peptide>(backgroundPeptides);
+                background.addAll(peptides);
+                copy(background);
+            } else {
+                finder.addBackgroundPeptides(peptides);
+                copiedBackgroundPeptides.addAll(peptides);
+            }
+        }
+
+        /**
+         * Removes peptides from the background of this lease only. Must not be called while
+         * signature transitions are being found.
+         *
+         * @param peptides the peptides to remove from the background
+         */
+        public synchronized void removeBackgroundPeptides(Collection<Peptide> peptides) {
+            if (copiedBackgroundPeptides == null) {
+                Set<Peptide> background = new HashSet<Peptide>(backgroundPeptides);
+                background.removeAll(peptides);
+                copy(background);
+            } else {
+                finder.removeBackgroundPeptides(peptides);
+                copiedBackgroundPeptides.removeAll(peptides);
+            }
+        }
+
+        /**
+         * Replaces the pooled finder of this lease with one of its own.
+         *
+         * @param background the background peptides of the new finder
+         */
+        private void copy(Set<Peptide> background) {
+            Key key = entry.key;
+            finder = session.createSignatureTransitionFinder(new HashSet<Peptide>(background),
+                    key.targetProductIonTypes,
+                    key.backgroundProductIonTypes,
+                    key.precursorIonChargeStates,
+                    key.productIonChargeStates,
+                    key.massAccuracy,
+                    key.minimumCombinationSize,
+                    key.maximumCombinationSize,
+                    key.type);
+            copiedBackgroundPeptides = background;
+            backgroundPeptides = Collections.unmodifiableSet(background);
+        }
+
+        /**
+         * Returns the lease to the pool. Releasing a lease more than once has no effect.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                SignatureTransitionFinderPool.this.release(entry);
+            }
+        }
+    }
+
+    /**
+     * The organism, proteases, post-translational modifications and parameters a pooled
+     * finder is built for.
+     */
+    public static class Key {
+
+        private final int taxonId;
+        private final Set<String> proteaseShortNames;
+        private final Set<Modification> modifications;
+        private final Set<ProductIonType> targetProductIonTypes;
+        private final Set<ProductIonType> backgroundProductIonTypes;
+        private final Set<Integer> precursorIonChargeStates;
+        private final Set<Integer> productIonChargeStates;
+        private final double massAccuracy;
+        private final int minimumCombinationSize;
+        private final int maximumCombinationSize;
+        private final SignatureTransitionFinderType type;
+
+        /**
+         * Constructs a key. The sets are copied.
+         *
+         * @param taxonId                   the NCBI taxon ID of the organism
+         * @param proteaseShortNames        the short names of the proteases
+         * @param modifications             the post-translational modifications of the background peptides
+         * @param targetProductIonTypes     the product ion types of the target peptides to take into account
+         * @param backgroundProductIonTypes the product ion types of the background peptides to take into account
+         * @param precursorIonChargeStates  the allowed precursor ion charges
+         * @param productIonChargeStates    the allowed product ion charges
+         * @param massAccuracy              the mass accuracy
+         * @param minimumCombinationSize    the minimum number of product ions a signature transition has to consist of
+         * @param maximumCombinationSize    the maximum number of product ions a signature transition is allowed to consist of
+         * @param type                      the type of signature transition finder
+         */
+        public Key(int taxonId,
+                   Set<String> proteaseShortNames,
+                   Set<Modification> modifications,
+                   Set<ProductIonType> targetProductIonTypes,
+                   Set<ProductIonType> backgroundProductIonTypes,
+                   Set<Integer> precursorIonChargeStates,
+                   Set<Integer> productIonChargeStates,
+                   double massAccuracy,
+                   int minimumCombinationSize,
+                   int maximumCombinationSize,
+                   SignatureTransitionFinderType type) {
+            this.taxonId = taxonId;
+            this.proteaseShortNames = Collections.unmodifiableSet(new TreeSet<String>(proteaseShortNames));
+            this.modifications = Collections.unmodifiableSet(new HashSet<Modification>(modifications));
+            this.targetProductIonTypes = Collections.unmodifiableSet(new TreeSet<ProductIonType>(targetProductIonTypes));
+            this.backgroundProductIonTypes = Collections.unmodifiableSet(new TreeSet<ProductIonType>(backgroundProductIonTypes));
+            this.precursorIonChargeStates = Collections.unmodifiableSet(new TreeSet<Integer>(precursorIonChargeStates));
+            this.productIonChargeStates = Collections.unmodifiableSet(new TreeSet<Integer>(productIonChargeStates));
+            this.massAccuracy = massAccuracy;
+            this.minimumCombinationSize = minimumCombinationSize;
+            this.maximumCombinationSize = maximumCombinationSize;
+            this.type = type;
+        }
+
+        public int getTaxonId() {
+            return taxonId;
+        }
+
+        public Set<String> getProteaseShortNames() {
+            return proteaseShortNames;
+        }
+
+        public Set<Modification> getModifications() {
+            return modifications;
+        }
+
+        public Set<ProductIonType> getTargetProductIonTypes() {
+            return targetProductIonTypes;
+        }
+
+        public Set<ProductIonType> getBackgroundProductIonTypes() {
+            return backgroundProductIonTypes;
+        }
+
+        public Set<Integer> getPrecursorIonChargeStates() {
+            return precursorIonChargeStates;
+        }
+
+        public Set<Integer> getProductIonChargeStates() {
+            return productIonChargeStates;
+        }
+
+        public double getMassAccuracy() {
+            return massAccuracy;
+        }
+
+        public int getMinimumCombinationSize() {
+            return minimumCombinationSize;
+        }
+
+        public int getMaximumCombinationSize() {
+            return maximumCombinationSize;
+        }
+
+        public SignatureTransitionFinderType getType() {
+            return type;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return taxonId == key.taxonId
+                    && Double.compare(massAccuracy, key.massAccuracy) == 0
+                    && minimumCombinationSize == key.minimumCombinationSize
+                    && maximumCombinationSize == key.maximumCombinationSize
+                    && type == key.type
+                    && proteaseShortNames.equals(key.proteaseShortNames)
+                    && modifications.equals(key.modifications)
+                    && targetProductIonTypes.equals(key.targetProductIonTypes)
+                    && backgroundProductIonTypes.equals(key.backgroundProductIonTypes)
+                    && precursorIonChargeStates.equals(key.precursorIonChargeStates)
+                    && productIonChargeStates.equals(key.productIonChargeStates);
+        }
+
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(massAccuracy);
+            int result = taxonId;
+            result = 31 * result + proteaseShortNames.hashCode();
+            result = 31 * result + modifications.hashCode();
+            result = 31 * result + targetProductIonTypes.hashCode();
+            result = 31 * result + backgroundProductIonTypes.hashCode();
+            result = 31 * result + precursorIonChargeStates.hashCode();
+            result = 31 * result + productIonChargeStates.hashCode();
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            result = 31 * result + minimumCombinationSize;
+            result = 31 * result + maximumCombinationSize;
+            result = 31 * result + (type != null ? type.hashCode() : 0);
+            return result;
+        }
+
+        public String toString() {
+            return "taxon " + taxonId
+                    + ", proteases " + proteaseShortNames
+                    + ", " + modifications.size() + " PTMs"
+                    + ", precursor charges " + precursorIonChargeStates
+                    + ", product charges " + productIonChargeStates
+                    + ", target ions " + targetProductIonTypes
+                    + ", background ions " + backgroundProductIonTypes
+                    + ", mass accuracy " + massAccuracy
+                    + ", size " + minimumCombinationSize + "-" + maximumCombinationSize
+                    + ", " + type;
+        }
+    }
+}
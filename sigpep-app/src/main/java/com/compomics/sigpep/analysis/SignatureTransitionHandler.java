@@ -0,0 +1,21 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.model.SignatureTransition;
+
+/**
+ * Receives signature transitions one by one as soon as they have been scored.
+ * <p/>
+ * Signature transition finders and product ion scanners call the handler on the
+ * thread that requested the search and only score a bounded number of target peptides
+ * ahead of the handler, so a slow handler (e.g. one writing to a file) holds the
+ * search back instead of letting the found transitions pile up in memory.
+ */
+public interface SignatureTransitionHandler {
+
+    /**
+     * Handles a signature transition.
+     *
+     * @param signatureTransition the signature transition
+     */
+    void handleSignatureTransition(SignatureTransition signatureTransition);
+}
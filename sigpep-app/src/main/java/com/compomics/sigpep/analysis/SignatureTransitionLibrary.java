@@ -0,0 +1,676 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.model.*;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A precomputed library of the signature transitions of all signature peptides of an
+ * organism and protease set, found with one set of finder parameters.
+ * <p/>
+ * The library is a memory mapped file. The header holds the taxon, database version,
+ * proteases, PTMs and finder parameters the library was computed with. It is followed by
+ * an index of the peptides sorted by peptide identifier (sequence and modification positions)
+ * and an index of the protein and gene accessions sorted by accession, each pointing to the
+ * signature peptides of the protein or gene. Both are searched binary in place. The
+ * signature transitions of a peptide are stored in the compact binary form of the result
+ * cache and read on lookup.
+ * <p/>
+ * Libraries are written by {@link SignatureTransitionLibraryExecutor} to the directory
+ * configured by sigpep.app.library.directory, one file per taxon, protease set and
+ * finder parameters.
+ */
+public class SignatureTransitionLibrary {
+
+    private static Logger logger = Logger.getLogger(SignatureTransitionLibrary.class);
+
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the magic number starting a library file
+     */
+    private static final int MAGIC = 0x53544c42;
+
+    /**
+     * the version of the file format, libraries of other versions are not opened
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * the extension of library files
+     */
+    public static final String FILE_EXTENSION = ".stl";
+
+    /**
+     * the size of the memory mapped segments of the transition records
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final int PEPTIDE_ENTRY_SIZE = 20;
+    private static final int ACCESSION_ENTRY_SIZE = 16;
+
+    /**
+     * the open libraries by file
+     */
+    private static final Map<File, SignatureTransitionLibrary> libraries = new HashMap<File, SignatureTransitionLibrary>();
+
+    private final File file;
+    private final long lastModified;
+    private final String databaseVersion;
+    private final SignatureTransitionFinderPool.Key key;
+
+    private final int peptideCount;
+    private final int accessionCount;
+    private final int peptideTableOffset;
+    private final int accessionTableOffset;
+    private final int peptideListOffset;
+    private final int stringPoolOffset;
+    private final ByteBuffer index;
+    private final ByteBuffer[] records;
+
+    /**
+     * Opens a library file.
+     *
+     * @param file the library file
+     * @throws IOException if the file cannot be read or is not a library
+     */
+    public SignatureTransitionLibrary(File file) throws IOException {
+
+        this.file = file;
+        this.lastModified = file.lastModified();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != MAGIC || raf.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a signature transition library of format version " + FORMAT_VERSION + ".");
+            }
+            byte[] header = new byte[raf.readInt()];
+            raf.readFully(header);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+
+            databaseVersion = in.readUTF();
+            key = readKey(in);
+            peptideCount = in.readInt();
+            accessionCount = in.readInt();
+            int peptideListLength = in.readInt();
+            int stringPoolLength = in.readInt();
+            long recordsLength = in.readLong();
+            int maximumRecordLength = in.readInt();
+
+            peptideTableOffset = 0;
+            accessionTableOffset = peptideTableOffset + peptideCount * PEPTIDE_ENTRY_SIZE;
+            peptideListOffset = accessionTableOffset + accessionCount * ACCESSION_ENTRY_SIZE;
+            stringPoolOffset = peptideListOffset + peptideListLength * 4;
+            int indexLength = stringPoolOffset + stringPoolLength;
+
+            long indexPosition = 12 + header.length;
+            long recordsPosition = indexPosition + indexLength;
+            if (raf.length() != recordsPosition + recordsLength) {
+                throw new IOException("Signature transition library " + file + " is truncated.");
+            }
+
+            //map the index in one piece and the records in overlapping segments, a record
+            //starting in a segment is always contained in it
+            FileChannel channel = raf.getChannel();
+            index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, indexLength);
+            records = new ByteBuffer[(int) ((recordsLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < records.length; i++) {
+                long start = i * SEGMENT_SIZE;
+                records[i] = channel.map(FileChannel.MapMode.READ_ONLY, recordsPosition + start,
+                        Math.min(SEGMENT_SIZE + maximumRecordLength, recordsLength - start));
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the library of the organism and proteases of a finder key in the directory
+     * configured by sigpep.app.library.directory if it was computed with the same
+     * parameters from the same database version.
+     *
+     * @param key             the organism, proteases, modifications and parameters of the finder
+     * @param databaseVersion the version of the organism's database
+     * @return the library or null if there is no matching library
+     */
+    public static SignatureTransitionLibrary getInstance(SignatureTransitionFinderPool.Key key, String databaseVersion) {
+
+        File directory = getDirectory();
+        if (directory == null) {
+            return null;
+        }
+
+        SignatureTransitionLibrary library = open(getLibraryFile(directory, key));
+        if (library != null && library.matches(key, databaseVersion)) {
+            return library;
+        }
+        return null;
+    }
+
+    /**
+     * Returns all libraries in the directory configured by sigpep.app.library.directory.
+     *
+     * @return the libraries, empty if no directory is configured
+     */
+    public static List<SignatureTransitionLibrary> getLibraries() {
+
+        List<SignatureTransitionLibrary> retVal = new ArrayList<SignatureTransitionLibrary>();
+
+        File directory = getDirectory();
+        if (directory == null) {
+            return retVal;
+        }
+
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(FILE_EXTENSION);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                SignatureTransitionLibrary library = open(file);
+                if (library != null) {
+                    retVal.add(library);
+                }
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the libraries of an organism computed from a database version in the directory
+     * configured by sigpep.app.library.directory.
+     *
+     * @param taxonId         the NCBI taxon ID of the organism
+     * @param databaseVersion the current version of the organism's database
+     * @return the libraries, empty if no directory is configured
+     */
+    public static List<SignatureTransitionLibrary> getLibraries(int taxonId, String databaseVersion) {
+
+        List<SignatureTransitionLibrary> retVal = new ArrayList<SignatureTransitionLibrary>();
+        for (SignatureTransitionLibrary library : getLibraries()) {
+            if (library.key.getTaxonId() == taxonId && library.databaseVersion.equals(databaseVersion)) {
+                retVal.add(library);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the library directory configured by sigpep.app.library.directory.
+     *
+     * @return the directory or null if none is configured
+     */
+    public static File getDirectory() {
+        String directory = config.getString("sigpep.app.library.directory", "");
+        if (directory.trim().length() == 0) {
+            return null;
+        }
+        return new File(directory.trim());
+    }
+
+    /**
+     * Returns the file of the library of a finder key, named by the taxon, the proteases and
+     * the SHA-1 digest of the modifications and finder parameters.
+     *
+     * @param directory the library directory
+     * @param key       the organism, proteases, modifications and parameters of the finder
+     * @return the library file
+     */
+    public static File getLibraryFile(File directory, SignatureTransitionFinderPool.Key key) {
+
+        StringBuilder name = new StringBuilder().append(key.getTaxonId());
+        for (String proteaseShortName : new TreeSet<String>(key.getProteaseShortNames())) {
+            name.append('_').append(proteaseShortName);
+        }
+
+        SortedSet<String> modifications = new TreeSet<String>();
+        for (Modification modification : key.getModifications()) {
+            modifications.add(modification.getName());
+        }
+        String parameters = modifications
+                + "|" + key.getTargetProductIonTypes()
+                + "|" + key.getBackgroundProductIonTypes()
+                + "|" + key.getPrecursorIonChargeStates()
+                + "|" + key.getProductIonChargeStates()
+                + "|" + key.getMassAccuracy()
+                + "|" + key.getMinimumCombinationSize()
+                + "|" + key.getMaximumCombinationSize()
+                + "|" + key.getType();
+        name.append('_').append(SignatureTransitionResultCache.digest(parameters));
+
+        return new File(directory, name.append(FILE_EXTENSION).toString());
+    }
+
+    /**
+     * Returns the open library of a file, opening it if it isn't open or has been replaced.
+     *
+     * @param file the library file
+     * @return the library or null if the file doesn't exist or can't be read
+     */
+    private static synchronized SignatureTransitionLibrary open(File file) {
+
+        SignatureTransitionLibrary library = libraries.get(file);
+        if (library != null && library.lastModified == file.lastModified()) {
+            return library;
+        }
+        libraries.remove(file);
+
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            library = new SignatureTransitionLibrary(file);
+            libraries.put(file, library);
+            logger.info("opened signature transition library " + file + " with " + library.getPeptideCount() + " peptides");
+            return library;
+        } catch (IOException e) {
+            logger.warn("Could not open signature transition library " + file + ".", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the library file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the version of the database the library was computed from.
+     *
+     * @return the database version
+     */
+    public String getDatabaseVersion() {
+        return databaseVersion;
+    }
+
+    /**
+     * Returns the organism, proteases, modifications and finder parameters the library was computed with.
+     *
+     * @return the finder key
+     */
+    public SignatureTransitionFinderPool.Key getKey() {
+        return key;
+    }
+
+    /**
+     * Returns true if the library was computed with a finder key from a database version.
+     *
+     * @param key             the finder key
+     * @param databaseVersion the database version
+     * @return true if the library holds the signature transitions the finder would find
+     */
+    public boolean matches(SignatureTransitionFinderPool.Key key, String databaseVersion) {
+        return this.key.equals(key) && this.databaseVersion.equals(databaseVersion);
+    }
+
+    /**
+     * Returns the number of signature peptides in the library.
+     *
+     * @return the peptide count
+     */
+    public int getPeptideCount() {
+        return peptideCount;
+    }
+
+    /**
+     * Returns the signature transitions of a target peptide.
+     *
+     * @param target the target peptide
+     * @return the signature transitions or null if the peptide is not a signature peptide of the library
+     */
+    public List<SignatureTransition> getSignatureTransitions(Peptide target) {
+
+        int peptideIndex = search(peptideTableOffset, PEPTIDE_ENTRY_SIZE, peptideCount, SignatureTransitionSerializer.getPeptideId(target));
+        if (peptideIndex < 0) {
+            return null;
+        }
+        return readTransitions(peptideIndex, target);
+    }
+
+    /**
+     * Returns the signature transitions of an unmodified target peptide.
+     *
+     * @param peptideSequence the sequence of the target peptide
+     * @return the signature transitions or null if the peptide is not a signature peptide of the library
+     */
+    public List<SignatureTransition> getSignatureTransitions(String peptideSequence) {
+        return getSignatureTransitions(PeptideFactory.createPeptide(peptideSequence));
+    }
+
+    /**
+     * Returns the signature transitions of the signature peptides of a protein or gene.
+     *
+     * @param accession the protein or gene accession
+     * @return the signature transitions or null if the library has no signature peptides for the accession
+     */
+    public List<SignatureTransition> getSignatureTransitionsByAccession(String accession) {
+
+        int accessionIndex = search(accessionTableOffset, ACCESSION_ENTRY_SIZE, accessionCount, accession);
+        if (accessionIndex < 0) {
+            return null;
+        }
+
+        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+        int entry = accessionTableOffset + accessionIndex * ACCESSION_ENTRY_SIZE;
+        int listOffset = index.getInt(entry + 8);
+        int listLength = index.getInt(entry + 12);
+        for (int i = 0; i < listLength; i++) {
+            int peptideIndex = index.getInt(peptideListOffset + (listOffset + i) * 4);
+            try {
+                Peptide target = SignatureTransitionSerializer.createPeptide(readString(peptideTableOffset + peptideIndex * PEPTIDE_ENTRY_SIZE), key.getModifications());
+                retVal.addAll(readTransitions(peptideIndex, target));
+            } catch (IOException e) {
+                throw new RuntimeException("Corrupt signature transition library " + file + ".", e);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Searches a sorted table of the index for a string.
+     *
+     * @param tableOffset the offset of the table in the index
+     * @param entrySize   the size of an entry of the table, starting with the string offset and length
+     * @param entryCount  the number of entries of the table
+     * @param value       the string to search
+     * @return the index of the entry or -1 if the table doesn't contain the string
+     */
+    private int search(int tableOffset, int entrySize, int entryCount, String value) {
+
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = readString(tableOffset + middle * entrySize).compareTo(value);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the string of an entry of a table of the index from the string pool.
+     *
+     * @param entry the offset of the entry
+     * @return the string
+     */
+    private String readString(int entry) {
+        ByteBuffer buffer = index.duplicate();
+        buffer.position(stringPoolOffset + index.getInt(entry));
+        byte[] bytes = new byte[index.getInt(entry + 4)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the signature transitions of a peptide.
+     *
+     * @param peptideIndex the index of the peptide
+     * @param target       the peptide
+     * @return the signature transitions
+     */
+    private List<SignatureTransition> readTransitions(int peptideIndex, Peptide target) {
+
+        int entry = peptideTableOffset + peptideIndex * PEPTIDE_ENTRY_SIZE;
+        long offset = index.getLong(entry + 8);
+        byte[] bytes = new byte[index.getInt(entry + 16)];
+
+        ByteBuffer segment = records[(int) (offset / SEGMENT_SIZE)].duplicate();
+        segment.position((int) (offset % SEGMENT_SIZE));
+        segment.get(bytes);
+
+        try {
+            return SignatureTransitionSerializer.readTransitions(new DataInputStream(new ByteArrayInputStream(bytes)), key.getModifications(), target);
+        } catch (IOException e) {
+            throw new RuntimeException("Corrupt signature transition library " + file + ".", e);
+        }
+    }
+
+    private static void writeKey(DataOutputStream out, SignatureTransitionFinderPool.Key key) throws IOException {
+
+        out.writeInt(key.getTaxonId());
+        out.writeInt(key.getProteaseShortNames().size());
+        for (String proteaseShortName : key.getProteaseShortNames()) {
+            out.writeUTF(proteaseShortName);
+        }
+        out.writeInt(key.getModifications().size());
+        for (Modification modification : key.getModifications()) {
+            out.writeUTF(modification.getName());
+        }
+        SignatureTransitionSerializer.writeProductIonTypes(out, key.getTargetProductIonTypes());
+        SignatureTransitionSerializer.writeProductIonTypes(out, key.getBackgroundProductIonTypes());
+        SignatureTransitionSerializer.writeInts(out, key.getPrecursorIonChargeStates());
+        SignatureTransitionSerializer.writeInts(out, key.getProductIonChargeStates());
+        out.writeDouble(key.getMassAccuracy());
+        out.writeInt(key.getMinimumCombinationSize());
+        out.writeInt(key.getMaximumCombinationSize());
+        out.writeUTF(key.getType().name());
+    }
+
+    private static SignatureTransitionFinderPool.Key readKey(DataInputStream in) throws IOException {
+
+        int taxonId = in.readInt();
+        Set<String> proteaseShortNames = new TreeSet<String>();
+        for (int i = in.readInt(); i > 0; i--) {
+            proteaseShortNames.add(in.readUTF());
+        }
+        Set<String> modificationNames = new TreeSet<String>();
+        for (int i = in.readInt(); i > 0; i--) {
+            modificationNames.add(in.readUTF());
+        }
+        Set<Modification> modifications = modificationNames.isEmpty()
+                ? Collections.<Modification>emptySet()
+                : ModificationFactory.createPostTranslationalModifications(modificationNames);
+
+        return new SignatureTransitionFinderPool.Key(taxonId,
+                proteaseShortNames,
+                modifications,
+                SignatureTransitionSerializer.readProductIonTypes(in),
+                SignatureTransitionSerializer.readProductIonTypes(in),
+                SignatureTransitionSerializer.readInts(in),
+                SignatureTransitionSerializer.readInts(in),
+                in.readDouble(),
+                in.readInt(),
+                in.readInt(),
+                SignatureTransitionFinderType.valueOf(in.readUTF()));
+    }
+
+    /**
+     * Writes a library file. The signature transitions of each signature peptide are added
+     * as they are found and spooled to a temporary file, the library is assembled and
+     * moved in place of an existing library when the writer is closed.
+     */
+    public static class Writer {
+
+        private final File file;
+        private final File recordsFile;
+        private final SignatureTransitionFinderPool.Key key;
+        private final String databaseVersion;
+        private final DataOutputStream records;
+
+        /**
+         * the record offset and length by peptide identifier
+         */
+        private final SortedMap<String, long[]> peptides = new TreeMap<String, long[]>();
+
+        /**
+         * the identifiers of the signature peptides by protein or gene accession
+         */
+        private final SortedMap<String, Set<String>> accessions = new TreeMap<String, Set<String>>();
+
+        private long recordsLength = 0;
+        private int maximumRecordLength = 0;
+
+        /**
+         * Creates a writer.
+         *
+         * @param file            the library file
+         * @param key             the organism, proteases, modifications and parameters of the finder
+         * @param databaseVersion the version of the organism's database
+         * @throws IOException if the temporary file cannot be created
+         */
+        public Writer(File file, SignatureTransitionFinderPool.Key key, String databaseVersion) throws IOException {
+            this.file = file;
+            this.recordsFile = new File(file.getPath() + ".records.tmp");
+            this.key = key;
+            this.databaseVersion = databaseVersion;
+            this.records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile)));
+        }
+
+        /**
+         * Adds the signature transitions of a signature peptide.
+         *
+         * @param target               the signature peptide
+         * @param accessions           the accessions of the proteins and genes the peptide is a signature peptide of
+         * @param signatureTransitions the signature transitions of the peptide
+         * @throws IOException if the transitions cannot be written
+         */
+        public void add(Peptide target, Set<String> accessions, List<SignatureTransition> signatureTransitions) throws IOException {
+
+            String peptideId = SignatureTransitionSerializer.getPeptideId(target);
+            if (peptides.containsKey(peptideId)) {
+                throw new IllegalArgumentException("Peptide " + peptideId + " has already been added to the library.");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            SignatureTransitionSerializer.writeTransitions(out, signatureTransitions);
+            out.close();
+            bytes.writeTo(records);
+
+            peptides.put(peptideId, new long[]{recordsLength, bytes.size()});
+            recordsLength += bytes.size();
+            maximumRecordLength = Math.max(maximumRecordLength, bytes.size());
+
+            for (String accession : accessions) {
+                Set<String> peptideIds = this.accessions.get(accession);
+                if (peptideIds == null) {
+                    peptideIds = new TreeSet<String>();
+                    this.accessions.put(accession, peptideIds);
+                }
+                peptideIds.add(peptideId);
+            }
+        }
+
+        /**
+         * Writes the library file.
+         *
+         * @throws IOException if the library cannot be written
+         */
+        public void close() throws IOException {
+
+            records.close();
+            try {
+
+                //number the peptides in identifier order and lay out the string pool
+                Map<String, Integer> peptideIndices = new HashMap<String, Integer>();
+                ByteArrayOutputStream stringPool = new ByteArrayOutputStream();
+                Map<String, int[]> strings = new HashMap<String, int[]>();
+                for (String peptideId : peptides.keySet()) {
+                    peptideIndices.put(peptideId, peptideIndices.size());
+                    strings.put(peptideId, addString(stringPool, peptideId));
+                }
+                int peptideListLength = 0;
+                for (Map.Entry<String, Set<String>> accession : accessions.entrySet()) {
+                    strings.put(accession.getKey(), addString(stringPool, accession.getKey()));
+                    peptideListLength += accession.getValue().size();
+                }
+
+                ByteArrayOutputStream header = new ByteArrayOutputStream();
+                DataOutputStream headerOut = new DataOutputStream(header);
+                headerOut.writeUTF(databaseVersion);
+                writeKey(headerOut, key);
+                headerOut.writeInt(peptides.size());
+                headerOut.writeInt(accessions.size());
+                headerOut.writeInt(peptideListLength);
+                headerOut.writeInt(stringPool.size());
+                headerOut.writeLong(recordsLength);
+                headerOut.writeInt(maximumRecordLength);
+                headerOut.close();
+
+                File tmp = new File(file.getPath() + ".tmp");
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(header.size());
+                    header.writeTo(out);
+
+                    for (Map.Entry<String, long[]> peptide : peptides.entrySet()) {
+                        int[] string = strings.get(peptide.getKey());
+                        out.writeInt(string[0]);
+                        out.writeInt(string[1]);
+                        out.writeLong(peptide.getValue()[0]);
+                        out.writeInt((int) peptide.getValue()[1]);
+                    }
+
+                    int listOffset = 0;
+                    for (Map.Entry<String, Set<String>> accession : accessions.entrySet()) {
+                        int[] string = strings.get(accession.getKey());
+                        out.writeInt(string[0]);
+                        out.writeInt(string[1]);
+                        out.writeInt(listOffset);
+                        out.writeInt(accession.getValue().size());
+                        listOffset += accession.getValue().size();
+                    }
+
+                    for (Set<String> peptideIds : accessions.values()) {
+                        for (String peptideId : peptideIds) {
+                            out.writeInt(peptideIndices.get(peptideId));
+                        }
+                    }
+
+                    stringPool.writeTo(out);
+
+                    InputStream in = new BufferedInputStream(new FileInputStream(recordsFile));
+                    try {
+                        byte[] buffer = new byte[65536];
+                        for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                            out.write(buffer, 0, read);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } finally {
+                    out.close();
+                }
+
+                if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("Cannot rename " + tmp + " to " + file + ".");
+                }
+
+                logger.info("wrote signature transition library " + file + " with " + peptides.size()
+                        + " peptides and " + accessions.size() + " accessions");
+
+            } finally {
+                recordsFile.delete();
+            }
+        }
+
+        private static int[] addString(ByteArrayOutputStream stringPool, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int[] retVal = new int[]{stringPool.size(), bytes.length};
+            stringPool.write(bytes, 0, bytes.length);
+            return retVal;
+        }
+    }
+}
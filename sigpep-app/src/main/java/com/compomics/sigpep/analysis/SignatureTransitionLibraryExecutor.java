@@ -0,0 +1,231 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.*;
+import com.compomics.sigpep.model.*;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Precomputes the signature transition library of an organism and protease set. Finds the
+ * signature transitions of every signature peptide of the organism like
+ * {@link SignatureTransitionFinderExecutor} and writes them to a
+ * {@link SignatureTransitionLibrary} indexed by peptide and by protein and gene accession.
+ * <p/>
+ * The background peptides and signature transition finder are built by the
+ * {@link SignatureTransitionFinderPool} from the same key the web applications use, so the
+ * library holds what they would compute live for the same parameters.
+ */
+public class SignatureTransitionLibraryExecutor {
+
+    protected static Logger logger = Logger.getLogger(SignatureTransitionLibraryExecutor.class);
+
+    /**
+     * Computes the signature transitions of all signature peptides and writes them to a library.
+     *
+     * @param session the session of the organism
+     * @param key     the proteases, modifications and finder parameters
+     * @param file    the library file
+     * @throws IOException if the library cannot be written
+     */
+    public static void execute(SigPepSession session, SignatureTransitionFinderPool.Key key, File file) throws IOException {
+
+        String databaseVersion = session.getDatabaseVersion();
+
+        logger.info("leasing signature transition finder for " + key + "...");
+        SignatureTransitionFinderPool.Lease finder = SignatureTransitionFinderPool.getInstance().acquire(session, key);
+        try {
+
+            PeptideGenerator peptideGenerator = finder.getPeptideGenerator();
+            logger.info(finder.getBackgroundPeptides().size() + " background peptides");
+
+            //collect the protein and gene accessions of every signature peptide,
+            //identical protein sequences share their signature peptides
+            logger.info("signature peptides...");
+            Map<String, Set<String>> peptideSequenceToGeneAccessions = peptideGenerator.getPeptideSequenceToGeneAccessionMap();
+            Map<String, Peptide> signaturePeptides = new TreeMap<String, Peptide>();
+            Map<String, Set<String>> signaturePeptideAccessions = new HashMap<String, Set<String>>();
+            for (Map.Entry<String, Set<Peptide>> protein : peptideGenerator.getProteinAccessionToPeptideMap(1).entrySet()) {
+                for (Peptide signaturePeptide : protein.getValue()) {
+
+                    String peptideId = SignatureTransitionSerializer.getPeptideId(signaturePeptide);
+                    Set<String> accessions = signaturePeptideAccessions.get(peptideId);
+                    if (accessions == null) {
+                        accessions = new TreeSet<String>();
+                        signaturePeptideAccessions.put(peptideId, accessions);
+                        signaturePeptides.put(peptideId, signaturePeptide);
+                        Set<String> geneAccessions = peptideSequenceToGeneAccessions.get(signaturePeptide.getSequenceString());
+                        if (geneAccessions != null) {
+                            accessions.addAll(geneAccessions);
+                        }
+                    }
+                    accessions.add(protein.getKey());
+                }
+            }
+            logger.info(signaturePeptides.size() + " signature peptides");
+
+            SignatureTransitionLibrary.Writer writer = new SignatureTransitionLibrary.Writer(file, key, databaseVersion);
+
+            int processedPeptideCounter = 0;
+            int transitionCounter = 0;
+            for (Map.Entry<String, Peptide> signaturePeptide : signaturePeptides.entrySet()) {
+
+                List<SignatureTransition> transitions = finder.findSignatureTransitions(signaturePeptide.getValue());
+                writer.add(signaturePeptide.getValue(), signaturePeptideAccessions.get(signaturePeptide.getKey()), transitions);
+
+                transitionCounter += transitions.size();
+                processedPeptideCounter++;
+
+                //some user feedback
+                if (processedPeptideCounter % 100 == 0) {
+                    logger.info(processedPeptideCounter + " target peptides of " + signaturePeptides.size() + " processed, " + transitionCounter + " transitions found ...");
+                }
+            }
+
+            writer.close();
+
+        } finally {
+            finder.release();
+        }
+    }
+
+    /**
+     * Computes the signature transition library of an organism and protease set with the
+     * parameters given on the command line, the web application form parameters by default.
+     * The library is written to the library directory configured by
+     * sigpep.app.library.directory unless --out is given.
+     *
+     * @param args the command line arguments as listed by the usage message
+     */
+    public static void main(String[] args) {
+
+        //default values, the parameters of the web application forms
+        Set<Integer> precursorChargeStates = new TreeSet<Integer>();
+        precursorChargeStates.add(2);
+        precursorChargeStates.add(3);
+        Set<Integer> productChargeStates = new TreeSet<Integer>();
+        productChargeStates.add(1);
+        double massAccuracy = 0.2;
+        int minimumCombinationSize = 1;
+        int maximumCombinationSize = 5;
+        SignatureTransitionFinderType type = SignatureTransitionFinderType.MINIMAL;
+
+        String usage = "SignatureTransitionLibraryExecutor \n" +
+                "--taxon=NCBI_TAXON_ID \n" +
+                "--protease=PROTEASE_SHORT_NAME [PROTEASE_SHORT_NAME,...]\n" +
+                "[--ptm=POST_TRANSLATIONAL_MODIFICATION[,POST_TRANSLATIONAL_MODIFICATION,...]]\n" +
+                "[--precursorIonChargeStates=ALLOWED_CHARGE_STATES_PRECURSOR_IONS,...] (default = 2,3)\n" +
+                "[--productIonChargeStates=ALLOWED_CHARGE_STATES_PRODUCT_IONS,...] (default = 1)\n" +
+                "[--massAccuracy=MS_MASS_ACCURACY] (default = 0.2)\n" +
+                "[--minimumCombinationSize=MINIMUM_PRODUCT_ION_COMBINATION_SIZE] (default = 1)\n" +
+                "[--maximumCombinationSize=MAXIMUM_PRODUCT_ION_COMBINATION_SIZE] (default = 5)\n" +
+                "[--type=FIRST|MINIMAL|ALL] (default = MINIMAL)\n" +
+                "[--out=PATH_TO_LIBRARY_FILE] (default = library file in sigpep.app.library.directory)";
+
+        Map<String, String> commandLineArgs = SignatureTransitionFinderExecutor.parseCommandLineArguments(args);
+
+        if (!(commandLineArgs.containsKey("taxon") &&
+                commandLineArgs.containsKey("protease") &&
+                (commandLineArgs.containsKey("out") || SignatureTransitionLibrary.getDirectory() != null))) {
+
+            System.out.println(usage);
+            System.exit(1);
+        }
+
+        try {
+
+            int taxonId = new Integer(commandLineArgs.get("taxon"));
+            Set<String> proteases = new TreeSet<String>();
+            for (String proteaseName : commandLineArgs.get("protease").split(",")) {
+                proteases.add(proteaseName.replaceAll(" ", ""));
+            }
+            if (commandLineArgs.containsKey("precursorIonChargeStates")) {
+                precursorChargeStates = new TreeSet<Integer>();
+                for (String chargeState : commandLineArgs.get("precursorIonChargeStates").split(",")) {
+                    precursorChargeStates.add(new Integer(chargeState.trim()));
+                }
+            }
+            if (commandLineArgs.containsKey("productIonChargeStates")) {
+                productChargeStates = new TreeSet<Integer>();
+                for (String chargeState : commandLineArgs.get("productIonChargeStates").split(",")) {
+                    productChargeStates.add(new Integer(chargeState.trim()));
+                }
+            }
+            if (commandLineArgs.containsKey("massAccuracy")) {
+                massAccuracy = new Double(commandLineArgs.get("massAccuracy"));
+            }
+            if (commandLineArgs.containsKey("minimumCombinationSize")) {
+                minimumCombinationSize = new Integer(commandLineArgs.get("minimumCombinationSize"));
+            }
+            if (commandLineArgs.containsKey("maximumCombinationSize")) {
+                maximumCombinationSize = new Integer(commandLineArgs.get("maximumCombinationSize"));
+            }
+            if (commandLineArgs.containsKey("type")) {
+                type = SignatureTransitionFinderType.valueOf(commandLineArgs.get("type").toUpperCase());
+            }
+            Set<String> ptmNames = new HashSet<String>();
+            if (commandLineArgs.containsKey("ptm") && !commandLineArgs.get("ptm").equals("unmod")) {
+                Collections.addAll(ptmNames, commandLineArgs.get("ptm").split(","));
+            }
+            Set<Modification> ptms = ptmNames.isEmpty()
+                    ? Collections.<Modification>emptySet()
+                    : ModificationFactory.createPostTranslationalModifications(ptmNames);
+
+            Set<ProductIonType> targetProductIonTypes = new HashSet<ProductIonType>();
+            targetProductIonTypes.add(ProductIonType.Y);
+
+            Set<ProductIonType> backgroundProductIonTypes = new HashSet<ProductIonType>();
+            backgroundProductIonTypes.add(ProductIonType.Y);
+            backgroundProductIonTypes.add(ProductIonType.B);
+
+            SignatureTransitionFinderPool.Key key = new SignatureTransitionFinderPool.Key(taxonId,
+                    proteases,
+                    ptms,
+                    targetProductIonTypes,
+                    backgroundProductIonTypes,
+                    precursorChargeStates,
+                    productChargeStates,
+                    massAccuracy,
+                    minimumCombinationSize,
+                    maximumCombinationSize,
+                    type);
+
+            File file;
+            if (commandLineArgs.containsKey("out")) {
+                file = new File(commandLineArgs.get("out"));
+            } else {
+                SignatureTransitionLibrary.getDirectory().mkdirs();
+                file = SignatureTransitionLibrary.getLibraryFile(SignatureTransitionLibrary.getDirectory(), key);
+            }
+
+            logger.info("locating application...");
+            SigPepApplication app = ApplicationLocator.getInstance().getApplication();
+
+            logger.info("creating session...");
+            SigPepSessionFactory sessionFactory = app.getSigPepSessionFactory();
+            Organism organism = sessionFactory.getOrganism(taxonId);
+            SigPepSession session = sessionFactory.createSigPepSession(organism);
+
+            logger.info("computing signature transition library...");
+            logger.info("species                    : " + session.getOrganism().getScientificName());
+            logger.info("proteases                  : " + proteases);
+            logger.info("PTM                        : " + ptmNames);
+            logger.info("precursor ion charge states: " + precursorChargeStates);
+            logger.info("product ion charge states  : " + productChargeStates);
+            logger.info("MS mass accuracy           : " + massAccuracy);
+            logger.info("combination size           : " + minimumCombinationSize + " - " + maximumCombinationSize);
+            logger.info("finder type                : " + type);
+            logger.info("library                    : " + file);
+            logger.info("");
+
+            execute(session, key, file);
+
+            logger.info("done");
+
+        } catch (Exception e) {
+            logger.error("Could not compute the signature transition library.", e);
+        }
+    }
+}
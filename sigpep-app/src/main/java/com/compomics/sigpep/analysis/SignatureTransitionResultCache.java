@@ -0,0 +1,484 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.model.*;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Disk-backed cache of the signature transitions found for a target peptide.
+ * <p/>
+ * An entry is keyed by the organism, database version, target peptide with its
+ * post-translational modifications, protease set, product ion scanner, peptide ion store,
+ * mass precision and all finder parameters, and stored in a file of its own named by the SHA-1 digest of the key.
+ * The signature transitions are written in a compact binary form: product ions as ion
+ * type and length, background peptides as sequence and modification positions, both
+ * recreated from the model when the entry is read.
+ * <p/>
+ * The size and last access time of the entries are kept in an index file, so the cache
+ * is opened without reading the entries. When the total size of the entries exceeds the
+ * maximum size the least recently used entries are deleted. The cache survives restarts
+ * of the application, the index is written at most once per minute when entries are added
+ * or read, after putAll() and by flush(). Entries missing from the index are added back
+ * when the cache is opened.
+ */
+public class SignatureTransitionResultCache {
+
+    private static Logger logger = Logger.getLogger(SignatureTransitionResultCache.class);
+
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the magic number starting the index and entry files
+     */
+    private static final int MAGIC = 0x53545243;
+
+    /**
+     * the version of the file format, entries of other versions are ignored
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * the extension of the entry files
+     */
+    private static final String ENTRY_EXTENSION = ".str";
+
+    /**
+     * the name of the index file
+     */
+    private static final String INDEX_FILE = "index";
+
+    /**
+     * the minimum number of milliseconds between writing the index for added entries and access
+     * time updates
+     */
+    private static final long INDEX_WRITE_INTERVAL = 60 * 1000;
+
+    /**
+     * the singleton instance
+     */
+    private static SignatureTransitionResultCache instance;
+
+    private final File directory;
+    private final long maximumSize;
+
+    /**
+     * the entry sizes by digest in access order, guarded by this
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * the total size of the entries, guarded by this
+     */
+    private long totalSize = 0;
+
+    /**
+     * whether the access order has changed since the index was written, guarded by this
+     */
+    private boolean indexChanged = false;
+    private long indexWriteTime = 0;
+
+    /**
+     * Opens a result cache. Temporary files left by an application that stopped while writing
+     * them are deleted.
+     *
+     * @param directory   the directory of the cache, created if it doesn't exist
+     * @param maximumSize the maximum total size of the entries in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public SignatureTransitionResultCache(File directory, long maximumSize) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create result cache directory " + directory + ".");
+        }
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+
+        readIndex();
+    }
+
+    /**
+     * Returns the result cache in the directory configured by sigpep.app.result.cache.directory.
+     *
+     * @return the result cache or null if no directory is configured or it cannot be created
+     */
+    public static synchronized SignatureTransitionResultCache getInstance() {
+
+        if (instance == null) {
+            String directory = config.getString("sigpep.app.result.cache.directory", "");
+            if (directory.trim().length() == 0) {
+                return null;
+            }
+            try {
+                instance = new SignatureTransitionResultCache(new File(directory.trim()),
+                        config.getLong("sigpep.app.result.cache.maximum.size", 1024) * 1024 * 1024);
+            } catch (IOException e) {
+                logger.warn("Could not open the signature transition result cache, results are not cached.", e);
+                return null;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached signature transitions of a target peptide.
+     *
+     * @param key             the organism, proteases, modifications and parameters of the finder
+     * @param databaseVersion the version of the organism's database
+     * @param target          the target peptide
+     * @return the signature transitions or null if they are not in the cache
+     */
+    public List<SignatureTransition> get(SignatureTransitionFinderPool.Key key, String databaseVersion, Peptide target) {
+
+        String entryKey = createEntryKey(key, databaseVersion, target);
+        String digest = digest(entryKey);
+
+        synchronized (this) {
+            if (index.get(digest) == null) {
+                return null;
+            }
+            indexChanged = true;
+        }
+
+        File file = getEntryFile(digest);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(entryKey)) {
+                    return null;
+                }
+                return SignatureTransitionSerializer.readTransitions(in, key.getModifications(), target);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read result cache entry " + file + ", removing it.", e);
+            synchronized (this) {
+                remove(digest);
+            }
+            return null;
+        } finally {
+            writeIndexIfDue();
+        }
+    }
+
+    /**
+     * Stores the signature transitions of a target peptide, replacing cached ones. The
+     * transitions are not cached if they cannot be written.
+     *
+     * @param key                  the organism, proteases, modifications and parameters of the finder
+     * @param databaseVersion      the version of the organism's database
+     * @param target               the target peptide
+     * @param signatureTransitions the signature transitions found for the target peptide
+     */
+    public void put(SignatureTransitionFinderPool.Key key,
+                    String databaseVersion,
+                    Peptide target,
+                    List<SignatureTransition> signatureTransitions) {
+
+        String entryKey = createEntryKey(key, databaseVersion, target);
+        String digest = digest(entryKey);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(entryKey);
+            SignatureTransitionSerializer.writeTransitions(out, signatureTransitions);
+            out.close();
+
+            File file = getEntryFile(digest);
+            File tmp = new File(directory, digest + "." + Thread.currentThread().getId() + ".tmp");
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                bytes.writeTo(os);
+            } finally {
+                os.close();
+            }
+
+            synchronized (this) {
+                if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("Cannot rename " + tmp + " to " + file + ".");
+                }
+                remove(digest);
+                index.put(digest, (long) bytes.size());
+                totalSize += bytes.size();
+                evict();
+                indexChanged = true;
+            }
+
+        } catch (IOException e) {
+            logger.warn("Could not write result cache entry for " + entryKey + ".", e);
+        } finally {
+            writeIndexIfDue();
+        }
+    }
+
+    /**
+     * Stores the signature transitions found for a set of target peptides, one entry per target
+     * peptide, and writes the index. Target peptides without signature transitions are stored
+     * with an empty list.
+     *
+     * @param key                  the organism, proteases, modifications and parameters of the finder
+     * @param databaseVersion      the version of the organism's database
+     * @param targets              the target peptides passed to the finder
+     * @param signatureTransitions the signature transitions found for the target peptides
+     */
+    public void putAll(SignatureTransitionFinderPool.Key key,
+                       String databaseVersion,
+                       Set<Peptide> targets,
+                       List<SignatureTransition> signatureTransitions) {
+
+        Map<String, List<SignatureTransition>> transitionsByPeptideId = new HashMap<String, List<SignatureTransition>>();
+        for (SignatureTransition transition : signatureTransitions) {
+            String peptideId = SignatureTransitionSerializer.getPeptideId(transition.getPeptide());
+            List<SignatureTransition> transitions = transitionsByPeptideId.get(peptideId);
+            if (transitions == null) {
+                transitions = new ArrayList<SignatureTransition>();
+                transitionsByPeptideId.put(peptideId, transitions);
+            }
+            transitions.add(transition);
+        }
+
+        for (Peptide target : targets) {
+            List<SignatureTransition> transitions = transitionsByPeptideId.get(SignatureTransitionSerializer.getPeptideId(target));
+            if (transitions == null) {
+                transitions = Collections.emptyList();
+            }
+            put(key, databaseVersion, target, transitions);
+        }
+
+        flush();
+    }
+
+    /**
+     * Writes the index if the access order of the entries has changed.
+     */
+    public synchronized void flush() {
+        if (indexChanged) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the entry count
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the total size of the cached entries.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Creates the key of an entry from the finder key, database version and target peptide. The
+     * product ion scanner configured for the finder type, the peptide ion store and the mass
+     * precision are part of the key.
+     *
+     * @param key             the finder key
+     * @param databaseVersion the database version
+     * @param target          the target peptide
+     * @return the entry key
+     */
+    static String createEntryKey(SignatureTransitionFinderPool.Key key, String databaseVersion, Peptide target) {
+
+        SortedSet<String> modifications = new TreeSet<String>();
+        for (Modification modification : key.getModifications()) {
+            modifications.add(modification.getName() + "@" + modification.getResidue());
+        }
+
+        String scannerClass = config.getString("sigpep.app.analysis.find." + key.getType().name().toLowerCase()
+                + ".signature.transition.finder.class", "");
+        String storeClass = config.getString("sigpep.app.analysis.peptide.ion.store.class", "");
+        String massPrecision = config.getString("sigpep.app.monoisotopic.mass.precision", "");
+
+        return key.getTaxonId()
+                + "|" + databaseVersion
+                + "|" + SignatureTransitionSerializer.getPeptideId(target)
+                + "|" + key.getProteaseShortNames()
+                + "|" + modifications
+                + "|" + scannerClass
+                + "|" + storeClass
+                + "|" + massPrecision
+                + "|" + key.getTargetProductIonTypes()
+                + "|" + key.getBackgroundProductIonTypes()
+                + "|" + key.getPrecursorIonChargeStates()
+                + "|" + key.getProductIonChargeStates()
+                + "|" + key.getMassAccuracy()
+                + "|" + key.getMinimumCombinationSize()
+                + "|" + key.getMaximumCombinationSize();
+    }
+
+    private File getEntryFile(String digest) {
+        return new File(directory, digest + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Returns the SHA-1 digest of a key as a hexadecimal string.
+     *
+     * @param entryKey the key
+     * @return the digest
+     */
+    static String digest(String entryKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(entryKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder retVal = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                retVal.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return retVal.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes an entry from the index and deletes its file.
+     *
+     * @param digest the digest of the entry
+     */
+    private void remove(String digest) {
+        Long size = index.remove(digest);
+        if (size != null) {
+            totalSize -= size;
+            getEntryFile(digest).delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size doesn't exceed the maximum size.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalSize > maximumSize && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            it.remove();
+            totalSize -= entry.getValue();
+            getEntryFile(entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * Reads the index. Entry files missing from the index, left by an application that
+     * stopped before writing it, are added as least recently used by their file size.
+     * Temporary files are deleted.
+     */
+    private synchronized void readIndex() {
+
+        File[] tmpFiles = directory.listFiles(new FileFilter() {
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(".tmp");
+            }
+        });
+        if (tmpFiles != null) {
+            for (File tmpFile : tmpFiles) {
+                if (!tmpFile.delete()) {
+                    logger.warn("Could not delete temporary result cache file " + tmpFile + ".");
+                }
+            }
+        }
+
+        File file = new File(directory, INDEX_FILE);
+        if (file.isFile()) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            String digest = in.readUTF();
+                            long size = in.readLong();
+                            if (getEntryFile(digest).isFile()) {
+                                index.put(digest, size);
+                                totalSize += size;
+                            }
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                logger.warn("Could not read result cache index " + file + ", rebuilding it from the entry files.", e);
+            }
+        }
+
+        File[] entryFiles = directory.listFiles(new FileFilter() {
+            public boolean accept(File pathname) {
+                return pathname.getName().endsWith(ENTRY_EXTENSION);
+            }
+        });
+        if (entryFiles != null) {
+            Arrays.sort(entryFiles, new Comparator<File>() {
+                public int compare(File o1, File o2) {
+                    return Long.compare(o1.lastModified(), o2.lastModified());
+                }
+            });
+            LinkedHashMap<String, Long> unindexed = new LinkedHashMap<String, Long>();
+            for (File entryFile : entryFiles) {
+                String digest = entryFile.getName().substring(0, entryFile.getName().length() - ENTRY_EXTENSION.length());
+                if (!index.containsKey(digest)) {
+                    unindexed.put(digest, entryFile.length());
+                    totalSize += entryFile.length();
+                }
+            }
+            unindexed.putAll(index);
+            index.clear();
+            index.putAll(unindexed);
+        }
+
+        evict();
+        logger.info("opened signature transition result cache " + directory + " with " + index.size()
+                + " entries, " + totalSize / 1024 + " KB");
+    }
+
+    private synchronized void writeIndexIfDue() {
+        if (indexChanged && System.currentTimeMillis() - indexWriteTime > INDEX_WRITE_INTERVAL) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Writes the index in access order, least recently used entry first.
+     */
+    private synchronized void writeIndex() {
+
+        File file = new File(directory, INDEX_FILE);
+        File tmp = new File(directory, INDEX_FILE + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(index.size());
+                for (Map.Entry<String, Long> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmp + " to " + file + ".");
+            }
+            indexChanged = false;
+            indexWriteTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            logger.warn("Could not write result cache index " + file + ".", e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.compomics.sigpep.analysis;
+
+import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.model.impl.SignatureTransitionImpl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes signature transitions in a compact binary form and reads them back. Product
+ * ions are written as ion type and length, background peptides as sequence and
+ * modification positions, both are recreated from the model when the transitions are read.
+ * Used by the result cache and the signature transition library.
+ */
+class SignatureTransitionSerializer {
+
+    private SignatureTransitionSerializer() {
+    }
+
+    /**
+     * Returns the identifier of a peptide, the sequence followed by the positions and names of
+     * its post-translational modifications if it is modified.
+     *
+     * @param peptide the peptide
+     * @return the peptide identifier
+     */
+    static String getPeptideId(Peptide peptide) {
+
+        if (!(peptide instanceof ModifiedPeptide)) {
+            return peptide.getSequenceString();
+        }
+
+        StringBuilder retVal = new StringBuilder(peptide.getSequenceString());
+        Map<Integer, Modification> modifications = new TreeMap<Integer, Modification>(((ModifiedPeptide) peptide).getPostTranslationalModifications());
+        for (Map.Entry<Integer, Modification> modification : modifications.entrySet()) {
+            retVal.append(';').append(modification.getKey()).append(':').append(modification.getValue().getName());
+        }
+        return retVal.toString();
+    }
+
+    /**
+     * Recreates a peptide from its identifier.
+     *
+     * @param peptideId     the peptide identifier
+     * @param modifications the modifications the peptide may carry
+     * @return the peptide
+     * @throws IOException if the peptide's modifications are not among the modifications
+     */
+    static Peptide createPeptide(String peptideId, Set<Modification> modifications) throws IOException {
+
+        int separator = peptideId.indexOf(';');
+        if (separator < 0) {
+            return PeptideFactory.createPeptide(peptideId);
+        }
+
+        Peptide unmodified = PeptideFactory.createPeptide(peptideId.substring(0, separator));
+        for (Peptide isoform : unmodified.applyModifications(modifications)) {
+            if (getPeptideId(isoform).equals(peptideId)) {
+                return isoform;
+            }
+        }
+        throw new IOException("Cannot recreate modified peptide " + peptideId + ".");
+    }
+
+    /**
+     * Writes signature transitions.
+     *
+     * @param out                  the output to write to
+     * @param signatureTransitions the signature transitions
+     * @throws IOException if the transitions cannot be written
+     */
+    static void writeTransitions(DataOutputStream out, List<SignatureTransition> signatureTransitions) throws IOException {
+
+        out.writeInt(signatureTransitions.size());
+        for (SignatureTransition transition : signatureTransitions) {
+
+            out.writeInt(transition.getTargetPeptideChargeState());
+            out.writeDouble(transition.getExclusionScore());
+            out.writeDouble(transition.getMassAccuracy());
+            writeProductIonTypes(out, transition.getTargetProductIonTypes());
+            writeProductIonTypes(out, transition.getBackgroundProductIonTypes());
+            writeInts(out, transition.getPrecursorIonChargeStates());
+            writeInts(out, transition.getProductIonChargeStates());
+
+            out.writeInt(transition.getProductIons().size());
+            for (ProductIon productIon : transition.getProductIons()) {
+                out.writeByte(productIon.getType().ordinal());
+                out.writeShort(productIon.getSequenceLength());
+            }
+
+            out.writeInt(transition.getBackgroundPeptides().size());
+            for (Peptide backgroundPeptide : transition.getBackgroundPeptides()) {
+                out.writeUTF(getPeptideId(backgroundPeptide));
+            }
+
+            Map<Double, Integer> massDistribution = transition.getBackgroundProductIonMassDistribution();
+            out.writeInt(massDistribution == null ? -1 : massDistribution.size());
+            if (massDistribution != null) {
+                for (Map.Entry<Double, Integer> entry : massDistribution.entrySet()) {
+                    out.writeDouble(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads signature transitions of a target peptide.
+     *
+     * @param in            the input to read from
+     * @param modifications the modifications the background peptides may carry
+     * @param target        the target peptide of the transitions
+     * @return the signature transitions
+     * @throws IOException if the transitions cannot be read
+     */
+    static List<SignatureTransition> readTransitions(DataInputStream in,
+                                                     Set<Modification> modifications,
+                                                     Peptide target) throws IOException {
+
+        ProductIonType[] types = ProductIonType.values();
+        int transitionCount = in.readInt();
+        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>(transitionCount);
+
+        for (int i = 0; i < transitionCount; i++) {
+
+            int targetPeptideChargeState = in.readInt();
+            double exclusionScore = in.readDouble();
+            double massAccuracy = in.readDouble();
+            Set<ProductIonType> targetProductIonTypes = readProductIonTypes(in);
+            Set<ProductIonType> backgroundProductIonTypes = readProductIonTypes(in);
+            Set<Integer> precursorIonChargeStates = readInts(in);
+            Set<Integer> productIonChargeStates = readInts(in);
+
+            int productIonCount = in.readInt();
+            ProductIonType[] productIonTypes = new ProductIonType[productIonCount];
+            int[] productIonLengths = new int[productIonCount];
+            for (int j = 0; j < productIonCount; j++) {
+                productIonTypes[j] = types[in.readByte()];
+                productIonLengths[j] = in.readShort();
+            }
+
+            int backgroundPeptideCount = in.readInt();
+            Set<Peptide> backgroundPeptides = new HashSet<Peptide>(backgroundPeptideCount * 4 / 3 + 1);
+            for (int j = 0; j < backgroundPeptideCount; j++) {
+                backgroundPeptides.add(createPeptide(in.readUTF(), modifications));
+            }
+
+            SignatureTransition transition = new SignatureTransitionImpl(target, backgroundPeptides);
+
+            int massCount = in.readInt();
+            if (massCount >= 0) {
+                Map<Double, Integer> massDistribution = new TreeMap<Double, Integer>();
+                for (int j = 0; j < massCount; j++) {
+                    massDistribution.put(in.readDouble(), in.readInt());
+                }
+                transition.setBackgroundProductIonMassDistribution(massDistribution);
+            }
+
+            for (int j = 0; j < productIonCount; j++) {
+                transition.addProductIon(productIonTypes[j], productIonLengths[j]);
+            }
+            transition.setTargetPeptideChargeState(targetPeptideChargeState);
+            transition.setExclusionScore(exclusionScore);
+            transition.setMassAccuracy(massAccuracy);
+            transition.setTargetProductIonTypes(targetProductIonTypes);
+            transition.setBackgroundProductIonTypes(backgroundProductIonTypes);
+            transition.setPrecursorIonChargeStates(precursorIonChargeStates);
+            transition.setProductIonChargeStates(productIonChargeStates);
+
+            retVal.add(transition);
+        }
+
+        return retVal;
+    }
+
+    static void writeProductIonTypes(DataOutputStream out, Set<ProductIonType> productIonTypes) throws IOException {
+        out.writeByte(productIonTypes == null ? -1 : productIonTypes.size());
+        if (productIonTypes != null) {
+            for (ProductIonType type : productIonTypes) {
+                out.writeByte(type.ordinal());
+            }
+        }
+    }
+
+    static Set<ProductIonType> readProductIonTypes(DataInputStream in) throws IOException {
+        int count = in.readByte();
+        if (count < 0) {
+            return null;
+        }
+        ProductIonType[] types = ProductIonType.values();
+        Set<ProductIonType> retVal = new HashSet<ProductIonType>();
+        for (int i = 0; i < count; i++) {
+            retVal.add(types[in.readByte()]);
+        }
+        return retVal;
+    }
+
+    static void writeInts(DataOutputStream out, Set<Integer> values) throws IOException {
+        out.writeInt(values == null ? -1 : values.size());
+        if (values != null) {
+            for (Integer value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    static Set<Integer> readInts(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        Set<Integer> retVal = new HashSet<Integer>();
+        for (int i = 0; i < count; i++) {
+            retVal.add(in.readInt());
+        }
+        return retVal;
+    }
+}
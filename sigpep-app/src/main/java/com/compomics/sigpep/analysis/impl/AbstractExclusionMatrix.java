@@ -0,0 +1,114 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.*;
+
+/**
+ * Abstract implementation of ExclusionMatrix that maps target product ions and
+ * background peptides to their row and column indexes. Duplicate product ions and
+ * background peptides are ignored, each one gets the index of its first occurrence.
+ */
+public abstract class AbstractExclusionMatrix implements ExclusionMatrix {
+
+    /**
+     * the target product ions in row order
+     */
+    protected List<ProductIon> productIons;
+
+    /**
+     * the background peptides in column order
+     */
+    protected List<Peptide> backgroundPeptides;
+
+    /**
+     * the row index of each target product ion
+     */
+    private Map<ProductIon, Integer> productIonIndex;
+
+    /**
+     * the column index of each background peptide
+     */
+    private Map<Peptide, Integer> backgroundPeptideIndex;
+
+    /**
+     * Constructs the row and column indexes of an exclusion matrix.
+     *
+     * @param productIons        the target product ions
+     * @param backgroundPeptides the background peptides
+     */
+    protected AbstractExclusionMatrix(Collection<ProductIon> productIons,
+                                      Collection<Peptide> backgroundPeptides) {
+
+        List<ProductIon> distinctProductIons = new ArrayList<ProductIon>();
+        this.productIonIndex = new HashMap<ProductIon, Integer>();
+        for (ProductIon productIon : productIons) {
+            if (!productIonIndex.containsKey(productIon)) {
+                productIonIndex.put(productIon, distinctProductIons.size());
+                distinctProductIons.add(productIon);
+            }
+        }
+
+        List<Peptide> distinctBackgroundPeptides = new ArrayList<Peptide>();
+        this.backgroundPeptideIndex = new HashMap<Peptide, Integer>();
+        for (Peptide peptide : backgroundPeptides) {
+            if (!backgroundPeptideIndex.containsKey(peptide)) {
+                backgroundPeptideIndex.put(peptide, distinctBackgroundPeptides.size());
+                distinctBackgroundPeptides.add(peptide);
+            }
+        }
+
+        this.productIons = Collections.unmodifiableList(distinctProductIons);
+        this.backgroundPeptides = Collections.unmodifiableList(distinctBackgroundPeptides);
+    }
+
+    public List<ProductIon> getProductIons() {
+        return productIons;
+    }
+
+    public List<Peptide> getBackgroundPeptides() {
+        return backgroundPeptides;
+    }
+
+    public int getProductIonCount() {
+        return productIons.size();
+    }
+
+    public int getBackgroundPeptideCount() {
+        return backgroundPeptides.size();
+    }
+
+    public int getProductIonIndex(ProductIon productIon) {
+        Integer index = productIonIndex.get(productIon);
+        return index == null ? -1 : index;
+    }
+
+    public int getBackgroundPeptideIndex(Peptide backgroundPeptide) {
+        Integer index = backgroundPeptideIndex.get(backgroundPeptide);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the row indexes of a product ion combination.
+     *
+     * @param productIonCombination the product ion combination
+     * @return the row indexes
+     * @throws IllegalArgumentException if one of the product ions is not part of the matrix
+     */
+    public int[] getProductIonIndexes(Collection<ProductIon> productIonCombination) {
+
+        int[] retVal = new int[productIonCombination.size()];
+        int i = 0;
+        for (ProductIon productIon : productIonCombination) {
+            int index = getProductIonIndex(productIon);
+            if (index == -1) {
+                throw new IllegalArgumentException("Product ion is not part of the exclusion matrix: " + productIon);
+            }
+            retVal[i++] = index;
+        }
+
+        return retVal;
+    }
+}
@@ -1,8 +1,10 @@
 package com.compomics.sigpep.analysis.impl;
 
 import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.analysis.ExclusionMatrix;
 import com.compomics.sigpep.analysis.ExclusionScoreCalculatorFactory;
 import com.compomics.sigpep.analysis.ProductIonScanner;
+import com.compomics.sigpep.analysis.SignatureTransitionHandler;
 import com.compomics.sigpep.model.*;
 import com.compomics.sigpep.model.impl.MassOverChargeRangeImpl;
 import com.compomics.sigpep.model.impl.SignatureTransitionImpl;
@@ -30,6 +32,11 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
     protected int maximumCombinationSize;
     protected ExclusionScoreCalculatorFactory exclusionScoreCalculatorFactory = ExclusionScoreCalculatorFactory.getInstance();
 
+    /**
+     * the product ions of the background peptides, null if they are generated for every target peptide
+     */
+    protected BackgroundFragmentIndex backgroundFragmentIndex;
+
     /**
      * Constructs a product ion scanner.
      *
@@ -66,39 +73,116 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
     public List<SignatureTransition> findSignatureTransitions(Peptide targetPeptide,
                                                               Set<Peptide> isobaricPeptides) {
 
-        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+        final List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+
+        findSignatureTransitions(targetPeptide, isobaricPeptides, new SignatureTransitionHandler() {
+            public void handleSignatureTransition(SignatureTransition signatureTransition) {
+                retVal.add(signatureTransition);
+            }
+        });
+
+        return retVal;
+    }
+
+    /**
+     * Passes the sets of product ions that can distinguish a target sequence
+     * from a set of isobaric background sequences to a handler as they are found.
+     *
+     * @param targetPeptide    the target peptide
+     * @param isobaricPeptides the isobaric peptides
+     * @param handler          the handler receiving the signature transitions
+     */
+    public void findSignatureTransitions(final Peptide targetPeptide,
+                                         final Set<Peptide> isobaricPeptides,
+                                         final SignatureTransitionHandler handler) {
+
+        ExclusionMatrix exclusionMatrix = createExclusionMatrix(targetPeptide, isobaricPeptides);
 
-        Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix = createExclusionMatrix(targetPeptide,
+        handleUniqueProductIonCombinations(exclusionMatrix,
+                minimumCombinationSize,
+                maximumCombinationSize,
+                new ProductIonCombinationHandler() {
+                    public void handleProductIonCombination(Set<ProductIon> combination, double score) {
+                        handler.handleSignatureTransition(createSignatureTransition(targetPeptide, isobaricPeptides, combination, score));
+                    }
+                });
+    }
+
+    /**
+     * Creates the exclusion matrix of a target peptide with the product ion types, charge
+     * states and mass accuracy of the scanner, the first step of findSignatureTransitions.
+     *
+     * @param targetPeptide    the target peptide
+     * @param isobaricPeptides the isobaric peptides
+     * @return the exclusion matrix
+     */
+    public ExclusionMatrix createExclusionMatrix(Peptide targetPeptide, Set<Peptide> isobaricPeptides) {
+        return createExclusionMatrix(targetPeptide,
                 isobaricPeptides,
                 targetProductIonTypes,
                 backgroundProductIonTypes,
                 productIonChargeStates,
                 massAccuracy);
+    }
 
-        Map<Set<ProductIon>, Double> signatureProductIonCombinations = getUniqueProductIonCombinations(exclusionMatrix,
-                minimumCombinationSize,
-                maximumCombinationSize);
+    /**
+     * Returns the unique product ion combinations of an exclusion matrix with the combination
+     * sizes of the scanner, the second step of findSignatureTransitions.
+     *
+     * @param exclusionMatrix the exclusion matrix
+     * @return a map of product ion combinations and their exclusion scores
+     */
+    public Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix) {
+        return getUniqueProductIonCombinations(exclusionMatrix, minimumCombinationSize, maximumCombinationSize);
+    }
 
-        for (Set<ProductIon> combination : signatureProductIonCombinations.keySet()) {
+    /**
+     * Creates the signature transition of a product ion combination.
+     *
+     * @param targetPeptide    the target peptide
+     * @param isobaricPeptides the isobaric peptides
+     * @param combination      the product ion combination
+     * @param score            the exclusion score of the combination
+     * @return the signature transition
+     */
+    private SignatureTransition createSignatureTransition(Peptide targetPeptide,
+                                                          Set<Peptide> isobaricPeptides,
+                                                          Set<ProductIon> combination,
+                                                          double score) {
 
-            double score = signatureProductIonCombinations.get(combination);
+        List<ProductIon> combinationList = new ArrayList<ProductIon>();
+        combinationList.addAll(combination);
 
-            List<ProductIon> combinationList = new ArrayList<ProductIon>();
-            combinationList.addAll(combination);
+        SignatureTransition retVal = new SignatureTransitionImpl(targetPeptide, isobaricPeptides);
 
-            SignatureTransition transition = new SignatureTransitionImpl(targetPeptide, isobaricPeptides);
+        retVal.setProductIons(combinationList);
+        retVal.setExclusionScore(score);
+        retVal.setTargetProductIonTypes(targetProductIonTypes);
+        retVal.setBackgroundProductIonTypes(backgroundProductIonTypes);
+        retVal.setMassAccuracy(massAccuracy);
+        retVal.setProductIonChargeStates(productIonChargeStates);
 
-            transition.setProductIons(combinationList);
-            transition.setExclusionScore(score);
-            transition.setTargetProductIonTypes(targetProductIonTypes);
-            transition.setBackgroundProductIonTypes(backgroundProductIonTypes);
-            transition.setMassAccuracy(massAccuracy);
-            transition.setProductIonChargeStates(productIonChargeStates);
+        return retVal;
+    }
 
-            retVal.add(transition);
-        }
+    /**
+     * Indexes the background product ions of a set of peptides once, so that creating the exclusion
+     * matrix of a target peptide doesn't need to generate the product ions of the overlapping
+     * background peptides again. Background peptides missing in the index are handled as before.
+     *
+     * @param backgroundPeptides the background peptides
+     */
+    public void indexBackgroundPeptides(Collection<? extends Peptide> backgroundPeptides) {
+        this.backgroundFragmentIndex = new BackgroundFragmentIndex(backgroundPeptides, backgroundProductIonTypes, massPrecission);
+    }
 
-        return retVal;
+    /**
+     * Returns the background product ion index.
+     *
+     * @return the index or null if the background peptides haven't been indexed
+     */
+    public BackgroundFragmentIndex getBackgroundFragmentIndex() {
+        return backgroundFragmentIndex;
     }
 
     /**
@@ -110,49 +194,19 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
      * @param exclusionMatrix       the mass overlap matrix
      * @return a score between 0 and 1
      */
-    protected double calculateExclusionScore(Set<ProductIon> productIonCombination, Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix) {
+    protected double calculateExclusionScore(Set<ProductIon> productIonCombination, ExclusionMatrix exclusionMatrix) {
 
         double retVal = 0;
 
-        Map<Peptide, Integer> combinedExclusion = new LinkedHashMap<Peptide, Integer>();
-
+        int[] productIonIndexes = new int[productIonCombination.size()];
+        int i = 0;
         for (ProductIon ion : productIonCombination) {
-
-            Map<Peptide, Integer> overlap = exclusionMatrix.get(ion);
-
-            for (Peptide peptide : overlap.keySet()) {
-
-                Integer excludes = overlap.get(peptide);
-
-                if (combinedExclusion.containsKey(peptide)) {
-
-                    int exclusionCount = combinedExclusion.get(peptide);
-                    exclusionCount = exclusionCount + excludes;
-                    combinedExclusion.put(peptide, exclusionCount);
-
-                } else {
-                    combinedExclusion.put(peptide, excludes);
-                }
-            }
+            productIonIndexes[i++] = exclusionMatrix.getProductIonIndex(ion);
         }
 
-        //check if all peptides are excluded...
-        boolean excludesAll = !combinedExclusion.containsValue(0);
-
-        //...if it does calculate score not
-        if (excludesAll) {
-
-            int combinationSize = productIonCombination.size();
-            int overlappingPeptideCount = combinedExclusion.size();
-            double maxExclusionCount = combinationSize * overlappingPeptideCount;
-
-            double combinedExlcusionCount = 0;
-            for (Integer excludes : combinedExclusion.values()) {
-                combinedExlcusionCount = +excludes;
-            }
-
-            retVal = combinedExlcusionCount / maxExclusionCount;
-
+        //check if all peptides are excluded and if so calculate score
+        if (exclusionMatrix.excludesAll(productIonIndexes)) {
+            retVal = exclusionMatrix.getExclusionScore(productIonIndexes);
         }
 
         return retVal;
@@ -260,7 +314,7 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
      * @param massAccuracy
      * @return
      */
-    protected Map<ProductIon, Map<Peptide, Integer>> createExclusionMatrix(
+    protected ExclusionMatrix createExclusionMatrix(
             Peptide targetPeptide,
             Set<Peptide> backgroundPeptides,
             Set<ProductIonType> targetProductIonTypes,
@@ -271,58 +325,137 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
         //get precursor ion for target peptide sequence
         PrecursorIon targetPrecursorIon = targetPeptide.getPrecursorIon();
 
+        if (backgroundFragmentIndex != null
+                && backgroundFragmentIndex.getProductIonTypes().equals(backgroundProductIonTypes)
+                && backgroundFragmentIndex.getMassPrecission() == massPrecission) {
+            return createIndexedExclusionMatrix(targetPrecursorIon, backgroundPeptides, targetProductIonTypes, productIonChargeStates, massAccuracy);
+        }
+
         //populate product ion store
         SortedMap<Double, Set<ProductIon>> backgroundProductIonStore = createProductIonStore(backgroundPeptides, backgroundProductIonTypes);
 
         //intialise exclusion matrix
-        Map<ProductIon, Map<Peptide, Integer>> retVal = new LinkedHashMap<ProductIon, Map<Peptide, Integer>>();
+        List<ProductIon> targetProductIons = new ArrayList<ProductIon>();
         for (ProductIonType targetProductIonType : targetProductIonTypes) {
+            targetProductIons.addAll(targetPrecursorIon.getProductIons(targetProductIonType));
+        }
+
+        ExclusionMatrix retVal = exclusionScoreCalculatorFactory.createExclusionMatrix(targetProductIons, backgroundPeptides);
 
-            for (ProductIon targetProductIon : targetPrecursorIon.getProductIons(targetProductIonType)) {
+        //populate exclusion matrix
+        for (int i = 0; i < targetProductIons.size(); i++) {
+
+            ProductIon targetProductIon = targetProductIons.get(i);
+
+            //get target product ion mass
+            double targetProductIonMass = targetProductIon.getNeutralMassPeptide();
+
+            //round target product ion mass
+            targetProductIonMass = SigPepUtil.round(targetProductIonMass, massPrecission);
 
-                retVal.put(targetProductIon, new LinkedHashMap<Peptide, Integer>());
+            //create target product ion mass range based on the given mass accuracy
+            MassOverChargeRange targetProductIonMassRange = new MassOverChargeRangeImpl(targetProductIonMass, productIonChargeStates, massAccuracy);
 
-                for (Peptide peptide : backgroundPeptides) {
+            for (MassOverChargeRange[] overLappingProductIonMassRange : targetProductIonMassRange.getFlankingPeptideMassOverChargeRanges()) {
 
-                    retVal.get(targetProductIon).put(peptide, 1);
+                //fetch all background product ions overlapping
+                // with the the mass range from the temporary
+                // product ion table...
+                double lowerFlankingMass = overLappingProductIonMassRange[0].getNeutralPeptideMass();
+                double upperFlankingMass = overLappingProductIonMassRange[1].getNeutralPeptideMass();
+                Map<Double, Set<ProductIon>> overlappingProductIons = backgroundProductIonStore.subMap(lowerFlankingMass, upperFlankingMass);
 
+                //...and update the exclusion matrix
+                for (Set<ProductIon> productIons : overlappingProductIons.values()) {
+
+                    for (ProductIon productIon : productIons) {
+
+                        //set peptides to 0 which are not excluded by the target product ion
+                        Peptide backgroundPeptide = productIon.getPrecursorIon().getPeptide();
+                        int j = retVal.getBackgroundPeptideIndex(backgroundPeptide);
+                        if (j != -1) {
+                            retVal.setExcludes(i, j, false);
+                        }
+                    }
                 }
             }
         }
 
-        //populate exclusion matrix
+        return retVal;
+    }
+
+    /**
+     * Creates the exclusion matrix by querying the background product ion index for each
+     * background peptide instead of building a product ion store of the background peptides.
+     * Yields the same matrix as the product ion store.
+     *
+     * @param targetPrecursorIon     the precursor ion of the target peptide
+     * @param backgroundPeptides     the background peptides
+     * @param targetProductIonTypes  the target product ion types
+     * @param productIonChargeStates the product ion charge states
+     * @param massAccuracy           the mass accuracy
+     * @return the exclusion matrix
+     */
+    private ExclusionMatrix createIndexedExclusionMatrix(PrecursorIon targetPrecursorIon,
+                                                         Set<Peptide> backgroundPeptides,
+                                                         Set<ProductIonType> targetProductIonTypes,
+                                                         Set<Integer> productIonChargeStates,
+                                                         double massAccuracy) {
+
+        //intialise exclusion matrix
+        List<ProductIon> targetProductIons = new ArrayList<ProductIon>();
         for (ProductIonType targetProductIonType : targetProductIonTypes) {
+            targetProductIons.addAll(targetPrecursorIon.getProductIons(targetProductIonType));
+        }
 
-            for (ProductIon targetProductIon : targetPrecursorIon.getProductIons(targetProductIonType)) {
+        ExclusionMatrix retVal = exclusionScoreCalculatorFactory.createExclusionMatrix(targetProductIons, backgroundPeptides);
 
-                //get target product ion mass
-                double targetProductIonMass = targetProductIon.getNeutralMassPeptide();
+        //flanking mass ranges of each target product ion as lower and upper limit pairs
+        double[][] flankingMasses = new double[targetProductIons.size()][];
+        for (int i = 0; i < targetProductIons.size(); i++) {
 
-                //round target product ion mass
-                targetProductIonMass = SigPepUtil.round(targetProductIonMass, massPrecission);
+            double targetProductIonMass = SigPepUtil.round(targetProductIons.get(i).getNeutralMassPeptide(), massPrecission);
+            MassOverChargeRange targetProductIonMassRange = new MassOverChargeRangeImpl(targetProductIonMass, productIonChargeStates, massAccuracy);
 
-                //create target product ion mass range based on the given mass accuracy
-                MassOverChargeRange targetProductIonMassRange = new MassOverChargeRangeImpl(targetProductIonMass, productIonChargeStates, massAccuracy);
+            List<MassOverChargeRange[]> flankingRanges = targetProductIonMassRange.getFlankingPeptideMassOverChargeRanges();
+            flankingMasses[i] = new double[2 * flankingRanges.size()];
+            for (int r = 0; r < flankingRanges.size(); r++) {
+                flankingMasses[i][2 * r] = flankingRanges.get(r)[0].getNeutralPeptideMass();
+                flankingMasses[i][2 * r + 1] = flankingRanges.get(r)[1].getNeutralPeptideMass();
+            }
+        }
 
-                for (MassOverChargeRange[] overLappingProductIonMassRange : targetProductIonMassRange.getFlankingPeptideMassOverChargeRanges()) {
+        //index background peptides missing in the background index on the fly
+        List<Peptide> missingPeptides = new ArrayList<Peptide>();
+        for (Peptide backgroundPeptide : retVal.getBackgroundPeptides()) {
+            if (backgroundFragmentIndex.getPrecursorIndex(backgroundPeptide) == -1) {
+                missingPeptides.add(backgroundPeptide);
+            }
+        }
+        BackgroundFragmentIndex missingPeptideIndex = null;
+        if (missingPeptides.size() > 0) {
+            missingPeptideIndex = new BackgroundFragmentIndex(missingPeptides, backgroundProductIonTypes, massPrecission);
+        }
 
-                    //fetch all background product ions overlapping
-                    // with the the mass range from the temporary
-                    // product ion table...
-                    double lowerFlankingMass = overLappingProductIonMassRange[0].getNeutralPeptideMass();
-                    double upperFlankingMass = overLappingProductIonMassRange[1].getNeutralPeptideMass();
-                    Map<Double, Set<ProductIon>> overlappingProductIons = backgroundProductIonStore.subMap(lowerFlankingMass, upperFlankingMass);
+        //populate exclusion matrix
+        for (int j = 0; j < retVal.getBackgroundPeptideCount(); j++) {
 
-                    //...and update the exclusion matrix
-                    for (Double mass : overlappingProductIons.keySet()) {
+            Peptide backgroundPeptide = retVal.getBackgroundPeptides().get(j);
 
-                        for (ProductIon productIon : overlappingProductIons.get(mass)) {
+            BackgroundFragmentIndex index = backgroundFragmentIndex;
+            int precursorIndex = index.getPrecursorIndex(backgroundPeptide);
+            if (precursorIndex == -1) {
+                index = missingPeptideIndex;
+                precursorIndex = index.getPrecursorIndex(backgroundPeptide);
+            }
 
-                            //set peptides to 0 which are not excluded by the target product ion
-                            Peptide backgroundPeptide = productIon.getPrecursorIon().getPeptide();
-                            retVal.get(targetProductIon).put(backgroundPeptide, 0);
+            for (int i = 0; i < flankingMasses.length; i++) {
+                for (int r = 0; r < flankingMasses[i].length; r += 2) {
 
-                        }
+                    //set peptides to 0 which are not excluded by the target product ion
+                    if (index.hasFragmentInMassRange(precursorIndex, flankingMasses[i][r], flankingMasses[i][r + 1])) {
+                        retVal.setExcludes(i, j, false);
+                        break;
                     }
                 }
             }
@@ -331,7 +464,45 @@ public abstract class AbstractMapProductIonScanner implements ProductIonScanner
         return retVal;
     }
 
-    protected abstract Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix,
+    protected abstract Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix,
                                                                                     int minCombinationSize,
                                                                                     int maxCombinationSize);
+
+    /**
+     * Passes the unique product ion combinations to a handler. Collects them with
+     * getUniqueProductIonCombinations first, scanners that can enumerate a lot of
+     * combinations override this to hand them over as they are found.
+     *
+     * @param exclusionMatrix    the exclusion matrix
+     * @param minCombinationSize the minimum product ion combination size
+     * @param maxCombinationSize the maximum product ion combination size
+     * @param handler            the handler receiving the combinations
+     */
+    protected void handleUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix,
+                                                      int minCombinationSize,
+                                                      int maxCombinationSize,
+                                                      ProductIonCombinationHandler handler) {
+
+        Map<Set<ProductIon>, Double> combinations = getUniqueProductIonCombinations(exclusionMatrix,
+                minCombinationSize,
+                maxCombinationSize);
+
+        for (Map.Entry<Set<ProductIon>, Double> combination : combinations.entrySet()) {
+            handler.handleProductIonCombination(combination.getKey(), combination.getValue());
+        }
+    }
+
+    /**
+     * Receives the unique product ion combinations of a target peptide.
+     */
+    protected interface ProductIonCombinationHandler {
+
+        /**
+         * Handles a product ion combination.
+         *
+         * @param combination the product ion combination
+         * @param score       the exclusion score of the combination
+         */
+        void handleProductIonCombination(Set<ProductIon> combination, double score);
+    }
 }
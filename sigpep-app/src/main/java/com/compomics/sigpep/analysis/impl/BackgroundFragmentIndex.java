@@ -0,0 +1,376 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+import com.compomics.sigpep.model.ProductIonType;
+import com.compomics.sigpep.util.SigPepUtil;
+
+import java.util.*;
+
+/**
+ * Index of the product ions of a set of background peptides.
+ * <p/>
+ * The product ions are stored in columns of primitive arrays: the rounded neutral mass,
+ * the product ion type and the index of the owning precursor. The product ions are grouped
+ * by precursor and sorted by mass within each group, the group boundaries are kept in an
+ * offset array. Queries are restricted to one precursor at a time, which is what the
+ * exclusion matrix needs: whether a background peptide emits a product ion in a mass range
+ * is a binary search within the product ions of that peptide.
+ * <p/>
+ * The index is built once for the background of a signature transition finder and is
+ * safe to be queried by several threads. Background peptides can be added and removed
+ * afterwards without generating the product ions of the other peptides again, but not
+ * while the index is being queried.
+ */
+public class BackgroundFragmentIndex {
+
+    /**
+     * the product ion types indexed
+     */
+    private Set<ProductIonType> productIonTypes;
+
+    /**
+     * the number of decimals the product ion masses are rounded to
+     */
+    private int massPrecission;
+
+    /**
+     * the precursor index of each peptide
+     */
+    private Map<Peptide, Integer> precursorIndex;
+
+    /**
+     * the index of the first product ion of each precursor, followed by the product ion count
+     */
+    private int[] fragmentOffsets;
+
+    /**
+     * the rounded neutral product ion masses
+     */
+    private double[] fragmentMasses;
+
+    /**
+     * the ordinal of the product ion types
+     */
+    private byte[] fragmentTypes;
+
+    /**
+     * the index of the precursor emitting the product ion
+     */
+    private int[] fragmentPrecursors;
+
+    /**
+     * Builds the index.
+     *
+     * @param backgroundPeptides the background peptides
+     * @param productIonTypes    the product ion types to index
+     * @param massPrecission     the number of decimals the product ion masses are rounded to
+     */
+    public BackgroundFragmentIndex(Collection<? extends Peptide> backgroundPeptides,
+                                   Set<ProductIonType> productIonTypes,
+                                   int massPrecission) {
+
+        Set<ProductIonType> types = EnumSet.noneOf(ProductIonType.class);
+        types.addAll(productIonTypes);
+        this.productIonTypes = Collections.unmodifiableSet(types);
+        this.massPrecission = massPrecission;
+
+        precursorIndex = new HashMap<Peptide, Integer>();
+        fragmentOffsets = new int[1];
+        fragmentMasses = new double[0];
+        fragmentTypes = new byte[0];
+        fragmentPrecursors = new int[0];
+
+        add(backgroundPeptides);
+    }
+
+    /**
+     * Adds background peptides to the index. The product ions of the added peptides are
+     * appended to the columns, peptides already indexed are ignored.
+     *
+     * @param peptides the background peptides to add
+     */
+    public void add(Collection<? extends Peptide> peptides) {
+
+        int precursorCount = getPrecursorCount();
+
+        //first pass: product ion masses per added precursor
+        List<double[]> masses = new ArrayList<double[]>(peptides.size());
+        List<byte[]> precursorTypeList = new ArrayList<byte[]>(peptides.size());
+
+        int fragmentCount = 0;
+        for (Peptide peptide : peptides) {
+
+            if (precursorIndex.containsKey(peptide)) {
+                continue;
+            }
+            precursorIndex.put(peptide, precursorCount + masses.size());
+
+            List<ProductIon> productIons = new ArrayList<ProductIon>();
+            List<ProductIonType> productIonTypeList = new ArrayList<ProductIonType>();
+            for (ProductIonType type : this.productIonTypes) {
+                for (ProductIon productIon : peptide.getPrecursorIon().getProductIons(type)) {
+                    productIons.add(productIon);
+                    productIonTypeList.add(type);
+                }
+            }
+
+            double[] precursorMasses = new double[productIons.size()];
+            byte[] precursorTypes = new byte[productIons.size()];
+            for (int i = 0; i < precursorMasses.length; i++) {
+                precursorMasses[i] = SigPepUtil.round(productIons.get(i).getNeutralMassPeptide(), massPrecission);
+                precursorTypes[i] = (byte) productIonTypeList.get(i).ordinal();
+            }
+            sort(precursorMasses, precursorTypes);
+
+            masses.add(precursorMasses);
+            precursorTypeList.add(precursorTypes);
+            fragmentCount += precursorMasses.length;
+        }
+
+        if (masses.isEmpty()) {
+            return;
+        }
+
+        //second pass: append to the columns
+        int offset = fragmentMasses.length;
+        fragmentOffsets = Arrays.copyOf(fragmentOffsets, precursorCount + masses.size() + 1);
+        fragmentMasses = Arrays.copyOf(fragmentMasses, offset + fragmentCount);
+        fragmentTypes = Arrays.copyOf(fragmentTypes, offset + fragmentCount);
+        fragmentPrecursors = Arrays.copyOf(fragmentPrecursors, offset + fragmentCount);
+
+        for (int p = 0; p < masses.size(); p++) {
+            double[] precursorMasses = masses.get(p);
+            fragmentOffsets[precursorCount + p] = offset;
+            System.arraycopy(precursorMasses, 0, fragmentMasses, offset, precursorMasses.length);
+            System.arraycopy(precursorTypeList.get(p), 0, fragmentTypes, offset, precursorMasses.length);
+            Arrays.fill(fragmentPrecursors, offset, offset + precursorMasses.length, precursorCount + p);
+            offset += precursorMasses.length;
+        }
+        fragmentOffsets[precursorCount + masses.size()] = offset;
+    }
+
+    /**
+     * Removes background peptides from the index. The columns are compacted and the
+     * remaining precursors are renumbered in their previous order, so the precursor
+     * index of a peptide can change. Peptides not indexed are ignored.
+     *
+     * @param peptides the background peptides to remove
+     */
+    public void remove(Collection<? extends Peptide> peptides) {
+
+        boolean[] removed = new boolean[getPrecursorCount()];
+        int removedCount = 0;
+        for (Peptide peptide : peptides) {
+            Integer p = precursorIndex.remove(peptide);
+            if (p != null) {
+                removed[p] = true;
+                removedCount++;
+            }
+        }
+
+        if (removedCount == 0) {
+            return;
+        }
+
+        int[] renumbered = new int[removed.length];
+        int precursorCount = 0;
+        int fragmentCount = 0;
+        for (int p = 0; p < removed.length; p++) {
+            if (!removed[p]) {
+                renumbered[p] = precursorCount++;
+                fragmentCount += fragmentOffsets[p + 1] - fragmentOffsets[p];
+            }
+        }
+
+        int[] newFragmentOffsets = new int[precursorCount + 1];
+        double[] newFragmentMasses = new double[fragmentCount];
+        byte[] newFragmentTypes = new byte[fragmentCount];
+        int[] newFragmentPrecursors = new int[fragmentCount];
+
+        int offset = 0;
+        for (int p = 0; p < removed.length; p++) {
+            if (!removed[p]) {
+                int length = fragmentOffsets[p + 1] - fragmentOffsets[p];
+                newFragmentOffsets[renumbered[p]] = offset;
+                System.arraycopy(fragmentMasses, fragmentOffsets[p], newFragmentMasses, offset, length);
+                System.arraycopy(fragmentTypes, fragmentOffsets[p], newFragmentTypes, offset, length);
+                Arrays.fill(newFragmentPrecursors, offset, offset + length, renumbered[p]);
+                offset += length;
+            }
+        }
+        newFragmentOffsets[precursorCount] = offset;
+
+        for (Map.Entry<Peptide, Integer> entry : precursorIndex.entrySet()) {
+            entry.setValue(renumbered[entry.getValue()]);
+        }
+
+        fragmentOffsets = newFragmentOffsets;
+        fragmentMasses = newFragmentMasses;
+        fragmentTypes = newFragmentTypes;
+        fragmentPrecursors = newFragmentPrecursors;
+    }
+
+    /**
+     * Returns the product ion types indexed.
+     *
+     * @return the product ion types
+     */
+    public Set<ProductIonType> getProductIonTypes() {
+        return productIonTypes;
+    }
+
+    /**
+     * Returns the number of decimals the product ion masses are rounded to.
+     *
+     * @return the mass precision
+     */
+    public int getMassPrecission() {
+        return massPrecission;
+    }
+
+    /**
+     * Returns the number of precursors indexed.
+     *
+     * @return the precursor count
+     */
+    public int getPrecursorCount() {
+        return fragmentOffsets.length - 1;
+    }
+
+    /**
+     * Returns the number of product ions indexed.
+     *
+     * @return the product ion count
+     */
+    public int getFragmentCount() {
+        return fragmentMasses.length;
+    }
+
+    /**
+     * Returns the precursor index of a peptide.
+     *
+     * @param peptide the peptide
+     * @return the precursor index or -1 if the peptide is not indexed
+     */
+    public int getPrecursorIndex(Peptide peptide) {
+        Integer retVal = precursorIndex.get(peptide);
+        return retVal == null ? -1 : retVal;
+    }
+
+    /**
+     * Returns the index of the first product ion of a precursor.
+     *
+     * @param precursorIndex the precursor index
+     * @return the product ion index
+     */
+    public int getFirstFragment(int precursorIndex) {
+        return fragmentOffsets[precursorIndex];
+    }
+
+    /**
+     * Returns the index following the last product ion of a precursor.
+     *
+     * @param precursorIndex the precursor index
+     * @return the product ion index
+     */
+    public int getEndFragment(int precursorIndex) {
+        return fragmentOffsets[precursorIndex + 1];
+    }
+
+    /**
+     * Returns the rounded neutral mass of a product ion.
+     *
+     * @param fragmentIndex the product ion index
+     * @return the mass
+     */
+    public double getFragmentMass(int fragmentIndex) {
+        return fragmentMasses[fragmentIndex];
+    }
+
+    /**
+     * Returns the type of a product ion.
+     *
+     * @param fragmentIndex the product ion index
+     * @return the product ion type
+     */
+    public ProductIonType getFragmentType(int fragmentIndex) {
+        return ProductIonType.values()[fragmentTypes[fragmentIndex]];
+    }
+
+    /**
+     * Returns the index of the precursor emitting a product ion.
+     *
+     * @param fragmentIndex the product ion index
+     * @return the precursor index
+     */
+    public int getFragmentPrecursor(int fragmentIndex) {
+        return fragmentPrecursors[fragmentIndex];
+    }
+
+    /**
+     * Returns whether a precursor emits a product ion with a rounded neutral mass equal
+     * or greater than lowerMassLimit and less than upperMassLimit.
+     *
+     * @param precursorIndex the precursor index
+     * @param lowerMassLimit the lower mass limit (inclusive)
+     * @param upperMassLimit the upper mass limit (exclusive)
+     * @return true if there is a product ion in the mass range
+     */
+    public boolean hasFragmentInMassRange(int precursorIndex, double lowerMassLimit, double upperMassLimit) {
+
+        int low = fragmentOffsets[precursorIndex];
+        int high = fragmentOffsets[precursorIndex + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (fragmentMasses[middle] < lowerMassLimit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low < fragmentOffsets[precursorIndex + 1] && fragmentMasses[low] < upperMassLimit;
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the index arrays and the precursor
+     * map, assuming a 64 bit JVM with compressed references.
+     *
+     * @return the estimated memory footprint in bytes
+     */
+    public long getEstimatedMemory() {
+
+        //8 byte mass, 1 byte type, 4 byte precursor per product ion
+        long retVal = 13L * fragmentMasses.length;
+        retVal += 4L * fragmentOffsets.length;
+
+        //HashMap entry, table slot and boxed index per precursor
+        retVal += (32L + 4L + 16L) * precursorIndex.size();
+
+        return retVal;
+    }
+
+    /**
+     * Sorts the masses of a precursor ascending and moves the types along.
+     * The arrays are short, so insertion sort is used.
+     *
+     * @param masses the masses
+     * @param types  the types
+     */
+    private static void sort(double[] masses, byte[] types) {
+
+        for (int i = 1; i < masses.length; i++) {
+            double mass = masses[i];
+            byte type = types[i];
+            int j = i - 1;
+            while (j >= 0 && masses[j] > mass) {
+                masses[j + 1] = masses[j];
+                types[j + 1] = types[j];
+                j--;
+            }
+            masses[j + 1] = mass;
+            types[j + 1] = type;
+        }
+    }
+}
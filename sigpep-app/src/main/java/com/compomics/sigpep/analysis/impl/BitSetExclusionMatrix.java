@@ -0,0 +1,146 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Implementation of ExclusionMatrix that packs each target product ion row into
+ * a <code>long[]</code> with one bit per background peptide.
+ * <p/>
+ * Whether a product ion combination excludes all background peptides is determined
+ * by OR-ing the rows of the combination word by word, the exclusion score by summing
+ * up the population counts of the rows. Neither allocates any objects.
+ */
+public class BitSetExclusionMatrix extends AbstractExclusionMatrix {
+
+    /**
+     * the rows of the matrix, one bit per background peptide
+     */
+    private long[][] rows;
+
+    /**
+     * the number of 64 bit words per row
+     */
+    private int wordCount;
+
+    /**
+     * the mask of the bits in use in the last word of a row
+     */
+    private long lastWordMask;
+
+    /**
+     * Constructs an exclusion matrix in which every target product ion
+     * excludes every background peptide.
+     *
+     * @param productIons        the target product ions
+     * @param backgroundPeptides the background peptides
+     */
+    public BitSetExclusionMatrix(Collection<ProductIon> productIons,
+                                 Collection<Peptide> backgroundPeptides) {
+
+        super(productIons, backgroundPeptides);
+
+        int columnCount = getBackgroundPeptideCount();
+        this.wordCount = (columnCount + 63) >>> 6;
+        this.lastWordMask = columnCount % 64 == 0 ? -1L : (1L << (columnCount % 64)) - 1;
+        this.rows = new long[getProductIonCount()][wordCount];
+
+        for (long[] row : rows) {
+            Arrays.fill(row, -1L);
+            if (wordCount > 0) {
+                row[wordCount - 1] = lastWordMask;
+            }
+        }
+    }
+
+    public void setExcludes(int productIonIndex, int backgroundPeptideIndex, boolean excludes) {
+        checkColumn(backgroundPeptideIndex);
+        long bit = 1L << backgroundPeptideIndex;
+        if (excludes) {
+            rows[productIonIndex][backgroundPeptideIndex >>> 6] |= bit;
+        } else {
+            rows[productIonIndex][backgroundPeptideIndex >>> 6] &= ~bit;
+        }
+    }
+
+    public boolean excludes(int productIonIndex, int backgroundPeptideIndex) {
+        checkColumn(backgroundPeptideIndex);
+        return (rows[productIonIndex][backgroundPeptideIndex >>> 6] & (1L << backgroundPeptideIndex)) != 0;
+    }
+
+    public int getExclusionCount(int productIonIndex) {
+        int retVal = 0;
+        for (long word : rows[productIonIndex]) {
+            retVal += Long.bitCount(word);
+        }
+        return retVal;
+    }
+
+    public boolean excludesAll(int[] productIonIndexes) {
+
+        for (int w = 0; w < wordCount; w++) {
+
+            long fullWord = w == wordCount - 1 ? lastWordMask : -1L;
+            long combined = 0;
+            for (int productIonIndex : productIonIndexes) {
+                combined |= rows[productIonIndex][w];
+                if (combined == fullWord) {
+                    break;
+                }
+            }
+
+            if (combined != fullWord) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public double getExclusionScore(int[] productIonIndexes) {
+
+        double maxExclusionCount = productIonIndexes.length * getBackgroundPeptideCount();
+
+        double combinedExclusionCount = 0;
+        for (int productIonIndex : productIonIndexes) {
+            combinedExclusionCount += getExclusionCount(productIonIndex);
+        }
+
+        return combinedExclusionCount / maxExclusionCount;
+    }
+
+    /**
+     * Returns the row of a target product ion. The returned array is the
+     * backing array of the matrix and must not be modified.
+     *
+     * @param productIonIndex the row index of the target product ion
+     * @return the row words, bit j of the row is set if the product ion excludes background peptide j
+     */
+    public long[] getRow(int productIonIndex) {
+        return rows[productIonIndex];
+    }
+
+    /**
+     * Returns the number of 64 bit words per row.
+     *
+     * @return the word count
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Checks that a column index is within the matrix bounds.
+     *
+     * @param backgroundPeptideIndex the column index
+     */
+    private void checkColumn(int backgroundPeptideIndex) {
+        if (backgroundPeptideIndex < 0 || backgroundPeptideIndex >= getBackgroundPeptideCount()) {
+            throw new IndexOutOfBoundsException("Background peptide index " + backgroundPeptideIndex
+                    + " out of range; background peptide count = " + getBackgroundPeptideCount());
+        }
+    }
+}
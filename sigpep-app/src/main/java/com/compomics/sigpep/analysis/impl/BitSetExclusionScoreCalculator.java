@@ -0,0 +1,52 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calculates the exclusion score of a product ion combination using a bit packed
+ * exclusion matrix.
+ * <p/>
+ * Returns the same result as the MapExclusionScoreCalculator: a map containing the
+ * combination and its score if the combination excludes all background peptides
+ * and an empty map otherwise.
+ */
+public class BitSetExclusionScoreCalculator implements ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> {
+
+    private Set<ProductIon> productIonCombination;
+    private BitSetExclusionMatrix exclusionMatrix;
+
+    /**
+     * Constructs a calculator for a product ion combination.
+     *
+     * @param productIonCombination the product ion combination to score
+     * @param exclusionMatrix       the exclusion matrix
+     */
+    public BitSetExclusionScoreCalculator(Set<ProductIon> productIonCombination,
+                                          BitSetExclusionMatrix exclusionMatrix) {
+        this.productIonCombination = productIonCombination;
+        this.exclusionMatrix = exclusionMatrix;
+    }
+
+    /**
+     * Computes a result, or throws an exception if unable to do so.
+     *
+     * @return computed result
+     * @throws Exception if unable to compute a result
+     */
+    public Map<Set<ProductIon>, Double> call() throws Exception {
+
+        Map<Set<ProductIon>, Double> result = new HashMap<Set<ProductIon>, Double>();
+
+        int[] productIonIndexes = exclusionMatrix.getProductIonIndexes(productIonCombination);
+        if (exclusionMatrix.excludesAll(productIonIndexes)) {
+            result.put(productIonCombination, exclusionMatrix.getExclusionScore(productIonIndexes));
+        }
+
+        return result;
+    }
+}
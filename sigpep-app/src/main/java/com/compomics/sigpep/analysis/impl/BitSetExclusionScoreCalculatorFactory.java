@@ -0,0 +1,48 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
+import com.compomics.sigpep.analysis.ExclusionScoreCalculatorFactory;
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates bit packed exclusion matrices and the calculators that score them.
+ * <p/>
+ * To use it set sigpep.app.analysis.exclusion.score.calculator.factory.class
+ * to this class in the sigpep-app.properties file.
+ */
+public class BitSetExclusionScoreCalculatorFactory extends ExclusionScoreCalculatorFactory {
+
+    /**
+     * Creates a bit packed exclusion matrix.
+     *
+     * @param targetProductIons  the target product ions (matrix rows)
+     * @param backgroundPeptides the background peptides (matrix columns)
+     * @return a BitSetExclusionMatrix
+     */
+    public ExclusionMatrix createExclusionMatrix(List<ProductIon> targetProductIons, Collection<Peptide> backgroundPeptides) {
+        return new BitSetExclusionMatrix(targetProductIons, backgroundPeptides);
+    }
+
+    /**
+     * Returns a calculator for the exclusion score of a product ion combination.
+     *
+     * @param productIonCombination the product ion combination
+     * @param exclusionMatrix       the exclusion matrix created by this factory
+     * @return the calculator
+     */
+    public ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> getCalculator(Set<ProductIon> productIonCombination, ExclusionMatrix exclusionMatrix) {
+
+        if (!(exclusionMatrix instanceof BitSetExclusionMatrix)) {
+            throw new IllegalArgumentException("Exclusion matrix of type " + exclusionMatrix.getClass().getName() + " not supported.");
+        }
+
+        return new BitSetExclusionScoreCalculator(productIonCombination, (BitSetExclusionMatrix) exclusionMatrix);
+    }
+}
@@ -0,0 +1,377 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.ProductIon;
+import com.compomics.sigpep.util.Combinations;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scores the product ion combinations of an exclusion matrix in parallel.
+ * <p/>
+ * Instead of submitting one task per combination the combinations of a size are
+ * numbered in the lexicographic order of the Combinations class and split into
+ * contiguous rank ranges. One task per range walks through its combinations, tests
+ * them against the exclusion matrix and returns the combinations excluding all
+ * background peptides, so the number of tasks and futures alive is bounded by the
+ * number of ranges.
+ * <p/>
+ * When only the first combination is requested every range stops as soon as it
+ * gets past the lowest ranking combination found so far and the ranges following
+ * the one containing it are cancelled.
+ */
+public class ChunkedCombinationScorer {
+
+    /**
+     * the default number of ranges per available processor
+     */
+    public static final int DEFAULT_CHUNKS_PER_PROCESSOR = 4;
+
+    /**
+     * the default minimum number of combinations per range
+     */
+    public static final long DEFAULT_MINIMUM_CHUNK_SIZE = 1024;
+
+    /**
+     * the maximum number of combinations per range when the combinations are passed to a handler
+     */
+    public static final long MAXIMUM_STREAMING_CHUNK_SIZE = 65536;
+
+    /**
+     * Receives the product ion combinations that exclude all background peptides.
+     */
+    public interface CombinationHandler {
+
+        /**
+         * Handles a product ion combination.
+         *
+         * @param productIonIndexes the indexes of the product ions in the exclusion matrix
+         * @param exclusionScore    the exclusion score of the combination
+         */
+        void handleCombination(int[] productIonIndexes, double exclusionScore);
+    }
+
+    /**
+     * the executor service executing the ranges
+     */
+    private ExecutorService executorService;
+
+    /**
+     * the number of ranges to split the combinations of a size into
+     */
+    private int chunkCount;
+
+    /**
+     * the minimum number of combinations per range
+     */
+    private long minimumChunkSize;
+
+    /**
+     * Constructs a scorer splitting the combinations into four ranges per
+     * available processor of at least 1024 combinations each.
+     *
+     * @param executorService the executor service executing the ranges
+     */
+    public ChunkedCombinationScorer(ExecutorService executorService) {
+        this(executorService,
+                Runtime.getRuntime().availableProcessors() * DEFAULT_CHUNKS_PER_PROCESSOR,
+                DEFAULT_MINIMUM_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a scorer.
+     *
+     * @param executorService  the executor service executing the ranges
+     * @param chunkCount       the number of ranges to split the combinations of a size into
+     * @param minimumChunkSize the minimum number of combinations per range
+     */
+    public ChunkedCombinationScorer(ExecutorService executorService, int chunkCount, long minimumChunkSize) {
+
+        if (chunkCount < 1) {
+            throw new IllegalArgumentException("Chunk count has to be greater than 0.");
+        }
+        if (minimumChunkSize < 1) {
+            throw new IllegalArgumentException("Minimum chunk size has to be greater than 0.");
+        }
+
+        this.executorService = executorService;
+        this.chunkCount = chunkCount;
+        this.minimumChunkSize = minimumChunkSize;
+    }
+
+    /**
+     * Returns all product ion combinations of a size that exclude all background peptides.
+     *
+     * @param exclusionMatrix the product ion exclusion matrix
+     * @param combinationSize the combination size, capped at the number of product ions
+     * @return a map of product ion combinations and the corresponding exclusion scores
+     */
+    public Map<Set<ProductIon>, Double> scoreAll(ExclusionMatrix exclusionMatrix, int combinationSize) {
+        return score(exclusionMatrix, combinationSize, false);
+    }
+
+    /**
+     * Passes all product ion combinations of a size that exclude all background peptides
+     * to the handler in the order the Combinations class enumerates them.
+     * <p/>
+     * The handler is called by the calling thread. At most chunkCount ranges of at most
+     * MAXIMUM_STREAMING_CHUNK_SIZE combinations are scored or waiting for the handler at
+     * any time, so the combinations held in memory are bounded by the ranges and not by
+     * the number of combinations found.
+     *
+     * @param exclusionMatrix the product ion exclusion matrix
+     * @param combinationSize the combination size, capped at the number of product ions
+     * @param handler         the handler receiving the combinations
+     * @return the number of combinations passed to the handler
+     */
+    public long scoreAll(ExclusionMatrix exclusionMatrix, int combinationSize, CombinationHandler handler) {
+
+        int productIonCount = exclusionMatrix.getProductIonCount();
+        int k = Math.min(combinationSize, productIonCount);
+        long combinationCount = Combinations.binomialCoefficient(productIonCount, k);
+        long chunkSize = Math.max(minimumChunkSize,
+                Math.min((combinationCount + chunkCount - 1) / chunkCount, MAXIMUM_STREAMING_CHUNK_SIZE));
+
+        AtomicLong firstRank = new AtomicLong(Long.MAX_VALUE);
+        long retVal = 0;
+
+        if (combinationCount == 0) {
+            return retVal;
+        }
+
+        if (combinationCount <= chunkSize) {
+
+            //not worth handing over to the executor
+            for (int[] productIonIndexes : scoreInCallingThread(new ChunkScorer(exclusionMatrix, k, 0, combinationCount, false, firstRank))) {
+                handler.handleCombination(productIonIndexes, exclusionMatrix.getExclusionScore(productIonIndexes));
+                retVal++;
+            }
+
+            return retVal;
+        }
+
+        LinkedList<Future<List<int[]>>> results = new LinkedList<Future<List<int[]>>>();
+        long nextStart = 0;
+
+        try {
+
+            while (nextStart < combinationCount || !results.isEmpty()) {
+
+                //keep up to chunkCount ranges in flight
+                while (nextStart < combinationCount && results.size() < chunkCount) {
+                    long end = Math.min(nextStart + chunkSize, combinationCount);
+                    results.add(executorService.submit(new ChunkScorer(exclusionMatrix, k, nextStart, end, false, firstRank)));
+                    nextStart = end;
+                }
+
+                //hand over the oldest range in rank order
+                for (int[] productIonIndexes : results.removeFirst().get()) {
+                    handler.handleCombination(productIonIndexes, exclusionMatrix.getExclusionScore(productIonIndexes));
+                    retVal++;
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finding unique product ion combination.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Exception while finding unique product ion combination.", e);
+        } finally {
+            //only left if the handler or a range failed
+            for (Future<List<int[]>> result : results) {
+                result.cancel(true);
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the product ion combination of a size that excludes all background peptides
+     * and comes first in the order the Combinations class enumerates them.
+     *
+     * @param exclusionMatrix the product ion exclusion matrix
+     * @param combinationSize the combination size, capped at the number of product ions
+     * @return a map of at most one product ion combination and the corresponding exclusion score
+     */
+    public Map<Set<ProductIon>, Double> scoreFirst(ExclusionMatrix exclusionMatrix, int combinationSize) {
+        return score(exclusionMatrix, combinationSize, true);
+    }
+
+    /**
+     * Splits the combinations into ranges, scores them and reduces the results in rank order.
+     *
+     * @param exclusionMatrix the product ion exclusion matrix
+     * @param combinationSize the combination size
+     * @param firstOnly       true if only the first combination is requested
+     * @return a map of product ion combinations and the corresponding exclusion scores
+     */
+    private Map<Set<ProductIon>, Double> score(ExclusionMatrix exclusionMatrix, int combinationSize, boolean firstOnly) {
+
+        int productIonCount = exclusionMatrix.getProductIonCount();
+        int k = Math.min(combinationSize, productIonCount);
+        long combinationCount = Combinations.binomialCoefficient(productIonCount, k);
+        long chunkSize = Math.max(minimumChunkSize, (combinationCount + chunkCount - 1) / chunkCount);
+
+        AtomicLong firstRank = new AtomicLong(Long.MAX_VALUE);
+
+        List<int[]> combinations = new ArrayList<int[]>();
+
+        if (combinationCount == 0) {
+
+            return new HashMap<Set<ProductIon>, Double>();
+
+        } else if (combinationCount <= chunkSize) {
+
+            //not worth handing over to the executor
+            combinations.addAll(scoreInCallingThread(new ChunkScorer(exclusionMatrix, k, 0, combinationCount, firstOnly, firstRank)));
+
+        } else {
+
+            List<Future<List<int[]>>> results = new ArrayList<Future<List<int[]>>>();
+            for (long start = 0; start < combinationCount; start += chunkSize) {
+                long end = Math.min(start + chunkSize, combinationCount);
+                results.add(executorService.submit(new ChunkScorer(exclusionMatrix, k, start, end, firstOnly, firstRank)));
+            }
+
+            try {
+
+                for (int i = 0; i < results.size(); i++) {
+
+                    combinations.addAll(results.get(i).get());
+
+                    //the ranges are in rank order, the remaining ones can't contain the first combination
+                    if (firstOnly && combinations.size() > 0) {
+                        for (int j = i + 1; j < results.size(); j++) {
+                            results.get(j).cancel(true);
+                        }
+                        break;
+                    }
+                }
+
+            } catch (InterruptedException e) {
+                for (Future<List<int[]>> result : results) {
+                    result.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while finding unique product ion combination.", e);
+            } catch (ExecutionException e) {
+                for (Future<List<int[]>> result : results) {
+                    result.cancel(true);
+                }
+                throw new RuntimeException("Exception while finding unique product ion combination.", e);
+            }
+        }
+
+        Map<Set<ProductIon>, Double> retVal = new HashMap<Set<ProductIon>, Double>();
+        List<ProductIon> productIons = exclusionMatrix.getProductIons();
+        for (int[] productIonIndexes : combinations) {
+
+            Set<ProductIon> combination = new HashSet<ProductIon>();
+            for (int productIonIndex : productIonIndexes) {
+                combination.add(productIons.get(productIonIndex));
+            }
+
+            retVal.put(combination, exclusionMatrix.getExclusionScore(productIonIndexes));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Scores a range in the calling thread. If the thread is interrupted the range is
+     * not scored to its end, the interrupt flag is restored and an exception thrown, so
+     * a partial result is never returned as complete.
+     *
+     * @param scorer the range scorer
+     * @return the combinations of the range that exclude all background peptides
+     */
+    private static List<int[]> scoreInCallingThread(ChunkScorer scorer) {
+        try {
+            return scorer.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finding unique product ion combination.", e);
+        }
+    }
+
+    /**
+     * Tests a contiguous rank range of combinations against the exclusion matrix. The
+     * scorer throws an InterruptedException if its thread is interrupted, the ranges
+     * cancelled on the executor therefore fail instead of returning partial results.
+     */
+    private static class ChunkScorer implements Callable<List<int[]>> {
+
+        /**
+         * the number of combinations between two interrupt checks
+         */
+        private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+        private ExclusionMatrix exclusionMatrix;
+        private int combinationSize;
+        private long startRank;
+        private long endRank;
+        private boolean firstOnly;
+        private AtomicLong firstRank;
+
+        /**
+         * Constructs a range scorer.
+         *
+         * @param exclusionMatrix the product ion exclusion matrix
+         * @param combinationSize the combination size
+         * @param startRank       the rank of the first combination of the range
+         * @param endRank         the rank following the last combination of the range
+         * @param firstOnly       true if only the first combination is requested
+         * @param firstRank       the lowest rank of a combination excluding all background peptides found so far
+         */
+        private ChunkScorer(ExclusionMatrix exclusionMatrix, int combinationSize, long startRank, long endRank, boolean firstOnly, AtomicLong firstRank) {
+            this.exclusionMatrix = exclusionMatrix;
+            this.combinationSize = combinationSize;
+            this.startRank = startRank;
+            this.endRank = endRank;
+            this.firstOnly = firstOnly;
+            this.firstRank = firstRank;
+        }
+
+        public List<int[]> call() throws InterruptedException {
+
+            List<int[]> retVal = new ArrayList<int[]>();
+
+            int productIonCount = exclusionMatrix.getProductIonCount();
+            int[] index = Combinations.unrank(startRank, productIonCount, combinationSize);
+
+            for (long rank = startRank; rank < endRank; rank++) {
+
+                if (firstOnly && rank > firstRank.get()) {
+                    break;
+                }
+                if ((rank - startRank) % INTERRUPT_CHECK_INTERVAL == 0 && Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted after " + (rank - startRank) + " of "
+                            + (endRank - startRank) + " combinations.");
+                }
+
+                if (exclusionMatrix.excludesAll(index)) {
+
+                    retVal.add(index.clone());
+
+                    if (firstOnly) {
+                        long currentFirstRank = firstRank.get();
+                        while (rank < currentFirstRank && !firstRank.compareAndSet(currentFirstRank, rank)) {
+                            currentFirstRank = firstRank.get();
+                        }
+                        break;
+                    }
+                }
+
+                Combinations.nextIndex(index, productIonCount);
+            }
+
+            return retVal;
+        }
+    }
+}
@@ -1,16 +1,11 @@
 package com.compomics.sigpep.analysis.impl;
 
 import com.compomics.sigpep.ExecutorServiceLocator;
-import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
-import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.analysis.ExclusionMatrix;
 import com.compomics.sigpep.model.ProductIon;
 import com.compomics.sigpep.model.ProductIonType;
-import com.compomics.sigpep.util.Combinations;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 /**
  * @TODO: JavaDoc missing.
@@ -54,39 +49,50 @@ public class FindAllMapProductIonScanner extends AbstractMapProductIonScanner {
      * @return
      * @TODO: JavaDoc missing.
      */
-    protected Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix, int minCombinationSize, int maxCombinationSize) {
-        Map<Set<ProductIon>, Double> retVal = Collections.synchronizedMap(new HashMap<Set<ProductIon>, Double>());
+    protected Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix, int minCombinationSize, int maxCombinationSize) {
+        Map<Set<ProductIon>, Double> retVal = new HashMap<Set<ProductIon>, Double>();
 
-        Set<ProductIon> targetProductIons = exclusionMatrix.keySet();
-
-        ExecutorService executorService = ExecutorServiceLocator.getInstance().getExecutorService();
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(ExecutorServiceLocator.getInstance().getExecutorService());
 
         for (int k = minCombinationSize; k <= maxCombinationSize; k++) {
+            retVal.putAll(scorer.scoreAll(exclusionMatrix, k));
+        }
 
-            List<Future<Map<Set<ProductIon>, Double>>> results = new ArrayList<Future<Map<Set<ProductIon>, Double>>>();
+        return retVal;
+    }
 
-            Combinations<ProductIon> combinations = new Combinations<ProductIon>(k, targetProductIons);
-            while (combinations.hasNext()) {
+    /**
+     * Passes the combinations to the handler as the scorer finds them, in rank order
+     * within each combination size, so all combinations never need to be held in memory.
+     *
+     * @param exclusionMatrix    the exclusion matrix
+     * @param minCombinationSize the minimum product ion combination size
+     * @param maxCombinationSize the maximum product ion combination size
+     * @param handler            the handler receiving the combinations
+     */
+    protected void handleUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix,
+                                                      int minCombinationSize,
+                                                      int maxCombinationSize,
+                                                      final ProductIonCombinationHandler handler) {
+
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(ExecutorServiceLocator.getInstance().getExecutorService());
+        final List<ProductIon> productIons = exclusionMatrix.getProductIons();
 
-                Set<ProductIon> combination = combinations.next();
+        //sizes beyond the product ion count are capped and would repeat the same combinations
+        int maxSize = Math.max(minCombinationSize, Math.min(maxCombinationSize, productIons.size()));
 
-                ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> calculator = exclusionScoreCalculatorFactory.getCalculator(combination, exclusionMatrix);
-                Future<Map<Set<ProductIon>, Double>> f = executorService.submit(calculator);
-                results.add(f);
-            }
+        for (int k = minCombinationSize; k <= maxSize; k++) {
+            scorer.scoreAll(exclusionMatrix, k, new ChunkedCombinationScorer.CombinationHandler() {
+                public void handleCombination(int[] productIonIndexes, double exclusionScore) {
 
-            for (Future<Map<Set<ProductIon>, Double>> result : results) {
+                    Set<ProductIon> combination = new HashSet<ProductIon>();
+                    for (int productIonIndex : productIonIndexes) {
+                        combination.add(productIons.get(productIonIndex));
+                    }
 
-                try {
-                    retVal.putAll(result.get());
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("Exception while finding unique product ion combination.", e);
-                } catch (ExecutionException e) {
-                    throw new RuntimeException("Exception while finding unique product ion combination.", e);
+                    handler.handleProductIonCombination(combination, exclusionScore);
                 }
-            }
+            });
         }
-
-        return retVal;
     }
 }
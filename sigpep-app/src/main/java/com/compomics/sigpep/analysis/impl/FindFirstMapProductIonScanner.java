@@ -1,16 +1,11 @@
 package com.compomics.sigpep.analysis.impl;
 
-import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
-import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.ExecutorServiceLocator;
+import com.compomics.sigpep.analysis.ExclusionMatrix;
 import com.compomics.sigpep.model.ProductIon;
 import com.compomics.sigpep.model.ProductIonType;
-import com.compomics.sigpep.util.Combinations;
-import com.compomics.sigpep.ExecutorServiceLocator;
 
 import java.util.*;
-import java.util.concurrent.Future;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ExecutionException;
 
 /**
  * @TODO: JavaDoc missing.
@@ -50,40 +45,20 @@ public class FindFirstMapProductIonScanner extends AbstractMapProductIonScanner
      * @return a map of one product ion combination and the corresponding exclusion score
      */
     public Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(
-            Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix,
+            ExclusionMatrix exclusionMatrix,
             int minCombinationSize,
             int maxCombinationSize) {
 
-        Map<Set<ProductIon>, Double> retVal = Collections.synchronizedMap(new HashMap<Set<ProductIon>, Double>());
-        Set<ProductIon> targetProductIons = exclusionMatrix.keySet();
+        Map<Set<ProductIon>, Double> retVal = new HashMap<Set<ProductIon>, Double>();
 
-        ExecutorService executorService = ExecutorServiceLocator.getInstance().getExecutorService();
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(ExecutorServiceLocator.getInstance().getExecutorService());
 
-        combinationFound:
         for (int k = minCombinationSize; k <= maxCombinationSize; k++) {
 
-            Combinations<ProductIon> combinations = new Combinations<ProductIon>(k, targetProductIons);
-            while (combinations.hasNext()) {
-
-                Set<ProductIon> combination = combinations.next();
-
-                ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> calculator = exclusionScoreCalculatorFactory.getCalculator(combination, exclusionMatrix);
-                Future<Map<Set<ProductIon>, Double>> f = executorService.submit(calculator);
-
-                try {
-
-                    Map<Set<ProductIon>, Double> result = f.get();
-
-                    if (result.size() > 0) {
-                        retVal = result;
-                        break combinationFound;
-                    }
+            retVal = scorer.scoreFirst(exclusionMatrix, k);
 
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                } catch (ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
+            if (retVal.size() > 0) {
+                break;
             }
         }
 
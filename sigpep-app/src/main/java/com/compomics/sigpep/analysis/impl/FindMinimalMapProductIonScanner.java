@@ -1,16 +1,11 @@
 package com.compomics.sigpep.analysis.impl;
 
 import com.compomics.sigpep.ExecutorServiceLocator;
-import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
-import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.analysis.ExclusionMatrix;
 import com.compomics.sigpep.model.ProductIon;
 import com.compomics.sigpep.model.ProductIonType;
-import com.compomics.sigpep.util.Combinations;
 
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 /**
  * @TODO: JavaDoc missing.
@@ -50,44 +45,19 @@ public class FindMinimalMapProductIonScanner extends AbstractMapProductIonScanne
      * @return a map of one product ion combination and the corresponding exclusion score
      */
     public Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(
-            Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix,
+            ExclusionMatrix exclusionMatrix,
             int minCombinationSize,
             int maxCombinationSize) {
 
-        Map<Set<ProductIon>, Double> retVal = Collections.synchronizedMap(new HashMap<Set<ProductIon>, Double>());
+        Map<Set<ProductIon>, Double> retVal = new HashMap<Set<ProductIon>, Double>();
 
-        Set<ProductIon> targetProductIons = exclusionMatrix.keySet();
-
-        //get thread pool
-        ExecutorService executorService = ExecutorServiceLocator.getInstance().getExecutorService();
-        List<Future<Map<Set<ProductIon>, Double>>> results = new ArrayList<Future<Map<Set<ProductIon>, Double>>>();
+        //the combinations of each size are scored in parallel in rank ranges
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(ExecutorServiceLocator.getInstance().getExecutorService());
 
         //iterate over all combinations in size range...
         for (int k = minCombinationSize; k <= maxCombinationSize; k++) {
 
-            Combinations<ProductIon> combinations = new Combinations<ProductIon>(k, targetProductIons);
-            while (combinations.hasNext()) {
-
-                Set<ProductIon> combination = combinations.next();
-
-                //...and create and execute a thread to calculate the
-                //exclusion score for each combination
-                ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> calculator = exclusionScoreCalculatorFactory.getCalculator(combination, exclusionMatrix);
-                Future<Map<Set<ProductIon>, Double>> f = executorService.submit(calculator);
-                results.add(f);
-            }
-
-            //...get the results for each combination
-            for (Future<Map<Set<ProductIon>, Double>> result : results) {
-
-                try {
-                    retVal.putAll(result.get());
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("Exception while finding unique product ion combination.", e);
-                } catch (ExecutionException e) {
-                    throw new RuntimeException("Exception while finding unique product ion combination.", e);
-                }
-            }
+            retVal = scorer.scoreAll(exclusionMatrix, k);
 
             //stop search if  combination size k yields
             //unique product ion combination(s)...
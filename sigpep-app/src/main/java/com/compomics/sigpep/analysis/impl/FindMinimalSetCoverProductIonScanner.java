@@ -0,0 +1,450 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.ProductIon;
+import com.compomics.sigpep.model.ProductIonType;
+
+import java.util.*;
+
+/**
+ * Finds the signature product ion combinations consisting of the minimal number of
+ * product ions by treating the exclusion matrix as a set cover problem: each target
+ * product ion covers the background peptides it excludes and a signature combination
+ * has to cover all of them.
+ * <p/>
+ * Returns the same combinations as the FindMinimalMapProductIonScanner without
+ * enumerating every product ion combination in the size range:
+ * <ol>
+ * <li>The size of the smallest cover is determined by an iterative deepening
+ * branch-and-bound search that branches on the product ions excluding the background
+ * peptide excluded by the fewest product ions, prunes product ions whose exclusions are
+ * a subset of the exclusions of another product ion, bounds the search by the number
+ * of background peptides left to exclude divided by the best remaining exclusion count
+ * and memoizes background peptide sets that cannot be excluded with the product ions
+ * left.</li>
+ * <li>All combinations of that size are then enumerated in the order of the exclusion
+ * matrix rows, abandoning partial combinations if a remaining background peptide is
+ * not excluded by any of the rows left or if the rows left cannot exclude the remaining
+ * background peptides anymore.</li>
+ * </ol>
+ * To use it set sigpep.app.analysis.find.minimal.signature.transition.finder.class
+ * to this class in the sigpep-app.properties file.
+ */
+public class FindMinimalSetCoverProductIonScanner extends AbstractMapProductIonScanner {
+
+    /**
+     * Constructs a product ion scanner.
+     *
+     * @param targetProductIonTypes     the target product ion types to take into account
+     * @param backgroundProductIonTypes the background product ion types to take into account
+     * @param productIonChargeStates    the allowed product ion charge states
+     * @param massAccuracy              the mass accuracy of the mass spectrometer
+     * @param minimumCombinationSize    the minimum product ion combination size of the signature transition
+     * @param maximumCombinationSize    the maximum product ion combination size of the signature transition
+     */
+    public FindMinimalSetCoverProductIonScanner(HashSet<ProductIonType> targetProductIonTypes,
+                                                HashSet<ProductIonType> backgroundProductIonTypes,
+                                                HashSet<Integer> productIonChargeStates,
+                                                Double massAccuracy,
+                                                Integer minimumCombinationSize,
+                                                Integer maximumCombinationSize) {
+
+        super(targetProductIonTypes, backgroundProductIonTypes, productIonChargeStates, massAccuracy, minimumCombinationSize, maximumCombinationSize);
+    }
+
+    /**
+     * Returns the signature product ion combinations with the minimal number of product ions.
+     *
+     * @param exclusionMatrix    the product ion exclusion matrix
+     * @param minCombinationSize the minimal combination size the combinations should have
+     * @param maxCombinationSize the maximal combination size the combinations should have
+     * @return a map of product ion combinations and the corresponding exclusion scores
+     */
+    protected Map<Set<ProductIon>, Double> getUniqueProductIonCombinations(ExclusionMatrix exclusionMatrix,
+                                                                           int minCombinationSize,
+                                                                           int maxCombinationSize) {
+
+        Map<Set<ProductIon>, Double> retVal = new HashMap<Set<ProductIon>, Double>();
+
+        if (minCombinationSize > maxCombinationSize) {
+            return retVal;
+        }
+
+        //combinations can't be larger than the number of product ions
+        int productIonCount = exclusionMatrix.getProductIonCount();
+        int minSize = Math.min(minCombinationSize, productIonCount);
+        int maxSize = Math.min(maxCombinationSize, productIonCount);
+
+        CoverSearch search = new CoverSearch(exclusionMatrix);
+
+        int coverSize = search.findMinimalCoverSize(maxSize);
+        if (coverSize == -1) {
+            return retVal;
+        }
+
+        //every superset of a cover is a cover as well
+        int combinationSize = Math.max(coverSize, minSize);
+
+        List<ProductIon> productIons = exclusionMatrix.getProductIons();
+        for (int[] productIonIndexes : search.findCovers(combinationSize)) {
+
+            Set<ProductIon> combination = new HashSet<ProductIon>();
+            for (int productIonIndex : productIonIndexes) {
+                combination.add(productIons.get(productIonIndex));
+            }
+
+            retVal.put(combination, exclusionMatrix.getExclusionScore(productIonIndexes));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Set cover search over the bit packed rows of an exclusion matrix.
+     */
+    private static class CoverSearch {
+
+        /**
+         * the rows of the exclusion matrix, one bit per background peptide
+         */
+        private long[][] rows;
+
+        /**
+         * the set of all background peptides
+         */
+        private long[] universe;
+
+        /**
+         * for each background peptide the highest index of a row excluding it, -1 if there is none
+         */
+        private int[] lastExcludingRow;
+
+        /**
+         * Constructs the search for an exclusion matrix.
+         *
+         * @param exclusionMatrix the exclusion matrix
+         */
+        private CoverSearch(ExclusionMatrix exclusionMatrix) {
+
+            int rowCount = exclusionMatrix.getProductIonCount();
+            int columnCount = exclusionMatrix.getBackgroundPeptideCount();
+            int wordCount = (columnCount + 63) >>> 6;
+
+            rows = new long[rowCount][];
+            for (int i = 0; i < rowCount; i++) {
+                if (exclusionMatrix instanceof BitSetExclusionMatrix) {
+                    rows[i] = ((BitSetExclusionMatrix) exclusionMatrix).getRow(i);
+                } else {
+                    rows[i] = new long[wordCount];
+                    for (int j = 0; j < columnCount; j++) {
+                        if (exclusionMatrix.excludes(i, j)) {
+                            rows[i][j >>> 6] |= 1L << j;
+                        }
+                    }
+                }
+            }
+
+            universe = new long[wordCount];
+            for (int j = 0; j < columnCount; j++) {
+                universe[j >>> 6] |= 1L << j;
+            }
+
+            lastExcludingRow = new int[columnCount];
+            Arrays.fill(lastExcludingRow, -1);
+            for (int i = 0; i < rowCount; i++) {
+                for (int j = 0; j < columnCount; j++) {
+                    if ((rows[i][j >>> 6] & (1L << j)) != 0) {
+                        lastExcludingRow[j] = i;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the size of the smallest set of rows that excludes all background peptides.
+         *
+         * @param maxSize the maximum size to search for
+         * @return the size of the smallest cover or -1 if there is no cover of at most maxSize rows
+         */
+        private int findMinimalCoverSize(int maxSize) {
+
+            if (isEmpty(universe)) {
+                return 0;
+            }
+
+            for (int lastRow : lastExcludingRow) {
+                if (lastRow == -1) {
+                    return -1;
+                }
+            }
+
+            long[][] candidates = getNonDominatedRows();
+            Map<BitKey, Integer> failures = new HashMap<BitKey, Integer>();
+
+            for (int size = 1; size <= maxSize; size++) {
+                if (coverExists(universe, size, candidates, failures)) {
+                    return size;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the rows whose exclusions are not a subset of the exclusions of another row.
+         * Of a group of identical rows only the first one is kept.
+         *
+         * @return the non-dominated rows
+         */
+        private long[][] getNonDominatedRows() {
+
+            List<long[]> retVal = new ArrayList<long[]>();
+
+            for (int i = 0; i < rows.length; i++) {
+
+                boolean dominated = isEmpty(rows[i]);
+                for (int j = 0; j < rows.length && !dominated; j++) {
+                    if (i != j && isSubset(rows[i], rows[j])) {
+                        //of two identical rows keep the first
+                        dominated = !isSubset(rows[j], rows[i]) || j < i;
+                    }
+                }
+
+                if (!dominated) {
+                    retVal.add(rows[i]);
+                }
+            }
+
+            return retVal.toArray(new long[retVal.size()][]);
+        }
+
+        /**
+         * Returns whether the uncovered background peptides can be excluded by at most
+         * <code>size</code> of the candidate rows.
+         *
+         * @param uncovered  the background peptides left to exclude
+         * @param size       the number of rows left to choose
+         * @param candidates the candidate rows
+         * @param failures   the sets of background peptides known not to be coverable
+         *                   and the largest number of rows they have been tried with
+         * @return true if a cover exists
+         */
+        private boolean coverExists(long[] uncovered, int size, long[][] candidates, Map<BitKey, Integer> failures) {
+
+            int uncoveredCount = count(uncovered);
+            if (uncoveredCount == 0) {
+                return true;
+            }
+            if (size == 0) {
+                return false;
+            }
+
+            BitKey key = new BitKey(uncovered, 0, 0);
+            Integer failedSize = failures.get(key);
+            if (failedSize != null && failedSize >= size) {
+                return false;
+            }
+
+            //lower bound: the number of rows needed if every row excluded as much as the best one
+            int maxExclusionCount = 0;
+            for (long[] candidate : candidates) {
+                maxExclusionCount = Math.max(maxExclusionCount, countIntersection(candidate, uncovered));
+            }
+            if (maxExclusionCount == 0 || (uncoveredCount + maxExclusionCount - 1) / maxExclusionCount > size) {
+                failures.put(key, size);
+                return false;
+            }
+
+            //branch on the rows excluding the background peptide excluded by the fewest rows
+            int branchColumn = -1;
+            int branchCount = Integer.MAX_VALUE;
+            for (int j = nextSetBit(uncovered, 0); j != -1 && branchCount > 1; j = nextSetBit(uncovered, j + 1)) {
+                int excludingRows = 0;
+                for (long[] candidate : candidates) {
+                    if ((candidate[j >>> 6] & (1L << j)) != 0) {
+                        excludingRows++;
+                    }
+                }
+                if (excludingRows < branchCount) {
+                    branchCount = excludingRows;
+                    branchColumn = j;
+                }
+            }
+
+            for (long[] candidate : candidates) {
+                if ((candidate[branchColumn >>> 6] & (1L << branchColumn)) != 0
+                        && coverExists(andNot(uncovered, candidate), size - 1, candidates, failures)) {
+                    return true;
+                }
+            }
+
+            failures.put(key, size);
+            return false;
+        }
+
+        /**
+         * Returns all combinations of <code>size</code> rows that exclude all background peptides.
+         *
+         * @param size the combination size
+         * @return the row indexes of the combinations in ascending order
+         */
+        private List<int[]> findCovers(int size) {
+            List<int[]> retVal = new ArrayList<int[]>();
+            findCovers(universe, 0, new int[size], 0, retVal, new HashSet<BitKey>());
+            return retVal;
+        }
+
+        /**
+         * Recursively extends a partial combination by rows with an index equal or greater
+         * than <code>firstRow</code>.
+         *
+         * @param uncovered   the background peptides not excluded by the partial combination
+         * @param firstRow    the index of the first row that can be added
+         * @param combination the row indexes of the combination
+         * @param depth       the number of rows in the partial combination
+         * @param covers      the complete combinations found
+         * @param failures    the partial states known not to lead to a complete combination
+         * @return true if at least one complete combination has been found
+         */
+        private boolean findCovers(long[] uncovered, int firstRow, int[] combination, int depth, List<int[]> covers, Set<BitKey> failures) {
+
+            int rowsLeft = combination.length - depth;
+            int uncoveredCount = count(uncovered);
+
+            if (rowsLeft == 0) {
+                if (uncoveredCount == 0) {
+                    covers.add(combination.clone());
+                    return true;
+                }
+                return false;
+            }
+
+            BitKey key = null;
+            if (uncoveredCount > 0) {
+
+                //every remaining background peptide has to be excluded by one of the rows left
+                for (int j = nextSetBit(uncovered, 0); j != -1; j = nextSetBit(uncovered, j + 1)) {
+                    if (lastExcludingRow[j] < firstRow) {
+                        return false;
+                    }
+                }
+
+                //the rows left have to be able to exclude the remaining background peptides
+                int maxExclusionCount = 0;
+                for (int i = firstRow; i < rows.length; i++) {
+                    maxExclusionCount = Math.max(maxExclusionCount, countIntersection(rows[i], uncovered));
+                }
+                if (maxExclusionCount * rowsLeft < uncoveredCount) {
+                    return false;
+                }
+
+                key = new BitKey(uncovered, firstRow, rowsLeft);
+                if (failures.contains(key)) {
+                    return false;
+                }
+            }
+
+            boolean found = false;
+            for (int i = firstRow; i <= rows.length - rowsLeft; i++) {
+                combination[depth] = i;
+                found |= findCovers(andNot(uncovered, rows[i]), i + 1, combination, depth + 1, covers, failures);
+            }
+
+            if (!found && key != null) {
+                failures.add(key);
+            }
+
+            return found;
+        }
+
+        private static boolean isEmpty(long[] bits) {
+            for (long word : bits) {
+                if (word != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isSubset(long[] bits, long[] otherBits) {
+            for (int w = 0; w < bits.length; w++) {
+                if ((bits[w] & ~otherBits[w]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int count(long[] bits) {
+            int retVal = 0;
+            for (long word : bits) {
+                retVal += Long.bitCount(word);
+            }
+            return retVal;
+        }
+
+        private static int countIntersection(long[] bits, long[] otherBits) {
+            int retVal = 0;
+            for (int w = 0; w < bits.length; w++) {
+                retVal += Long.bitCount(bits[w] & otherBits[w]);
+            }
+            return retVal;
+        }
+
+        private static long[] andNot(long[] bits, long[] otherBits) {
+            long[] retVal = new long[bits.length];
+            for (int w = 0; w < bits.length; w++) {
+                retVal[w] = bits[w] & ~otherBits[w];
+            }
+            return retVal;
+        }
+
+        private static int nextSetBit(long[] bits, int fromIndex) {
+
+            int w = fromIndex >>> 6;
+            if (w >= bits.length) {
+                return -1;
+            }
+
+            long word = bits[w] & (-1L << fromIndex);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == bits.length) {
+                    return -1;
+                }
+                word = bits[w];
+            }
+        }
+    }
+
+    /**
+     * Memoization key of a set of uncovered background peptides and the search position.
+     */
+    private static class BitKey {
+
+        private final long[] bits;
+        private final int firstRow;
+        private final int rowsLeft;
+        private final int hashCode;
+
+        private BitKey(long[] bits, int firstRow, int rowsLeft) {
+            this.bits = bits;
+            this.firstRow = firstRow;
+            this.rowsLeft = rowsLeft;
+            this.hashCode = 31 * (31 * Arrays.hashCode(bits) + firstRow) + rowsLeft;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BitKey)) return false;
+            BitKey that = (BitKey) o;
+            return firstRow == that.firstRow && rowsLeft == that.rowsLeft && Arrays.equals(bits, that.bits);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.ProductIon;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implementation of ExclusionMatrix that stores the matrix as a map of target product
+ * ions and maps of background peptides and exclusion values ('1' if the product ion
+ * excludes the peptide, '0' otherwise).
+ */
+public class MapExclusionMatrix extends AbstractExclusionMatrix {
+
+    /**
+     * the matrix
+     */
+    private Map<ProductIon, Map<Peptide, Integer>> matrix;
+
+    /**
+     * Constructs an exclusion matrix in which every target product ion
+     * excludes every background peptide.
+     *
+     * @param productIons        the target product ions
+     * @param backgroundPeptides the background peptides
+     */
+    public MapExclusionMatrix(Collection<ProductIon> productIons,
+                              Collection<Peptide> backgroundPeptides) {
+
+        super(productIons, backgroundPeptides);
+
+        this.matrix = new LinkedHashMap<ProductIon, Map<Peptide, Integer>>();
+        for (ProductIon productIon : this.productIons) {
+
+            Map<Peptide, Integer> row = new LinkedHashMap<Peptide, Integer>();
+            for (Peptide peptide : this.backgroundPeptides) {
+                row.put(peptide, 1);
+            }
+
+            matrix.put(productIon, row);
+        }
+    }
+
+    /**
+     * Returns the exclusion matrix as a map of target product ions and maps of
+     * background peptides and exclusion values.
+     *
+     * @return the matrix
+     */
+    public Map<ProductIon, Map<Peptide, Integer>> getMatrix() {
+        return matrix;
+    }
+
+    public void setExcludes(int productIonIndex, int backgroundPeptideIndex, boolean excludes) {
+        matrix.get(productIons.get(productIonIndex)).put(backgroundPeptides.get(backgroundPeptideIndex), excludes ? 1 : 0);
+    }
+
+    public boolean excludes(int productIonIndex, int backgroundPeptideIndex) {
+        return matrix.get(productIons.get(productIonIndex)).get(backgroundPeptides.get(backgroundPeptideIndex)) > 0;
+    }
+
+    public int getExclusionCount(int productIonIndex) {
+        int retVal = 0;
+        for (Integer excludes : matrix.get(productIons.get(productIonIndex)).values()) {
+            retVal += excludes;
+        }
+        return retVal;
+    }
+
+    public boolean excludesAll(int[] productIonIndexes) {
+
+        for (Peptide peptide : backgroundPeptides) {
+
+            boolean excluded = false;
+            for (int productIonIndex : productIonIndexes) {
+                if (matrix.get(productIons.get(productIonIndex)).get(peptide) > 0) {
+                    excluded = true;
+                    break;
+                }
+            }
+
+            if (!excluded) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public double getExclusionScore(int[] productIonIndexes) {
+
+        double maxExclusionCount = productIonIndexes.length * getBackgroundPeptideCount();
+
+        double combinedExclusionCount = 0;
+        for (int productIonIndex : productIonIndexes) {
+            combinedExclusionCount += getExclusionCount(productIonIndex);
+        }
+
+        return combinedExclusionCount / maxExclusionCount;
+    }
+}
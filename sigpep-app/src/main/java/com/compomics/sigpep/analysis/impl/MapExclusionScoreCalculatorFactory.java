@@ -1,10 +1,13 @@
 package com.compomics.sigpep.analysis.impl;
 
+import com.compomics.sigpep.analysis.ExclusionMatrix;
 import com.compomics.sigpep.analysis.ExclusionScoreCalculatorFactory;
 import com.compomics.sigpep.analysis.ExclusionScoreCalculator;
 import com.compomics.sigpep.model.ProductIon;
 import com.compomics.sigpep.model.Peptide;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.Map;
 
@@ -18,13 +21,29 @@ import java.util.Map;
  */
 public class MapExclusionScoreCalculatorFactory extends ExclusionScoreCalculatorFactory {
 
+    /**
+     * Creates a map based exclusion matrix.
+     *
+     * @param targetProductIons  the target product ions (matrix rows)
+     * @param backgroundPeptides the background peptides (matrix columns)
+     * @return a MapExclusionMatrix
+     */
+    public ExclusionMatrix createExclusionMatrix(List<ProductIon> targetProductIons, Collection<Peptide> backgroundPeptides) {
+        return new MapExclusionMatrix(targetProductIons, backgroundPeptides);
+    }
+
     /**
      * @param productIonCombination
      * @param exclusionMatrix
      * @return
      * @TODO: JavaDoc missing.
      */
-    public ExclusionScoreCalculator getCalculator(Set<ProductIon> productIonCombination, Map<ProductIon, Map<Peptide, Integer>> exclusionMatrix) {
-        return new MapExclusionScoreCalculator(productIonCombination, exclusionMatrix);
+    public ExclusionScoreCalculator<Map<Set<ProductIon>, Double>> getCalculator(Set<ProductIon> productIonCombination, ExclusionMatrix exclusionMatrix) {
+
+        if (!(exclusionMatrix instanceof MapExclusionMatrix)) {
+            throw new IllegalArgumentException("Exclusion matrix of type " + exclusionMatrix.getClass().getName() + " not supported.");
+        }
+
+        return new MapExclusionScoreCalculator(productIonCombination, ((MapExclusionMatrix) exclusionMatrix).getMatrix());
     }
 }
@@ -65,6 +65,22 @@ public class ProbabilityBasedPeptideIonStore<P extends PeptideIon> implements Pe
 
         //logger.info("ProbabilityBasedPeptideIonStore.populate");
         store = new TreeMap<Double, Set<P>>();
+        add(peptideIons);
+    }
+
+    /**
+     * Adds peptide ions to the store and assigns the charge state probabilities
+     * of their masses to the added peptide ions only.
+     *
+     * @param peptideIons the peptide ions to add
+     */
+    public void add(Collection<P> peptideIons) {
+
+        if (store == null) {
+            store = new TreeMap<Double, Set<P>>();
+        }
+
+        SortedMap<Double, Set<P>> addedPeptideIons = new TreeMap<Double, Set<P>>();
         for (P peptideIon : peptideIons) {
 
             double mass = peptideIon.getNeutralMassPeptide();
@@ -73,23 +89,56 @@ public class ProbabilityBasedPeptideIonStore<P extends PeptideIon> implements Pe
             if (!store.containsKey(mass)) {
                 store.put(mass, new HashSet<P>());
             }
-            store.get(mass).add(peptideIon);
+            if (store.get(mass).add(peptideIon)) {
+                if (!addedPeptideIons.containsKey(mass)) {
+                    addedPeptideIons.put(mass, new HashSet<P>());
+                }
+                addedPeptideIons.get(mass).add(peptideIon);
+            }
+        }
+
+        assignChargeStates(addedPeptideIons);
+    }
 
+    /**
+     * Removes peptide ions from the store and drops the masses left without
+     * peptide ions.
+     *
+     * @param peptideIons the peptide ions to remove
+     */
+    public void remove(Collection<P> peptideIons) {
+
+        if (store == null) {
+            return;
         }
 
-        assignChargeStates();
+        for (P peptideIon : peptideIons) {
+
+            double mass = SigPepUtil.round(peptideIon.getNeutralMassPeptide(), massPrecission);
+
+            Set<P> peptideIonsWithMass = store.get(mass);
+            if (peptideIonsWithMass != null && peptideIonsWithMass.remove(peptideIon) && peptideIonsWithMass.isEmpty()) {
+                store.remove(mass);
+            }
+        }
     }
 
     /**
-     * @TODO: JavaDoc missing.
+     * Assigns the charge state probabilities of their masses to peptide ions.
+     *
+     * @param peptideIons the peptide ions by rounded neutral mass
      */
-    private void assignChargeStates() {
+    private void assignChargeStates(SortedMap<Double, Set<P>> peptideIons) {
 
         //logger.info("ProbabilityBasedPeptideIonStore.assignChargeStates");
 
-        double[] uniqueMasses = new double[store.keySet().size()];
+        if (peptideIons.isEmpty()) {
+            return;
+        }
+
+        double[] uniqueMasses = new double[peptideIons.keySet().size()];
         int i = 0;
-        for (Double mass : store.keySet()) {
+        for (Double mass : peptideIons.keySet()) {
             uniqueMasses[i] = mass;
             i++;
         }
@@ -100,7 +149,7 @@ public class ProbabilityBasedPeptideIonStore<P extends PeptideIon> implements Pe
 
             Map<Integer, Double> probabilities = chargeProbabilities.get(mass);
 
-            for (P peptideIon : store.get(mass)) {
+            for (P peptideIon : peptideIons.get(mass)) {
 
                 for (Integer z : probabilities.keySet()) {
                     double p = probabilities.get(z);
@@ -1,14 +1,22 @@
 package com.compomics.sigpep.analysis.impl;
 
 import org.apache.log4j.Logger;
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.ExecutorServiceLocator;
 import com.compomics.sigpep.analysis.PeptideIonStore;
 import com.compomics.sigpep.analysis.ProductIonScanner;
 import com.compomics.sigpep.analysis.SignatureTransitionFinder;
+import com.compomics.sigpep.analysis.SignatureTransitionHandler;
 import com.compomics.sigpep.model.Peptide;
 import com.compomics.sigpep.model.PrecursorIon;
 import com.compomics.sigpep.model.SignatureTransition;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @TODO: JavaDoc missing.
@@ -28,6 +36,17 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
     protected ProductIonScanner productIonScanner;
     protected List<Map<Double, Integer>> observedMassChargeStateCombinations;
 
+    /**
+     * the number of target peptides scanned in parallel, 1 scans them one after another
+     */
+    protected int parallelism = Configuration.getInstance().getInt("sigpep.app.signature.transition.finder.parallelism", 1);
+
+    /**
+     * whether the background peptides have been copied into a set of their own
+     * to be added to and removed from
+     */
+    private boolean backgroundPeptidesCopied = false;
+
     /**
      * @param backgroundPeptides
      * @param precursorIonChargeStates
@@ -46,6 +65,7 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
         this.productIonScanner = productIonScanner;
         this.observedMassChargeStateCombinations = null;
         this.backgroundPeptideIonStore = createPrecursorIonStore(backgroundPeptides);
+        indexBackgroundFragments();
     }
 
     /**
@@ -67,6 +87,133 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
         this.productIonScanner = productIonScanner;
         this.observedMassChargeStateCombinations = observedMassChargeStateCombinations;
         this.backgroundPeptideIonStore = createPrecursorIonStore(backgroundPeptides);
+        indexBackgroundFragments();
+    }
+
+    /**
+     * Builds the product ion index of the background peptides once for all target
+     * peptides if the product ion scanner supports it and
+     * sigpep.app.analysis.background.fragment.index is enabled in the
+     * sigpep-app.properties file. It is disabled by default.
+     */
+    private void indexBackgroundFragments() {
+
+        if (productIonScanner instanceof AbstractMapProductIonScanner
+                && Configuration.getInstance().getBoolean("sigpep.app.analysis.background.fragment.index", false)) {
+
+            long start = System.currentTimeMillis();
+            AbstractMapProductIonScanner scanner = (AbstractMapProductIonScanner) productIonScanner;
+            scanner.indexBackgroundPeptides(backgroundPeptides);
+
+            BackgroundFragmentIndex index = scanner.getBackgroundFragmentIndex();
+            logger.info("indexed " + index.getFragmentCount() + " product ions of " + index.getPrecursorCount()
+                    + " background peptides in " + (System.currentTimeMillis() - start) + " ms, approx. "
+                    + index.getEstimatedMemory() / (1024 * 1024) + " MB");
+        }
+    }
+
+    /**
+     * Adds peptides to the background. The precursor ions of the added peptides are
+     * added to the background precursor ion store and their product ions to the
+     * background product ion index, if there is one, so the finder yields the same
+     * signature transitions as one built on the extended background. Peptides already
+     * in the background are ignored.
+     * <p/>
+     * The background peptide set passed to the constructor is copied on the first update
+     * and left as it is. Must not be called while signature transitions are being found.
+     *
+     * @param peptides the peptides to add to the background
+     */
+    public void addBackgroundPeptides(Collection<Peptide> peptides) {
+
+        List<Peptide> addedPeptides = new ArrayList<Peptide>();
+        Set<PrecursorIon> precursorIons = new HashSet<PrecursorIon>();
+        for (Peptide peptide : peptides) {
+            if (getModifiableBackgroundPeptides().add(peptide)) {
+                addedPeptides.add(peptide);
+                precursorIons.add(peptide.getPrecursorIon());
+            }
+        }
+
+        if (addedPeptides.isEmpty()) {
+            return;
+        }
+
+        backgroundPeptideIonStore.add(precursorIons);
+
+        BackgroundFragmentIndex index = getBackgroundFragmentIndex();
+        if (index != null) {
+            index.add(addedPeptides);
+        }
+    }
+
+    /**
+     * Removes peptides from the background. The precursor ions of the removed peptides
+     * are removed from the background precursor ion store and their product ions from the
+     * background product ion index, if there is one, so the finder yields the same
+     * signature transitions as one built on the reduced background. Peptides not in the
+     * background are ignored.
+     * <p/>
+     * The background peptide set passed to the constructor is copied on the first update
+     * and left as it is. Must not be called while signature transitions are being found.
+     *
+     * @param peptides the peptides to remove from the background
+     */
+    public void removeBackgroundPeptides(Collection<Peptide> peptides) {
+
+        List<Peptide> removedPeptides = new ArrayList<Peptide>();
+        Set<PrecursorIon> precursorIons = new HashSet<PrecursorIon>();
+        for (Peptide peptide : peptides) {
+            if (getModifiableBackgroundPeptides().remove(peptide)) {
+                removedPeptides.add(peptide);
+                precursorIons.add(peptide.getPrecursorIon());
+            }
+        }
+
+        if (removedPeptides.isEmpty()) {
+            return;
+        }
+
+        backgroundPeptideIonStore.remove(precursorIons);
+
+        BackgroundFragmentIndex index = getBackgroundFragmentIndex();
+        if (index != null) {
+            index.remove(removedPeptides);
+        }
+    }
+
+    /**
+     * Returns the background peptides.
+     *
+     * @return an unmodifiable view of the background peptides
+     */
+    public Set<Peptide> getBackgroundPeptides() {
+        return Collections.unmodifiableSet(backgroundPeptides);
+    }
+
+    /**
+     * Returns the background peptide set, copied into a set of its own on the first call.
+     *
+     * @return the modifiable background peptide set
+     */
+    private Set<Peptide> getModifiableBackgroundPeptides() {
+        if (!backgroundPeptidesCopied) {
+            backgroundPeptides = new HashSet<Peptide>(backgroundPeptides);
+            backgroundPeptidesCopied = true;
+        }
+        return backgroundPeptides;
+    }
+
+    /**
+     * Returns the background product ion index of the product ion scanner.
+     *
+     * @return the index or null if the background product ions are not indexed
+     */
+    private BackgroundFragmentIndex getBackgroundFragmentIndex() {
+        if (productIonScanner instanceof AbstractMapProductIonScanner) {
+            return ((AbstractMapProductIonScanner) productIonScanner).getBackgroundFragmentIndex();
+        }
+        return null;
     }
 
     /**
@@ -87,11 +234,36 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
      */
     public List<SignatureTransition> findSignatureTransitions(Collection<Peptide> targetPeptides) {
 
-        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+        final List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+
+        findSignatureTransitions(targetPeptides, new SignatureTransitionHandler() {
+            public void handleSignatureTransition(SignatureTransition signatureTransition) {
+                retVal.add(signatureTransition);
+            }
+        });
+
+        return retVal;
+    }
+
+    /**
+     * Passes the signature transitions of the target peptides to the handler in the
+     * order they are found, the same order the list returned by
+     * findSignatureTransitions(Collection) has.
+     *
+     * @param targetPeptides the target peptides
+     * @param handler        the handler receiving the signature transitions
+     */
+    public void findSignatureTransitions(Collection<Peptide> targetPeptides, final SignatureTransitionHandler handler) {
 
         Set<Peptide> peptideSet = new HashSet<Peptide>();
         peptideSet.addAll(targetPeptides);
 
+        int threadCount = getThreadCount();
+        if (threadCount > 1) {
+            findSignatureTransitionsInParallel(peptideSet, threadCount, handler);
+            return;
+        }
+
         PeptideIonStore<PrecursorIon> targetPeptideIonStore = createPrecursorIonStore(peptideSet);
 
         //for each unique target peptide mass...
@@ -103,7 +275,7 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
             //get sequences of targetPeptides whose mass overlapps with the target peptide mass
             Map<Integer, Set<PrecursorIon>> overlappingBackgroundPeptideIons = backgroundPeptideIonStore.getPeptideIonsWithOverlappingMassOverCharge(targetPeptideMass);//, precursorIonChargeStates, massAccuracy);
 
-            for (Integer chargeState : overlappingBackgroundPeptideIons.keySet()) {
+            for (final Integer chargeState : overlappingBackgroundPeptideIons.keySet()) {
 
                 Set<Peptide> overlappingBackgroundPeptides = new HashSet<Peptide>();
 
@@ -124,28 +296,211 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
                     //remove target peptide sequence from overlapping sequences
                     overlappingBackgroundPeptides.remove(targetPeptide);
 
-                    List<SignatureTransition> signatureTransitions =
-                            productIonScanner.findSignatureTransitions(
-                                    targetPeptide,
-                                    overlappingBackgroundPeptides);
+                    productIonScanner.findSignatureTransitions(
+                            targetPeptide,
+                            overlappingBackgroundPeptides,
+                            new SignatureTransitionHandler() {
+                                public void handleSignatureTransition(SignatureTransition signatureTransition) {
+                                    signatureTransition.setTargetPeptideChargeState(chargeState);
+                                    handler.handleSignatureTransition(signatureTransition);
+                                }
+                            });
 
                     //put the target peptide sequence and it's mass back to the set
                     //of overlapping sequence ids
                     overlappingBackgroundPeptides.add(targetPeptide);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the signature transitions of the target peptides scanning up to threadCount target
+     * peptides at a time on the executor service of the ExecutorServiceLocator, which is shared
+     * by all finders and bounds the total number of threads.
+     * <p/>
+     * The precursor ion store queries are done in the order of the serial search and every
+     * target peptide is scanned against its own copy of the overlapping background peptides,
+     * so the scans don't share any mutable state. The signature transitions are passed to the
+     * handler by the calling thread in the order of the serial search. At most twice threadCount
+     * scans are running or waiting for the handler, further scans are submitted as the handler
+     * catches up.
+     *
+     * @param targetPeptides the target peptides
+     * @param threadCount    the number of threads scanning target peptides
+     * @param handler        the handler receiving the signature transitions
+     */
+    protected void findSignatureTransitionsInParallel(Set<Peptide> targetPeptides, int threadCount, SignatureTransitionHandler handler) {
 
-//                    if (signatureTransitions.size() == 0) {
-//                        logger.warn("Null transition!!!");
-//                    }
+        PeptideIonStore<PrecursorIon> targetPeptideIonStore = createPrecursorIonStore(targetPeptides);
 
-                    for (SignatureTransition signatureTransition : signatureTransitions) {
-                        signatureTransition.setTargetPeptideChargeState(chargeState);
-                        retVal.add(signatureTransition);
+        ExecutorService executorService = ExecutorServiceLocator.getInstance().getExecutorService();
+        LinkedList<Future<List<SignatureTransition>>> results = new LinkedList<Future<List<SignatureTransition>>>();
+        int maximumPendingScans = threadCount * 2;
+
+        try {
+
+            //for each unique target peptide mass...
+            for (Double targetPeptideMass : targetPeptideIonStore.getUniqueNeutralPeptideIonMasses()) {
+
+                Set<PrecursorIon> targetPeptideGroup = targetPeptideIonStore.getPeptideIonsWithMass(targetPeptideMass);
+
+                Map<Integer, Set<PrecursorIon>> overlappingBackgroundPeptideIons = backgroundPeptideIonStore.getPeptideIonsWithOverlappingMassOverCharge(targetPeptideMass);
+
+                for (Integer chargeState : overlappingBackgroundPeptideIons.keySet()) {
+
+                    Set<Peptide> overlappingBackgroundPeptides = new HashSet<Peptide>();
+
+                    for (PrecursorIon backgroundIon : overlappingBackgroundPeptideIons.get(chargeState)) {
+                        overlappingBackgroundPeptides.add(backgroundIon.getPeptide());
+                    }
+
+                    for (PrecursorIon targetPeptideIon : targetPeptideGroup) {
+
+                        Peptide targetPeptide = targetPeptideIon.getPeptide();
+
+                        if (!backgroundPeptides.contains(targetPeptide)) {
+                            throw new IllegalArgumentException("Target targetPeptides have to be element of the background peptide set. " + targetPeptide);
+                        }
+
+                        //the serial search puts each target peptide back into the overlapping
+                        //background peptides after scanning it, the copies do the same
+                        overlappingBackgroundPeptides.remove(targetPeptide);
+                        Set<Peptide> isobaricPeptides = new HashSet<Peptide>(overlappingBackgroundPeptides);
+                        overlappingBackgroundPeptides.add(targetPeptide);
+
+                        //hand over the oldest scans before submitting more
+                        while (results.size() >= maximumPendingScans) {
+                            handleSignatureTransitions(results.removeFirst().get(), handler);
+                        }
+
+                        results.add(executorService.submit(new TargetPeptideScan(targetPeptide, isobaricPeptides, chargeState)));
                     }
                 }
             }
+
+            while (!results.isEmpty()) {
+                handleSignatureTransitions(results.removeFirst().get(), handler);
+            }
+
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Exception while finding signature transitions.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Exception while finding signature transitions.", e);
+        } finally {
+            //the executor service is shared, only cancel the scans of this search
+            for (Future<List<SignatureTransition>> result : results) {
+                result.cancel(true);
+            }
         }
+    }
 
-        return retVal;
+    /**
+     * Passes signature transitions to a handler.
+     *
+     * @param signatureTransitions the signature transitions
+     * @param handler              the handler
+     */
+    private void handleSignatureTransitions(List<SignatureTransition> signatureTransitions, SignatureTransitionHandler handler) {
+        for (SignatureTransition signatureTransition : signatureTransitions) {
+            handler.handleSignatureTransition(signatureTransition);
+        }
+    }
+
+    /**
+     * Returns the number of target peptides scanned in parallel.
+     *
+     * @return the parallelism, 0 for the number of available processors
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of target peptides scanned in parallel. Defaults to
+     * sigpep.app.signature.transition.finder.parallelism in the sigpep-app.properties
+     * file or 1 if it is not set.
+     *
+     * @param parallelism the parallelism, 1 to scan the target peptides one after another,
+     *                    0 for the number of available processors
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism can't be negative.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of threads scanning target peptides.
+     *
+     * @return the thread count
+     */
+    private int getThreadCount() {
+        if (parallelism == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    /**
+     * Scans a target peptide for signature transitions at a precursor ion charge state.
+     */
+    private class TargetPeptideScan implements Callable<List<SignatureTransition>> {
+
+        private Peptide targetPeptide;
+        private Set<Peptide> isobaricPeptides;
+        private Integer chargeState;
+
+        private TargetPeptideScan(Peptide targetPeptide, Set<Peptide> isobaricPeptides, Integer chargeState) {
+            this.targetPeptide = targetPeptide;
+            this.isobaricPeptides = isobaricPeptides;
+            this.chargeState = chargeState;
+        }
+
+        public List<SignatureTransition> call() {
+
+            List<SignatureTransition> retVal = productIonScanner.findSignatureTransitions(targetPeptide, isobaricPeptides);
+
+            for (SignatureTransition signatureTransition : retVal) {
+                signatureTransition.setTargetPeptideChargeState(chargeState);
+            }
+
+            return retVal;
+        }
+    }
+
+    /**
+     * Creates a peptide ion store for the allowed precursor ion charge states. The implementation
+     * is specified by sigpep.app.analysis.peptide.ion.store.class in the sigpep-app.properties file
+     * and has to provide a constructor taking the charge states and the mass accuracy.
+     *
+     * @return an empty peptide ion store, a SortedMapPeptideIonStore if no implementation is specified
+     */
+    @SuppressWarnings("unchecked")
+    private PeptideIonStore<PrecursorIon> createPeptideIonStore() {
+
+        String storeClass = Configuration.getInstance().getString("sigpep.app.analysis.peptide.ion.store.class",
+                SortedMapPeptideIonStore.class.getName());
+
+        try {
+            return (PeptideIonStore<PrecursorIon>) Class.forName(storeClass)
+                    .getConstructor(Set.class, double.class)
+                    .newInstance(precursorIonChargeStates, massAccuracy);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -164,7 +519,7 @@ public class SignatureTransitionFinderImpl implements SignatureTransitionFinder
         }
 
         if (observedMassChargeStateCombinations == null) {
-            retVal = new SortedMapPeptideIonStore<PrecursorIon>(precursorIonChargeStates, massAccuracy);
+            retVal = createPeptideIonStore();
         } else {
             retVal = new ProbabilityBasedPeptideIonStore<PrecursorIon>(observedMassChargeStateCombinations, massAccuracy);
         }
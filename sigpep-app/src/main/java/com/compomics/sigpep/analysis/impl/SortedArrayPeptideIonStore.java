@@ -0,0 +1,566 @@
+package com.compomics.sigpep.analysis.impl;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.analysis.PeptideIonStore;
+import com.compomics.sigpep.model.MassOverChargeRange;
+import com.compomics.sigpep.model.PeptideIon;
+import com.compomics.sigpep.model.impl.MassOverChargeRangeImpl;
+import com.compomics.sigpep.util.SigPepUtil;
+
+import java.util.*;
+
+/**
+ * An implementation of PeptideStore that keeps the peptide ions in an array sorted by
+ * their neutral mass and the masses in a parallel primitive array. Peptide ions are
+ * accessed by their neutral mass or by overlaping m/z values given a specified mass
+ * accuracy and a set of allowed charge states, like in the SortedMapPeptideIonStore.
+ * <p/>
+ * Mass range queries are binary searches on the mass array and return read-only set views
+ * of the matching array range rather than copies. The index range itself is accessible via
+ * {@link #getFirstIndex(double)}, {@link #getPeptideIon(int)} and {@link #getMass(int)}.
+ * Note that <code>contains</code> on a view is a linear scan of the range.
+ * <p/>
+ * To use it set sigpep.app.analysis.peptide.ion.store.class to this class in the
+ * sigpep-app.properties file.
+ */
+public class SortedArrayPeptideIonStore<P extends PeptideIon> implements PeptideIonStore<P> {
+
+    private int massPrecission = Configuration.getInstance().getInt("sigpep.app.monoisotopic.mass.precision");
+    private Map<Integer, Double> chargeStates;
+    private double massAccuracy;
+
+    /**
+     * the rounded neutral masses of the peptide ions in ascending order
+     */
+    private double[] masses = new double[0];
+
+    /**
+     * the peptide ions in the order of their masses
+     */
+    private Object[] peptideIons = new Object[0];
+
+    /**
+     * the distinct rounded neutral masses in ascending order
+     */
+    private double[] uniqueMasses = new double[0];
+
+    /**
+     * Constructs a peptide ion store.
+     *
+     * @param chargeStates   the allowed precursor ion charge states
+     * @param massAccuracy   the mass accuracy of the mass spectrometer
+     * @param massPrecission the number of decimals the neutral masses are rounded to
+     */
+    public SortedArrayPeptideIonStore(Set<Integer> chargeStates,
+                                      double massAccuracy,
+                                      int massPrecission) {
+        this(chargeStates, massAccuracy);
+        this.massPrecission = massPrecission;
+    }
+
+    /**
+     * Constructs a peptide ion store.
+     *
+     * @param chargeStates the allowed precursor ion charge states
+     * @param massAccuracy the mass accuracy of the mass spectrometer
+     */
+    public SortedArrayPeptideIonStore(Set<Integer> chargeStates,
+                                      double massAccuracy) {
+
+        this.setChargeStates(chargeStates);
+        this.massAccuracy = massAccuracy;
+    }
+
+    /**
+     * Adds peptide ions to the store. Peptide ions equal to one already
+     * in the store are ignored.
+     *
+     * @param peptideIons the peptide ions
+     */
+    public void populate(Collection<P> peptideIons) {
+
+        //drop duplicates, as the sets of the sorted map store do
+        Collection<P> newPeptideIons = peptideIons;
+        if (!(peptideIons instanceof Set) || this.peptideIons.length > 0) {
+            Set<P> uniquePeptideIons = new LinkedHashSet<P>();
+            for (int i = 0; i < this.peptideIons.length; i++) {
+                uniquePeptideIons.add(getPeptideIon(i));
+            }
+            uniquePeptideIons.addAll(peptideIons);
+            newPeptideIons = uniquePeptideIons;
+        }
+
+        int size = newPeptideIons.size();
+        double[] newMasses = new double[size];
+        Object[] newPeptideIonArray = new Object[size];
+
+        int i = 0;
+        for (P peptideIon : newPeptideIons) {
+            newMasses[i] = SigPepUtil.round(peptideIon.getNeutralMassPeptide(), massPrecission);
+            newPeptideIonArray[i] = peptideIon;
+            i++;
+        }
+
+        sort(newMasses, newPeptideIonArray);
+
+        this.masses = newMasses;
+        this.peptideIons = newPeptideIonArray;
+        this.uniqueMasses = getUniqueMasses(newMasses);
+    }
+
+    /**
+     * Adds peptide ions to the store. The added peptide ions are sorted on their own
+     * and merged into the arrays, the peptide ions already in the store are not sorted
+     * again. Peptide ions equal to one already in the store are ignored.
+     *
+     * @param peptideIons the peptide ions to add
+     */
+    public void add(Collection<P> peptideIons) {
+
+        Set<P> addedPeptideIons = new LinkedHashSet<P>();
+        for (P peptideIon : peptideIons) {
+            if (indexOf(peptideIon) == -1) {
+                addedPeptideIons.add(peptideIon);
+            }
+        }
+
+        if (addedPeptideIons.isEmpty()) {
+            return;
+        }
+
+        int addedCount = addedPeptideIons.size();
+        double[] addedMasses = new double[addedCount];
+        Object[] addedPeptideIonArray = new Object[addedCount];
+
+        int j = 0;
+        for (P peptideIon : addedPeptideIons) {
+            addedMasses[j] = SigPepUtil.round(peptideIon.getNeutralMassPeptide(), massPrecission);
+            addedPeptideIonArray[j] = peptideIon;
+            j++;
+        }
+
+        sort(addedMasses, addedPeptideIonArray);
+
+        //merge into new arrays, views created before keep the old ones
+        int size = masses.length + addedCount;
+        double[] newMasses = new double[size];
+        Object[] newPeptideIonArray = new Object[size];
+
+        int i = 0;
+        j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j == addedCount || (i < masses.length && masses[i] <= addedMasses[j])) {
+                newMasses[k] = masses[i];
+                newPeptideIonArray[k] = this.peptideIons[i++];
+            } else {
+                newMasses[k] = addedMasses[j];
+                newPeptideIonArray[k] = addedPeptideIonArray[j++];
+            }
+        }
+
+        this.masses = newMasses;
+        this.peptideIons = newPeptideIonArray;
+        this.uniqueMasses = getUniqueMasses(newMasses);
+    }
+
+    /**
+     * Removes peptide ions from the store. The remaining peptide ions keep their order,
+     * so the arrays are compacted without sorting them again.
+     *
+     * @param peptideIons the peptide ions to remove
+     */
+    public void remove(Collection<P> peptideIons) {
+
+        boolean[] removed = new boolean[masses.length];
+        int removedCount = 0;
+        for (P peptideIon : peptideIons) {
+            int index = indexOf(peptideIon);
+            if (index != -1 && !removed[index]) {
+                removed[index] = true;
+                removedCount++;
+            }
+        }
+
+        if (removedCount == 0) {
+            return;
+        }
+
+        //compact into new arrays, views created before keep the old ones
+        int size = masses.length - removedCount;
+        double[] newMasses = new double[size];
+        Object[] newPeptideIonArray = new Object[size];
+
+        int k = 0;
+        for (int i = 0; i < masses.length; i++) {
+            if (!removed[i]) {
+                newMasses[k] = masses[i];
+                newPeptideIonArray[k] = this.peptideIons[i];
+                k++;
+            }
+        }
+
+        this.masses = newMasses;
+        this.peptideIons = newPeptideIonArray;
+        this.uniqueMasses = getUniqueMasses(newMasses);
+    }
+
+    /**
+     * Returns the peptide ions with a rounded neutral mass.
+     *
+     * @param mass the rounded neutral mass
+     * @return a read-only view of the peptide ions or null if there are none with this mass
+     */
+    public Set<P> getPeptideIonsWithMass(double mass) {
+
+        int fromIndex = getFirstIndex(mass);
+        if (fromIndex == masses.length || masses[fromIndex] != mass) {
+            return null;
+        }
+
+        int toIndex = fromIndex + 1;
+        while (toIndex < masses.length && masses[toIndex] == mass) {
+            toIndex++;
+        }
+
+        return new PeptideIonRange(fromIndex, toIndex);
+    }
+
+    /**
+     * Returns the peptide ions with a rounded neutral mass equal or greater than
+     * lowerMassLimit and less than upperMassLimit.
+     *
+     * @param lowerMassLimit the lower mass limit (inclusive)
+     * @param upperMassLimit the upper mass limit (exclusive)
+     * @return a read-only view of the peptide ions
+     */
+    public Set<P> getPeptideIonsInMassRange(double lowerMassLimit, double upperMassLimit) {
+
+        int fromIndex = getFirstIndex(lowerMassLimit);
+        int toIndex = Math.max(fromIndex, getFirstIndex(upperMassLimit));
+
+        return new PeptideIonRange(fromIndex, toIndex);
+    }
+
+    /**
+     * Returns the peptide ions whose m/z overlaps with the m/z of a peptide ion
+     * at each of the allowed charge states.
+     *
+     * @param peptideIon the peptide ion
+     * @return a map of charge states and overlapping peptide ions
+     */
+    public Map<Integer, Set<P>> getPeptideIonsWithOverlappingMassOverCharge(P peptideIon) {
+        double mass = peptideIon.getNeutralMassPeptide();
+        mass = SigPepUtil.round(mass, massPrecission);
+        return getPeptideIonsWithOverlappingMassOverCharge(mass);
+    }
+
+    /**
+     * Returns the peptide ions whose m/z overlaps with the m/z of a neutral peptide
+     * mass at each of the allowed charge states.
+     *
+     * @param neutralMassPeptide the neutral peptide mass
+     * @return a map of charge states and overlapping peptide ions
+     */
+    public Map<Integer, Set<P>> getPeptideIonsWithOverlappingMassOverCharge(double neutralMassPeptide) {
+
+        double mass = SigPepUtil.round(neutralMassPeptide, massPrecission);
+
+        Map<Integer, Set<P>> retVal = new TreeMap<Integer, Set<P>>();
+
+        for (Integer charge : this.chargeStates.keySet()) {
+
+            HashSet<Integer> chargeSet = new HashSet<Integer>();
+            chargeSet.add(charge);
+
+            MassOverChargeRange targetPeptideMassOverChargeRange = new MassOverChargeRangeImpl(mass, chargeSet, massAccuracy);
+            Set<P> overlappingPeptides = new HashSet<P>();
+
+            for (MassOverChargeRange[] backgroundPeptideMassOverChargeRange : targetPeptideMassOverChargeRange.getFlankingPeptideMassOverChargeRanges(chargeStates.keySet())) {
+
+                double lowerFlankingMass = backgroundPeptideMassOverChargeRange[0].getNeutralPeptideMass();
+                double upperFlankingMass = backgroundPeptideMassOverChargeRange[1].getNeutralPeptideMass();
+
+                //walk the index range instead of creating a view
+                int toIndex = getFirstIndex(upperFlankingMass);
+                for (int i = getFirstIndex(lowerFlankingMass); i < toIndex; i++) {
+                    P peptideIon = getPeptideIon(i);
+                    peptideIon.setAllowedChargeStates(chargeStates);
+                    overlappingPeptides.add(peptideIon);
+                }
+            }
+
+            retVal.put(charge, overlappingPeptides);
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the distinct rounded neutral masses of the peptide ions in ascending order.
+     *
+     * @return a read-only view of the masses
+     */
+    public Set<Double> getUniqueNeutralPeptideIonMasses() {
+
+        return new AbstractSet<Double>() {
+
+            public Iterator<Double> iterator() {
+                return new Iterator<Double>() {
+
+                    private int index = 0;
+
+                    public boolean hasNext() {
+                        return index < uniqueMasses.length;
+                    }
+
+                    public Double next() {
+                        if (index >= uniqueMasses.length) {
+                            throw new NoSuchElementException();
+                        }
+                        return uniqueMasses[index++];
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            public boolean contains(Object o) {
+                return o instanceof Double && Arrays.binarySearch(uniqueMasses, (Double) o) >= 0;
+            }
+
+            public int size() {
+                return uniqueMasses.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of peptide ions in the store.
+     *
+     * @return the number of peptide ions
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * Returns the index of the first peptide ion with a rounded neutral mass equal or greater than a mass.
+     *
+     * @param mass the mass
+     * @return the index, the number of peptide ions if all masses are less than the mass
+     */
+    public int getFirstIndex(double mass) {
+
+        int low = 0;
+        int high = masses.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (masses[middle] < mass) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the index of a peptide ion.
+     *
+     * @param peptideIon the peptide ion
+     * @return the index or -1 if the peptide ion is not in the store
+     */
+    public int indexOf(P peptideIon) {
+
+        double mass = SigPepUtil.round(peptideIon.getNeutralMassPeptide(), massPrecission);
+        for (int i = getFirstIndex(mass); i < masses.length && masses[i] == mass; i++) {
+            if (peptideIons[i].equals(peptideIon)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the peptide ion at an index.
+     *
+     * @param index the index
+     * @return the peptide ion
+     */
+    @SuppressWarnings("unchecked")
+    public P getPeptideIon(int index) {
+        return (P) peptideIons[index];
+    }
+
+    /**
+     * Returns the rounded neutral mass of the peptide ion at an index.
+     *
+     * @param index the index
+     * @return the mass
+     */
+    public double getMass(int index) {
+        return masses[index];
+    }
+
+    /**
+     * Returns the allowed precursor ion charge states.
+     *
+     * @return the charge states
+     */
+    public Set<Integer> getChargeStates() {
+        return chargeStates.keySet();
+    }
+
+    /**
+     * Sets the allowed precursor ion charge states. The peptide ions looked up by
+     * mass are assigned all of them.
+     *
+     * @param chargeStates the charge states
+     */
+    public void setChargeStates(Set<Integer> chargeStates) {
+        this.chargeStates = new TreeMap<Integer, Double>();
+        for (Integer chargeState : chargeStates) {
+            this.chargeStates.put(chargeState, 1.0);
+        }
+    }
+
+    /**
+     * Returns the mass accuracy of the mass spectrometer.
+     *
+     * @return the mass accuracy in Da
+     */
+    public double getMassAccuracy() {
+        return massAccuracy;
+    }
+
+    /**
+     * Sets the mass accuracy of the mass spectrometer.
+     *
+     * @param massAccuracy the mass accuracy in Da
+     */
+    public void setMassAccuracy(double massAccuracy) {
+        this.massAccuracy = massAccuracy;
+    }
+
+    /**
+     * Returns the number of decimals the neutral masses are rounded to.
+     *
+     * @return the mass precision
+     */
+    public int getMassPrecission() {
+        return massPrecission;
+    }
+
+    /**
+     * Sets the number of decimals the neutral masses are rounded to. Masses already
+     * stored are not rounded again.
+     *
+     * @param massPrecission the mass precision
+     */
+    public void setMassPrecission(int massPrecission) {
+        this.massPrecission = massPrecission;
+    }
+
+    /**
+     * Sorts the masses ascending and moves the peptide ions along. Peptide ions with
+     * the same mass keep their order.
+     *
+     * @param keys   the masses
+     * @param values the peptide ions
+     */
+    private static void sort(final double[] keys, Object[] values) {
+
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                return Double.compare(keys[i], keys[j]);
+            }
+        });
+
+        double[] unsortedKeys = keys.clone();
+        Object[] unsortedValues = values.clone();
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = unsortedKeys[order[i]];
+            values[i] = unsortedValues[order[i]];
+        }
+    }
+
+    /**
+     * Returns the distinct values of an ascending array.
+     *
+     * @param masses the masses in ascending order
+     * @return the distinct masses in ascending order
+     */
+    private static double[] getUniqueMasses(double[] masses) {
+
+        int uniqueMassCount = 0;
+        for (int i = 0; i < masses.length; i++) {
+            if (i == 0 || masses[i] != masses[i - 1]) {
+                uniqueMassCount++;
+            }
+        }
+
+        double[] retVal = new double[uniqueMassCount];
+        uniqueMassCount = 0;
+        for (int i = 0; i < masses.length; i++) {
+            if (i == 0 || masses[i] != masses[i - 1]) {
+                retVal[uniqueMassCount++] = masses[i];
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Read-only set view of a range of the peptide ion array. The view keeps
+     * the array it has been created on when the store is populated again.
+     */
+    private class PeptideIonRange extends AbstractSet<P> {
+
+        private final Object[] array;
+        private final int fromIndex;
+        private final int toIndex;
+
+        private PeptideIonRange(int fromIndex, int toIndex) {
+            this.array = peptideIons;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        public Iterator<P> iterator() {
+            return new Iterator<P>() {
+
+                private int index = fromIndex;
+
+                public boolean hasNext() {
+                    return index < toIndex;
+                }
+
+                public P next() {
+                    if (index >= toIndex) {
+                        throw new NoSuchElementException();
+                    }
+                    @SuppressWarnings("unchecked")
+                    P retVal = (P) array[index++];
+                    return retVal;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public int size() {
+            return toIndex - fromIndex;
+        }
+    }
+}
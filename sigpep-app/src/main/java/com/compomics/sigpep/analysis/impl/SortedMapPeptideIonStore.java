@@ -72,6 +72,34 @@ public class SortedMapPeptideIonStore<P extends PeptideIon> implements PeptideIo
         }
     }
 
+    /**
+     * Adds peptide ions to the store. Populating the store is incremental already.
+     *
+     * @param peptideIons the peptide ions to add
+     */
+    public void add(Collection<P> peptideIons) {
+        populate(peptideIons);
+    }
+
+    /**
+     * Removes peptide ions from the store and drops the masses left without
+     * peptide ions.
+     *
+     * @param peptideIons the peptide ions to remove
+     */
+    public void remove(Collection<P> peptideIons) {
+
+        for (P peptideIon : peptideIons) {
+
+            double mass = SigPepUtil.round(peptideIon.getNeutralMassPeptide(), massPrecission);
+
+            Set<P> peptideIonsWithMass = store.get(mass);
+            if (peptideIonsWithMass != null && peptideIonsWithMass.remove(peptideIon) && peptideIonsWithMass.isEmpty()) {
+                store.remove(mass);
+            }
+        }
+    }
+
     /**
      * @param mass
      * @return
@@ -1,620 +1,547 @@
 package com.compomics.sigpep.analysis.query;
 
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.PeptideGenerator;
+import com.compomics.sigpep.SigPepSession;
+import com.compomics.sigpep.persistence.dao.SimpleQueryDao;
+import com.compomics.sigpep.util.SigPepUtil;
+import org.apache.log4j.Logger;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 /**
- * @TODO: JavaDoc missing.
- * @TODO: All code in this class is commented out...
+ * Calculates the number of peptides and signature peptides and the coverage of the
+ * proteome and genome by signature peptides for every combination of a set of proteases.
  * <p/>
- * Created by IntelliJ IDEA.<br>
- * User: mmueller<br>
- * Date: 15-Oct-2007<br>
- * Time: 09:26:00<br>
+ * The peptides emitted by each protease are loaded once and stored as one bit set of
+ * peptide IDs per protease. For every peptide, the proteases for which the peptide is
+ * emitted by exactly one protein sequence are grouped by that sequence. A peptide is a
+ * signature peptide of a protease combination if all proteases of the combination that
+ * emit the peptide fall into the same group, so a combination is evaluated by the union
+ * of the bit sets of its proteases and a pass over the set bits of the union, without
+ * querying the database. Protein and gene coverage are the cardinalities of the unions
+ * of the accession bit sets of the covered sequences. Combinations are evaluated in
+ * parallel.
  */
 public class ProteasePicker {
 
-//    private static final String DEFAULT_PROTEASES = "cnbr,lysc,argc,tryp,pepa,v8de,v8e";
-//
-//    protected static NamedQueryAccess namedQueries = NamedQueryAccess.getInstance();
-//
-//    private static final String SQL_SELECT_SIGPEP_COUNT_BY_PROTEASE_PROTEOME = namedQueries.getString("query.sigPepCoverageByProteaseProteome");
-//    private static final String SQL_SELECT_SIGPEP_COUNT_BY_PROTEASE_GENOME = namedQueries.getString("query.sigPepCoverageByProteaseGenome");
-//
-//    private static final String SQL_SELECT_SIGPEP_COUNT_FOR_PROTEASE_COMBINATION = namedQueries.getString("query.signaturePeptideCountForProteaseCombination");
-//    private static final String SQL_SELECT_PEPTIDE_COUNT_FOR_PROTEASE_COMBINATION = namedQueries.getString("query.peptideCountForProteaseCombination");
-//
-//
-//
-//
-//    public ProteasePicker(DataSource sigpepDatabase) throws DatabaseException {
-//        super(sigpepDatabase);
-//    }
-//
-//    /**
-//     * Returns the number of proteins covered by signature peptides for each
-//     * combination of proteaseFilter.
-//     *
-//     * @return a map with the the protease combinations as keys and the number of proteins with signature peptide as value
-//     */
-//    public Map<Object[], Integer> getProteomeCoverageByProteaseCombination(Set<String> proteaseNames) {
-//
-//        //get the coverage of proteins by signature peptides
-//        int[][] sigPepProteomeCoverageCount = this.fetchSigPepCountByProteaseProteome(proteaseNames);
-//        return getObjectCoverageByProteaseCombination(sigPepProteomeCoverageCount);
-//
-//    }
-//
-//    /**
-//     * Returns the number of genes covered by signature peptides for each
-//     * combination of proteaseFilter.
-//     *
-//     * @return a map with the the protease combinations as keys and the number of proteins with signature peptide as value
-//     */
-//    public Map<Object[], Integer> getGenomeCoverageByProteaseCombination(Set<String> proteaseNames) {
-//
-//        //get the coverage of proteins by signature peptides
-//        int[][] sigPepProteomeCoverageCount = this.fetchSigPepCountByProteaseGenome(proteaseNames);
-//        return getObjectCoverageByProteaseCombination(sigPepProteomeCoverageCount);
-//
-//    }
-//
-//    /**
-//     * Returns the number of objects covered by signature peptides for each
-//     * combination of proteaseFilter.
-//     *
-//     * @param sigPepObjectCoverageCount array returned by fetchSigPepCountByProteaseProteome() or fetchSigPepCountByProteaseGenome()
-//     * @return a map with the the protease combinations as keys and the number of objects with signature peptide as value
-//     */
-//    private Map<Object[], Integer> getObjectCoverageByProteaseCombination(int[][] sigPepObjectCoverageCount) {
-//
-//        Map<Object[], Integer> retVal = new HashMap<Object[], Integer>();
-//
-//        //convert count to binary true or false
-//        int[][] sigPepObjectCoverageBinary = this.countToBinary(sigPepObjectCoverageCount);
-//
-//        //get protease indexes
-//        Set<Integer> proteaseIndexes = new TreeSet<Integer>();
-//        for (int i = 1; i < sigPepObjectCoverageBinary.length; i++) {
-//            proteaseIndexes.add(i);
-//        }
-//
-//        //get combinations of indicies for all possible combination sizes k
-//        Set<Object[]> proteaseIndexCombinations = this.getAllCombinations(proteaseIndexes);
-//
-//        //check proteome coverage of every combination
-//        for (Object[] combination : proteaseIndexCombinations) {
-//
-//            //get proteome coverage for combination
-//            int[][] coverageMatrix = new int[combination.length][];
-//            int c = 0;
-//            for (int i = 0; i < combination.length; i++) {
-//                Integer index = (Integer) combination[i];
-//                coverageMatrix[c] = sigPepObjectCoverageBinary[index];
-//                c++;
-//            }
-//
-//            //get overall coverage for combination
-//            int[] combinationCoverage = ProteasePicker.mergColumnsBinaryMatrix(coverageMatrix);
-//            int combinationCoverageSum = SigPepUtil.sumArray(combinationCoverage);
-//
-//            //add combination and coverage to return value
-//            retVal.put(combination, combinationCoverageSum);
-//
-//
-//        }
-//
-//        return retVal;
-//
-//    }
-//
-//    /**
-//     * Returns combinations for all possible combination sizes k for a set of
-//     * objects.
-//     *
-//     * @param objects the object to combine
-//     * @return the combinations
-//     */
-//    private Set<Object[]> getAllCombinations(Set<?> objects) {
-//
-//        Set<Object[]> retVal = new HashSet<Object[]>();
-//
-//        for (int k = 1; k <= objects.size(); k++) {
-//            Combinations combinations = new Combinations(objects, k);
-//            while (combinations.hasMoreElements()) {
-//                retVal.add(combinations.nextElement());
-//            }
-//        }
-//
-//        return retVal;
-//
-//    }
-//
-//    /**
-//     * Returns the coverage of proteins by signature peptides as a two dimensional
-//     * array.
-//     * <p/>
-//     * The indexes of the first dimension correspond to the SigPep database ID
-//     * of the protease and the indexes of the second dimension corresponding to the
-//     * SigPep database ID of the protein. As protease and protein IDs start with 1
-//     * the length of the first dimension is protease count + 1 and the length of
-//     * the second dimension is max(protein_id) + 1.
-//     *
-//     * @param proteaseNames  the protease to fetch the coverage for
-//     * @return the protein coverage
-//     */
-//    public int[][] fetchSigPepCountByProteaseProteome(Set<String> proteaseNames) {
-//
-//        //initialize array
-//        int m = fetchProteaseCount() + 1;
-//        int n = fetchLastProteinId() + 1;
-//        int[][] retVal = new int[m][n];
-//
-//        try {
-//
-//            //get connection and statement
-//            Connection con = this.getSigPepDatabase().getConnection();
-//            Statement s = con.createStatement();
-//            String sql = SqlUtil.setParameterSet(SQL_SELECT_SIGPEP_COUNT_BY_PROTEASE_PROTEOME, "proteaseNames", proteaseNames);
-//
-//            //fetch result and fill array
-//            ResultSet rs = s.executeQuery(sql);
-//            while (rs.next()) {
-//
-//                int proteaseId = rs.getInt("protease_id");
-//                int proteinId = rs.getInt("protein_id");
-//                int sigPepCount = rs.getInt("count");
-//
-//                retVal[proteaseId][proteinId] = sigPepCount;
-//
-//            }
-//
-//            //clean up
-//            rs.close();
-//            con.close();
-//            s.close();
-//
-//        } catch (SQLException e) {
-//            logger.error("Exception while querying database.", e);
-//        }
-//
-//        return retVal;
-//
-//    }
-//
-//    /**
-//     * Returns the coverage of genes by signature peptides as a two dimensional
-//     * array.
-//     * <p/>
-//     * The indexes of the first dimension correspond to the SigPep database ID
-//     * of the protease and the indexes of the second dimension corresponding to the
-//     * SigPep database ID of the protein. As protease and gene IDs start with 1
-//     * the length of the first dimension is protease count + 1 and the length of
-//     * the second dimension is max(protein_id) + 1.
-//     *
-//     * @return the gene coverage
-//     */
-//    public int[][] fetchSigPepCountByProteaseGenome(Set<String> proteaseNames) {
-//
-//        //initialize array
-//        int m = fetchProteaseCount() + 1;
-//        int n = fetchLastGeneId() + 1;
-//        int[][] retVal = new int[m][n];
-//
-//        try {
-//
-//            //get connection and statement
-//            Connection con = this.getSigPepDatabase().getConnection();
-//            Statement s = con.createStatement();
-//            String sql = SqlUtil.setParameterSet(SQL_SELECT_SIGPEP_COUNT_BY_PROTEASE_GENOME, "proteaseNames", proteaseNames);
-//
-//            //fetch result and fill array
-//            ResultSet rs = s.executeQuery(sql);
-//            while (rs.next()) {
-//
-//                int proteaseId = rs.getInt("protease_id");
-//                int proteinId = rs.getInt("gene_id");
-//                int sigPepCount = rs.getInt("count");
-//
-//                retVal[proteaseId][proteinId] = sigPepCount;
-//
-//            }
-//
-//            //clean up
-//            rs.close();
-//            con.close();
-//            s.close();
-//
-//        } catch (SQLException e) {
-//            logger.error("Exception while querying database.", e);
-//        }
-//
-//        return retVal;
-//
-//    }
-//
-//
-//    /**
-//     * Converts a two dimensional array of integer values into a binary array of zeros.
-//     * <p/>
-//     * For values in the input array > 0 the output will contain a 1 and for
-//     * values < 0 the output array will contain a 0.
-//     *
-//     * @param array two dimensional array of integer values
-//     * @return two dimensional array of zeros and ones
-//     */
-//    public int[][] countToBinary(int[][] array) {
-//
-//        int[][] retVal = new int[array.length][];
-//        for (int i = 0; i < array.length; i++) {
-//            retVal[i] = new int[array[i].length];
-//            for (int j = 0; j < array[i].length; j++) {
-//                if (array[i][j] > 0) retVal[i][j] = 1;
-//            }
-//        }
-//        return retVal;
-//    }
-//
-//    /**
-//     * Merges the second dimension of a two dimensional binary array
-//     * of zeros and ones and returns the merged values in a one
-//     * dimensional array.
-//     * <p/>
-//     * The value at index i of the merged array will be 0 if all values
-//     * at index i of the second dimension of the input array are zero.
-//     * <p/>
-//     * The arrays of the second dimension have to be of equal length.
-//     *
-//     * @param array an array of 0's and 1's
-//     * @return the merged array
-//     */
-//    public static int[] mergColumnsBinaryMatrix(int[][] array) {
-//
-//        if (array.length == 0)
-//            return new int[0];
-//
-//        int length = array[0].length;
-//        for (int i = 1; i < array.length; i++)
-//            if (array[i].length != length)
-//                throw new IllegalArgumentException("All arrays of the second dimension have to be of equal length.");
-//
-//        int[] retVal = new int[array[0].length];
-//        for (int i = 0; i < array.length; i++) {
-//            //if at least one of the values in row j is greater 0 the value of j
-//            //of the return value will be 1
-//            for (int j = 0; j < array[i].length; j++) {
-//                if (array[i][j] > 0) retVal[j] = 1;
-//            }
-//        }
-//        return retVal;
-//    }
-//
-//    /**
-//     * Merges the second dimension of a two dimensional integer array
-//     * and returns the merged values in a one dimensional array.
-//     * <p/>
-//     * The value at index i of the merged array will be the sum of values
-//     * at index i of the second dimension of the input array.
-//     * <p/>
-//     * The arrays of the second dimension have to be of equal length.
-//     *
-//     * @param array an array of 0's and 1's
-//     * @return the merged array
-//     */
-//    public static int[] mergColumnsIntegerMatrix(int[][] array) {
-//
-//        if (array.length == 0)
-//            return new int[0];
-//
-//        int length = array[0].length;
-//        for (int i = 1; i < array.length; i++)
-//            if (array[i].length != length)
-//                throw new IllegalArgumentException("All arrays of the second dimension have to be of equal length.");
-//
-//        int[] retVal = new int[array[0].length];
-//        for (int i = 0; i < array.length; i++) {
-//            //if at least one of the values in row j is greater 0 the value of j
-//            //of the return value will be 1
-//            for (int j = 0; j < array[i].length; j++) {
-//                retVal[j] = retVal[j] + array[i][j];
-//            }
-//        }
-//        return retVal;
-//    }
-//
-//    /**
-//     * Returns the number of signature peptides generated by each possible combination of
-//     * proteaseFilter as a map with protease combinations as key and the signature peptide
-//     * frequency as value.
-//     *
-//     * @return the signature peptide count for each protease combination
-//     */
-//    public Map<Object[], Integer> getSignaturePeptideCountByProteaseCombination() {
-//
-//        Map<Object[], Integer> retVal = new HashMap<Object[], Integer>();
-//
-//        try {
-//
-//            //get connection and statement
-//            Connection con = this.getSigPepDatabase().getConnection();
-//            Statement s = con.createStatement();
-//
-//            //get combinations of indicies for all possible combination sizes k
-//            Set<Integer> proteaseIndexes = this.fetchProteaseIds().keySet();
-//
-//            Set<Object[]> proteaseIdCombinations = this.getAllCombinations(proteaseIndexes);
-//
-//            //check proteome coverage of every combination
-//            for (Object[] combination : proteaseIdCombinations) {
-//
-//                Set<Integer> ids = new HashSet<Integer>();
-//                for (int i = 0; i < combination.length; i++) {
-//                    ids.add((Integer) combination[i]);
-//                }
-//
-//                //fetch result and fill array
-//                String sql = SqlUtil.setParameterSet(SQL_SELECT_SIGPEP_COUNT_FOR_PROTEASE_COMBINATION, "proteaseIds", ids);
-//
-//                ResultSet rs = s.executeQuery(sql);
-//                if (rs.next()) {
-//                    int count = rs.getInt("count");
-//                    retVal.put(combination, count);
-//                }
-//
-//                rs.close();
-//
-//            }
-//
-//            //clean up
-//
-//            con.close();
-//            s.close();
-//
-//        } catch (SQLException e) {
-//            logger.error("Exception while fetching signature peptide count for protease combination.");
-//        }
-//
-//        return retVal;
-//    }
-//
-//    /**
-//     * Returns the number of signature peptides generated by each possible combination of
-//     * proteaseFilter as a map with protease combinations as key and the signature peptide
-//     * frequency as value.
-//     *
-//     * @return the signature peptide count for each protease combination
-//     */
-//    public Map<Object[], Integer> getPeptideCountByProteaseCombination() {
-//
-//        Map<Object[], Integer> retVal = new HashMap<Object[], Integer>();
-//
-//        try {
-//
-//            //get connection and statement
-//            Connection con = this.getSigPepDatabase().getConnection();
-//            Statement s = con.createStatement();
-//
-//            //get combinations of indicies for all possible combination sizes k
-//            Set<Integer> proteaseIndexes = this.fetchProteaseIds().keySet();
-//
-//            Set<Object[]> proteaseIdCombinations = this.getAllCombinations(proteaseIndexes);
-//
-//            //check proteome coverage of every combination
-//            for (Object[] combination : proteaseIdCombinations) {
-//
-//                Set<Integer> ids = new HashSet<Integer>();
-//                for (int i = 0; i < combination.length; i++) {
-//                    ids.add((Integer) combination[i]);
-//                }
-//
-//                //fetch result and fill array
-//                String sql = SqlUtil.setParameterSet(SQL_SELECT_PEPTIDE_COUNT_FOR_PROTEASE_COMBINATION, "proteaseIds", ids);
-//
-//                ResultSet rs = s.executeQuery(sql);
-//                if (rs.next()) {
-//                    int count = rs.getInt("count");
-//                    retVal.put(combination, count);
-//                }
-//
-//                rs.close();
-//
-//            }
-//
-//            //clean up
-//
-//            con.close();
-//            s.close();
-//
-//        } catch (SQLException e) {
-//            logger.error("Exception while fetching signature peptide count for protease combination.");
-//        }
-//
-//        return retVal;
-//    }
-//
-//    /**
-//     * @param proteaseFilter      a comma separated list of protease short names
-//     * @param outputFileName the name of the outputfile
-//     */
-//    public void reportSignaturePeptideCoverageByProteaseCombination(String proteaseFilter, String outputFileName) {
-//
-//        if(proteaseFilter == null){
-//
-//            proteaseFilter = DEFAULT_PROTEASES;
-//
-//        }
-//
-//        Set<String> proteaseNames = new HashSet<String>(Arrays.asList(proteaseFilter.split(",")));
-//
-//        logger.info("creating report for proteome/genome coverage by protease combination for species " + Organisms.getInstance().getOrganism(this.getSigPepDatabase().getTaxonId()) + " ...");
-//
-//        try {
-//
-//            logger.info("fetching protease IDs...");
-//            Map<Integer, String> proteaseIds = this.fetchProteaseIds();
-//
-//            logger.info("fetching protein count...");
-//            int proteinCount = this.fetchProteinCount();
-//            logger.info("fetching gene count...");
-//            int geneCount = this.fetchGeneCount();
-//            logger.info("fetching proteome coverage...");
-//            Map<Object[], Integer> proteomeCoverage = this.getProteomeCoverageByProteaseCombination(proteaseNames);
-//            Map<String, Integer> proteomeCoverageStringKey = new HashMap<String, Integer>();
-//            for (Object[] key : proteomeCoverage.keySet()) {
-//                StringBuffer stringKey = new StringBuffer();
-//                for (Object proteaseId : key) {
-//                    Integer id = (Integer) proteaseId;
-//                    String protease = proteaseIds.get(id);
-//                    stringKey.append(protease).append(" ");
-//                }
-//
-//                proteomeCoverageStringKey.put(stringKey.toString(), proteomeCoverage.get(key));
-//            }
-//            logger.info("fetching genome coverage...");
-//            Map<Object[], Integer> genomeCoverage = this.getGenomeCoverageByProteaseCombination(proteaseNames);
-//            Map<String, Integer> genomeCoverageStringKey = new HashMap<String, Integer>();
-//            for (Object[] key : genomeCoverage.keySet()) {
-//                StringBuffer stringKey = new StringBuffer();
-//                for (Object proteaseId : key) {
-//                    Integer id = (Integer) proteaseId;
-//                    String protease = proteaseIds.get(id);
-//                    stringKey.append(protease).append(" ");
-//                }
-//
-//                genomeCoverageStringKey.put(stringKey.toString(), genomeCoverage.get(key));
-//            }
-//            logger.info("fetching signature peptide count...");
-//            Map<Object[], Integer> signaturePeptideCount = this.getSignaturePeptideCountByProteaseCombination();
-//            Map<String, Integer> signaturePeptideCountStringKey = new HashMap<String, Integer>();
-//            for (Object[] key : signaturePeptideCount.keySet()) {
-//                StringBuffer stringKey = new StringBuffer();
-//                for (Object proteaseId : key) {
-//                    Integer id = (Integer) proteaseId;
-//                    String protease = proteaseIds.get(id);
-//                    stringKey.append(protease).append(" ");
-//                }
-//
-//                signaturePeptideCountStringKey.put(stringKey.toString(), signaturePeptideCount.get(key));
-//            }
-//
-//            logger.info("fetching peptide count...");
-//            Map<Object[], Integer> peptideCount = this.getPeptideCountByProteaseCombination();
-//            Map<String, Integer> peptideCountStringKey = new HashMap<String, Integer>();
-//            for (Object[] key : peptideCount.keySet()) {
-//                StringBuffer stringKey = new StringBuffer();
-//                for (Object proteaseId : key) {
-//                    Integer id = (Integer) proteaseId;
-//                    String protease = proteaseIds.get(id);
-//                    stringKey.append(protease).append(" ");
-//                }
-//
-//                peptideCountStringKey.put(stringKey.toString(), peptideCount.get(key));
-//            }
-//            String outputFilePath = outputDirectory + "/" + outputFileName;
-//            logger.info("writing results to file " + outputFileName + "...");
-//
-//            PrintWriter pw = new PrintWriter(outputFilePath);
-//
-//            //write column header
-//            pw.println("protease combination\t" +
-//                    "protease count\t" +
-//                    "proteome coverage\t" +
-//                    "proteome coverage %\t" +
-//                    "genome coverage\t" +
-//                    "genome coverage %\t" +
-//                    "peptide count\t" +
-//                    "signature peptide count\t" +
-//                    "signature peptide frequency %");
-//            pw.flush();
-//
-//            //write column values
-//            for (String combination : proteomeCoverageStringKey.keySet()) {
-//
-//                String proteaseCombination = combination.replace("[", "").replace("]", "");
-//                String proteaseCount = "" + proteaseCombination.split(" ").length;
-//                int protCoverage = proteomeCoverageStringKey.get(combination);
-//                double protCoveragePercent = SigPepUtil.round(((double) protCoverage / proteinCount) * 100, 2);
-//                int genCoverage = genomeCoverageStringKey.get(combination);
-//                double genCoveragePercent = SigPepUtil.round(((double) genCoverage / geneCount) * 100, 2);
-//                int pepCount = peptideCountStringKey.get(combination);
-//                int sigPepCount = signaturePeptideCountStringKey.get(combination);
-//                double sigPepFrequency = SigPepUtil.round(((double) sigPepCount / pepCount) * 100, 2);
-//
-//                pw.println(proteaseCombination + "\t" +
-//                        proteaseCount + "\t" +
-//                        protCoverage + "\t" +
-//                        protCoveragePercent + "\t" +
-//                        genCoverage + "\t" +
-//                        genCoveragePercent + "\t" +
-//                        pepCount + "\t" +
-//                        sigPepCount + "\t" +
-//                        sigPepFrequency);
-//                pw.flush();
-//
-//            }
-//
-//            pw.close();
-//
-//
-//        } catch (FileNotFoundException e) {
-//            logger.error("Exception while reporting genome/proteome coverage for protease combinations.", e);  //To change body of catch statement use File | Settings | File Templates.
-//        }
-//
-//    }
-//
-//    public static void main(String[] args) {
-//
-//        for (Integer taxonId : Organisms.getInstance().getNcbiTaxonIds()) {
-//
-//            if (taxonId == 9606) {
-//
-//                try {
-//
-//                    ProteasePicker query = null;
-//
-//                    switch (args.length) {
-//
-//                        case (4):
-//
-//                            query = new ProteasePicker(
-//                                    args[0], //DB username
-//                                    args[1].toCharArray(), //DB password
-//                                    taxonId, //NCBI taxon ID
-//                                    args[3]); //output directory
-//
-//                            query.reportSignaturePeptideCoverageByProteaseCombination(null, "coverage_by_protease_combination_" + Organisms.getInstance().getOrganism(taxonId).replace(" ", "_") + ".tab");
-//                            break;
-//
-//                        case (5):
-//
-//                            query = new ProteasePicker(
-//                                    args[0], //DB username
-//                                    args[1].toCharArray(), //DB password
-//                                    taxonId, //NCBI taxon ID
-//                                    args[3]); //output directory
-//
-//                            query.reportSignaturePeptideCoverageByProteaseCombination(args[4], "coverage_by_protease_combination_" + Organisms.getInstance().getOrganism(taxonId).replace(" ", "_")+ "_" + args[4]  + ".tab");
-//                            break;
-//
-//                        default:
-//                           System.out.println("usage: ProteasePicker <sigpep username> <sigpep password> <NCBI taxon ID> <output directory> [<protease [,protease ...]>]");
-//
-//                    }
-//                } catch (DatabaseException e) {
-//                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-//                }
-//            }
-//        }
-//    }
-//
-//    /**
-//     * +- apt/
-//      |  +- index.apt
-//      |
-//      +- xdoc/
-//      |  +- other.xml
-//      |
-//      +- fml/
-//      |  +- general.fml
-//      |  +- faq.fml
-//      |
-//      +- site.xml
-//     */
+    /**
+     * the log4j logger
+     */
+    private static Logger logger = Logger.getLogger(ProteasePicker.class);
+
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the maximum number of proteases, combinations are encoded as int bit masks
+     */
+    public static final int MAXIMUM_PROTEASE_COUNT = 30;
+
+    /**
+     * the protease short names, the index of a protease is its bit in a combination
+     */
+    private List<String> proteaseNames;
+
+    /**
+     * the IDs of the peptides emitted by each protease
+     */
+    private BitSet[] proteasePeptideIds;
+
+    /**
+     * the proteases emitting each peptide
+     */
+    private int[] peptideProteaseMasks;
+
+    /**
+     * the offsets of the unique sequence groups of each peptide in the group arrays
+     */
+    private int[] groupOffsets;
+
+    /**
+     * the proteases for which a peptide is emitted by one sequence only, by group
+     */
+    private int[] groupProteaseMasks;
+
+    /**
+     * the index of the sequence emitting the peptide, by group
+     */
+    private int[] groupSequenceIndexes;
+
+    /**
+     * the indexes of the protein accessions of each sequence
+     */
+    private BitSet[] sequenceProteins;
+
+    /**
+     * the indexes of the gene accessions of each sequence
+     */
+    private BitSet[] sequenceGenes;
+
+    private int proteinCount;
+    private int geneCount;
+
+    //load state, released once the picker is built
+    private Map<String, Integer> peptideIds;
+    private Map<Integer, Integer> sequenceIndexes;
+    private List<int[]> peptideGroups;
+
+    /**
+     * Constructs a protease picker from the digests of a SigPep session.
+     *
+     * @param session            the SigPep session
+     * @param proteaseShortNames the short names of the proteases to combine
+     */
+    public ProteasePicker(SigPepSession session, Set<String> proteaseShortNames) {
+
+        SimpleQueryDao simpleQueryDao = session.getSimpleQueryDao();
+
+        logger.info("fetching protein and gene accessions...");
+        Map<Integer, Set<String>> sequenceIdToProteinAccessionMap = simpleQueryDao.getSequenceIdToProteinAccessionMap();
+        Map<String, String> proteinAccessionToGeneAccessionMap = simpleQueryDao.getProteinAccessionToGeneAccessionMap();
+
+        Map<Integer, Set<String>> sequenceIdToGeneAccessionMap = new HashMap<Integer, Set<String>>();
+        for (Integer sequenceId : sequenceIdToProteinAccessionMap.keySet()) {
+
+            Set<String> geneAccessions = new HashSet<String>();
+            for (String proteinAccession : sequenceIdToProteinAccessionMap.get(sequenceId)) {
+
+                String geneAccession = proteinAccessionToGeneAccessionMap.get(proteinAccession);
+                if (geneAccession != null) {
+                    geneAccessions.add(geneAccession);
+                }
+            }
+            sequenceIdToGeneAccessionMap.put(sequenceId, geneAccessions);
+        }
+
+        initialize(proteaseShortNames, sequenceIdToProteinAccessionMap, sequenceIdToGeneAccessionMap);
+
+        for (int proteaseIndex = 0; proteaseIndex < proteaseNames.size(); proteaseIndex++) {
+
+            String proteaseName = proteaseNames.get(proteaseIndex);
+            logger.info("fetching peptides of protease " + proteaseName + "...");
+
+            PeptideGenerator generator = session.createPeptideGenerator(proteaseName);
+            for (String peptideSequence : generator.getPeptideSequences()) {
+                addPeptide(proteaseIndex, peptideSequence, generator.getSequenceIdsByPeptideSequence(peptideSequence));
+            }
+        }
+
+        compact();
+    }
+
+    /**
+     * Constructs a protease picker from the digests of a set of proteases.
+     *
+     * @param peptideSequenceToSequenceIdsByProtease the IDs of the sequences emitting each peptide sequence by protease short name
+     * @param sequenceIdToProteinAccessionMap        the sequence ID to protein accession mapping
+     * @param sequenceIdToGeneAccessionMap           the sequence ID to gene accession mapping
+     */
+    public ProteasePicker(Map<String, Map<String, Set<Integer>>> peptideSequenceToSequenceIdsByProtease,
+                          Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                          Map<Integer, Set<String>> sequenceIdToGeneAccessionMap) {
+
+        initialize(peptideSequenceToSequenceIdsByProtease.keySet(), sequenceIdToProteinAccessionMap, sequenceIdToGeneAccessionMap);
+
+        for (int proteaseIndex = 0; proteaseIndex < proteaseNames.size(); proteaseIndex++) {
+
+            Map<String, Set<Integer>> digest = peptideSequenceToSequenceIdsByProtease.get(proteaseNames.get(proteaseIndex));
+            for (Map.Entry<String, Set<Integer>> entry : digest.entrySet()) {
+                addPeptide(proteaseIndex, entry.getKey(), entry.getValue());
+            }
+        }
+
+        compact();
+    }
+
+    /**
+     * Returns the short names of the proteases combined.
+     *
+     * @return the protease short names in alphabetical order
+     */
+    public List<String> getProteaseNames() {
+        return Collections.unmodifiableList(proteaseNames);
+    }
+
+    /**
+     * Returns the number of distinct protein accessions of the proteome.
+     *
+     * @return the protein count
+     */
+    public int getProteinCount() {
+        return proteinCount;
+    }
+
+    /**
+     * Returns the number of distinct gene accessions of the genome.
+     *
+     * @return the gene count
+     */
+    public int getGeneCount() {
+        return geneCount;
+    }
+
+    /**
+     * Returns the peptide and signature peptide counts and the proteome and genome
+     * coverage of every combination of the proteases.
+     *
+     * @return the 2^n - 1 protease combinations
+     */
+    public List<ProteaseCombination> getProteaseCombinations() {
+
+        IntStream combinations = IntStream.range(1, 1 << proteaseNames.size());
+        if (config.getBoolean("sigpep.app.protease.combinations.parallel", true)) {
+            combinations = combinations.parallel();
+        }
+
+        return combinations.mapToObj(this::createProteaseCombination).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the peptide and signature peptide counts and the proteome and genome
+     * coverage of a combination of proteases.
+     *
+     * @param proteaseShortNames the short names of the proteases
+     * @return the protease combination
+     * @throws IllegalArgumentException if a protease is not combined by this picker
+     */
+    public ProteaseCombination getProteaseCombination(Set<String> proteaseShortNames) {
+
+        int combination = 0;
+        for (String proteaseShortName : proteaseShortNames) {
+            int proteaseIndex = proteaseNames.indexOf(proteaseShortName);
+            if (proteaseIndex == -1) {
+                throw new IllegalArgumentException("Unknown protease " + proteaseShortName + ".");
+            }
+            combination |= 1 << proteaseIndex;
+        }
+
+        return createProteaseCombination(combination);
+    }
+
+    /**
+     * Writes the coverage of the proteome and genome by signature peptides of every
+     * combination of the proteases as a tab delimited table.
+     *
+     * @param outputStream the output stream to write to
+     */
+    public void reportSignaturePeptideCoverageByProteaseCombination(OutputStream outputStream) {
+
+        PrintWriter pw = new PrintWriter(outputStream);
+
+        //write column header
+        pw.println("protease combination\t" +
+                "protease count\t" +
+                "proteome coverage\t" +
+                "proteome coverage %\t" +
+                "genome coverage\t" +
+                "genome coverage %\t" +
+                "peptide count\t" +
+                "signature peptide count\t" +
+                "signature peptide frequency %");
+
+        //write column values
+        for (ProteaseCombination combination : getProteaseCombinations()) {
+
+            double proteinCoveragePercent = percent(combination.getProteinCount(), proteinCount);
+            double geneCoveragePercent = percent(combination.getGeneCount(), geneCount);
+            double signaturePeptideFrequency = percent(combination.getSignaturePeptideCount(), combination.getPeptideCount());
+
+            StringBuilder proteases = new StringBuilder();
+            for (String proteaseName : combination.getProteaseNames()) {
+                if (proteases.length() > 0) {
+                    proteases.append(" ");
+                }
+                proteases.append(proteaseName);
+            }
+
+            pw.println(proteases + "\t" +
+                    combination.getProteaseNames().size() + "\t" +
+                    combination.getProteinCount() + "\t" +
+                    proteinCoveragePercent + "\t" +
+                    combination.getGeneCount() + "\t" +
+                    geneCoveragePercent + "\t" +
+                    combination.getPeptideCount() + "\t" +
+                    combination.getSignaturePeptideCount() + "\t" +
+                    signaturePeptideFrequency);
+        }
+
+        pw.flush();
+    }
+
+    private static double percent(int count, int total) {
+        if (total == 0) {
+            return 0;
+        }
+        return SigPepUtil.round(((double) count / total) * 100, 2);
+    }
+
+    /**
+     * Evaluates a protease combination.
+     *
+     * @param combination the bit mask of the protease indexes
+     * @return the protease combination
+     */
+    private ProteaseCombination createProteaseCombination(int combination) {
+
+        SortedSet<String> names = new TreeSet<String>();
+        BitSet peptides = new BitSet();
+        for (int proteaseIndex = 0; proteaseIndex < proteaseNames.size(); proteaseIndex++) {
+            if ((combination & (1 << proteaseIndex)) != 0) {
+                names.add(proteaseNames.get(proteaseIndex));
+                peptides.or(proteasePeptideIds[proteaseIndex]);
+            }
+        }
+
+        //a peptide is a signature peptide if all proteases emitting it
+        //emit it from the same single sequence
+        int signaturePeptideCount = 0;
+        BitSet sequences = new BitSet(sequenceProteins.length);
+        for (int peptideId = peptides.nextSetBit(0); peptideId >= 0; peptideId = peptides.nextSetBit(peptideId + 1)) {
+
+            int proteases = combination & peptideProteaseMasks[peptideId];
+            for (int group = groupOffsets[peptideId]; group < groupOffsets[peptideId + 1]; group++) {
+                if ((proteases & ~groupProteaseMasks[group]) == 0) {
+                    signaturePeptideCount++;
+                    sequences.set(groupSequenceIndexes[group]);
+                    break;
+                }
+            }
+        }
+
+        BitSet proteins = new BitSet(proteinCount);
+        BitSet genes = new BitSet(geneCount);
+        for (int sequenceIndex = sequences.nextSetBit(0); sequenceIndex >= 0; sequenceIndex = sequences.nextSetBit(sequenceIndex + 1)) {
+            proteins.or(sequenceProteins[sequenceIndex]);
+            genes.or(sequenceGenes[sequenceIndex]);
+        }
+
+        return new ProteaseCombination(Collections.unmodifiableSortedSet(names), peptides.cardinality(),
+                signaturePeptideCount, proteins.cardinality(), genes.cardinality());
+    }
+
+    /**
+     * Assigns indexes to the proteases, sequences and accessions.
+     *
+     * @param proteaseShortNames              the protease short names
+     * @param sequenceIdToProteinAccessionMap the sequence ID to protein accession mapping
+     * @param sequenceIdToGeneAccessionMap    the sequence ID to gene accession mapping
+     */
+    private void initialize(Set<String> proteaseShortNames,
+                            Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                            Map<Integer, Set<String>> sequenceIdToGeneAccessionMap) {
+
+        if (proteaseShortNames.size() > MAXIMUM_PROTEASE_COUNT) {
+            throw new IllegalArgumentException("Cannot combine more than " + MAXIMUM_PROTEASE_COUNT + " proteases.");
+        }
+
+        proteaseNames = new ArrayList<String>(new TreeSet<String>(proteaseShortNames));
+        proteasePeptideIds = new BitSet[proteaseNames.size()];
+        for (int i = 0; i < proteasePeptideIds.length; i++) {
+            proteasePeptideIds[i] = new BitSet();
+        }
+
+        Set<Integer> sequenceIds = new TreeSet<Integer>(sequenceIdToProteinAccessionMap.keySet());
+        sequenceIds.addAll(sequenceIdToGeneAccessionMap.keySet());
+
+        sequenceIndexes = new HashMap<Integer, Integer>();
+        sequenceProteins = new BitSet[sequenceIds.size()];
+        sequenceGenes = new BitSet[sequenceIds.size()];
+
+        Map<String, Integer> proteinIndexes = new HashMap<String, Integer>();
+        Map<String, Integer> geneIndexes = new HashMap<String, Integer>();
+        for (Integer sequenceId : sequenceIds) {
+
+            int sequenceIndex = sequenceIndexes.size();
+            sequenceIndexes.put(sequenceId, sequenceIndex);
+            sequenceProteins[sequenceIndex] = toBitSet(sequenceIdToProteinAccessionMap.get(sequenceId), proteinIndexes);
+            sequenceGenes[sequenceIndex] = toBitSet(sequenceIdToGeneAccessionMap.get(sequenceId), geneIndexes);
+        }
+
+        proteinCount = proteinIndexes.size();
+        geneCount = geneIndexes.size();
+
+        peptideIds = new HashMap<String, Integer>();
+        peptideGroups = new ArrayList<int[]>();
+    }
+
+    private static BitSet toBitSet(Set<String> accessions, Map<String, Integer> accessionIndexes) {
+        BitSet retVal = new BitSet();
+        if (accessions != null) {
+            for (String accession : accessions) {
+                Integer index = accessionIndexes.get(accession);
+                if (index == null) {
+                    index = accessionIndexes.size();
+                    accessionIndexes.put(accession, index);
+                }
+                retVal.set(index);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Adds a peptide emitted by a protease.
+     *
+     * @param proteaseIndex   the index of the protease
+     * @param peptideSequence the peptide sequence
+     * @param sequenceIds     the IDs of the sequences the protease emits the peptide from
+     */
+    private void addPeptide(int proteaseIndex, String peptideSequence, Set<Integer> sequenceIds) {
+
+        Integer peptideId = peptideIds.get(peptideSequence);
+        if (peptideId == null) {
+            peptideId = peptideIds.size();
+            peptideIds.put(peptideSequence, peptideId);
+            peptideGroups.add(new int[0]);
+        }
+
+        proteasePeptideIds[proteaseIndex].set(peptideId);
+
+        if (sequenceIds.size() != 1) {
+            return;
+        }
+
+        //groups are stored as pairs of sequence index and protease mask
+        Integer sequenceIndex = sequenceIndexes.get(sequenceIds.iterator().next());
+        if (sequenceIndex == null) {
+            sequenceIndex = sequenceIndexes.size();
+            sequenceIndexes.put(sequenceIds.iterator().next(), sequenceIndex);
+        }
+
+        int[] groups = peptideGroups.get(peptideId);
+        for (int i = 0; i < groups.length; i += 2) {
+            if (groups[i] == sequenceIndex) {
+                groups[i + 1] |= 1 << proteaseIndex;
+                return;
+            }
+        }
+        groups = Arrays.copyOf(groups, groups.length + 2);
+        groups[groups.length - 2] = sequenceIndex;
+        groups[groups.length - 1] = 1 << proteaseIndex;
+        peptideGroups.set(peptideId, groups);
+    }
+
+    /**
+     * Packs the peptide groups into flat arrays and releases the load state.
+     */
+    private void compact() {
+
+        int peptideCount = peptideGroups.size();
+
+        peptideProteaseMasks = new int[peptideCount];
+        for (int proteaseIndex = 0; proteaseIndex < proteasePeptideIds.length; proteaseIndex++) {
+            BitSet peptides = proteasePeptideIds[proteaseIndex];
+            for (int peptideId = peptides.nextSetBit(0); peptideId >= 0; peptideId = peptides.nextSetBit(peptideId + 1)) {
+                peptideProteaseMasks[peptideId] |= 1 << proteaseIndex;
+            }
+        }
+
+        groupOffsets = new int[peptideCount + 1];
+        for (int peptideId = 0; peptideId < peptideCount; peptideId++) {
+            groupOffsets[peptideId + 1] = groupOffsets[peptideId] + peptideGroups.get(peptideId).length / 2;
+        }
+
+        groupProteaseMasks = new int[groupOffsets[peptideCount]];
+        groupSequenceIndexes = new int[groupOffsets[peptideCount]];
+        for (int peptideId = 0; peptideId < peptideCount; peptideId++) {
+            int[] groups = peptideGroups.get(peptideId);
+            for (int i = 0; i < groups.length; i += 2) {
+                int group = groupOffsets[peptideId] + i / 2;
+                groupSequenceIndexes[group] = groups[i];
+                groupProteaseMasks[group] = groups[i + 1];
+            }
+        }
+
+        //sequences without accessions emitting signature peptides
+        if (sequenceIndexes.size() > sequenceProteins.length) {
+            int length = sequenceProteins.length;
+            sequenceProteins = Arrays.copyOf(sequenceProteins, sequenceIndexes.size());
+            sequenceGenes = Arrays.copyOf(sequenceGenes, sequenceIndexes.size());
+            for (int i = length; i < sequenceProteins.length; i++) {
+                sequenceProteins[i] = new BitSet();
+                sequenceGenes[i] = new BitSet();
+            }
+        }
+
+        peptideIds = null;
+        sequenceIndexes = null;
+        peptideGroups = null;
+    }
+
+    /**
+     * The peptide and signature peptide counts and the proteome and genome coverage
+     * of a combination of proteases.
+     */
+    public static class ProteaseCombination {
+
+        private SortedSet<String> proteaseNames;
+        private int peptideCount;
+        private int signaturePeptideCount;
+        private int proteinCount;
+        private int geneCount;
+
+        private ProteaseCombination(SortedSet<String> proteaseNames, int peptideCount, int signaturePeptideCount,
+                                    int proteinCount, int geneCount) {
+            this.proteaseNames = proteaseNames;
+            this.peptideCount = peptideCount;
+            this.signaturePeptideCount = signaturePeptideCount;
+            this.proteinCount = proteinCount;
+            this.geneCount = geneCount;
+        }
+
+        /**
+         * Returns the short names of the proteases of the combination.
+         *
+         * @return the protease short names
+         */
+        public SortedSet<String> getProteaseNames() {
+            return proteaseNames;
+        }
+
+        /**
+         * Returns the number of distinct peptide sequences emitted by the combination.
+         *
+         * @return the peptide count
+         */
+        public int getPeptideCount() {
+            return peptideCount;
+        }
+
+        /**
+         * Returns the number of distinct peptide sequences emitted by exactly one protein
+         * sequence when digesting with all proteases of the combination.
+         *
+         * @return the signature peptide count
+         */
+        public int getSignaturePeptideCount() {
+            return signaturePeptideCount;
+        }
+
+        /**
+         * Returns the number of protein accessions with at least one signature peptide.
+         *
+         * @return the proteome coverage
+         */
+        public int getProteinCount() {
+            return proteinCount;
+        }
+
+        /**
+         * Returns the number of gene accessions with at least one signature peptide.
+         *
+         * @return the genome coverage
+         */
+        public int getGeneCount() {
+            return geneCount;
+        }
+
+        public String toString() {
+            return proteaseNames + " peptides: " + peptideCount + ", signature peptides: " + signaturePeptideCount +
+                    ", proteins: " + proteinCount + ", genes: " + geneCount;
+        }
+    }
 }
@@ -6,6 +6,8 @@ import com.opensymphony.oscache.base.persistence.PersistenceListener;
 import com.opensymphony.oscache.plugins.diskpersistence.HashDiskPersistenceListener;
 import com.compomics.sigpep.CacheFactory;
 import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.ExecutorServiceLocator;
+import com.compomics.sigpep.LoadingCache;
 
 import java.util.Properties;
 
@@ -57,4 +59,22 @@ public class CacheFactoryImpl extends CacheFactory {
 
         return retVal;
     }
+
+    /**
+     * Creates a cache for the datasets SigPep sessions load from the database. The maximum
+     * size and refresh interval are set by the sigpep.app.dataset.cache.* properties,
+     * refreshs run on the application executor service.
+     *
+     * @return the dataset cache
+     */
+    public LoadingCache<String, Object> createDatasetCache() {
+
+        long maximumWeight = config.getLong("sigpep.app.dataset.cache.maximum.size") * 1024 * 1024;
+        long refreshInterval = config.getLong("sigpep.app.dataset.cache.refresh.interval") * 60 * 1000;
+
+        return new LoadingCache<String, Object>(maximumWeight,
+                refreshInterval,
+                new SessionDatasetWeigher(),
+                ExecutorServiceLocator.getInstance().getExecutorService());
+    }
 }
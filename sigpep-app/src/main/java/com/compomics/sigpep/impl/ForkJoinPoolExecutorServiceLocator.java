@@ -0,0 +1,138 @@
+package com.compomics.sigpep.impl;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.ExecutorServiceLocator;
+import com.compomics.sigpep.ExecutorServiceMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of ExecutorServiceLocator that returns a work stealing
+ * fork join pool bounded to a fixed number of worker threads.
+ * <p/>
+ * The number of worker threads is specified by sigpep.app.executor.service.parallelism
+ * in the sigpep-app.properties file. If it is missing or not greater than 0 the
+ * number of available processors is used.
+ */
+public class ForkJoinPoolExecutorServiceLocator extends ExecutorServiceLocator {
+
+    /**
+     * Returns an executor service. The implementation is specified
+     * by the sigpep.app.executor.service.class in the sigpep-app.properties file.
+     *
+     * @return the executor service
+     */
+    public synchronized ExecutorService getExecutorService() {
+
+        if (executorService == null) {
+
+            int parallelism = Configuration.getInstance().getInt("sigpep.app.executor.service.parallelism", 0);
+            if (parallelism <= 0) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            }
+
+            executorService = new CountingForkJoinPool(parallelism);
+        }
+
+        return executorService;
+    }
+
+    /**
+     * Returns a snapshot of the load of the fork join pool. The completed task count
+     * includes the tasks submitted as Runnable or Callable only, alone or with invokeAll.
+     *
+     * @return the executor service metrics
+     */
+    public synchronized ExecutorServiceMetrics getMetrics() {
+
+        ExecutorService service = getExecutorService();
+        if (!(service instanceof CountingForkJoinPool)) {
+            return super.getMetrics();
+        }
+
+        CountingForkJoinPool pool = (CountingForkJoinPool) service;
+
+        return createMetrics(pool.getPoolSize(),
+                pool.getActiveThreadCount(),
+                pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount(),
+                pool.getCompletedTaskCount());
+    }
+
+    /**
+     * Fork join pool that counts the completed Runnable and Callable tasks.
+     */
+    private static class CountingForkJoinPool extends ForkJoinPool {
+
+        /**
+         * the number of completed tasks
+         */
+        private final AtomicLong completedTaskCount = new AtomicLong();
+
+        private CountingForkJoinPool(int parallelism) {
+            super(parallelism);
+        }
+
+        private long getCompletedTaskCount() {
+            return completedTaskCount.get();
+        }
+
+        public void execute(Runnable task) {
+            if (task instanceof ForkJoinTask) {
+                super.execute(task);
+            } else {
+                super.execute(countCompletion(task));
+            }
+        }
+
+        public ForkJoinTask<?> submit(Runnable task) {
+            if (task instanceof ForkJoinTask) {
+                return super.submit(task);
+            }
+            return super.submit(countCompletion(task));
+        }
+
+        public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+            return super.submit(countCompletion(task), result);
+        }
+
+        public <T> ForkJoinTask<T> submit(final Callable<T> task) {
+            return super.submit(countCompletion(task));
+        }
+
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+            List<Callable<T>> countedTasks = new ArrayList<Callable<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                countedTasks.add(countCompletion(task));
+            }
+            return super.invokeAll(countedTasks);
+        }
+
+        private <T> Callable<T> countCompletion(final Callable<T> task) {
+            return new Callable<T>() {
+                public T call() throws Exception {
+                    try {
+                        return task.call();
+                    } finally {
+                        completedTaskCount.incrementAndGet();
+                    }
+                }
+            };
+        }
+
+        private Runnable countCompletion(final Runnable task) {
+            return new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        completedTaskCount.incrementAndGet();
+                    }
+                }
+            };
+        }
+    }
+}
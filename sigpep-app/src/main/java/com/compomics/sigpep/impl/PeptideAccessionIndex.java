@@ -0,0 +1,319 @@
+package com.compomics.sigpep.impl;
+
+import java.util.*;
+
+/**
+ * Read-only inverted index of the protein and gene accessions of a digest and the
+ * peptides emitted by the protein sequences they identify.
+ * <p/>
+ * The IDs of the peptides of an accession are stored in ascending order in one int
+ * array per accession, so queries for a few accessions only visit the peptides of
+ * their digests. Gene accessions are numbered and the distinct genes encoding the
+ * protein sequences emitting a peptide are stored as ascending gene IDs in one int
+ * column with an offset array per peptide, so the gene level degeneracy of a peptide
+ * is the length of its gene ID range.
+ */
+class PeptideAccessionIndex {
+
+    /**
+     * the peptide sequence index the peptide IDs refer to
+     */
+    private PeptideSequenceIndex peptideSequenceIndex;
+
+    /**
+     * the peptide IDs by protein accession, ascending
+     */
+    private Map<String, int[]> proteinAccessionToPeptideIds;
+
+    /**
+     * the gene accessions by gene ID
+     */
+    private String[] geneAccessions;
+
+    /**
+     * the gene IDs by gene accession
+     */
+    private Map<String, Integer> geneIds;
+
+    /**
+     * the peptide IDs by gene ID, ascending
+     */
+    private int[][] geneIdToPeptideIds;
+
+    /**
+     * the index of the first gene ID of each peptide, followed by the gene ID count
+     */
+    private int[] peptideGeneOffsets;
+
+    /**
+     * the distinct gene IDs of each peptide, ascending
+     */
+    private int[] peptideGeneIds;
+
+    /**
+     * Builds the inverted index of a peptide sequence index.
+     *
+     * @param index                           the peptide sequence index
+     * @param sequenceIdToProteinAccessionMap the sequence ID to protein accession mapping
+     * @param sequenceIdToGeneAccessionMap    the sequence ID to gene accession mapping
+     */
+    PeptideAccessionIndex(PeptideSequenceIndex index,
+                          Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                          Map<Integer, Set<String>> sequenceIdToGeneAccessionMap) {
+
+        this.peptideSequenceIndex = index;
+
+        Map<String, PeptideIdList> proteinLists = new HashMap<String, PeptideIdList>();
+        List<PeptideIdList> geneLists = new ArrayList<PeptideIdList>();
+        List<String> geneAccessionList = new ArrayList<String>();
+        geneIds = new HashMap<String, Integer>();
+
+        //number the genes and translate the gene accessions of each sequence once
+        Map<Integer, int[]> sequenceIdToGeneIds = new HashMap<Integer, int[]>();
+
+        peptideGeneOffsets = new int[index.getPeptideCount() + 1];
+        peptideGeneIds = new int[index.getPeptideCount()];
+        int[] genes = new int[8];
+
+        //peptides are visited in ascending ID order, so the lists come out sorted
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
+
+            int geneCount = 0;
+            for (int i = 0; i < index.getSequenceIdCount(peptideId); i++) {
+
+                int sequenceId = index.getSequenceId(peptideId, i);
+                add(proteinLists, get(sequenceIdToProteinAccessionMap, sequenceId), peptideId);
+
+                int[] sequenceGeneIds = sequenceIdToGeneIds.get(sequenceId);
+                if (sequenceGeneIds == null) {
+                    Set<String> geneAccessions = get(sequenceIdToGeneAccessionMap, sequenceId);
+                    sequenceGeneIds = new int[geneAccessions.size()];
+                    int g = 0;
+                    for (String geneAccession : geneAccessions) {
+                        Integer geneId = geneIds.get(geneAccession);
+                        if (geneId == null) {
+                            geneId = geneAccessionList.size();
+                            geneIds.put(geneAccession, geneId);
+                            geneAccessionList.add(geneAccession);
+                            geneLists.add(new PeptideIdList());
+                        }
+                        sequenceGeneIds[g++] = geneId;
+                    }
+                    sequenceIdToGeneIds.put(sequenceId, sequenceGeneIds);
+                }
+
+                for (int geneId : sequenceGeneIds) {
+                    geneLists.get(geneId).add(peptideId);
+                    if (geneCount == genes.length) {
+                        genes = Arrays.copyOf(genes, geneCount * 2);
+                    }
+                    genes[geneCount++] = geneId;
+                }
+            }
+
+            //distinct gene IDs of the peptide
+            Arrays.sort(genes, 0, geneCount);
+            int offset = peptideGeneOffsets[peptideId];
+            for (int i = 0; i < geneCount; i++) {
+                if (i == 0 || genes[i] != genes[i - 1]) {
+                    if (offset == peptideGeneIds.length) {
+                        peptideGeneIds = Arrays.copyOf(peptideGeneIds, offset * 2 + 1);
+                    }
+                    peptideGeneIds[offset++] = genes[i];
+                }
+            }
+            peptideGeneOffsets[peptideId + 1] = offset;
+        }
+
+        peptideGeneIds = Arrays.copyOf(peptideGeneIds, peptideGeneOffsets[index.getPeptideCount()]);
+        proteinAccessionToPeptideIds = toArrays(proteinLists);
+        geneAccessions = geneAccessionList.toArray(new String[geneAccessionList.size()]);
+        geneIdToPeptideIds = new int[geneLists.size()][];
+        for (int geneId = 0; geneId < geneIdToPeptideIds.length; geneId++) {
+            geneIdToPeptideIds[geneId] = Arrays.copyOf(geneLists.get(geneId).ids, geneLists.get(geneId).size);
+        }
+    }
+
+    /**
+     * Returns the peptide sequence index the peptide IDs refer to.
+     *
+     * @return the peptide sequence index
+     */
+    PeptideSequenceIndex getPeptideSequenceIndex() {
+        return peptideSequenceIndex;
+    }
+
+    /**
+     * Returns the IDs of the peptides emitted by the protein sequences identified by
+     * a set of protein accessions.
+     *
+     * @param proteinAccessions the protein accessions
+     * @return the peptide IDs in ascending order
+     */
+    int[] getPeptideIdsByProteinAccessions(Set<String> proteinAccessions) {
+
+        List<int[]> arrays = new ArrayList<int[]>();
+        for (String accession : proteinAccessions) {
+            int[] peptideIds = proteinAccessionToPeptideIds.get(accession);
+            if (peptideIds != null) {
+                arrays.add(peptideIds);
+            }
+        }
+
+        return union(arrays);
+    }
+
+    /**
+     * Returns the IDs of the peptides emitted by the protein sequences encoded by the
+     * genes identified by a set of gene accessions.
+     *
+     * @param geneAccessions the gene accessions
+     * @return the peptide IDs in ascending order
+     */
+    int[] getPeptideIdsByGeneAccessions(Set<String> geneAccessions) {
+
+        List<int[]> arrays = new ArrayList<int[]>();
+        for (String accession : geneAccessions) {
+            Integer geneId = geneIds.get(accession);
+            if (geneId != null) {
+                arrays.add(geneIdToPeptideIds[geneId]);
+            }
+        }
+
+        return union(arrays);
+    }
+
+    /**
+     * Returns the number of distinct genes encoding the protein sequences that
+     * emit a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @return the gene level degeneracy
+     */
+    int getGeneLevelDegeneracy(int peptideId) {
+        return peptideGeneOffsets[peptideId + 1] - peptideGeneOffsets[peptideId];
+    }
+
+    /**
+     * Returns the i-th gene ID of a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @param i         the index between 0 and getGeneLevelDegeneracy(peptideId) - 1
+     * @return the gene ID, the gene IDs of a peptide are ascending
+     */
+    int getGeneId(int peptideId, int i) {
+        return peptideGeneIds[peptideGeneOffsets[peptideId] + i];
+    }
+
+    /**
+     * Returns the IDs of a set of gene accessions. Gene accessions not
+     * encoding any protein sequence of the digest are ignored.
+     *
+     * @param geneAccessions the gene accessions
+     * @return the gene IDs
+     */
+    BitSet getGeneIds(Set<String> geneAccessions) {
+        BitSet retVal = new BitSet(this.geneAccessions.length);
+        for (String accession : geneAccessions) {
+            Integer geneId = geneIds.get(accession);
+            if (geneId != null) {
+                retVal.set(geneId);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the accession of a gene ID.
+     *
+     * @param geneId the gene ID
+     * @return the gene accession
+     */
+    String getGeneAccession(int geneId) {
+        return geneAccessions[geneId];
+    }
+
+    private static Set<String> get(Map<Integer, Set<String>> sequenceIdToAccessionMap, int sequenceId) {
+        Set<String> retVal = null;
+        if (sequenceIdToAccessionMap != null) {
+            retVal = sequenceIdToAccessionMap.get(sequenceId);
+        }
+        if (retVal == null) {
+            retVal = Collections.emptySet();
+        }
+        return retVal;
+    }
+
+    private static void add(Map<String, PeptideIdList> lists, Set<String> accessions, int peptideId) {
+        for (String accession : accessions) {
+            PeptideIdList list = lists.get(accession);
+            if (list == null) {
+                list = new PeptideIdList();
+                lists.put(accession, list);
+            }
+            list.add(peptideId);
+        }
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, PeptideIdList> lists) {
+        Map<String, int[]> retVal = new HashMap<String, int[]>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, PeptideIdList> entry : lists.entrySet()) {
+            retVal.put(entry.getKey(), Arrays.copyOf(entry.getValue().ids, entry.getValue().size));
+        }
+        return retVal;
+    }
+
+    /**
+     * Merges the sorted peptide ID arrays of a set of accessions.
+     *
+     * @param arrays the peptide IDs of the accessions
+     * @return the distinct peptide IDs in ascending order
+     */
+    private static int[] union(List<int[]> arrays) {
+
+        int length = 0;
+        for (int[] peptideIds : arrays) {
+            length += peptideIds.length;
+        }
+
+        if (arrays.size() == 1) {
+            return arrays.get(0).clone();
+        }
+
+        int[] retVal = new int[length];
+        int offset = 0;
+        for (int[] peptideIds : arrays) {
+            System.arraycopy(peptideIds, 0, retVal, offset, peptideIds.length);
+            offset += peptideIds.length;
+        }
+        Arrays.sort(retVal);
+
+        int size = 0;
+        for (int i = 0; i < retVal.length; i++) {
+            if (size == 0 || retVal[size - 1] != retVal[i]) {
+                retVal[size++] = retVal[i];
+            }
+        }
+
+        return Arrays.copyOf(retVal, size);
+    }
+
+    /**
+     * Growable list of ascending peptide IDs that ignores repeated IDs.
+     */
+    private static class PeptideIdList {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int peptideId) {
+            if (size > 0 && ids[size - 1] == peptideId) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = peptideId;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.compomics.sigpep.impl;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Read-only store of the peptide feature coordinates of a digest.
+ * <p/>
+ * The start and end positions of all features are stored in two int columns grouped
+ * by protein sequence, the sequences are ordered by ascending sequence ID and the
+ * feature range of a sequence is given by an offset array with one entry per sequence
+ * plus one. Positions are 1-based and inclusive, as in the peptide feature table.
+ */
+class PeptideFeatureStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the IDs of the protein sequences with peptide features, ascending
+     */
+    private int[] sequenceIds;
+
+    /**
+     * the first feature of each sequence, the last element is the feature count
+     */
+    private int[] offsets;
+
+    /**
+     * the feature start positions
+     */
+    private int[] starts;
+
+    /**
+     * the feature end positions
+     */
+    private int[] ends;
+
+    /**
+     * Packs a map of peptide feature coordinates into a store.
+     *
+     * @param peptideFeatures a map of protein sequence IDs and lists of start and end
+     *                        positions of the peptide features
+     */
+    PeptideFeatureStore(Map<Integer, List<int[]>> peptideFeatures) {
+
+        sequenceIds = new int[peptideFeatures.size()];
+        int i = 0;
+        int featureCount = 0;
+        for (Map.Entry<Integer, List<int[]>> entry : peptideFeatures.entrySet()) {
+            sequenceIds[i++] = entry.getKey();
+            featureCount += entry.getValue().size();
+        }
+        Arrays.sort(sequenceIds);
+
+        offsets = new int[sequenceIds.length + 1];
+        starts = new int[featureCount];
+        ends = new int[featureCount];
+        for (i = 0; i < sequenceIds.length; i++) {
+            int f = offsets[i];
+            for (int[] coordinates : peptideFeatures.get(sequenceIds[i])) {
+                starts[f] = coordinates[0];
+                ends[f] = coordinates[1];
+                f++;
+            }
+            offsets[i + 1] = f;
+        }
+    }
+
+    /**
+     * Creates a store from its packed columns.
+     *
+     * @param sequenceIds the IDs of the protein sequences with peptide features, ascending
+     * @param offsets     the first feature of each sequence followed by the feature count
+     * @param starts      the feature start positions
+     * @param ends        the feature end positions
+     */
+    PeptideFeatureStore(int[] sequenceIds, int[] offsets, int[] starts, int[] ends) {
+        this.sequenceIds = sequenceIds;
+        this.offsets = offsets;
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Returns the number of protein sequences with peptide features.
+     *
+     * @return the sequence count
+     */
+    int getSequenceCount() {
+        return sequenceIds.length;
+    }
+
+    /**
+     * Returns the ID of the i-th protein sequence with peptide features.
+     *
+     * @param i the index between 0 and getSequenceCount() - 1
+     * @return the protein sequence ID
+     */
+    int getSequenceId(int i) {
+        return sequenceIds[i];
+    }
+
+    /**
+     * Returns the index of the first feature of the i-th protein sequence.
+     *
+     * @param i the index between 0 and getSequenceCount(), the value for
+     *          getSequenceCount() is the feature count
+     * @return the feature index
+     */
+    int getFeatureOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Returns the total number of peptide features.
+     *
+     * @return the feature count
+     */
+    int getFeatureCount() {
+        return starts.length;
+    }
+
+    /**
+     * Returns the start position of a feature.
+     *
+     * @param f the feature index
+     * @return the 1-based start position
+     */
+    int getStart(int f) {
+        return starts[f];
+    }
+
+    /**
+     * Returns the end position of a feature.
+     *
+     * @param f the feature index
+     * @return the 1-based end position, inclusive
+     */
+    int getEnd(int f) {
+        return ends[f];
+    }
+
+    /**
+     * Returns the packed columns of the store: sequence IDs, offsets, start and end
+     * positions.
+     *
+     * @return the columns, not to be modified
+     */
+    int[][] getColumns() {
+        return new int[][]{sequenceIds, offsets, starts, ends};
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the store.
+     *
+     * @return the estimated memory footprint in bytes
+     */
+    long getEstimatedMemory() {
+        return 4L * (sequenceIds.length + offsets.length + starts.length + ends.length);
+    }
+
+    /**
+     * Unpacks the store into a map of peptide feature coordinates.
+     *
+     * @return a new map of protein sequence IDs and lists of start and end positions
+     */
+    Map<Integer, List<int[]>> toMap() {
+        Map<Integer, List<int[]>> retVal = new HashMap<Integer, List<int[]>>(sequenceIds.length * 4 / 3 + 1);
+        for (int i = 0; i < sequenceIds.length; i++) {
+            List<int[]> features = new ArrayList<int[]>(offsets[i + 1] - offsets[i]);
+            for (int f = offsets[i]; f < offsets[i + 1]; f++) {
+                features.add(new int[]{starts[f], ends[f]});
+            }
+            retVal.put(sequenceIds[i], features);
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,40 @@
+package com.compomics.sigpep.impl;
+
+import com.compomics.sigpep.PeptideGenerator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates peptide generators from protein sequences and peptide features that don't
+ * come from a SigPep database, e.g. synthetic digests.
+ */
+public abstract class PeptideGeneratorFactory {
+
+    /**
+     * Creates a peptide generator.
+     *
+     * @param proteaseNames                   the protease names
+     * @param proteinSequences                a map of protein sequence IDs and protein sequences
+     * @param peptideFeatures                 a map of protein sequence IDs and lists of start and end
+     *                                        positions of the peptide features
+     * @param sequenceIdToProteinAccessionMap the protein sequence ID to protein accession mapping
+     * @param sequenceIdToGeneAccessionMap    the protein sequence ID to gene accession mapping
+     * @return the peptide generator
+     */
+    public static PeptideGenerator createPeptideGenerator(Set<String> proteaseNames,
+                                                          Map<Integer, String> proteinSequences,
+                                                          Map<Integer, List<int[]>> peptideFeatures,
+                                                          Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                                                          Map<Integer, Set<String>> sequenceIdToGeneAccessionMap) {
+
+        PeptideGeneratorImpl retVal = new PeptideGeneratorImpl(proteaseNames);
+        retVal.setProteinSequences(proteinSequences);
+        retVal.setPeptideFeatures(peptideFeatures);
+        retVal.setSequenceIdToProteinAccessionMap(sequenceIdToProteinAccessionMap);
+        retVal.setSequenceIdToGeneAccessionMap(sequenceIdToGeneAccessionMap);
+
+        return retVal;
+    }
+}
@@ -2,9 +2,16 @@ package com.compomics.sigpep.impl;
 
 import org.apache.log4j.Logger;
 import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.model.impl.PeptideIsoformEnumerator;
+import com.compomics.sigpep.Configuration;
 import com.compomics.sigpep.PeptideGenerator;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @TODO: JavaDoc missing.
@@ -20,14 +27,28 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * the logger
      */
     protected static Logger logger = Logger.getLogger(PeptideGeneratorImpl.class);
+    /**
+     * the configuration
+     */
+    private static Configuration config = Configuration.getInstance();
     /**
      * the protein sequences of the organism
      */
-    private Map<Integer, String> proteinSequences;
+    private ProteinSequenceStore proteinSequenceStore;
     /**
      * the peptide features
      */
-    private Map<Integer, List<int[]>> peptideFeatures;
+    private PeptideFeatureStore peptideFeatureStore;
+    /**
+     * protein sequences added one by one, merged into the store when the peptide
+     * sequence index is built
+     */
+    private Map<Integer, String> addedProteinSequences;
+    /**
+     * peptide features added one by one, merged into the store when the peptide
+     * sequence index is built
+     */
+    private Map<Integer, List<int[]>> addedPeptideFeatures;
     /**
      * the names of the proteases this peptide generator is for
      */
@@ -44,6 +65,22 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * the modifications that will be applied to peptide sequences
      */
     private Set<Modification> modifications;
+    /**
+     * the peptide sequence index of the digest, null until first queried or after
+     * the protein sequences, peptide features or proteases have changed
+     */
+    private volatile PeptideSequenceIndex peptideSequenceIndex;
+    /**
+     * the accession index of the digest, null until first queried or after the
+     * accession mappings have changed, rebuilt if it refers to an outdated peptide
+     * sequence index
+     */
+    private volatile PeptideAccessionIndex peptideAccessionIndex;
+    /**
+     * the isoform enumerator for the modifications, null until first used or after
+     * the modifications have changed
+     */
+    private volatile PeptideIsoformEnumerator isoformEnumerator;
 
     /**
      * Constructs a PeptideGenerator instance for the specified set of proteases.
@@ -51,8 +88,10 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @param proteaseNames the protease names
      */
     PeptideGeneratorImpl(Set<String> proteaseNames) {
-        this.proteinSequences = new HashMap<Integer, String>();
-        this.peptideFeatures = new HashMap<Integer, List<int[]>>();
+        this.proteinSequenceStore = new ProteinSequenceStore(new HashMap<Integer, String>());
+        this.peptideFeatureStore = new PeptideFeatureStore(new HashMap<Integer, List<int[]>>());
+        this.addedProteinSequences = new HashMap<Integer, String>();
+        this.addedPeptideFeatures = new HashMap<Integer, List<int[]>>();
         this.proteaseNames = proteaseNames;
         this.modifications = new HashSet<Modification>();
     }
@@ -65,6 +104,7 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     void setSequenceIdToProteinAccessionMap(Map<Integer, Set<String>> sequenceIdToProteinAccessionMap) {
         this.sequenceIdToProteinAccessionMap = sequenceIdToProteinAccessionMap;
+        this.peptideAccessionIndex = null;
     }
 
     /**
@@ -74,6 +114,7 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     void setSequenceIdToGeneAccessionMap(Map<Integer, Set<String>> sequenceIdToGeneAccessionMap) {
         this.sequenceIdToGeneAccessionMap = sequenceIdToGeneAccessionMap;
+        this.peptideAccessionIndex = null;
     }
 
     /**
@@ -82,7 +123,18 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @param proteinSequences a map of protein sequence IDs and protein sequences
      */
     void setProteinSequences(Map<Integer, String> proteinSequences) {
-        this.proteinSequences = proteinSequences;
+        setProteinSequenceStore(new ProteinSequenceStore(proteinSequences));
+    }
+
+    /**
+     * Sets the protein sequences.
+     *
+     * @param proteinSequenceStore the packed protein sequences
+     */
+    void setProteinSequenceStore(ProteinSequenceStore proteinSequenceStore) {
+        this.proteinSequenceStore = proteinSequenceStore;
+        this.addedProteinSequences.clear();
+        this.peptideSequenceIndex = null;
     }
 
     /**
@@ -93,7 +145,18 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      *                        features
      */
     void setPeptideFeatures(Map<Integer, List<int[]>> peptideFeatures) {
-        this.peptideFeatures = peptideFeatures;
+        setPeptideFeatureStore(new PeptideFeatureStore(peptideFeatures));
+    }
+
+    /**
+     * Sets the peptide feature locations.
+     *
+     * @param peptideFeatureStore the packed start and end positions of the peptide features
+     */
+    void setPeptideFeatureStore(PeptideFeatureStore peptideFeatureStore) {
+        this.peptideFeatureStore = peptideFeatureStore;
+        this.addedPeptideFeatures.clear();
+        this.peptideSequenceIndex = null;
     }
 
     /**
@@ -103,6 +166,7 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public void setProteaseNames(Set<String> proteaseNames) {
         this.proteaseNames = proteaseNames;
+        this.peptideSequenceIndex = null;
     }
 
     /**
@@ -112,7 +176,8 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @param sequence the protein sequence string
      */
     void addProteinSequence(int id, String sequence) {
-        this.proteinSequences.put(id, sequence);
+        this.addedProteinSequences.put(id, sequence);
+        this.peptideSequenceIndex = null;
     }
 
     /**
@@ -125,8 +190,8 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
     void addPeptideFeature(int proteinSequenceId, int start, int end) {
 
         //create an empty list if none exists for the protein sequence yet
-        if (!this.peptideFeatures.containsKey(proteinSequenceId)) {
-            this.peptideFeatures.put(proteinSequenceId, new ArrayList<int[]>());
+        if (!this.addedPeptideFeatures.containsKey(proteinSequenceId)) {
+            this.addedPeptideFeatures.put(proteinSequenceId, new ArrayList<int[]>());
         }
 
         //create array new array of ints for start and end position
@@ -135,7 +200,8 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
         coordinates[1] = end;
 
         //add array to list
-        this.peptideFeatures.get(proteinSequenceId).add(coordinates);
+        this.addedPeptideFeatures.get(proteinSequenceId).add(coordinates);
+        this.peptideSequenceIndex = null;
     }
 
     /**
@@ -165,6 +231,7 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public void setPostTranslationalModifications(Set<Modification> modifications) {
         this.modifications = modifications;
+        this.isoformEnumerator = null;
     }
 
     /**
@@ -187,23 +254,10 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public Map<String, Integer> getPeptideSequenceDegeneracy() {
 
-        //generate peptides and store degree
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
         Map<String, Integer> peptide2Degree = new HashMap<String, Integer>();
-        for (Integer sequenceId : peptideFeatures.keySet()) {
-
-            String sequence = proteinSequences.get(sequenceId);
-            for (int[] coordinates : peptideFeatures.get(sequenceId)) {
-
-                int start = coordinates[0];
-                int end = coordinates[1];
-                String peptideSequence = sequence.substring(start - 1, end);
-                if (!peptide2Degree.containsKey(peptideSequence)) {
-                    peptide2Degree.put(peptideSequence, 0);
-                }
-                int peptideDegree = peptide2Degree.get(peptideSequence);
-                peptideDegree++;
-                peptide2Degree.put(peptideSequence, peptideDegree);
-            }
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
+            peptide2Degree.put(index.getPeptideSequence(peptideId), index.getFeatureCount(peptideId));
         }
 
         return peptide2Degree;
@@ -218,12 +272,11 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public Set<String> getPeptideSequencesByProteinSequenceLevelDegeneracy(int degeneracy) {
 
-        Map<String, Integer> peptide2Degree = this.getPeptideSequenceDegeneracy();
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
         Set<String> retVal = new HashSet<String>();
-        for (String peptide : peptide2Degree.keySet()) {
-            int peptideDegree = peptide2Degree.get(peptide);
-            if (peptideDegree == degeneracy) {
-                retVal.add(peptide);
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
+            if (index.getFeatureCount(peptideId) == degeneracy) {
+                retVal.add(index.getPeptideSequence(peptideId));
             }
         }
         return retVal;
@@ -280,7 +333,14 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @return set of peptide sequence strings
      */
     public Set<String> getPeptideSequences() {
-        return this.getPeptideSequenceDegeneracy().keySet();
+
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
+        Set<String> retVal = new HashSet<String>();
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
+            retVal.add(index.getPeptideSequence(peptideId));
+        }
+
+        return retVal;
     }
 
     /**
@@ -290,15 +350,55 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @return set of peptide objects
      */
     public Set<Peptide> getPeptides() {
+        return streamPeptides().collect(Collectors.toCollection(HashSet::new));
+    }
 
-        Map<String, Set<Peptide>> accession2PeptideMap = this.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(null, -1);
-        Set<Peptide> retVal = new HashSet<Peptide>();
+    /**
+     * Returns a lazy stream of the distinct proteolytic peptide objects (including
+     * post-translational modifications) generated by a digest of all protein sequences
+     * of the organism. The peptide objects are created while the stream is consumed,
+     * the stream can be processed in parallel.
+     *
+     * @return a stream of peptide objects
+     */
+    public Stream<Peptide> streamPeptides() {
+        return streamPeptides(null, -1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
 
-        for (Set<Peptide> peptideSet : accession2PeptideMap.values()) {
-            retVal.addAll(peptideSet);
+    /**
+     * Returns a lazy stream of the distinct proteolytic peptide objects (including
+     * post-translational modifications) generated by a digest of the protein sequences
+     * identified by the protein accessions with the specified degeneracy across the
+     * protein sequence space of the organism and a neutral mass of the unmodified
+     * peptide within the mass range. The filters are applied to the peptide sequences
+     * before any peptide object is created, the stream can be processed in parallel.
+     * <p/>
+     * The stream is bound to the digest and modifications at the time of the call.
+     *
+     * @param proteinAccessions the protein accessions, null for all protein sequences
+     * @param degeneracy        the peptide sequence degeneracy, -1 for all degeneracy levels
+     * @param lowerMassCutOff   the lower limit of the unmodified peptide mass (inclusive)
+     * @param upperMassCutOff   the upper limit of the unmodified peptide mass (inclusive)
+     * @return a stream of peptide objects
+     */
+    public Stream<Peptide> streamPeptides(Set<String> proteinAccessions, int degeneracy, double lowerMassCutOff, double upperMassCutOff) {
+
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
+
+        //only visit the peptides of the protein accessions
+        int[] peptideIds = null;
+        int peptideCount = index.getPeptideCount();
+        if (proteinAccessions != null) {
+            PeptideAccessionIndex accessionIndex = getPeptideAccessionIndex();
+            index = accessionIndex.getPeptideSequenceIndex();
+            peptideIds = accessionIndex.getPeptideIdsByProteinAccessions(proteinAccessions);
+            peptideCount = peptideIds.length;
         }
 
-        return retVal;
+        PeptideSpliterator spliterator = new PeptideSpliterator(index, getIsoformEnumerator(), peptideIds, degeneracy,
+                lowerMassCutOff, upperMassCutOff, 0, peptideCount);
+
+        return StreamSupport.stream(spliterator, false);
     }
 
     /**
@@ -311,15 +411,18 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     private Map<String, Set<String>> getProteinAccessionToPeptideSequenceMap(Set<String> proteinAccessions, int degree) {
 
-        Map<String, Set<Integer>> peptide2SequenceId = getPeptideSequenceToSequenceIdMap();
+        PeptideAccessionIndex accessionIndex = getPeptideAccessionIndex();
+        PeptideSequenceIndex index = accessionIndex.getPeptideSequenceIndex();
+        int[] peptideIds = selectPeptideIds(accessionIndex, proteinAccessions);
+
         Map<String, Set<String>> retVal = new HashMap<String, Set<String>>();
-        for (String peptide : peptide2SequenceId.keySet()) {
-            Set<Integer> sequenceIds = peptide2SequenceId.get(peptide);
-            if (degree == -1 || sequenceIds.size() == degree) {
+        for (int peptideId : peptideIds) {
+            String peptide = index.getPeptideSequence(peptideId);
+            if (degree == -1 || index.getSequenceIdCount(peptideId) == degree) {
 
-                for (Integer sequenceId : sequenceIds) {
+                for (int i = 0; i < index.getSequenceIdCount(peptideId); i++) {
 
-                    Set<String> accessions = sequenceIdToProteinAccessionMap.get(sequenceId);
+                    Set<String> accessions = sequenceIdToProteinAccessionMap.get(index.getSequenceId(peptideId, i));
 
                     for (String accession : accessions) {
 
@@ -363,6 +466,23 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
         return this.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(null, degeneracy);
     }
 
+    /**
+     * Returns a map of protein accessions and sets of proteolytic peptide object
+     * (including post-translational modifications) generated by a digest of all
+     * protein sequences of the organism with the specified degeneracy
+     * across the protein sequence space of the organism and a neutral mass of
+     * the unmodified peptide within the mass range. Peptide objects are only
+     * created for peptides within the mass range.
+     *
+     * @param degeneracy      peptide sequence degeneracy
+     * @param lowerMassCutOff the lower limit of the unmodified peptide mass (inclusive)
+     * @param upperMassCutOff the upper limit of the unmodified peptide mass (inclusive)
+     * @return a map of protein accessions and sets of peptide objects
+     */
+    public Map<String, Set<Peptide>> getProteinAccessionToPeptideMap(int degeneracy, double lowerMassCutOff, double upperMassCutOff) {
+        return this.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(null, degeneracy, lowerMassCutOff, upperMassCutOff);
+    }
+
     /**
      * Returns a map of protein accessions and sets of proteolytic peptide object
      * (including post-translational modifications) generated by a digest of the
@@ -394,20 +514,13 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public Set<Peptide> getPeptidesByProteinAccessionAndProteinSequenceLevelDegeneracy(String proteinAccession, int degeneracy) {
 
-        Set<String> accessions = new HashSet<String>();
+        Set<String> accessions = null;
         if (proteinAccession != null) {
-            accessions.add(proteinAccession);
-        } else {
-            accessions = null;
-        }
-
-        Map<String, Set<Peptide>> accession2PeptideMap = this.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(accessions, degeneracy);
-        Set<Peptide> retVal = new HashSet<Peptide>();
-        for (Set<Peptide> peptideSet : accession2PeptideMap.values()) {
-            retVal.addAll(peptideSet);
+            accessions = Collections.singleton(proteinAccession);
         }
 
-        return retVal;
+        return streamPeptides(accessions, degeneracy, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)
+                .collect(Collectors.toCollection(HashSet::new));
     }
 
     /**
@@ -420,15 +533,8 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      */
     public Set<Peptide> getPeptidesByProteinAccession(String proteinAccession) {
 
-        Set<String> accessions = new HashSet<String>();
-        accessions.add(proteinAccession);
-        Map<String, Set<Peptide>> accession2PeptideMap = this.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(accessions, -1);
-        Set<Peptide> retVal = new HashSet<Peptide>();
-        for (Set<Peptide> peptideSet : accession2PeptideMap.values()) {
-            retVal.addAll(peptideSet);
-        }
-
-        return retVal;
+        return streamPeptides(Collections.singleton(proteinAccession), -1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)
+                .collect(Collectors.toCollection(HashSet::new));
     }
 
     /**
@@ -462,55 +568,45 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
 
         Map<String, Set<Peptide>> retVal = new HashMap<String, Set<Peptide>>();
 
-        //get peptides generated by protease combination
-        Map<String, Set<Integer>> peptide2SequenceId = getPeptideSequenceToSequenceIdMap();
+        //get peptides generated by protease combination, only the ones
+        //encoded by the genes if any are given
+        PeptideAccessionIndex accessionIndex = getPeptideAccessionIndex();
+        PeptideSequenceIndex index = accessionIndex.getPeptideSequenceIndex();
+        int[] peptideIds;
+        BitSet geneIds = null;
+        if (geneAccessions == null) {
+            peptideIds = selectPeptideIds(accessionIndex, null);
+        } else {
+            peptideIds = accessionIndex.getPeptideIdsByGeneAccessions(geneAccessions);
+            geneIds = accessionIndex.getGeneIds(geneAccessions);
+        }
 
         //for each peptide...
-        for (String peptide : peptide2SequenceId.keySet()) {
+        for (int peptideId : peptideIds) {
 
-            //...get the sequences that emit the peptide
-            Set<Integer> sequenceIds = peptide2SequenceId.get(peptide);
-
-            //get the genes that encode the sequences
-            Set<String> genes = new HashSet<String>();
-            for (Integer id : sequenceIds) {
-                genes.addAll(this.sequenceIdToGeneAccessionMap.get(id));
-            }
-
-            //if we are interested in all genes or
-            // the gene set encoding the peptide
-            // emmitting sequence(s)...
-            if (geneAccessions == null || genes.removeAll(geneAccessions)) {
-
-                //...first restore the gene set changed by the if statement
-                // again...
-                genes = new HashSet<String>();
-                for (Integer id : sequenceIds) {
-                    genes.addAll(this.sequenceIdToGeneAccessionMap.get(id));
-                }
-
-                //if we don't care about the degree or
-                // the degree matches the degree value...
-                if (degeneracy == -1 || genes.size() == degeneracy) {
-
-//                    System.out.println(peptide +  " emitted by " + genes + " has degree " + degree);
+            //if we don't care about the degree or
+            // the degree matches the degree value...
+            int geneCount = accessionIndex.getGeneLevelDegeneracy(peptideId);
+            if (degeneracy == -1 || geneCount == degeneracy) {
 
-                    //...create the isoforms according to the post translational modifications
-                    Set<Peptide> peptideIsoforms = createPeptideIsoforms(peptide, sequenceIds);
-//                System.out.println("peptideIsoforms = " + peptideIsoforms);
+                Set<Peptide> peptideIsoforms = null;
 
-                    for (Integer sequenceId : sequenceIds) {
+                //...add the peptide to each of its genes
+                for (int i = 0; i < geneCount; i++) {
 
-                        for (String accession : sequenceIdToGeneAccessionMap.get(sequenceId)) {
+                    int geneId = accessionIndex.getGeneId(peptideId, i);
+                    if (geneIds == null || geneIds.get(geneId)) {
 
-                            if (geneAccessions == null || geneAccessions.contains(accession)) {
+                        //create the isoforms according to the post translational modifications
+                        if (peptideIsoforms == null) {
+                            peptideIsoforms = createPeptideIsoforms(index.getPeptideSequence(peptideId), index.getSequenceIds(peptideId));
+                        }
 
-                                if (!retVal.containsKey(accession)) {
-                                    retVal.put(accession, new HashSet<Peptide>());
-                                }
-                                retVal.get(accession).addAll(peptideIsoforms);
-                            }
+                        String accession = accessionIndex.getGeneAccession(geneId);
+                        if (!retVal.containsKey(accession)) {
+                            retVal.put(accession, new HashSet<Peptide>());
                         }
+                        retVal.get(accession).addAll(peptideIsoforms);
                     }
                 }
             }
@@ -530,11 +626,12 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
 
         Map<String, Set<String>> retVal = new HashMap<String, Set<String>>();
 
-        Map<String, Set<Integer>> peptideSequenceToSequenceIdMap = this.getPeptideSequenceToSequenceIdMap();
-        for (String peptideSequence : peptideSequenceToSequenceIdMap.keySet()) {
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
 
-            for (Integer sequenceId : peptideSequenceToSequenceIdMap.get(peptideSequence)) {
-                Set<String> proteinAccessions = this.sequenceIdToProteinAccessionMap.get(sequenceId);
+            String peptideSequence = index.getPeptideSequence(peptideId);
+            for (int i = 0; i < index.getSequenceIdCount(peptideId); i++) {
+                Set<String> proteinAccessions = this.sequenceIdToProteinAccessionMap.get(index.getSequenceId(peptideId, i));
                 if (!retVal.containsKey(peptideSequence)) {
                     retVal.put(peptideSequence, new HashSet<String>());
                 }
@@ -607,41 +704,83 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @return a map of protein accessions and sets of peptide objects
      */
     private Map<String, Set<Peptide>> getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(Set<String> proteinAccessions, int degeneracy) {
+        return getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(proteinAccessions, degeneracy, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
 
-//        System.out.println("PeptideGeneratorImpl.getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy");
-//        System.out.println("proteinAccessions = " + proteinAccessions);
-//        System.out.println("degree = " + degree);
+    /**
+     * Returns the peptides of the specified degeneracy and an unmodified neutral mass within
+     * a mass range, generated from a set of protein sequences identified by the protein acessions
+     * passed as a parameter. Peptide objects are only created for peptides within the mass range.
+     *
+     * @param proteinAccessions the accessions of the proteins the peptides are generated from
+     * @param degeneracy        the sequence level degeneracy of the peptide sequences
+     *                          if -1 peptides of all degeneracy levels will be returned
+     * @param lowerMassCutOff   the lower mass limit (inclusive)
+     * @param upperMassCutOff   the upper mass limit (inclusive)
+     * @return a map of protein accessions and sets of peptide objects
+     */
+    private Map<String, Set<Peptide>> getPeptidesByProteinAccessionSetAndProteinLevelDegeneracy(Set<String> proteinAccessions,
+                                                                                            int degeneracy,
+                                                                                            double lowerMassCutOff,
+                                                                                            double upperMassCutOff) {
 
         Map<String, Set<Peptide>> retVal = new HashMap<String, Set<Peptide>>();
 
-        //get peptides generated by protease combination
-        Map<String, Set<Integer>> peptide2SequenceId = getPeptideSequenceToSequenceIdMap();
+        //get peptides generated by protease combination, only the ones
+        //of the protein accessions if any are given
+        PeptideAccessionIndex accessionIndex = getPeptideAccessionIndex();
+        final PeptideSequenceIndex index = accessionIndex.getPeptideSequenceIndex();
+        boolean massFilter = lowerMassCutOff != Double.NEGATIVE_INFINITY || upperMassCutOff != Double.POSITIVE_INFINITY;
 
-        //for each peptide...
-        for (String peptide : peptide2SequenceId.keySet()) {
-
-            //...get the sequences that emit the peptide
-            Set<Integer> sequenceIds = peptide2SequenceId.get(peptide);
+        //select the peptides, the selected IDs are compacted in place...
+        int[] peptideIds = selectPeptideIds(accessionIndex, proteinAccessions);
+        int peptideCount = 0;
+        for (int peptideId : peptideIds) {
 
             //if we don't care about the degree or
             // the degree matches the degree value...
-            if (degeneracy == -1 || sequenceIds.size() == degeneracy) {
+            if (degeneracy != -1 && index.getSequenceIdCount(peptideId) != degeneracy) {
+                continue;
+            }
+
+            //...and the mass is in range
+            if (massFilter) {
+                double mass = index.getNeutralMass(peptideId);
+                if (mass < lowerMassCutOff || mass > upperMassCutOff) {
+                    continue;
+                }
+            }
 
-                //...create the isoforms according to the post translational modifications
-                Set<Peptide> peptideIsoforms = createPeptideIsoforms(peptide, sequenceIds);
-//                System.out.println("peptideIsoforms = " + peptideIsoforms);
+            peptideIds[peptideCount++] = peptideId;
+        }
 
-                for (Integer sequenceId : sequenceIds) {
+        //...create their isoforms according to the post translational modifications,
+        //in parallel across peptides if configured
+        final PeptideIsoformEnumerator enumerator = getIsoformEnumerator();
+        IntStream selected = IntStream.of(peptideIds).limit(peptideCount);
+        if (config.getBoolean("sigpep.app.peptide.isoforms.parallel", true)) {
+            selected = selected.parallel();
+        }
+        List<Set<Peptide>> isoforms = selected
+                .mapToObj(peptideId -> createPeptideIsoforms(index.getPeptideSequence(peptideId), index.getSequenceIds(peptideId), enumerator))
+                .collect(Collectors.toList());
 
-                    for (String accession : sequenceIdToProteinAccessionMap.get(sequenceId)) {
+        for (int i = 0; i < peptideCount; i++) {
 
-                        if (proteinAccessions == null || proteinAccessions.contains(accession)) {
+            //...get the sequences that emit the peptide
+            Set<Integer> sequenceIds = index.getSequenceIds(peptideIds[i]);
+            Set<Peptide> peptideIsoforms = isoforms.get(i);
 
-                            if (!retVal.containsKey(accession)) {
-                                retVal.put(accession, new HashSet<Peptide>());
-                            }
-                            retVal.get(accession).addAll(peptideIsoforms);
+            for (Integer sequenceId : sequenceIds) {
+
+                for (String accession : sequenceIdToProteinAccessionMap.get(sequenceId)) {
+
+                    if (proteinAccessions == null || proteinAccessions.contains(accession)) {
+
+                        if (!retVal.containsKey(accession)) {
+                            retVal.put(accession, new HashSet<Peptide>());
                         }
+                        retVal.get(accession).addAll(peptideIsoforms);
                     }
                 }
             }
@@ -661,6 +800,18 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @return the modified peptides
      */
     private Set<Peptide> createPeptideIsoforms(String peptideSequence, Set<Integer> proteinSequenceIds) {
+        return createPeptideIsoforms(peptideSequence, proteinSequenceIds, getIsoformEnumerator());
+    }
+
+    /**
+     * Applies post-translational modifications to the peptide sequence.
+     *
+     * @param peptideSequence    the peptide sequences to modify
+     * @param proteinSequenceIds the IDs of the protein sequences the peptide has been generated from
+     * @param isoformEnumerator  the enumerator of the modifications to apply
+     * @return the modified peptides
+     */
+    private Set<Peptide> createPeptideIsoforms(String peptideSequence, Set<Integer> proteinSequenceIds, PeptideIsoformEnumerator isoformEnumerator) {
 
 //        System.out.println("PeptideGeneratorImpl.createPeptideIsoforms");
 
@@ -671,12 +822,12 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
 
         //get peptide origins
         Set<PeptideOrigin> peptideOrigins = new HashSet<PeptideOrigin>();
+        ProteinSequenceStore proteinSequences = this.proteinSequenceStore;
         for (Integer sequenceId : proteinSequenceIds) {
 
-            String sequence = this.proteinSequences.get(sequenceId);
-            if (sequence.startsWith(peptideSequence)) {
+            if (proteinSequences.startsWith(sequenceId, peptideSequence)) {
                 peptideOrigins.add(PeptideOrigin.N_TERMINAL);
-            } else if (sequence.endsWith(sequence)) {
+            } else if (proteinSequences.endsWith(sequenceId, peptideSequence)) {
                 peptideOrigins.add(PeptideOrigin.C_TERMINAL);
             } else {
                 peptideOrigins.add(PeptideOrigin.INTERNAL);
@@ -686,7 +837,7 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
         peptide.setOrigins(peptideOrigins);
 
         //apply post translational modifications
-        Set<Peptide> modifiedPeptides = peptide.applyModifications(modifications);
+        Set<Peptide> modifiedPeptides = isoformEnumerator.createIsoforms(peptide);
 //        System.out.println("modifications=" + modifications);
 
         retVal.addAll(modifiedPeptides);
@@ -694,6 +845,26 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
         return retVal;
     }
 
+    /**
+     * Returns the isoform enumerator for the post-translational modifications. The
+     * maximum number of variable modifications per isoform and whether mass identical
+     * isoforms are collapsed are read from the sigpep-app.properties file.
+     *
+     * @return the isoform enumerator
+     */
+    private PeptideIsoformEnumerator getIsoformEnumerator() {
+
+        PeptideIsoformEnumerator retVal = isoformEnumerator;
+        if (retVal == null) {
+            retVal = new PeptideIsoformEnumerator(modifications);
+            retVal.setMaximumVariableModificationCount(config.getInt("sigpep.app.peptide.isoforms.max.variable.modifications", -1));
+            retVal.setCollapseMassIdenticalIsoforms(config.getBoolean("sigpep.app.peptide.isoforms.collapse.mass.identical", false));
+            isoformEnumerator = retVal;
+        }
+
+        return retVal;
+    }
+
     /**
      * Returns a map of peptide sequence strings and sets of accessions
      * of the genes that encode protein sequences that emit the respective
@@ -705,44 +876,115 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
 
         Map<String, Set<String>> retVal = new HashMap<String, Set<String>>();
 
-        Map<String, Set<Integer>> peptideSequenceToSequenceIdMap = this.getPeptideSequenceToSequenceIdMap();
-        for (String peptideSequence : peptideSequenceToSequenceIdMap.keySet()) {
+        PeptideAccessionIndex accessionIndex = getPeptideAccessionIndex();
+        PeptideSequenceIndex index = accessionIndex.getPeptideSequenceIndex();
+        for (int peptideId = 0; peptideId < index.getPeptideCount(); peptideId++) {
 
-            for (Integer sequenceId : peptideSequenceToSequenceIdMap.get(peptideSequence)) {
-                Set<String> geneAccessions = this.sequenceIdToGeneAccessionMap.get(sequenceId);
-                retVal.put(peptideSequence, geneAccessions);
+            Set<String> geneAccessions = new HashSet<String>();
+            for (int i = 0; i < accessionIndex.getGeneLevelDegeneracy(peptideId); i++) {
+                geneAccessions.add(accessionIndex.getGeneAccession(accessionIndex.getGeneId(peptideId, i)));
             }
+            retVal.put(index.getPeptideSequence(peptideId), geneAccessions);
         }
 
         return retVal;
     }
 
     /**
-     * Returns the peptide sequence to protein sequence mapping.
+     * Returns the peptide sequence index of the digest. The index is built on first
+     * use and shared by all queries until the protein sequences, peptide features or
+     * proteases change. Post-translational modifications are applied when the
+     * peptide objects are created and don't invalidate the index.
      *
-     * @return a map of peptide sequences and sets of protein sequence IDs
+     * @return the peptide sequence index
      */
-    private Map<String, Set<Integer>> getPeptideSequenceToSequenceIdMap() {
+    private PeptideSequenceIndex getPeptideSequenceIndex() {
+
+        PeptideSequenceIndex retVal = peptideSequenceIndex;
+        if (retVal == null) {
+            synchronized (this) {
+                retVal = peptideSequenceIndex;
+                if (retVal == null) {
+                    mergeAddedSequencesAndFeatures();
+                    retVal = new PeptideSequenceIndex(proteinSequenceStore, peptideFeatureStore);
+                    peptideSequenceIndex = retVal;
+                }
+            }
+        }
+
+        return retVal;
+    }
 
-        //generate peptides and store
-        Map<String, Set<Integer>> peptide2SequenceId = new HashMap<String, Set<Integer>>();
-        for (Integer sequenceId : peptideFeatures.keySet()) {
+    /**
+     * Packs the protein sequences and peptide features added one by one into the
+     * stores.
+     */
+    private void mergeAddedSequencesAndFeatures() {
 
-            String sequence = proteinSequences.get(sequenceId);
-            for (int[] coordinates : peptideFeatures.get(sequenceId)) {
+        if (!addedProteinSequences.isEmpty()) {
+            Map<Integer, String> proteinSequences = proteinSequenceStore.toMap();
+            proteinSequences.putAll(addedProteinSequences);
+            proteinSequenceStore = new ProteinSequenceStore(proteinSequences);
+            addedProteinSequences.clear();
+        }
 
-                int start = coordinates[0];
-                int end = coordinates[1];
-                String peptideSequence = sequence.substring(start - 1, end);
-                if (!peptide2SequenceId.containsKey(peptideSequence)) {
-                    peptide2SequenceId.put(peptideSequence, new HashSet<Integer>());
+        if (!addedPeptideFeatures.isEmpty()) {
+            Map<Integer, List<int[]>> peptideFeatures = peptideFeatureStore.toMap();
+            for (Map.Entry<Integer, List<int[]>> entry : addedPeptideFeatures.entrySet()) {
+                if (!peptideFeatures.containsKey(entry.getKey())) {
+                    peptideFeatures.put(entry.getKey(), new ArrayList<int[]>());
                 }
+                peptideFeatures.get(entry.getKey()).addAll(entry.getValue());
+            }
+            peptideFeatureStore = new PeptideFeatureStore(peptideFeatures);
+            addedPeptideFeatures.clear();
+        }
+    }
 
-                peptide2SequenceId.get(peptideSequence).add(sequenceId);
+    /**
+     * Returns the accession index of the digest. The index is built on first use and
+     * shared by all queries until the accession mappings change or the peptide sequence
+     * index is rebuilt.
+     *
+     * @return the accession index
+     */
+    private PeptideAccessionIndex getPeptideAccessionIndex() {
+
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
+        PeptideAccessionIndex retVal = peptideAccessionIndex;
+        if (retVal == null || retVal.getPeptideSequenceIndex() != index) {
+            synchronized (this) {
+                retVal = peptideAccessionIndex;
+                if (retVal == null || retVal.getPeptideSequenceIndex() != index) {
+                    retVal = new PeptideAccessionIndex(index, sequenceIdToProteinAccessionMap, sequenceIdToGeneAccessionMap);
+                    peptideAccessionIndex = retVal;
+                }
             }
         }
 
-        return peptide2SequenceId;
+        return retVal;
+    }
+
+    /**
+     * Returns the IDs of the peptides emitted by the protein sequences identified by
+     * the protein accessions.
+     *
+     * @param accessionIndex    the accession index
+     * @param proteinAccessions the protein accessions, null for all peptides
+     * @return a new array of peptide IDs in ascending order
+     */
+    private int[] selectPeptideIds(PeptideAccessionIndex accessionIndex, Set<String> proteinAccessions) {
+
+        if (proteinAccessions != null) {
+            return accessionIndex.getPeptideIdsByProteinAccessions(proteinAccessions);
+        }
+
+        int[] retVal = new int[accessionIndex.getPeptideSequenceIndex().getPeptideCount()];
+        for (int i = 0; i < retVal.length; i++) {
+            retVal[i] = i;
+        }
+
+        return retVal;
     }
 
     /**
@@ -752,8 +994,151 @@ public class PeptideGeneratorImpl implements PeptideGenerator {
      * @return a set of sequence IDs
      */
     public Set<Integer> getSequenceIdsByPeptideSequence(String peptideSequence) {
-        Map<String, Set<Integer>> peptideSequenceToSequenceIdMap = this.getPeptideSequenceToSequenceIdMap();
-        Set<Integer> sequenceIds = peptideSequenceToSequenceIdMap.get(peptideSequence);
-        return sequenceIds;
+        PeptideSequenceIndex index = getPeptideSequenceIndex();
+        int peptideId = index.getPeptideId(peptideSequence);
+        if (peptideId == -1) {
+            return null;
+        }
+        return index.getSequenceIds(peptideId);
+    }
+
+    /**
+     * Splittable iterator over the peptide isoforms of a range of peptide IDs of the
+     * peptide sequence index, or of a range of an array of peptide IDs. Peptides are
+     * filtered on their sequence level degeneracy and unmodified mass before their
+     * isoforms are created. Splitting halves the range.
+     */
+    private class PeptideSpliterator implements Spliterator<Peptide> {
+
+        private PeptideSequenceIndex index;
+        private PeptideIsoformEnumerator isoformEnumerator;
+        private int[] peptideIds;
+        private int degeneracy;
+        private double lowerMassCutOff;
+        private double upperMassCutOff;
+        private boolean massFilter;
+
+        /**
+         * the next peptide ID or peptide ID array index to visit
+         */
+        private int from;
+
+        /**
+         * the peptide ID or peptide ID array index after the last one to visit
+         */
+        private int to;
+
+        /**
+         * the remaining isoforms of the current peptide
+         */
+        private Iterator<Peptide> isoforms = Collections.<Peptide>emptySet().iterator();
+
+        /**
+         * Creates a spliterator over a range of peptide IDs.
+         *
+         * @param index             the peptide sequence index
+         * @param isoformEnumerator the enumerator of the modifications to apply
+         * @param peptideIds        the IDs of the peptides to visit, null for all peptides
+         * @param degeneracy        the peptide sequence degeneracy, -1 for all degeneracy levels
+         * @param lowerMassCutOff   the lower mass limit (inclusive)
+         * @param upperMassCutOff   the upper mass limit (inclusive)
+         * @param from              the first peptide ID or peptide ID array index
+         * @param to                the peptide ID or peptide ID array index after the last one
+         */
+        private PeptideSpliterator(PeptideSequenceIndex index,
+                                   PeptideIsoformEnumerator isoformEnumerator,
+                                   int[] peptideIds,
+                                   int degeneracy,
+                                   double lowerMassCutOff,
+                                   double upperMassCutOff,
+                                   int from,
+                                   int to) {
+            this.index = index;
+            this.isoformEnumerator = isoformEnumerator;
+            this.peptideIds = peptideIds;
+            this.degeneracy = degeneracy;
+            this.lowerMassCutOff = lowerMassCutOff;
+            this.upperMassCutOff = upperMassCutOff;
+            this.massFilter = lowerMassCutOff != Double.NEGATIVE_INFINITY || upperMassCutOff != Double.POSITIVE_INFINITY;
+            this.from = from;
+            this.to = to;
+        }
+
+        public boolean tryAdvance(Consumer<? super Peptide> action) {
+
+            while (!isoforms.hasNext()) {
+                if (from == to) {
+                    return false;
+                }
+                isoforms = createIsoforms(getPeptideId(from++));
+            }
+
+            action.accept(isoforms.next());
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Peptide> action) {
+
+            while (isoforms.hasNext()) {
+                action.accept(isoforms.next());
+            }
+
+            for (; from < to; from++) {
+                for (Iterator<Peptide> it = createIsoforms(getPeptideId(from)); it.hasNext(); ) {
+                    action.accept(it.next());
+                }
+            }
+        }
+
+        public Spliterator<Peptide> trySplit() {
+
+            if (to - from < 2) {
+                return null;
+            }
+
+            int mid = (from + to) >>> 1;
+            PeptideSpliterator retVal = new PeptideSpliterator(index, isoformEnumerator, peptideIds, degeneracy,
+                    lowerMassCutOff, upperMassCutOff, mid, to);
+            to = mid;
+
+            return retVal;
+        }
+
+        public long estimateSize() {
+            return to - from;
+        }
+
+        public int characteristics() {
+            return DISTINCT | NONNULL | IMMUTABLE;
+        }
+
+        private int getPeptideId(int i) {
+            if (peptideIds == null) {
+                return i;
+            }
+            return peptideIds[i];
+        }
+
+        /**
+         * Creates the isoforms of a peptide if it passes the filters.
+         *
+         * @param peptideId the peptide ID
+         * @return an iterator over the isoforms, empty if the peptide is filtered out
+         */
+        private Iterator<Peptide> createIsoforms(int peptideId) {
+
+            if (degeneracy != -1 && index.getSequenceIdCount(peptideId) != degeneracy) {
+                return Collections.<Peptide>emptySet().iterator();
+            }
+
+            if (massFilter) {
+                double mass = index.getNeutralMass(peptideId);
+                if (mass < lowerMassCutOff || mass > upperMassCutOff) {
+                    return Collections.<Peptide>emptySet().iterator();
+                }
+            }
+
+            return createPeptideIsoforms(index.getPeptideSequence(peptideId), index.getSequenceIds(peptideId), isoformEnumerator).iterator();
+        }
     }
 }
@@ -0,0 +1,220 @@
+package com.compomics.sigpep.impl;
+
+import com.compomics.sigpep.model.impl.BatchMassCalculator;
+
+import java.util.*;
+
+/**
+ * Read-only index of the distinct peptide sequences of a digest and the protein
+ * sequences emitting them.
+ * <p/>
+ * Each distinct peptide sequence gets an ID in order of first appearance. The IDs
+ * of the protein sequences emitting a peptide are stored in ascending order in one
+ * int array, the range of a peptide is given by an offset array with one entry
+ * per peptide plus one (compressed sparse row layout). The peptide sequence strings
+ * are created once when the index is built.
+ */
+class PeptideSequenceIndex {
+
+    /**
+     * the peptide sequences by peptide ID
+     */
+    private String[] peptideSequences;
+
+    /**
+     * the peptide IDs by peptide sequence
+     */
+    private Map<String, Integer> peptideIds;
+
+    /**
+     * the start of the protein sequence ID range of each peptide in sequenceIds,
+     * the last element is the length of sequenceIds
+     */
+    private int[] offsets;
+
+    /**
+     * the protein sequence IDs emitting the peptides, ascending for each peptide
+     */
+    private int[] sequenceIds;
+
+    /**
+     * the number of peptide features of each peptide
+     */
+    private int[] featureCounts;
+
+    /**
+     * the unmodified neutral peptide masses, calculated on first use
+     */
+    private volatile double[] neutralMasses;
+
+    /**
+     * Builds the index of a digest.
+     *
+     * @param proteinSequences the protein sequences
+     * @param peptideFeatures  the start and end positions of the peptide features
+     */
+    PeptideSequenceIndex(ProteinSequenceStore proteinSequences, PeptideFeatureStore peptideFeatures) {
+
+        //the feature store is ordered by ascending protein sequence ID, so the ID ranges come out sorted
+        int featureCount = peptideFeatures.getFeatureCount();
+
+        //first pass: assign peptide IDs and count the distinct protein sequences of each peptide
+        peptideIds = new HashMap<String, Integer>(featureCount);
+        List<String> sequences = new ArrayList<String>();
+        int[] featurePeptideIds = new int[featureCount];
+        int[] sequenceCounts = new int[1024];
+        int[] lastSequence = new int[1024];
+        featureCounts = new int[1024];
+
+        for (int s = 0; s < peptideFeatures.getSequenceCount(); s++) {
+
+            int proteinSequenceId = peptideFeatures.getSequenceId(s);
+            for (int f = peptideFeatures.getFeatureOffset(s); f < peptideFeatures.getFeatureOffset(s + 1); f++) {
+
+                String peptideSequence = proteinSequences.getSubsequence(proteinSequenceId, peptideFeatures.getStart(f), peptideFeatures.getEnd(f));
+                Integer peptideId = peptideIds.get(peptideSequence);
+                if (peptideId == null) {
+
+                    peptideId = sequences.size();
+                    peptideIds.put(peptideSequence, peptideId);
+                    sequences.add(peptideSequence);
+
+                    if (peptideId == sequenceCounts.length) {
+                        sequenceCounts = Arrays.copyOf(sequenceCounts, peptideId * 2);
+                        lastSequence = Arrays.copyOf(lastSequence, peptideId * 2);
+                        featureCounts = Arrays.copyOf(featureCounts, peptideId * 2);
+                    }
+                    lastSequence[peptideId] = -1;
+                }
+
+                featurePeptideIds[f] = peptideId;
+                featureCounts[peptideId]++;
+                if (lastSequence[peptideId] != s) {
+                    lastSequence[peptideId] = s;
+                    sequenceCounts[peptideId]++;
+                }
+            }
+        }
+
+        int peptideCount = sequences.size();
+        peptideSequences = sequences.toArray(new String[peptideCount]);
+        featureCounts = Arrays.copyOf(featureCounts, peptideCount);
+
+        offsets = new int[peptideCount + 1];
+        for (int p = 0; p < peptideCount; p++) {
+            offsets[p + 1] = offsets[p] + sequenceCounts[p];
+        }
+
+        //second pass: fill in the protein sequence IDs
+        sequenceIds = new int[offsets[peptideCount]];
+        int[] next = Arrays.copyOf(offsets, peptideCount);
+        Arrays.fill(lastSequence, 0, peptideCount, -1);
+
+        for (int s = 0; s < peptideFeatures.getSequenceCount(); s++) {
+            for (int f = peptideFeatures.getFeatureOffset(s); f < peptideFeatures.getFeatureOffset(s + 1); f++) {
+                int peptideId = featurePeptideIds[f];
+                if (lastSequence[peptideId] != s) {
+                    lastSequence[peptideId] = s;
+                    sequenceIds[next[peptideId]++] = peptideFeatures.getSequenceId(s);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct peptide sequences.
+     *
+     * @return the peptide count
+     */
+    int getPeptideCount() {
+        return peptideSequences.length;
+    }
+
+    /**
+     * Returns the ID of a peptide sequence.
+     *
+     * @param peptideSequence the peptide sequence
+     * @return the peptide ID or -1 if the digest doesn't contain the peptide sequence
+     */
+    int getPeptideId(String peptideSequence) {
+        Integer retVal = peptideIds.get(peptideSequence);
+        if (retVal == null) {
+            return -1;
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the sequence of a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @return the peptide sequence
+     */
+    String getPeptideSequence(int peptideId) {
+        return peptideSequences[peptideId];
+    }
+
+    /**
+     * Returns the number of distinct protein sequences emitting a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @return the protein sequence level degeneracy
+     */
+    int getSequenceIdCount(int peptideId) {
+        return offsets[peptideId + 1] - offsets[peptideId];
+    }
+
+    /**
+     * Returns the ID of the i-th protein sequence emitting a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @param i         the index between 0 and getSequenceIdCount(peptideId) - 1
+     * @return the protein sequence ID
+     */
+    int getSequenceId(int peptideId, int i) {
+        return sequenceIds[offsets[peptideId] + i];
+    }
+
+    /**
+     * Returns the IDs of the protein sequences emitting a peptide.
+     *
+     * @param peptideId the peptide ID
+     * @return a new set of protein sequence IDs
+     */
+    Set<Integer> getSequenceIds(int peptideId) {
+        Set<Integer> retVal = new HashSet<Integer>();
+        for (int i = offsets[peptideId]; i < offsets[peptideId + 1]; i++) {
+            retVal.add(sequenceIds[i]);
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the number of peptide features of a peptide, which counts a peptide
+     * occurring more than once in a protein sequence more than once.
+     *
+     * @param peptideId the peptide ID
+     * @return the feature count
+     */
+    int getFeatureCount(int peptideId) {
+        return featureCounts[peptideId];
+    }
+
+    /**
+     * Returns the unmodified neutral mass of a peptide. The masses of all peptides
+     * are calculated in one batch on first use.
+     *
+     * @param peptideId the peptide ID
+     * @return the neutral peptide mass
+     */
+    double getNeutralMass(int peptideId) {
+
+        double[] masses = neutralMasses;
+        if (masses == null) {
+            masses = BatchMassCalculator.calculateNeutralPeptideMasses(peptideSequences);
+            neutralMasses = masses;
+        }
+
+        return masses[peptideId];
+    }
+}
@@ -0,0 +1,224 @@
+package com.compomics.sigpep.impl;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Read-only store of the protein sequences of an organism.
+ * <p/>
+ * The residues of all sequences are packed into one buffer of one byte per residue,
+ * the sequences are ordered by ascending sequence ID and the range of a sequence is
+ * given by an offset array with one entry per sequence plus one. The buffer is either
+ * a heap buffer or a read-only view of a file mapped into memory, subsequences are
+ * decoded directly from it without creating the protein sequence strings.
+ */
+class ProteinSequenceStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the protein sequence IDs, ascending
+     */
+    private int[] sequenceIds;
+
+    /**
+     * the start of each sequence in the residue buffer, the last element is the
+     * total number of residues
+     */
+    private int[] offsets;
+
+    /**
+     * the residues of all sequences, read with absolute gets only
+     */
+    private transient ByteBuffer residues;
+
+    /**
+     * Packs a map of protein sequences into a store.
+     *
+     * @param proteinSequences a map of protein sequence IDs and protein sequences
+     */
+    ProteinSequenceStore(Map<Integer, String> proteinSequences) {
+
+        sequenceIds = new int[proteinSequences.size()];
+        int i = 0;
+        long length = 0;
+        for (Map.Entry<Integer, String> entry : proteinSequences.entrySet()) {
+            sequenceIds[i++] = entry.getKey();
+            length += entry.getValue().length();
+        }
+        Arrays.sort(sequenceIds);
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Protein sequences exceed " + Integer.MAX_VALUE + " residues.");
+        }
+
+        offsets = new int[sequenceIds.length + 1];
+        byte[] bytes = new byte[(int) length];
+        for (i = 0; i < sequenceIds.length; i++) {
+            String sequence = proteinSequences.get(sequenceIds[i]);
+            for (int j = 0; j < sequence.length(); j++) {
+                bytes[offsets[i] + j] = (byte) sequence.charAt(j);
+            }
+            offsets[i + 1] = offsets[i] + sequence.length();
+        }
+
+        residues = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Creates a store from its packed columns.
+     *
+     * @param sequenceIds the protein sequence IDs, ascending
+     * @param offsets     the start of each sequence in the residue buffer followed by the total number of residues
+     * @param residues    the residues of all sequences starting at position 0
+     */
+    ProteinSequenceStore(int[] sequenceIds, int[] offsets, ByteBuffer residues) {
+        this.sequenceIds = sequenceIds;
+        this.offsets = offsets;
+        this.residues = residues;
+    }
+
+    /**
+     * Returns the protein sequence IDs.
+     *
+     * @return the sequence IDs in ascending order, not to be modified
+     */
+    int[] getSequenceIds() {
+        return sequenceIds;
+    }
+
+    /**
+     * Returns the start of each sequence in the residue buffer.
+     *
+     * @return the offsets followed by the total number of residues, not to be modified
+     */
+    int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns the residue buffer.
+     *
+     * @return a read-only view of the residues
+     */
+    ByteBuffer getResidues() {
+        return residues.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a subsequence of a protein sequence.
+     *
+     * @param sequenceId the protein sequence ID
+     * @param start      the 1-based start position
+     * @param end        the 1-based end position, inclusive
+     * @return the subsequence
+     */
+    String getSubsequence(int sequenceId, int start, int end) {
+        int index = indexOf(sequenceId);
+        if (start < 1 || end < start - 1 || offsets[index] + end > offsets[index + 1]) {
+            throw new IndexOutOfBoundsException("Subsequence " + start + "-" + end + " of protein sequence " + sequenceId + ".");
+        }
+        return decode(offsets[index] + start - 1, end - start + 1);
+    }
+
+    /**
+     * Returns whether a protein sequence starts with a peptide sequence.
+     *
+     * @param sequenceId      the protein sequence ID
+     * @param peptideSequence the peptide sequence
+     * @return true if the protein sequence starts with the peptide sequence
+     */
+    boolean startsWith(int sequenceId, String peptideSequence) {
+        int index = indexOf(sequenceId);
+        return matches(offsets[index], offsets[index + 1], peptideSequence);
+    }
+
+    /**
+     * Returns whether a protein sequence ends with a peptide sequence.
+     *
+     * @param sequenceId      the protein sequence ID
+     * @param peptideSequence the peptide sequence
+     * @return true if the protein sequence ends with the peptide sequence
+     */
+    boolean endsWith(int sequenceId, String peptideSequence) {
+        int index = indexOf(sequenceId);
+        return matches(offsets[index + 1] - peptideSequence.length(), offsets[index + 1], peptideSequence);
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the store on the heap. The residues
+     * of a store mapped from a file are not counted.
+     *
+     * @return the estimated memory footprint in bytes
+     */
+    long getEstimatedMemory() {
+        long retVal = 4L * (sequenceIds.length + offsets.length);
+        if (residues.hasArray()) {
+            retVal += residues.capacity();
+        }
+        return retVal;
+    }
+
+    /**
+     * Unpacks the store into a map of protein sequences.
+     *
+     * @return a new map of protein sequence IDs and protein sequences
+     */
+    Map<Integer, String> toMap() {
+        Map<Integer, String> retVal = new HashMap<Integer, String>(sequenceIds.length * 4 / 3 + 1);
+        for (int i = 0; i < sequenceIds.length; i++) {
+            retVal.put(sequenceIds[i], decode(offsets[i], offsets[i + 1] - offsets[i]));
+        }
+        return retVal;
+    }
+
+    private int indexOf(int sequenceId) {
+        int retVal = Arrays.binarySearch(sequenceIds, sequenceId);
+        if (retVal < 0) {
+            throw new IllegalArgumentException("Unknown protein sequence ID " + sequenceId + ".");
+        }
+        return retVal;
+    }
+
+    private boolean matches(int from, int to, String peptideSequence) {
+        if (from < 0 || from + peptideSequence.length() > to) {
+            return false;
+        }
+        for (int i = 0; i < peptideSequence.length(); i++) {
+            if ((char) (residues.get(from + i) & 0xff) != peptideSequence.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int from, int length) {
+        if (residues.hasArray()) {
+            return new String(residues.array(), residues.arrayOffset() + from, length, StandardCharsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = residues.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        byte[] bytes = new byte[offsets[offsets.length - 1]];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = residues.get(i);
+        }
+        out.writeObject(bytes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        residues = ByteBuffer.wrap((byte[]) in.readObject());
+    }
+}
@@ -0,0 +1,74 @@
+package com.compomics.sigpep.impl;
+
+import com.compomics.sigpep.LoadingCache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Estimates the heap memory taken by the datasets sessions load from the database.
+ * <p/>
+ * The packed stores report their own size, hash based maps and sets are estimated from
+ * the size of the hash table nodes and boxed keys on a 64 bit VM with compressed object
+ * pointers, strings from their length.
+ */
+class SessionDatasetWeigher implements LoadingCache.Weigher<Object, Object> {
+
+    /**
+     * the approximate size of a hash table node including its share of the table
+     */
+    private static final long HASH_NODE = 40;
+
+    /**
+     * the approximate size of a boxed number
+     */
+    private static final long BOXED_NUMBER = 16;
+
+    /**
+     * the approximate size of an empty hash set or map
+     */
+    private static final long HASH_COLLECTION = 64;
+
+    /**
+     * the approximate size of an empty string
+     */
+    private static final long STRING = 40;
+
+    /**
+     * Returns the approximate number of bytes taken by a dataset.
+     *
+     * @param key   the key of the dataset
+     * @param value the dataset
+     * @return the estimated memory footprint in bytes
+     */
+    public long weigh(Object key, Object value) {
+        return estimate(value);
+    }
+
+    private static long estimate(Object value) {
+
+        if (value instanceof ProteinSequenceStore) {
+            return ((ProteinSequenceStore) value).getEstimatedMemory();
+        } else if (value instanceof PeptideFeatureStore) {
+            return ((PeptideFeatureStore) value).getEstimatedMemory();
+        } else if (value instanceof String) {
+            return STRING + 2L * ((String) value).length();
+        } else if (value instanceof Number) {
+            return BOXED_NUMBER;
+        } else if (value instanceof Map) {
+            long retVal = HASH_COLLECTION;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                retVal += HASH_NODE + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return retVal;
+        } else if (value instanceof Collection) {
+            long retVal = HASH_COLLECTION;
+            for (Object element : (Collection<?>) value) {
+                retVal += HASH_NODE + estimate(element);
+            }
+            return retVal;
+        } else {
+            return 16;
+        }
+    }
+}
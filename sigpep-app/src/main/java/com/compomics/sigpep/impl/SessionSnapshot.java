@@ -0,0 +1,615 @@
+package com.compomics.sigpep.impl;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.persistence.dao.SimpleQueryDao;
+import com.compomics.sigpep.persistence.dao.SimpleQueryDaoFactory;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the datasets a SigPep session loads from the database to create
+ * peptide generators: the protein sequences, the protein and gene accessions of the
+ * sequences and the peptide feature coordinates of a number of protease sets.
+ * <p/>
+ * A snapshot is written once after the database of an organism has been built and is
+ * memory mapped when a session is created. The protein residues are used directly from
+ * the mapped file, the other datasets are read into the heap. The header holds a format
+ * version, the NCBI taxon ID, a fingerprint of the database made of its row counts and
+ * last IDs, including the peptide feature count and last peptide ID of every protease,
+ * and a CRC32 checksum of the payload. A snapshot that doesn't match the format
+ * version, the database fingerprint or the checksum is ignored and the session falls
+ * back to the database.
+ * <p/>
+ * All numbers are stored big-endian, strings as a length prefixed UTF-8 byte sequence.
+ */
+public class SessionSnapshot {
+
+    /**
+     * the log4j logger
+     */
+    private static Logger logger = Logger.getLogger(SessionSnapshot.class);
+
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the first 8 bytes of a snapshot file, "SIGPEPSS"
+     */
+    private static final long MAGIC = 0x5349475045505353L;
+
+    /**
+     * the version of the snapshot format, to be incremented with every format change
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * the length of the header up to and including the checksum with an empty fingerprint
+     */
+    private static final int HEADER_LENGTH = 8 + 4 + 4 + 4 + 8;
+
+    /**
+     * the snapshots loaded so far by NCBI taxon ID, shared by the sessions of an organism
+     */
+    private static final Map<Integer, SessionSnapshot> snapshots = new ConcurrentHashMap<Integer, SessionSnapshot>();
+
+    /**
+     * the database fingerprints read so far by NCBI taxon ID
+     */
+    private static final Map<Integer, DatabaseVersion> databaseVersions = new ConcurrentHashMap<Integer, DatabaseVersion>();
+
+    private int[] fingerprint;
+    private long lastModified;
+    private ProteinSequenceStore proteinSequenceStore;
+    private Map<Integer, Set<String>> sequenceIdToProteinAccessionMap;
+    private Map<Integer, Set<String>> sequenceIdToGeneAccessionMap;
+    private Map<Set<String>, PeptideFeatureStore> peptideFeatureStores;
+
+    private SessionSnapshot() {
+    }
+
+    /**
+     * Returns the protein sequences.
+     *
+     * @return the protein sequence store backed by the mapped snapshot file
+     */
+    ProteinSequenceStore getProteinSequenceStore() {
+        return proteinSequenceStore;
+    }
+
+    /**
+     * Returns the protein sequence ID to protein accession mapping.
+     *
+     * @return the sequence ID to protein accession mapping
+     */
+    Map<Integer, Set<String>> getSequenceIdToProteinAccessionMap() {
+        return sequenceIdToProteinAccessionMap;
+    }
+
+    /**
+     * Returns the protein sequence ID to gene accession mapping.
+     *
+     * @return the sequence ID to gene accession mapping
+     */
+    Map<Integer, Set<String>> getSequenceIdToGeneAccessionMap() {
+        return sequenceIdToGeneAccessionMap;
+    }
+
+    /**
+     * Returns the peptide feature coordinates of a protease set.
+     *
+     * @param proteaseShortNames the protease short names
+     * @return the peptide feature store or null if the snapshot doesn't contain the protease set
+     */
+    PeptideFeatureStore getPeptideFeatureStore(Set<String> proteaseShortNames) {
+        return peptideFeatureStores.get(proteaseShortNames);
+    }
+
+    /**
+     * Creates a peptide generator for a protease set from the snapshot datasets.
+     *
+     * @param proteaseShortNames the protease short names
+     * @return the peptide generator or null if the snapshot doesn't contain the protease set
+     */
+    PeptideGeneratorImpl createPeptideGenerator(Set<String> proteaseShortNames) {
+
+        PeptideFeatureStore peptideFeatureStore = getPeptideFeatureStore(proteaseShortNames);
+        if (peptideFeatureStore == null) {
+            return null;
+        }
+
+        PeptideGeneratorImpl retVal = new PeptideGeneratorImpl(proteaseShortNames);
+        retVal.setSequenceIdToProteinAccessionMap(sequenceIdToProteinAccessionMap);
+        retVal.setProteinSequenceStore(proteinSequenceStore);
+        retVal.setSequenceIdToGeneAccessionMap(sequenceIdToGeneAccessionMap);
+        retVal.setPeptideFeatureStore(peptideFeatureStore);
+
+        return retVal;
+    }
+
+    /**
+     * Returns the snapshot file of an organism in the directory configured by
+     * sigpep.app.snapshot.directory.
+     *
+     * @param taxonId the NCBI taxon ID
+     * @return the snapshot file or null if no snapshot directory is configured
+     */
+    public static File getSnapshotFile(int taxonId) {
+        String directory = config.getString("sigpep.app.snapshot.directory", "");
+        if (directory.trim().length() == 0) {
+            return null;
+        }
+        return new File(directory.trim(), "sigpep_" + taxonId + ".snapshot");
+    }
+
+    /**
+     * Loads the snapshot of an organism if one is configured and it is valid for the
+     * database. A snapshot is loaded once and shared by all sessions of the organism
+     * until the file or the database changes.
+     *
+     * @param taxonId        the NCBI taxon ID
+     * @param simpleQueryDao the simple query DAO of the organism to validate the snapshot against
+     * @return the snapshot or null if there is no valid snapshot
+     */
+    static SessionSnapshot load(int taxonId, SimpleQueryDao simpleQueryDao) {
+
+        File file = getSnapshotFile(taxonId);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+
+        int[] fingerprint = getFingerprint(taxonId, simpleQueryDao);
+        SessionSnapshot retVal = snapshots.get(taxonId);
+        if (retVal != null && retVal.lastModified == file.lastModified() && Arrays.equals(retVal.fingerprint, fingerprint)) {
+            return retVal;
+        }
+
+        try {
+            retVal = load(file, taxonId, fingerprint);
+            if (retVal != null) {
+                snapshots.put(taxonId, retVal);
+            }
+            return retVal;
+        } catch (IOException e) {
+            logger.warn("Could not load snapshot " + file + ", falling back to the database.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads a snapshot file.
+     *
+     * @param file        the snapshot file
+     * @param taxonId     the expected NCBI taxon ID
+     * @param fingerprint the expected database fingerprint
+     * @return the snapshot or null if the file doesn't match the format version, taxon ID,
+     *         database fingerprint or checksum
+     * @throws IOException if the file cannot be read
+     */
+    static SessionSnapshot load(File file, int taxonId, int[] fingerprint) throws IOException {
+
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+
+        if (buffer.limit() < HEADER_LENGTH || buffer.getLong() != MAGIC) {
+            logger.warn(file + " is not a SigPep snapshot.");
+            return null;
+        }
+
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            logger.warn("Snapshot " + file + " has format version " + formatVersion + ", expected " + FORMAT_VERSION + ".");
+            return null;
+        }
+
+        int snapshotTaxonId = buffer.getInt();
+        int fingerprintLength = buffer.getInt();
+        if (fingerprintLength < 0 || fingerprintLength > (buffer.remaining() - 8) / 4) {
+            logger.warn(file + " is not a SigPep snapshot.");
+            return null;
+        }
+        int[] snapshotFingerprint = new int[fingerprintLength];
+        for (int i = 0; i < snapshotFingerprint.length; i++) {
+            snapshotFingerprint[i] = buffer.getInt();
+        }
+        if (snapshotTaxonId != taxonId || !Arrays.equals(snapshotFingerprint, fingerprint)) {
+            logger.warn("Snapshot " + file + " doesn't match the database of taxon " + taxonId + ".");
+            return null;
+        }
+
+        long checksum = buffer.getLong();
+        if (config.getBoolean("sigpep.app.snapshot.verify.checksum", true)) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) {
+                logger.warn("Snapshot " + file + " is corrupt.");
+                return null;
+            }
+        }
+
+        SessionSnapshot retVal = new SessionSnapshot();
+        retVal.fingerprint = fingerprint;
+        retVal.lastModified = file.lastModified();
+
+        //protein sequences, the residues stay in the mapped file
+        int[] sequenceIds = readInts(buffer);
+        int[] offsets = readInts(buffer);
+        ByteBuffer residues = buffer.slice();
+        residues.limit(offsets[offsets.length - 1]);
+        buffer.position(buffer.position() + offsets[offsets.length - 1]);
+        retVal.proteinSequenceStore = new ProteinSequenceStore(sequenceIds, offsets, residues);
+
+        //accessions
+        int sequenceCount = buffer.getInt();
+        retVal.sequenceIdToProteinAccessionMap = new HashMap<Integer, Set<String>>(sequenceCount * 4 / 3 + 1);
+        for (int i = 0; i < sequenceCount; i++) {
+            int sequenceId = buffer.getInt();
+            int accessionCount = buffer.getInt();
+            Set<String> accessions = new HashSet<String>();
+            for (int j = 0; j < accessionCount; j++) {
+                accessions.add(readString(buffer));
+            }
+            retVal.sequenceIdToProteinAccessionMap.put(sequenceId, accessions);
+        }
+
+        int proteinCount = buffer.getInt();
+        Map<String, String> proteinAccessionToGeneAccessionMap = new HashMap<String, String>(proteinCount * 4 / 3 + 1);
+        for (int i = 0; i < proteinCount; i++) {
+            proteinAccessionToGeneAccessionMap.put(readString(buffer), readString(buffer));
+        }
+        retVal.sequenceIdToGeneAccessionMap = createSequenceIdToGeneAccessionMap(
+                retVal.sequenceIdToProteinAccessionMap, proteinAccessionToGeneAccessionMap);
+
+        //peptide features by protease set
+        int proteaseSetCount = buffer.getInt();
+        retVal.peptideFeatureStores = new HashMap<Set<String>, PeptideFeatureStore>();
+        for (int i = 0; i < proteaseSetCount; i++) {
+            Set<String> proteaseShortNames = new HashSet<String>(Arrays.asList(readString(buffer).split(",")));
+            retVal.peptideFeatureStores.put(proteaseShortNames,
+                    new PeptideFeatureStore(readInts(buffer), readInts(buffer), readInts(buffer), readInts(buffer)));
+        }
+
+        logger.info("loaded snapshot " + file + " with " + sequenceIds.length + " protein sequences and " + proteaseSetCount + " protease sets");
+
+        return retVal;
+    }
+
+    /**
+     * Writes the snapshot of an organism.
+     *
+     * @param simpleQueryDao the simple query DAO of the organism
+     * @param taxonId        the NCBI taxon ID
+     * @param proteaseSets   the protease sets to store the peptide features of
+     * @param file           the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(SimpleQueryDao simpleQueryDao, int taxonId, Collection<Set<String>> proteaseSets, File file) throws IOException {
+
+        //the snapshot is validated against the fingerprint read now
+        int[] fingerprint = fingerprint(simpleQueryDao);
+        databaseVersions.put(taxonId, new DatabaseVersion(fingerprint, System.currentTimeMillis()));
+
+        logger.info("fetching protein sequences...");
+        ProteinSequenceStore proteinSequenceStore = new ProteinSequenceStore(simpleQueryDao.getSequenceIdsAndStrings());
+
+        logger.info("fetching protein and gene accessions...");
+        Map<Integer, Set<String>> sequenceIdToProteinAccessionMap = simpleQueryDao.getSequenceIdToProteinAccessionMap();
+        Map<String, String> proteinAccessionToGeneAccessionMap = simpleQueryDao.getProteinAccessionToGeneAccessionMap();
+
+        Map<String, PeptideFeatureStore> peptideFeatureStores = new TreeMap<String, PeptideFeatureStore>();
+        for (Set<String> proteaseShortNames : proteaseSets) {
+            String key = join(proteaseShortNames);
+            logger.info("fetching peptide features of " + key + "...");
+            peptideFeatureStores.put(key, new PeptideFeatureStore(simpleQueryDao.getPeptideFeatureCoordinatesByProteaseShortNames(proteaseShortNames)));
+        }
+
+        logger.info("writing snapshot " + file + "...");
+        write(taxonId, fingerprint, proteinSequenceStore, sequenceIdToProteinAccessionMap,
+                proteinAccessionToGeneAccessionMap, peptideFeatureStores, file);
+    }
+
+    /**
+     * Writes a snapshot file.
+     *
+     * @param taxonId                            the NCBI taxon ID
+     * @param fingerprint                        the database fingerprint
+     * @param proteinSequenceStore               the protein sequences
+     * @param sequenceIdToProteinAccessionMap    the sequence ID to protein accession mapping
+     * @param proteinAccessionToGeneAccessionMap the protein accession to gene accession mapping
+     * @param peptideFeatureStores               the peptide features by comma separated protease short names
+     * @param file                               the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(int taxonId, int[] fingerprint,
+                      ProteinSequenceStore proteinSequenceStore,
+                      Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                      Map<String, String> proteinAccessionToGeneAccessionMap,
+                      Map<String, PeptideFeatureStore> peptideFeatureStores,
+                      File file) throws IOException {
+
+        //write to a temporary file first so sessions never map a partially written snapshot
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.setLength(0);
+            raf.writeLong(MAGIC);
+            raf.writeInt(FORMAT_VERSION);
+            raf.writeInt(taxonId);
+            raf.writeInt(fingerprint.length);
+            for (int value : fingerprint) {
+                raf.writeInt(value);
+            }
+            long checksumPosition = raf.getFilePointer();
+            raf.writeLong(0);
+
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(raf.getChannel()), 1 << 16), crc));
+
+            //protein sequences
+            writeInts(out, proteinSequenceStore.getSequenceIds());
+            writeInts(out, proteinSequenceStore.getOffsets());
+            ByteBuffer residues = proteinSequenceStore.getResidues();
+            byte[] chunk = new byte[1 << 16];
+            while (residues.hasRemaining()) {
+                int length = Math.min(chunk.length, residues.remaining());
+                residues.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+
+            //accessions
+            out.writeInt(sequenceIdToProteinAccessionMap.size());
+            for (Map.Entry<Integer, Set<String>> entry : sequenceIdToProteinAccessionMap.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String accession : entry.getValue()) {
+                    writeString(out, accession);
+                }
+            }
+
+            int proteinCount = 0;
+            for (String geneAccession : proteinAccessionToGeneAccessionMap.values()) {
+                if (geneAccession != null) {
+                    proteinCount++;
+                }
+            }
+            out.writeInt(proteinCount);
+            for (Map.Entry<String, String> entry : proteinAccessionToGeneAccessionMap.entrySet()) {
+                if (entry.getValue() != null) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            }
+
+            //peptide features by protease set
+            out.writeInt(peptideFeatureStores.size());
+            for (Map.Entry<String, PeptideFeatureStore> entry : peptideFeatureStores.entrySet()) {
+                writeString(out, entry.getKey());
+                for (int[] column : entry.getValue().getColumns()) {
+                    writeInts(out, column);
+                }
+            }
+
+            out.flush();
+            raf.seek(checksumPosition);
+            raf.writeLong(crc.getValue());
+
+        } finally {
+            raf.close();
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace snapshot " + file + ".");
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot rename " + tmp + " to " + file + ".");
+        }
+    }
+
+    /**
+     * Returns the fingerprint of a SigPep database, the row counts of the protein, gene
+     * and protein sequence tables, the last protein and gene IDs and for every protease
+     * in the order of the short names the hash code of the short name, the peptide
+     * feature count and the last peptide ID.
+     *
+     * @param simpleQueryDao the simple query DAO
+     * @return the fingerprint
+     */
+    static int[] fingerprint(SimpleQueryDao simpleQueryDao) {
+
+        Map<String, int[]> peptideCounts = new TreeMap<String, int[]>(simpleQueryDao.getPeptideCountAndLastPeptideIdByProteaseShortName());
+
+        int[] retVal = new int[5 + 3 * peptideCounts.size()];
+        retVal[0] = simpleQueryDao.getProteinCount();
+        retVal[1] = simpleQueryDao.getGeneCount();
+        retVal[2] = simpleQueryDao.getSequenceCount();
+        retVal[3] = simpleQueryDao.getLastProteinId();
+        retVal[4] = simpleQueryDao.getLastGeneId();
+
+        int i = 5;
+        for (Map.Entry<String, int[]> entry : peptideCounts.entrySet()) {
+            retVal[i++] = entry.getKey().hashCode();
+            retVal[i++] = entry.getValue()[0];
+            retVal[i++] = entry.getValue()[1];
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the fingerprint of the database of an organism. The fingerprint is shared by
+     * the sessions of the organism and read again from the database after the number of
+     * minutes configured by sigpep.app.database.version.refresh.interval.
+     *
+     * @param taxonId        the NCBI taxon ID
+     * @param simpleQueryDao the simple query DAO of the organism
+     * @return the database fingerprint
+     */
+    static int[] getFingerprint(int taxonId, SimpleQueryDao simpleQueryDao) {
+        return getDatabaseVersion(taxonId, simpleQueryDao, System.currentTimeMillis()).fingerprint;
+    }
+
+    /**
+     * Returns the version of the database of an organism, the fingerprint joined by '-'.
+     * The version is read again from the database after the refresh interval like the
+     * fingerprint.
+     *
+     * @param taxonId        the NCBI taxon ID
+     * @param simpleQueryDao the simple query DAO of the organism
+     * @return the database version
+     */
+    static String getDatabaseVersion(int taxonId, SimpleQueryDao simpleQueryDao) {
+        return getDatabaseVersion(taxonId, simpleQueryDao, System.currentTimeMillis()).version;
+    }
+
+    private static DatabaseVersion getDatabaseVersion(int taxonId, SimpleQueryDao simpleQueryDao, long now) {
+
+        long refreshInterval = config.getLong("sigpep.app.database.version.refresh.interval", 5) * 60 * 1000;
+        DatabaseVersion retVal = databaseVersions.get(taxonId);
+        if (retVal == null || now - retVal.readTime >= refreshInterval) {
+            retVal = new DatabaseVersion(fingerprint(simpleQueryDao), now);
+            databaseVersions.put(taxonId, retVal);
+        }
+
+        return retVal;
+    }
+
+    /**
+     * A database fingerprint, the version derived from it and the time it was read.
+     */
+    private static class DatabaseVersion {
+
+        private final int[] fingerprint;
+        private final String version;
+        private final long readTime;
+
+        private DatabaseVersion(int[] fingerprint, long readTime) {
+            this.fingerprint = fingerprint;
+            this.readTime = readTime;
+
+            StringBuilder version = new StringBuilder();
+            for (int value : fingerprint) {
+                if (version.length() > 0) {
+                    version.append('-');
+                }
+                version.append(value);
+            }
+            this.version = version.toString();
+        }
+    }
+
+    /**
+     * Derives the sequence ID to gene accession mapping from the protein accessions
+     * of the sequences.
+     *
+     * @param sequenceIdToProteinAccessionMap    the sequence ID to protein accession mapping
+     * @param proteinAccessionToGeneAccessionMap the protein accession to gene accession mapping
+     * @return the sequence ID to gene accession mapping
+     */
+    static Map<Integer, Set<String>> createSequenceIdToGeneAccessionMap(Map<Integer, Set<String>> sequenceIdToProteinAccessionMap,
+                                                                        Map<String, String> proteinAccessionToGeneAccessionMap) {
+
+        Map<Integer, Set<String>> retVal = new HashMap<Integer, Set<String>>(sequenceIdToProteinAccessionMap.size() * 4 / 3 + 1);
+        for (Integer sequenceId : sequenceIdToProteinAccessionMap.keySet()) {
+
+            Set<String> geneAccessions = new HashSet<String>();
+            for (String proteinAccession : sequenceIdToProteinAccessionMap.get(sequenceId)) {
+                geneAccessions.add(proteinAccessionToGeneAccessionMap.get(proteinAccession));
+            }
+            retVal.put(sequenceId, geneAccessions);
+        }
+
+        return retVal;
+    }
+
+    private static String join(Set<String> proteaseShortNames) {
+        StringBuilder retVal = new StringBuilder();
+        for (String proteaseShortName : new TreeSet<String>(proteaseShortNames)) {
+            if (retVal.length() > 0) {
+                retVal.append(",");
+            }
+            retVal.append(proteaseShortName);
+        }
+        return retVal.toString();
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] retVal = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(retVal);
+        buffer.position(buffer.position() + retVal.length * 4);
+        return retVal;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the snapshot of an organism to the configured snapshot directory.
+     *
+     * @param args the NCBI taxon ID followed by protease sets, each a comma separated
+     *             list of protease short names; defaults to every protease used in the
+     *             database on its own
+     */
+    public static void main(String[] args) {
+
+        if (args.length < 1) {
+            System.out.println("usage: SessionSnapshot <NCBI taxon ID> [<protease[,protease...]> ...]");
+            return;
+        }
+
+        int taxonId = Integer.parseInt(args[0]);
+        File file = getSnapshotFile(taxonId);
+        if (file == null) {
+            System.out.println("sigpep.app.snapshot.directory is not configured.");
+            return;
+        }
+
+        SimpleQueryDao simpleQueryDao = SimpleQueryDaoFactory.getInstance().createSimpleQueryDao(taxonId);
+
+        List<Set<String>> proteaseSets = new ArrayList<Set<String>>();
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                proteaseSets.add(new HashSet<String>(Arrays.asList(args[i].split(","))));
+            }
+        } else {
+            for (String proteaseShortName : simpleQueryDao.getUsedProteaseNames()) {
+                proteaseSets.add(Collections.singleton(proteaseShortName));
+            }
+        }
+
+        try {
+            write(simpleQueryDao, taxonId, proteaseSets, file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
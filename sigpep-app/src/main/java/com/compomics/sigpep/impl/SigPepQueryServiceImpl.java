@@ -1,8 +1,7 @@
 package com.compomics.sigpep.impl;
 
-import com.opensymphony.oscache.base.Cache;
-import com.opensymphony.oscache.base.NeedsRefreshException;
 import org.apache.log4j.Logger;
+import com.compomics.sigpep.LoadingCache;
 import com.compomics.sigpep.SigPepQueryService;
 import com.compomics.sigpep.SigPepSession;
 import com.compomics.sigpep.model.*;
@@ -359,38 +358,21 @@ public class SigPepQueryServiceImpl implements SigPepQueryService {
      */
     public Set<PeptideFeature> getSignaturePeptidesForProteinSet(Set<Protein> proteins, Set<Protease> proteases) {
 
-        Cache sessionCache = this.getSigPepSession().getCache();
-
         Set<PeptideFeature> retVal = new HashSet<PeptideFeature>();
 
-        Set<String> proteaseShortNames = new HashSet<String>();
+        final Set<String> proteaseShortNames = new HashSet<String>();
 
         for (Protease prot : proteases) {
             proteaseShortNames.add(prot.getShortName());
         }
 
-        String key = "signature_peptides_protein_level_" + proteaseShortNames;
-        Set<Integer> signaturePeptideIds;
-
-        try {
-            signaturePeptideIds = (Set<Integer>) this.getSigPepSession().getCache().getFromCache(key);
-        } catch (NeedsRefreshException e) {
-            boolean updated = false;
-            try {
-                // Get the value (probably by calling an EJB)
-                signaturePeptideIds = simpleQueryDao.getSignaturePeptideIdsByProteaseShortNamesProteinLevel(proteaseShortNames);
-
-                // Store in the cache
-                sessionCache.putInCache(key, signaturePeptideIds);
-                updated = true;
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    sessionCache.cancelUpdate(key);
-                }
-            }
-        }
+        String key = this.getOrganism().getTaxonId() + "_signature_peptides_protein_level_" + new TreeSet<String>(proteaseShortNames);
+        Set<Integer> signaturePeptideIds = (Set<Integer>) this.getSigPepSession().getDatasetCache().get(key,
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return simpleQueryDao.getSignaturePeptideIdsByProteaseShortNamesProteinLevel(proteaseShortNames);
+                    }
+                });
 
         for (Protein protein : proteins) {
             ProteinSequence s = protein.getSequence();
@@ -474,39 +456,21 @@ public class SigPepQueryServiceImpl implements SigPepQueryService {
      */
     public Set<PeptideFeature> getSignaturePeptidesForGeneSet(Set<Gene> genes, Set<Protease> protease) {
 
-        Cache sessionCache = this.getSigPepSession().getCache();
-
         Set<PeptideFeature> retVal = new HashSet<PeptideFeature>();
 
-        Set<String> proteaseShortNames = new HashSet<String>();
+        final Set<String> proteaseShortNames = new HashSet<String>();
 
         for (Protease prot : protease) {
             proteaseShortNames.add(prot.getShortName());
         }
 
-        String key = "signature_peptides_gene_level_" + proteaseShortNames;
-        Set<Integer> signaturePeptideIds;
-
-        try {
-            signaturePeptideIds = (Set<Integer>) this.getSigPepSession().getCache().getFromCache(key);
-        } catch (NeedsRefreshException e) {
-            boolean updated = false;
-            try {
-                // Get the value (probably by calling an EJB)
-                System.out.println("fetching signature peptide ids");
-                signaturePeptideIds = simpleQueryDao.getSignaturePeptideIdsByProteaseShortNamesGeneLevel(proteaseShortNames);
-                System.out.println("done");
-                // Store in the cache
-                sessionCache.putInCache(key, signaturePeptideIds);
-                updated = true;
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    sessionCache.cancelUpdate(key);
-                }
-            }
-        }
+        String key = this.getOrganism().getTaxonId() + "_signature_peptides_gene_level_" + new TreeSet<String>(proteaseShortNames);
+        Set<Integer> signaturePeptideIds = (Set<Integer>) this.getSigPepSession().getDatasetCache().get(key,
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return simpleQueryDao.getSignaturePeptideIdsByProteaseShortNamesGeneLevel(proteaseShortNames);
+                    }
+                });
 
         for (Gene gene : genes) {
             for (Protein protein : gene.getProteins()) {
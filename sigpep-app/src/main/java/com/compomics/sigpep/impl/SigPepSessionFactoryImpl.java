@@ -1,7 +1,7 @@
 package com.compomics.sigpep.impl;
 
-import com.opensymphony.oscache.base.Cache;
 import com.compomics.sigpep.CacheFactory;
+import com.compomics.sigpep.LoadingCache;
 import com.compomics.sigpep.SigPepSession;
 import com.compomics.sigpep.SigPepSessionFactory;
 import com.compomics.sigpep.model.Organism;
@@ -24,6 +24,10 @@ public class SigPepSessionFactoryImpl implements SigPepSessionFactory {
      * Field cacheFactory
      */
     private CacheFactory cacheFactory;
+    /**
+     * the cache of the datasets loaded from the database, shared by all sessions
+     */
+    private LoadingCache<String, Object> datasetCache;
     /**
      * Field catalogDaoFactory
      */
@@ -63,6 +67,7 @@ public class SigPepSessionFactoryImpl implements SigPepSessionFactory {
         this.simpleQueryDaoFactory = simpleQueryDaoFactory;
         this.catalogDaoFactory = catalogDaoFactory;
         this.cacheFactory = CacheFactory.getInstance();
+        this.datasetCache = cacheFactory.createDatasetCache();
     }
 
     /**
@@ -76,10 +81,12 @@ public class SigPepSessionFactoryImpl implements SigPepSessionFactory {
         //create DAOs
         ObjectDao objectDao = objectDaoFactory.createObjectDao(taxonId);
         SimpleQueryDao simpleQueryDao = simpleQueryDaoFactory.createSimpleQueryDao(taxonId);
-        //Cache sessionCache = cacheFactory.createCache();
 
-        //return session
-        return new SigPepSessionNoCacheImpl(simpleQueryDao, objectDao, null);
+        //create session, with the snapshot of the organism if there is a valid one
+        SigPepSessionImpl retVal = new SigPepSessionImpl(simpleQueryDao, objectDao, datasetCache);
+        retVal.setSnapshot(SessionSnapshot.load(taxonId, simpleQueryDao));
+
+        return retVal;
     }
 
     /**
@@ -165,6 +172,25 @@ public class SigPepSessionFactoryImpl implements SigPepSessionFactory {
         this.cacheFactory = cacheFactory;
     }
 
+    /**
+     * Returns the cache of the datasets loaded from the database, shared by
+     * the sessions created by the SigPep session factory.
+     *
+     * @return the dataset cache
+     */
+    public LoadingCache<String, Object> getDatasetCache() {
+        return datasetCache;
+    }
+
+    /**
+     * Sets the cache of the datasets loaded from the database.
+     *
+     * @param datasetCache the dataset cache
+     */
+    public void setDatasetCache(LoadingCache<String, Object> datasetCache) {
+        this.datasetCache = datasetCache;
+    }
+
     /**
      * Returns the catalog DAO factory of the SigPep session factory.
      *
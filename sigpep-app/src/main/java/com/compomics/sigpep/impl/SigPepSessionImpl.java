@@ -1,7 +1,5 @@
 package com.compomics.sigpep.impl;
 
-import com.opensymphony.oscache.base.Cache;
-import com.opensymphony.oscache.base.NeedsRefreshException;
 import com.compomics.sigpep.*;
 import com.compomics.sigpep.analysis.SignatureTransitionFinder;
 import com.compomics.sigpep.analysis.SignatureTransitionFinderFactory;
@@ -30,9 +28,9 @@ public class SigPepSessionImpl implements SigPepSession {
      */
     private Organism organism;
     /**
-     * the object cache
+     * the cache of the datasets loaded from the database, shared by the sessions of all organisms
      */
-    private Cache cache;
+    private LoadingCache<String, Object> datasetCache;
     /**
      * the simple query DAO
      */
@@ -49,6 +47,10 @@ public class SigPepSessionImpl implements SigPepSession {
      * the application instance this session belongs to
      */
     private static SigPepApplication application = ApplicationLocator.getInstance().getApplication();
+    /**
+     * the snapshot of the database datasets, null if the session loads them from the database
+     */
+    private SessionSnapshot snapshot;
 
     /**
      * Constructor SigPepSessionImpl creates a new SigPepSessionImpl instance.
@@ -57,36 +59,30 @@ public class SigPepSessionImpl implements SigPepSession {
     }
 
     /**
-     * Constructs a new SigPep session bean with the DAOs passed as parameters.
+     * Constructs a new SigPep session bean with the DAOs passed as parameters
+     * and a dataset cache of its own.
      *
      * @param simpleQueryDao the simple query DAO
      * @param objectDao      the object DAO
      */
     public SigPepSessionImpl(SimpleQueryDao simpleQueryDao, ObjectDao objectDao) {
-
-        try {
-            this.simpleQueryDao = simpleQueryDao;
-            this.objectDao = objectDao;
-            this.organism = objectDao.getOrganism();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        this(simpleQueryDao, objectDao, CacheFactory.getInstance().createDatasetCache());
     }
 
     /**
-     * Constructs a new SigPep session bean with the DAOs and cache passed as parameters.
+     * Constructs a new SigPep session bean with the DAOs and dataset cache passed as parameters.
      *
      * @param simpleQueryDao the simple query DAO
      * @param objectDao      the simple object DAO
-     * @param cache          the object cache
+     * @param datasetCache   the dataset cache
      */
-    public SigPepSessionImpl(SimpleQueryDao simpleQueryDao, ObjectDao objectDao, Cache cache) {
+    public SigPepSessionImpl(SimpleQueryDao simpleQueryDao, ObjectDao objectDao, LoadingCache<String, Object> datasetCache) {
 
         try {
             this.simpleQueryDao = simpleQueryDao;
             this.objectDao = objectDao;
             this.organism = objectDao.getOrganism();
-            this.cache = cache;
+            this.datasetCache = datasetCache;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -102,12 +98,22 @@ public class SigPepSessionImpl implements SigPepSession {
     }
 
     /**
-     * Returns the session cache.
+     * Returns the cache of the datasets loaded from the database.
      *
-     * @return the cache
+     * @return the dataset cache
      */
-    public Cache getCache() {
-        return cache;
+    public LoadingCache<String, Object> getDatasetCache() {
+        return datasetCache;
+    }
+
+    /**
+     * Returns the version of the session database, derived from the row counts and last IDs
+     * of the protein, gene and protein sequence tables and of the peptides of each protease.
+     *
+     * @return the database version
+     */
+    public String getDatabaseVersion() {
+        return SessionSnapshot.getDatabaseVersion(organism.getTaxonId(), simpleQueryDao);
     }
 
     /**
@@ -146,6 +152,15 @@ public class SigPepSessionImpl implements SigPepSession {
         this.objectDao = objectDao;
     }
 
+    /**
+     * Sets the snapshot peptide generators are created from instead of the database.
+     *
+     * @param snapshot the snapshot of the database datasets
+     */
+    void setSnapshot(SessionSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     /**
      * Creates a peptide generator for a specified set of proteases.
      *
@@ -193,141 +208,59 @@ public class SigPepSessionImpl implements SigPepSession {
      * @param proteaseShortNames the protease short names
      * @return the peptide generator
      */
-    public PeptideGenerator createPeptideGenerator(Set<String> proteaseShortNames) {
+    public PeptideGenerator createPeptideGenerator(final Set<String> proteaseShortNames) {
+
+        //create it from the snapshot if it contains the protease set
+        if (snapshot != null) {
+            PeptideGeneratorImpl fromSnapshot = snapshot.createPeptideGenerator(proteaseShortNames);
+            if (fromSnapshot != null) {
+                return fromSnapshot;
+            }
+        }
 
         //create peptide generator
         PeptideGeneratorImpl retVal = new PeptideGeneratorImpl(proteaseShortNames);
 
-        //get protein sequences
-        String proteinSequencesKey = "protein_sequences";
-        Map<Integer, String> proteinSequences;
-
-        try {
-
-            //check if protein sequences are in the cache
-            proteinSequences = (Map<Integer, String>) this.getCache().getFromCache(proteinSequencesKey);
-
-        } catch (NeedsRefreshException e) {
+        String keyPrefix = organism.getTaxonId() + "_";
 
-            //if not...
-            boolean updated = false;
-            try {
-                // get them from the database
-                proteinSequences = simpleQueryDao.getSequenceIdsAndStrings();
-
-                // store in the cache
-                this.getCache().putInCache(proteinSequencesKey, proteinSequences);
-                updated = true;
-
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    this.getCache().cancelUpdate(proteinSequencesKey);
-                }
-            }
-        }
+        //get protein sequences, packed into one residue buffer
+        ProteinSequenceStore proteinSequences = (ProteinSequenceStore) datasetCache.get(keyPrefix + "protein_sequences",
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return new ProteinSequenceStore(simpleQueryDao.getSequenceIdsAndStrings());
+                    }
+                });
 
         //get sequence ID-to-protein-accession map
-        String sequenceId2ProteinAccessionMapKey = "sequence_id_2_protein_accession_map";
-        Map<Integer, Set<String>> sequenceId2ProteinAccessionMap;
-
-        try {
-
-            //check if map is in cache
-            sequenceId2ProteinAccessionMap = (Map<Integer, Set<String>>) this.getCache().getFromCache(sequenceId2ProteinAccessionMapKey);
-        } catch (NeedsRefreshException e) {
-
-            //if not...
-            boolean updated = false;
-            try {
-                // get it from database
-                sequenceId2ProteinAccessionMap = simpleQueryDao.getSequenceIdToProteinAccessionMap();
-
-                // store in the cache
-                this.getCache().putInCache(sequenceId2ProteinAccessionMapKey, sequenceId2ProteinAccessionMap);
-                updated = true;
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    this.getCache().cancelUpdate(sequenceId2ProteinAccessionMapKey);
-                }
-            }
-        }
+        final Map<Integer, Set<String>> sequenceId2ProteinAccessionMap = (Map<Integer, Set<String>>) datasetCache.get(keyPrefix + "sequence_id_2_protein_accession_map",
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return simpleQueryDao.getSequenceIdToProteinAccessionMap();
+                    }
+                });
 
         //create sequence ID-to-gene-accession map
-        String sequenceId2GeneAccessionMapMapKey = "sequence_id_2_gene_accession_map";
-        Map<Integer, Set<String>> sequenceId2GeneAccessionMap;
-
-        try {
-            //check if map is in cache
-            sequenceId2GeneAccessionMap = (Map<Integer, Set<String>>) this.getCache().getFromCache(sequenceId2GeneAccessionMapMapKey);
-        } catch (NeedsRefreshException e) {
-
-            //if not get
-            boolean updated = false;
-            try {
-                // Get the value (probably by calling an EJB)
-                sequenceId2GeneAccessionMap = new HashMap<Integer, Set<String>>();
-
-                Map<String, String> proteinAccessionToGeneAccesssionMap = simpleQueryDao.getProteinAccessionToGeneAccessionMap();
-                for (Integer sequenceId : sequenceId2ProteinAccessionMap.keySet()) {
-
-                    Set<String> geneAccessions = new HashSet<String>();
-                    for (String proteinAccession : sequenceId2ProteinAccessionMap.get(sequenceId)) {
-
-                        String geneAccession = proteinAccessionToGeneAccesssionMap.get(proteinAccession);
-                        geneAccessions.add(geneAccession);
-
+        Map<Integer, Set<String>> sequenceId2GeneAccessionMap = (Map<Integer, Set<String>>) datasetCache.get(keyPrefix + "sequence_id_2_gene_accession_map",
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return SessionSnapshot.createSequenceIdToGeneAccessionMap(sequenceId2ProteinAccessionMap,
+                                simpleQueryDao.getProteinAccessionToGeneAccessionMap());
                     }
-                    sequenceId2GeneAccessionMap.put(sequenceId, geneAccessions);
-                }
-
-                // Store in the cache
-                this.getCache().putInCache(sequenceId2GeneAccessionMapMapKey, sequenceId2GeneAccessionMap);
-                updated = true;
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    this.getCache().cancelUpdate(sequenceId2GeneAccessionMapMapKey);
-                }
-            }
-        }
+                });
 
-        //get peptide featureCoordinates
-
-        String featureCoordinatesKey = "feature_Coordinates_" + proteaseShortNames;
-        Map<Integer, List<int[]>> featureCoordinates;
-
-        try {
-            featureCoordinates = (Map<Integer, List<int[]>>) this.getCache().getFromCache(featureCoordinatesKey);
-        } catch (NeedsRefreshException e) {
-            boolean updated = false;
-            try {
-                // Get the value (probably by calling an EJB)
-                featureCoordinates = simpleQueryDao.getPeptideFeatureCoordinatesByProteaseShortNames(proteaseShortNames);
-//                featureCoordinates = simpleQueryDao.getPeptideFeatureCoordinatesByProteaseShortNames(proteaseShortNames);
-
-                // Store in the cache
-                this.getCache().putInCache(featureCoordinatesKey, featureCoordinates);
-                updated = true;
-
-            } finally {
-                if (!updated) {
-                    // It is essential that cancelUpdate is called if the
-                    // cached content could not be rebuilt
-                    this.getCache().cancelUpdate(featureCoordinatesKey);
-                }
-            }
-        }
+        //get peptide featureCoordinates, packed into start and end columns
+        PeptideFeatureStore featureCoordinates = (PeptideFeatureStore) datasetCache.get(keyPrefix + "feature_Coordinates_" + new TreeSet<String>(proteaseShortNames),
+                new LoadingCache.Loader<String, Object>() {
+                    public Object load(String key) {
+                        return new PeptideFeatureStore(simpleQueryDao.getPeptideFeatureCoordinatesByProteaseShortNames(proteaseShortNames));
+                    }
+                });
 
         //set retVal properties
         retVal.setSequenceIdToProteinAccessionMap(sequenceId2ProteinAccessionMap);
-        retVal.setProteinSequences(proteinSequences);
+        retVal.setProteinSequenceStore(proteinSequences);
         retVal.setSequenceIdToGeneAccessionMap(sequenceId2GeneAccessionMap);
-        retVal.setPeptideFeatures(featureCoordinates);
+        retVal.setPeptideFeatureStore(featureCoordinates);
 
         return retVal;
     }
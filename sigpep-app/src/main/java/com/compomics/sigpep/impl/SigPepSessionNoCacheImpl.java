@@ -1,7 +1,5 @@
 package com.compomics.sigpep.impl;
 
-import com.opensymphony.oscache.base.Cache;
-import com.opensymphony.oscache.base.NeedsRefreshException;
 import com.compomics.sigpep.*;
 import com.compomics.sigpep.analysis.SignatureTransitionFinder;
 import com.compomics.sigpep.analysis.SignatureTransitionFinderFactory;
@@ -30,9 +28,11 @@ public class SigPepSessionNoCacheImpl implements SigPepSession {
      */
     private Organism organism;
     /**
-     * the object cache
+     * the dataset cache, keeps no values but lets concurrent queries share a load
      */
-    private Cache cache;
+    private LoadingCache<String, Object> datasetCache = new LoadingCache<String, Object>(0, 0,
+            new SessionDatasetWeigher(),
+            ExecutorServiceLocator.getInstance().getExecutorService());
     /**
      * the simple query DAO
      */
@@ -74,40 +74,31 @@ public class SigPepSessionNoCacheImpl implements SigPepSession {
     }
 
     /**
-     * Constructs a new SigPep session bean with the DAOs and cache passed as parameters.
+     * Returns the session organism.
      *
-     * @param simpleQueryDao the simple query DAO
-     * @param objectDao      the simple object DAO
-     * @param cache          the object cache
+     * @return the organism
      */
-    public SigPepSessionNoCacheImpl(SimpleQueryDao simpleQueryDao, ObjectDao objectDao, Cache cache) {
-
-        try {
-            this.simpleQueryDao = simpleQueryDao;
-            this.objectDao = objectDao;
-            this.organism = objectDao.getOrganism();
-            this.cache = cache;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    public Organism getOrganism() {
+        return organism;
     }
 
     /**
-     * Returns the session organism.
+     * Returns the cache of the datasets loaded from the database.
      *
-     * @return the organism
+     * @return the dataset cache
      */
-    public Organism getOrganism() {
-        return organism;
+    public LoadingCache<String, Object> getDatasetCache() {
+        return datasetCache;
     }
 
     /**
-     * Returns the session cache.
+     * Returns the version of the session database, derived from the row counts and last IDs
+     * of the protein, gene and protein sequence tables and of the peptides of each protease.
      *
-     * @return the cache
+     * @return the database version
      */
-    public Cache getCache() {
-        return cache;
+    public String getDatabaseVersion() {
+        return SessionSnapshot.getDatabaseVersion(organism.getTaxonId(), simpleQueryDao);
     }
 
     /**
@@ -0,0 +1,199 @@
+package com.compomics.sigpep;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the single-flight loading, weight based eviction and refresh of the loading cache.
+ */
+public class LoadingCacheTest {
+
+    private ExecutorService executor;
+
+    private LoadingCache.Weigher<String, String> lengthWeigher = new LoadingCache.Weigher<String, String>() {
+        public long weigh(String key, String value) {
+            return value.length();
+        }
+    };
+
+    @Before
+    public void methodSetup() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void methodTearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleFlightLoad() throws Exception {
+
+        final LoadingCache<String, String> cache = new LoadingCache<String, String>(1000, 0, lengthWeigher, executor);
+        final AtomicInteger loadCount = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final LoadingCache.Loader<String, String> loader = new LoadingCache.Loader<String, String>() {
+            public String load(String key) throws Exception {
+                loadCount.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return key.toUpperCase();
+            }
+        };
+
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        results.add(executor.submit(new Callable<String>() {
+            public String call() {
+                return cache.get("human", loader);
+            }
+        }));
+        loading.await();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                public String call() {
+                    return cache.get("human", loader);
+                }
+            }));
+        }
+
+        //the callers wait for the first load
+        Thread.sleep(50);
+        assertNull(cache.getIfPresent("human"));
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("HUMAN", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loadCount.get());
+        assertEquals(5, cache.getWeight());
+        assertEquals(1, cache.getStatistics().getMissCount());
+        assertEquals(4, cache.getStatistics().getHitCount());
+        assertEquals(1, cache.getStatistics().getLoadSuccessCount());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+
+        LoadingCache<String, String> cache = new LoadingCache<String, String>(1000, 0, lengthWeigher, executor);
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        LoadingCache.Loader<String, String> loader = new LoadingCache.Loader<String, String>() {
+            public String load(String key) {
+                if (loadCount.incrementAndGet() == 1) {
+                    throw new IllegalStateException("database not available");
+                }
+                return key;
+            }
+        };
+
+        try {
+            cache.get("mouse", loader);
+            fail("load exception not thrown");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        assertEquals(0, cache.size());
+
+        assertEquals("mouse", cache.get("mouse", loader));
+        assertEquals(2, loadCount.get());
+        assertEquals(1, cache.getStatistics().getLoadFailureCount());
+    }
+
+    @Test
+    public void testWeightBasedEviction() {
+
+        LoadingCache<String, String> cache = new LoadingCache<String, String>(10, 0, lengthWeigher, executor);
+        LoadingCache.Loader<String, String> loader = new LoadingCache.Loader<String, String>() {
+            public String load(String key) {
+                return key;
+            }
+        };
+
+        cache.get("aaaa", loader);
+        cache.get("bbbb", loader);
+        cache.get("aaaa", loader);
+        assertEquals(8, cache.getWeight());
+
+        //bbbb is the least recently used value
+        cache.get("cccc", loader);
+        assertEquals(8, cache.getWeight());
+        assertNotNull(cache.getIfPresent("aaaa"));
+        assertNull(cache.getIfPresent("bbbb"));
+        assertNotNull(cache.getIfPresent("cccc"));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+
+        //a value heavier than the maximum weight is returned but not kept
+        assertEquals("ddddddddddddd", cache.get("ddddddddddddd", loader));
+        assertNull(cache.getIfPresent("ddddddddddddd"));
+        assertTrue(cache.getWeight() <= 10);
+    }
+
+    @Test
+    public void testSlowLoadIsNotEvicted() throws Exception {
+
+        final LoadingCache<String, String> cache = new LoadingCache<String, String>(10, 0, lengthWeigher, executor);
+        final LoadingCache.Loader<String, String> loader = new LoadingCache.Loader<String, String>() {
+            public String load(String key) {
+                return key;
+            }
+        };
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        cache.get("aaaa", loader);
+        Future<String> slow = executor.submit(new Callable<String>() {
+            public String call() {
+                return cache.get("bbbbb", new LoadingCache.Loader<String, String>() {
+                    public String load(String key) throws Exception {
+                        loading.countDown();
+                        release.await();
+                        return key;
+                    }
+                });
+            }
+        });
+
+        //aaaa and ccc are used while bbbbb is being loaded
+        loading.await();
+        cache.get("aaaa", loader);
+        cache.get("ccc", loader);
+        release.countDown();
+        assertEquals("bbbbb", slow.get(5, TimeUnit.SECONDS));
+
+        //aaaa is the least recently used value, not the value loaded last
+        assertNull(cache.getIfPresent("aaaa"));
+        assertNotNull(cache.getIfPresent("bbbbb"));
+        assertNotNull(cache.getIfPresent("ccc"));
+        assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+
+        LoadingCache<String, String> cache = new LoadingCache<String, String>(1000, 0, lengthWeigher, executor);
+        final AtomicInteger loadCount = new AtomicInteger();
+        LoadingCache.Loader<String, String> loader = new LoadingCache.Loader<String, String>() {
+            public String load(String key) {
+                return key + loadCount.incrementAndGet();
+            }
+        };
+
+        assertEquals("rat1", cache.get("rat", loader));
+        cache.refresh("rat");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"rat2".equals(cache.getIfPresent("rat")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("rat2", cache.get("rat", loader));
+        assertEquals(4, cache.getWeight());
+        assertEquals(2, cache.getStatistics().getLoadSuccessCount());
+    }
+}
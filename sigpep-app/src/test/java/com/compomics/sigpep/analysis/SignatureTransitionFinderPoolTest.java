@@ -0,0 +1,223 @@
+package com.compomics.sigpep.analysis;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.PeptideGenerator;
+import com.compomics.sigpep.SigPepSession;
+import com.compomics.sigpep.model.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that pooled signature transition finders are built once per key, that
+ * leased finders are not evicted and that idle ones are evicted least recently
+ * used first.
+ */
+public class SignatureTransitionFinderPoolTest {
+
+    private AtomicInteger buildCount;
+    private SigPepSession session;
+
+    @Before
+    public void methodSetup() {
+        buildCount = new AtomicInteger();
+        session = createSession(9606, 10);
+    }
+
+    private Object createProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, handler);
+    }
+
+    /**
+     * Creates a session stub generating a background of a number of peptides.
+     */
+    private SigPepSession createSession(final int taxonId, final int peptideCount) {
+
+        final Organism organism = (Organism) createProxy(Organism.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getTaxonId") ? taxonId : null;
+            }
+        });
+
+        return (SigPepSession) createProxy(SigPepSession.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+
+                if (method.getName().equals("getOrganism")) {
+                    return organism;
+                } else if (method.getName().equals("createPeptideGenerator")) {
+                    final Set<Peptide> peptides = new HashSet<Peptide>();
+                    for (int i = 0; i < peptideCount; i++) {
+                        peptides.add(PeptideFactory.createPeptide("PEPTIDE" + "GGGGGGGGGG".substring(0, i) + "R"));
+                    }
+                    return createProxy(PeptideGenerator.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return method.getName().equals("getPeptides") ? peptides : null;
+                        }
+                    });
+                } else if (method.getName().equals("createSignatureTransitionFinder")) {
+                    buildCount.incrementAndGet();
+                    return createProxy(SignatureTransitionFinder.class, new InvocationHandler() {
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return method.getName().startsWith("find") ? new ArrayList<SignatureTransition>() : null;
+                        }
+                    });
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private SignatureTransitionFinderPool.Key createKey(int taxonId, String protease, double massAccuracy) {
+        return new SignatureTransitionFinderPool.Key(taxonId,
+                Collections.singleton(protease),
+                Collections.<Modification>emptySet(),
+                EnumSet.of(ProductIonType.Y),
+                EnumSet.of(ProductIonType.Y, ProductIonType.B),
+                new HashSet<Integer>(Arrays.asList(3, 2)),
+                Collections.singleton(1),
+                massAccuracy,
+                1,
+                5,
+                SignatureTransitionFinderType.MINIMAL);
+    }
+
+    @Test
+    public void testFinderIsBuiltOncePerKey() {
+
+        SignatureTransitionFinderPool pool = new SignatureTransitionFinderPool(1000000, 100);
+
+        SignatureTransitionFinderPool.Lease first = pool.acquire(session, createKey(9606, "tryp", 0.5));
+        SignatureTransitionFinderPool.Lease second = pool.acquire(session, new SignatureTransitionFinderPool.Key(9606,
+                new HashSet<String>(Arrays.asList("tryp")),
+                new HashSet<Modification>(),
+                new HashSet<ProductIonType>(Arrays.asList(ProductIonType.Y)),
+                new HashSet<ProductIonType>(Arrays.asList(ProductIonType.B, ProductIonType.Y)),
+                new HashSet<Integer>(Arrays.asList(2, 3)),
+                new HashSet<Integer>(Arrays.asList(1)),
+                0.5, 1, 5, SignatureTransitionFinderType.MINIMAL));
+
+        assertEquals(1, buildCount.get());
+        assertSame(first.getBackgroundPeptides(), second.getBackgroundPeptides());
+        assertEquals(10, first.getBackgroundPeptides().size());
+        assertEquals(1000, pool.getTotalSize());
+
+        //another mass accuracy is another finder
+        pool.acquire(session, createKey(9606, "tryp", 0.2)).release();
+        assertEquals(2, buildCount.get());
+        assertEquals(2, pool.size());
+
+        first.release();
+        second.release();
+        second.release();
+        pool.evictIdle();
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getTotalSize());
+    }
+
+    @Test
+    public void testLeasedFindersAreNotEvicted() {
+
+        //room for two finders of 10 peptides
+        SignatureTransitionFinderPool pool = new SignatureTransitionFinderPool(2000, 100);
+
+        SignatureTransitionFinderPool.Lease tryp = pool.acquire(session, createKey(9606, "tryp", 0.5));
+        pool.acquire(session, createKey(9606, "lysc", 0.5)).release();
+        pool.acquire(session, createKey(9606, "gluc", 0.5)).release();
+
+        //lysc is the least recently used idle finder
+        assertTrue(pool.contains(createKey(9606, "tryp", 0.5)));
+        assertFalse(pool.contains(createKey(9606, "lysc", 0.5)));
+        assertTrue(pool.contains(createKey(9606, "gluc", 0.5)));
+
+        //all leased, the pool exceeds its size until a lease is released
+        SignatureTransitionFinderPool.Lease gluc = pool.acquire(session, createKey(9606, "gluc", 0.5));
+        SignatureTransitionFinderPool.Lease argc = pool.acquire(session, createKey(9606, "argc", 0.5));
+        assertEquals(3, pool.size());
+
+        //gluc is idle but the most recently used finder
+        gluc.release();
+        assertEquals(3, pool.size());
+        tryp.release();
+        assertEquals(2, pool.size());
+        assertFalse(pool.contains(createKey(9606, "gluc", 0.5)));
+
+        argc.release();
+        assertEquals(4, buildCount.get());
+    }
+
+    @Test
+    public void testFinderLargerThanThePoolIsKept() {
+
+        //room for half a finder of 10 peptides
+        SignatureTransitionFinderPool pool = new SignatureTransitionFinderPool(500, 100);
+
+        pool.acquire(session, createKey(9606, "tryp", 0.5)).release();
+        assertTrue(pool.contains(createKey(9606, "tryp", 0.5)));
+
+        pool.acquire(session, createKey(9606, "tryp", 0.5)).release();
+        assertEquals(1, buildCount.get());
+
+        //the finder used last replaces it
+        pool.acquire(session, createKey(9606, "lysc", 0.5)).release();
+        assertFalse(pool.contains(createKey(9606, "tryp", 0.5)));
+        assertTrue(pool.contains(createKey(9606, "lysc", 0.5)));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testFailedBuildIsNotPooled() {
+
+        SignatureTransitionFinderPool pool = new SignatureTransitionFinderPool(1000000, 100);
+
+        try {
+            pool.acquire(session, createKey(10090, "tryp", 0.5));
+            fail("finder built with the session of another organism");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        assertEquals(0, pool.size());
+
+        SigPepSession mouseSession = createSession(10090, 10);
+        SignatureTransitionFinderPool.Lease lease = pool.acquire(mouseSession, createKey(10090, "tryp", 0.5));
+        assertEquals(1, pool.size());
+        lease.release();
+    }
+
+    @Test
+    public void testLeaseCopiesTheBackgroundOnWrite() {
+
+        SignatureTransitionFinderPool pool = new SignatureTransitionFinderPool(1000000, 100);
+
+        SignatureTransitionFinderPool.Lease first = pool.acquire(session, createKey(9606, "tryp", 0.5));
+        SignatureTransitionFinderPool.Lease second = pool.acquire(session, createKey(9606, "tryp", 0.5));
+        Set<Peptide> pooledBackground = second.getBackgroundPeptides();
+
+        //the first update builds a finder of the lease's own
+        Peptide extra = PeptideFactory.createPeptide("EXTRAPEPTIDER");
+        first.addBackgroundPeptides(Collections.singleton(extra));
+        assertEquals(2, buildCount.get());
+        assertEquals(11, first.getBackgroundPeptides().size());
+        assertTrue(first.getBackgroundPeptides().contains(extra));
+
+        //later updates go to that finder
+        first.removeBackgroundPeptides(Collections.singleton(extra));
+        first.removeBackgroundPeptides(Collections.singleton(PeptideFactory.createPeptide("PEPTIDER")));
+        assertEquals(2, buildCount.get());
+        assertEquals(9, first.getBackgroundPeptides().size());
+
+        //the pooled finder is left as it is
+        assertSame(pooledBackground, second.getBackgroundPeptides());
+        assertEquals(10, second.getBackgroundPeptides().size());
+        assertFalse(second.getBackgroundPeptides().contains(extra));
+        assertEquals(1000, pool.getTotalSize());
+
+        first.release();
+        second.release();
+    }
+}
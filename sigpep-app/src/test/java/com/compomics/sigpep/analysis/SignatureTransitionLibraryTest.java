@@ -0,0 +1,134 @@
+package com.compomics.sigpep.analysis;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.model.impl.SignatureTransitionImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tests that a written signature transition library is looked up by peptide and by
+ * accession and only matches the parameters it was computed with.
+ */
+public class SignatureTransitionLibraryTest {
+
+    private File file;
+
+    @Before
+    public void methodSetup() throws IOException {
+        file = File.createTempFile("sigpep", SignatureTransitionLibrary.FILE_EXTENSION);
+    }
+
+    @After
+    public void methodTearDown() {
+        file.delete();
+    }
+
+    private SignatureTransitionFinderPool.Key createKey(double massAccuracy) {
+        return new SignatureTransitionFinderPool.Key(9606,
+                Collections.singleton("tryp"),
+                Collections.<Modification>emptySet(),
+                EnumSet.of(ProductIonType.Y),
+                EnumSet.of(ProductIonType.Y, ProductIonType.B),
+                new HashSet<Integer>(Arrays.asList(2, 3)),
+                Collections.singleton(1),
+                massAccuracy,
+                1,
+                5,
+                SignatureTransitionFinderType.MINIMAL);
+    }
+
+    private List<SignatureTransition> createTransitions(Peptide target, int productIonLength) {
+
+        Set<Peptide> backgroundPeptides = new HashSet<Peptide>();
+        backgroundPeptides.add(PeptideFactory.createPeptide("PEPTIDER"));
+
+        SignatureTransition transition = new SignatureTransitionImpl(target, backgroundPeptides);
+        transition.addProductIon(ProductIonType.Y, productIonLength);
+        transition.setTargetPeptideChargeState(2);
+        transition.setExclusionScore(1.0);
+
+        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+        retVal.add(transition);
+        return retVal;
+    }
+
+    private SignatureTransitionLibrary writeLibrary() throws IOException {
+
+        Peptide first = PeptideFactory.createPeptide("LVNELTEFAK");
+        Peptide second = PeptideFactory.createPeptide("YLYEIAR");
+        Peptide third = PeptideFactory.createPeptide("AEFVEVTK");
+
+        SignatureTransitionLibrary.Writer writer = new SignatureTransitionLibrary.Writer(file, createKey(0.2), "1-2-3");
+        writer.add(first, new HashSet<String>(Arrays.asList("P1", "G1")), createTransitions(first, 3));
+        writer.add(second, new HashSet<String>(Arrays.asList("P2", "G2")), createTransitions(second, 4));
+        writer.add(third, new HashSet<String>(Arrays.asList("P1", "G1")), new ArrayList<SignatureTransition>());
+        writer.close();
+
+        return new SignatureTransitionLibrary(file);
+    }
+
+    @Test
+    public void testLookupByPeptide() throws IOException {
+
+        SignatureTransitionLibrary library = writeLibrary();
+        assertEquals(3, library.getPeptideCount());
+
+        List<SignatureTransition> transitions = library.getSignatureTransitions(PeptideFactory.createPeptide("YLYEIAR"));
+        assertNotNull(transitions);
+        assertEquals(1, transitions.size());
+        assertEquals("YLYEIAR", transitions.get(0).getPeptide().getSequenceString());
+        assertEquals(4, transitions.get(0).getProductIons().get(0).getSequenceLength());
+        assertEquals(1, transitions.get(0).getBackgroundPeptides().size());
+
+        assertEquals(1, library.getSignatureTransitions("LVNELTEFAK").size());
+        assertEquals(0, library.getSignatureTransitions("AEFVEVTK").size());
+        assertNull(library.getSignatureTransitions("PEPTIDEK"));
+    }
+
+    @Test
+    public void testLookupByAccession() throws IOException {
+
+        SignatureTransitionLibrary library = writeLibrary();
+
+        Set<String> sequences = new HashSet<String>();
+        for (SignatureTransition transition : library.getSignatureTransitionsByAccession("P1")) {
+            sequences.add(transition.getPeptide().getSequenceString());
+        }
+        assertEquals(Collections.singleton("LVNELTEFAK"), sequences);
+
+        assertEquals(1, library.getSignatureTransitionsByAccession("G2").size());
+        assertEquals("YLYEIAR", library.getSignatureTransitionsByAccession("G2").get(0).getPeptide().getSequenceString());
+        assertNull(library.getSignatureTransitionsByAccession("P3"));
+    }
+
+    @Test
+    public void testMatchesParametersAndVersion() throws IOException {
+
+        SignatureTransitionLibrary library = writeLibrary();
+
+        assertEquals("1-2-3", library.getDatabaseVersion());
+        assertEquals(createKey(0.2), library.getKey());
+        assertTrue(library.matches(createKey(0.2), "1-2-3"));
+        assertFalse(library.matches(createKey(0.5), "1-2-3"));
+        assertFalse(library.matches(createKey(0.2), "1-2-4"));
+    }
+
+    @Test
+    public void testLibraryFileIsNamedByParameters() {
+
+        File directory = new File("libraries");
+        File libraryFile = SignatureTransitionLibrary.getLibraryFile(directory, createKey(0.2));
+
+        assertEquals(directory, libraryFile.getParentFile());
+        assertTrue(libraryFile.getName().startsWith("9606_tryp_"));
+        assertTrue(libraryFile.getName().endsWith(SignatureTransitionLibrary.FILE_EXTENSION));
+        assertEquals(libraryFile, SignatureTransitionLibrary.getLibraryFile(directory, createKey(0.2)));
+        assertFalse(libraryFile.equals(SignatureTransitionLibrary.getLibraryFile(directory, createKey(0.5))));
+    }
+}
@@ -0,0 +1,206 @@
+package com.compomics.sigpep.analysis;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.Configuration;
+import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.model.impl.SignatureTransitionImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tests that signature transitions are read back from the result cache as they were
+ * stored, that least recently used entries are evicted and that the cache survives
+ * reopening.
+ */
+public class SignatureTransitionResultCacheTest {
+
+    private File directory;
+
+    @Before
+    public void methodSetup() throws IOException {
+        directory = File.createTempFile("sigpep", ".results");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void methodTearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private SignatureTransitionFinderPool.Key createKey(double massAccuracy) {
+        return new SignatureTransitionFinderPool.Key(9606,
+                Collections.singleton("tryp"),
+                Collections.<Modification>emptySet(),
+                EnumSet.of(ProductIonType.Y),
+                EnumSet.of(ProductIonType.Y, ProductIonType.B),
+                new HashSet<Integer>(Arrays.asList(2, 3)),
+                Collections.singleton(1),
+                massAccuracy,
+                1,
+                5,
+                SignatureTransitionFinderType.MINIMAL);
+    }
+
+    private List<SignatureTransition> createTransitions(Peptide target) {
+
+        Set<Peptide> backgroundPeptides = new HashSet<Peptide>();
+        backgroundPeptides.add(PeptideFactory.createPeptide("PEPTIDER"));
+        backgroundPeptides.add(PeptideFactory.createPeptide("PEPTIDEGR"));
+
+        SignatureTransition transition = new SignatureTransitionImpl(target, backgroundPeptides);
+        transition.addProductIon(ProductIonType.Y, 3);
+        transition.addProductIon(ProductIonType.Y, 5);
+        transition.setTargetPeptideChargeState(2);
+        transition.setExclusionScore(0.75);
+        transition.setMassAccuracy(0.5);
+        transition.setTargetProductIonTypes(EnumSet.of(ProductIonType.Y));
+        transition.setBackgroundProductIonTypes(EnumSet.of(ProductIonType.Y, ProductIonType.B));
+        transition.setPrecursorIonChargeStates(new HashSet<Integer>(Arrays.asList(2, 3)));
+        transition.setProductIonChargeStates(Collections.singleton(1));
+        Map<Double, Integer> massDistribution = new TreeMap<Double, Integer>();
+        massDistribution.put(175.119, 2);
+        massDistribution.put(401.2, 1);
+        transition.setBackgroundProductIonMassDistribution(massDistribution);
+
+        List<SignatureTransition> retVal = new ArrayList<SignatureTransition>();
+        retVal.add(transition);
+        return retVal;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        SignatureTransitionResultCache cache = new SignatureTransitionResultCache(directory, 1000000);
+        Peptide target = PeptideFactory.createPeptide("LVNELTEFAK");
+
+        assertNull(cache.get(createKey(0.5), "1-2-3", target));
+
+        List<SignatureTransition> stored = createTransitions(target);
+        cache.put(createKey(0.5), "1-2-3", target, stored);
+
+        List<SignatureTransition> read = cache.get(createKey(0.5), "1-2-3", target);
+        assertNotNull(read);
+        assertEquals(1, read.size());
+
+        SignatureTransition expected = stored.get(0);
+        SignatureTransition actual = read.get(0);
+        assertEquals(expected.getTargetPeptideChargeState(), actual.getTargetPeptideChargeState());
+        assertEquals(expected.getExclusionScore(), actual.getExclusionScore(), 0);
+        assertEquals(expected.getMassAccuracy(), actual.getMassAccuracy(), 0);
+        assertEquals(expected.getTargetProductIonTypes(), actual.getTargetProductIonTypes());
+        assertEquals(expected.getBackgroundProductIonTypes(), actual.getBackgroundProductIonTypes());
+        assertEquals(expected.getPrecursorIonChargeStates(), actual.getPrecursorIonChargeStates());
+        assertEquals(expected.getProductIonChargeStates(), actual.getProductIonChargeStates());
+        assertEquals(expected.getBackgroundProductIonMassDistribution(), actual.getBackgroundProductIonMassDistribution());
+
+        assertEquals(expected.getProductIons().size(), actual.getProductIons().size());
+        for (int i = 0; i < expected.getProductIons().size(); i++) {
+            assertEquals(expected.getProductIons().get(i).getType(), actual.getProductIons().get(i).getType());
+            assertEquals(expected.getProductIons().get(i).getSequenceLength(), actual.getProductIons().get(i).getSequenceLength());
+        }
+
+        Set<String> backgroundSequences = new HashSet<String>();
+        for (Peptide peptide : actual.getBackgroundPeptides()) {
+            backgroundSequences.add(peptide.getSequenceString());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("PEPTIDER", "PEPTIDEGR")), backgroundSequences);
+    }
+
+    @Test
+    public void testKeyDistinguishesParametersAndVersion() throws IOException {
+
+        SignatureTransitionResultCache cache = new SignatureTransitionResultCache(directory, 1000000);
+        Peptide target = PeptideFactory.createPeptide("LVNELTEFAK");
+        cache.put(createKey(0.5), "1-2-3", target, createTransitions(target));
+
+        assertNull(cache.get(createKey(1.0), "1-2-3", target));
+        assertNull(cache.get(createKey(0.5), "1-2-4", target));
+        assertNull(cache.get(createKey(0.5), "1-2-3", PeptideFactory.createPeptide("LVNELTEFAR")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+
+        Peptide first = PeptideFactory.createPeptide("LVNELTEFAK");
+        Peptide second = PeptideFactory.createPeptide("YLYEIAR");
+        Peptide third = PeptideFactory.createPeptide("AEFVEVTK");
+
+        SignatureTransitionResultCache cache = new SignatureTransitionResultCache(directory, 1000000);
+        cache.put(createKey(0.5), "1", first, createTransitions(first));
+        long entrySize = cache.getTotalSize();
+
+        cache = new SignatureTransitionResultCache(directory, entrySize * 2 + entrySize / 2);
+        cache.put(createKey(0.5), "1", second, createTransitions(second));
+        assertNotNull(cache.get(createKey(0.5), "1", first));
+        cache.put(createKey(0.5), "1", third, createTransitions(third));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(createKey(0.5), "1", first));
+        assertNull(cache.get(createKey(0.5), "1", second));
+        assertNotNull(cache.get(createKey(0.5), "1", third));
+    }
+
+    @Test
+    public void testEntriesSurviveReopening() throws IOException {
+
+        Peptide target = PeptideFactory.createPeptide("LVNELTEFAK");
+
+        SignatureTransitionResultCache cache = new SignatureTransitionResultCache(directory, 1000000);
+        cache.put(createKey(0.5), "1", target, createTransitions(target));
+        cache.flush();
+        long totalSize = cache.getTotalSize();
+
+        SignatureTransitionResultCache reopened = new SignatureTransitionResultCache(directory, 1000000);
+        assertEquals(1, reopened.size());
+        assertEquals(totalSize, reopened.getTotalSize());
+        assertNotNull(reopened.get(createKey(0.5), "1", target));
+
+        new File(directory, "index").delete();
+        reopened = new SignatureTransitionResultCache(directory, 1000000);
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.get(createKey(0.5), "1", target));
+    }
+    @Test
+    public void testTemporaryFilesAreDeletedOnOpen() throws IOException {
+
+        Peptide target = PeptideFactory.createPeptide("LVNELTEFAK");
+
+        SignatureTransitionResultCache cache = new SignatureTransitionResultCache(directory, 1000000);
+        cache.putAll(createKey(0.5), "1", Collections.singleton(target), createTransitions(target));
+
+        //left by an application stopped while writing an entry or the index
+        File entryTmp = new File(directory, "0123456789abcdef.1.tmp");
+        File indexTmp = new File(directory, "index.tmp");
+        assertTrue(entryTmp.createNewFile());
+        assertTrue(indexTmp.createNewFile());
+
+        SignatureTransitionResultCache reopened = new SignatureTransitionResultCache(directory, 1000000);
+        assertFalse(entryTmp.exists());
+        assertFalse(indexTmp.exists());
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.get(createKey(0.5), "1", target));
+    }
+
+    @Test
+    public void testEntryKey() {
+
+        Configuration config = Configuration.getInstance();
+        String entryKey = SignatureTransitionResultCache.createEntryKey(createKey(0.5), "1", PeptideFactory.createPeptide("LVNELTEFAK"));
+
+        //results of another peptide ion store or mass precision are other entries
+        assertTrue(entryKey.contains("|" + config.getString("sigpep.app.analysis.peptide.ion.store.class", "") + "|"));
+        assertTrue(entryKey.contains("|" + config.getString("sigpep.app.monoisotopic.mass.precision", "") + "|"));
+    }
+}
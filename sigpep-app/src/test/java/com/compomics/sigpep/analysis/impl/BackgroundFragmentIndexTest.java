@@ -0,0 +1,130 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Tests that exclusion matrices created from the background fragment index equal
+ * the ones created from a product ion store and that an updated index equals a
+ * rebuilt one.
+ */
+public class BackgroundFragmentIndexTest {
+
+    private List<Peptide> backgroundPeptides;
+    private HashSet<ProductIonType> ionTypes;
+    private HashSet<Integer> chargeStates;
+    private FindMinimalMapProductIonScanner scanner;
+
+    @Before
+    public void methodSetup() {
+
+        backgroundPeptides = new ArrayList<Peptide>();
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(23);
+        while (backgroundPeptides.size() < 60) {
+            StringBuilder sequence = new StringBuilder();
+            int length = 6 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            Peptide peptide = PeptideFactory.createPeptide(sequence.toString());
+            if (!backgroundPeptides.contains(peptide)) {
+                backgroundPeptides.add(peptide);
+            }
+        }
+
+        ionTypes = new HashSet<ProductIonType>();
+        ionTypes.add(ProductIonType.B);
+        ionTypes.add(ProductIonType.Y);
+        chargeStates = new HashSet<Integer>();
+        chargeStates.add(1);
+        chargeStates.add(2);
+
+        scanner = new FindMinimalMapProductIonScanner(ionTypes, ionTypes, chargeStates, 1.0, 1, 3);
+    }
+
+    @Test
+    public void testIndex() {
+
+        BackgroundFragmentIndex index = new BackgroundFragmentIndex(backgroundPeptides, ionTypes, 4);
+        assertEquals(backgroundPeptides.size(), index.getPrecursorCount());
+
+        int fragmentCount = 0;
+        for (int p = 0; p < index.getPrecursorCount(); p++) {
+            for (int f = index.getFirstFragment(p); f < index.getEndFragment(p); f++) {
+                assertEquals(p, index.getFragmentPrecursor(f));
+                assertTrue(ionTypes.contains(index.getFragmentType(f)));
+                if (f > index.getFirstFragment(p)) {
+                    assertTrue(index.getFragmentMass(f - 1) <= index.getFragmentMass(f));
+                }
+                fragmentCount++;
+            }
+        }
+        assertEquals(fragmentCount, index.getFragmentCount());
+        assertEquals(-1, index.getPrecursorIndex(PeptideFactory.createPeptide("WWWWWWWWWW")));
+    }
+
+    @Test
+    public void testExclusionMatrix() {
+
+        //leave some background peptides out of the index
+        scanner.indexBackgroundPeptides(backgroundPeptides.subList(0, 50));
+
+        for (int t = 0; t < 5; t++) {
+
+            Peptide targetPeptide = backgroundPeptides.get(t * 11);
+            Set<Peptide> isobaricPeptides = new LinkedHashSet<Peptide>(backgroundPeptides);
+            isobaricPeptides.remove(targetPeptide);
+
+            BackgroundFragmentIndex index = scanner.getBackgroundFragmentIndex();
+            scanner.backgroundFragmentIndex = null;
+            ExclusionMatrix expected = scanner.createExclusionMatrix(targetPeptide, isobaricPeptides, ionTypes, ionTypes, chargeStates, 1.0);
+            scanner.backgroundFragmentIndex = index;
+            ExclusionMatrix actual = scanner.createExclusionMatrix(targetPeptide, isobaricPeptides, ionTypes, ionTypes, chargeStates, 1.0);
+
+            assertEquals(expected.getProductIons(), actual.getProductIons());
+            assertEquals(expected.getBackgroundPeptides(), actual.getBackgroundPeptides());
+            for (int i = 0; i < expected.getProductIonCount(); i++) {
+                for (int j = 0; j < expected.getBackgroundPeptideCount(); j++) {
+                    assertEquals(expected.excludes(i, j), actual.excludes(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAddRemove() {
+
+        BackgroundFragmentIndex index = new BackgroundFragmentIndex(backgroundPeptides.subList(0, 40), ionTypes, 4);
+        index.remove(backgroundPeptides.subList(10, 20));
+        index.add(backgroundPeptides.subList(30, 60));
+        index.add(backgroundPeptides.subList(10, 15));
+        index.remove(backgroundPeptides.subList(15, 20));
+
+        List<Peptide> peptides = new ArrayList<Peptide>(backgroundPeptides.subList(0, 10));
+        peptides.addAll(backgroundPeptides.subList(20, 60));
+        peptides.addAll(backgroundPeptides.subList(10, 15));
+        BackgroundFragmentIndex rebuiltIndex = new BackgroundFragmentIndex(peptides, ionTypes, 4);
+
+        assertEquals(rebuiltIndex.getPrecursorCount(), index.getPrecursorCount());
+        assertEquals(rebuiltIndex.getFragmentCount(), index.getFragmentCount());
+        assertEquals(-1, index.getPrecursorIndex(backgroundPeptides.get(17)));
+
+        for (Peptide peptide : peptides) {
+            int p = index.getPrecursorIndex(peptide);
+            int q = rebuiltIndex.getPrecursorIndex(peptide);
+            assertEquals(rebuiltIndex.getEndFragment(q) - rebuiltIndex.getFirstFragment(q), index.getEndFragment(p) - index.getFirstFragment(p));
+            for (int f = index.getFirstFragment(p), g = rebuiltIndex.getFirstFragment(q); f < index.getEndFragment(p); f++, g++) {
+                assertEquals(p, index.getFragmentPrecursor(f));
+                assertEquals(rebuiltIndex.getFragmentMass(g), index.getFragmentMass(f), 0);
+                assertEquals(rebuiltIndex.getFragmentType(g), index.getFragmentType(f));
+            }
+        }
+    }
+}
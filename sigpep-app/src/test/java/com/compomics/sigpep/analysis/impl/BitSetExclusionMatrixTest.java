@@ -0,0 +1,155 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.util.Combinations;
+
+import java.util.*;
+
+/**
+ * Tests the bit packed exclusion matrix against the map based exclusion matrix.
+ */
+public class BitSetExclusionMatrixTest {
+
+    private List<ProductIon> productIons;
+    private List<Peptide> backgroundPeptides;
+    private MapExclusionMatrix mapMatrix;
+    private BitSetExclusionMatrix bitSetMatrix;
+
+    @Before
+    public void methodSetup() {
+
+        PrecursorIon target = PeptideFactory.createPeptide("LTWLTPLIPSTK").getPrecursorIon();
+        productIons = target.getProductIons(ProductIonType.Y);
+
+        //more than 64 background peptides to span several words
+        backgroundPeptides = new ArrayList<Peptide>();
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(42);
+        while (backgroundPeptides.size() < 70) {
+            StringBuilder sequence = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            Peptide peptide = PeptideFactory.createPeptide(sequence.toString());
+            if (!backgroundPeptides.contains(peptide)) {
+                backgroundPeptides.add(peptide);
+            }
+        }
+
+        mapMatrix = new MapExclusionMatrix(productIons, backgroundPeptides);
+        bitSetMatrix = new BitSetExclusionMatrix(productIons, backgroundPeptides);
+
+        for (int i = 0; i < productIons.size(); i++) {
+            for (int j = 0; j < backgroundPeptides.size(); j++) {
+                //overlap with most peptides so that only combinations exclude all
+                if (random.nextDouble() < 0.3) {
+                    mapMatrix.setExcludes(i, j, false);
+                    bitSetMatrix.setExcludes(i, j, false);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInitialisation() {
+
+        ExclusionMatrix matrix = new BitSetExclusionMatrix(productIons, backgroundPeptides);
+        for (int i = 0; i < productIons.size(); i++) {
+            assertEquals(backgroundPeptides.size(), matrix.getExclusionCount(i));
+            assertTrue(matrix.excludesAll(new int[]{i}));
+        }
+    }
+
+    @Test
+    public void testExcludes() {
+
+        for (int i = 0; i < productIons.size(); i++) {
+            assertEquals(mapMatrix.getExclusionCount(i), bitSetMatrix.getExclusionCount(i));
+            for (int j = 0; j < backgroundPeptides.size(); j++) {
+                assertEquals(mapMatrix.excludes(i, j), bitSetMatrix.excludes(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testCalculators() throws Exception {
+
+        MapExclusionScoreCalculatorFactory mapFactory = new MapExclusionScoreCalculatorFactory();
+        BitSetExclusionScoreCalculatorFactory bitSetFactory = new BitSetExclusionScoreCalculatorFactory();
+
+        int combinationsExcludingAll = 0;
+        for (int k = 1; k <= 3; k++) {
+
+            Combinations<ProductIon> combinations = new Combinations<ProductIon>(k, new LinkedHashSet<ProductIon>(productIons));
+            while (combinations.hasNext()) {
+
+                Set<ProductIon> combination = combinations.next();
+                Map<Set<ProductIon>, Double> expected = mapFactory.getCalculator(combination, mapMatrix).call();
+                Map<Set<ProductIon>, Double> actual = bitSetFactory.getCalculator(combination, bitSetMatrix).call();
+
+                assertEquals(expected, actual);
+                combinationsExcludingAll += expected.size();
+            }
+        }
+
+        assertTrue(combinationsExcludingAll > 0);
+    }
+
+    @Test
+    public void testExclusionScore() {
+
+        //the first product ion excludes both background peptides, the second one only the first peptide
+        List<ProductIon> ions = productIons.subList(0, 2);
+        List<Peptide> background = backgroundPeptides.subList(0, 2);
+        Set<ProductIon> combination = new LinkedHashSet<ProductIon>(ions);
+
+        HashSet<ProductIonType> ionTypes = new HashSet<ProductIonType>();
+        ionTypes.add(ProductIonType.Y);
+        HashSet<Integer> chargeStates = new HashSet<Integer>();
+        chargeStates.add(1);
+        FindMinimalMapProductIonScanner scanner = new FindMinimalMapProductIonScanner(ionTypes, ionTypes, chargeStates, 0.5, 1, 2);
+
+        for (ExclusionMatrix matrix : new ExclusionMatrix[]{new MapExclusionMatrix(ions, background), new BitSetExclusionMatrix(ions, background)}) {
+
+            matrix.setExcludes(1, 1, false);
+
+            //3 of 4 possible exclusions, the scanners used to count only the exclusions of the last peptide
+            assertEquals(0.75, matrix.getExclusionScore(new int[]{0, 1}), 0.0);
+            assertEquals(0.75, scanner.calculateExclusionScore(combination, matrix), 0.0);
+            assertEquals(0.0, scanner.calculateExclusionScore(Collections.singleton(ions.get(1)), matrix), 0.0);
+        }
+    }
+
+    @Test
+    public void testDuplicates() {
+
+        //duplicates are ignored like the map based exclusion matrix of the scanners used to
+        List<ProductIon> ions = new ArrayList<ProductIon>(productIons.subList(0, 2));
+        ions.add(productIons.get(0));
+        List<Peptide> background = new ArrayList<Peptide>(backgroundPeptides.subList(0, 3));
+        background.add(backgroundPeptides.get(1));
+
+        for (ExclusionMatrix matrix : new ExclusionMatrix[]{new MapExclusionMatrix(ions, background), new BitSetExclusionMatrix(ions, background)}) {
+
+            assertEquals(2, matrix.getProductIonCount());
+            assertEquals(3, matrix.getBackgroundPeptideCount());
+            assertEquals(productIons.subList(0, 2), matrix.getProductIons());
+            assertEquals(backgroundPeptides.subList(0, 3), matrix.getBackgroundPeptides());
+            assertEquals(1, matrix.getBackgroundPeptideIndex(backgroundPeptides.get(1)));
+            assertEquals(3, matrix.getExclusionCount(0));
+        }
+    }
+
+    @Test
+    public void testEmptyBackground() throws Exception {
+
+        BitSetExclusionMatrix matrix = new BitSetExclusionMatrix(productIons, new ArrayList<Peptide>());
+        assertTrue(matrix.excludesAll(new int[]{0}));
+        assertTrue(Double.isNaN(matrix.getExclusionScore(new int[]{0})));
+    }
+}
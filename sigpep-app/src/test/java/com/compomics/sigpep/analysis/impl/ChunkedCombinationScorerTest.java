@@ -0,0 +1,176 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.*;
+import com.compomics.sigpep.util.Combinations;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the chunked combination scorer against enumerating all combinations.
+ */
+public class ChunkedCombinationScorerTest {
+
+    private List<ProductIon> productIons;
+    private ExclusionMatrix exclusionMatrix;
+    private ExecutorService executorService;
+
+    @Before
+    public void methodSetup() {
+
+        PrecursorIon target = PeptideFactory.createPeptide("LTWLTPLIPSTK").getPrecursorIon();
+        productIons = target.getProductIons(ProductIonType.Y);
+
+        List<Peptide> backgroundPeptides = new ArrayList<Peptide>();
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(3);
+        while (backgroundPeptides.size() < 40) {
+            StringBuilder sequence = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            Peptide peptide = PeptideFactory.createPeptide(sequence.toString());
+            if (!backgroundPeptides.contains(peptide)) {
+                backgroundPeptides.add(peptide);
+            }
+        }
+
+        exclusionMatrix = new BitSetExclusionMatrix(productIons, backgroundPeptides);
+        for (int i = 0; i < productIons.size(); i++) {
+            for (int j = 0; j < backgroundPeptides.size(); j++) {
+                if (random.nextDouble() < 0.4) {
+                    exclusionMatrix.setExcludes(i, j, false);
+                }
+            }
+        }
+
+        executorService = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void methodTearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testUnrank() {
+
+        int n = productIons.size();
+        for (int k = 0; k <= 4; k++) {
+
+            Combinations<ProductIon> combinations = new Combinations<ProductIon>(k, new LinkedHashSet<ProductIon>(productIons));
+            int[] index = Combinations.unrank(0, n, k);
+            long rank = 0;
+            while (combinations.hasNext()) {
+
+                Set<ProductIon> expected = combinations.next();
+                assertEquals(expected, toCombination(index));
+                assertTrue(Arrays.equals(index, Combinations.unrank(rank, n, k)));
+
+                rank++;
+                assertEquals(rank < Combinations.binomialCoefficient(n, k), Combinations.nextIndex(index, n));
+            }
+
+            assertEquals(Combinations.binomialCoefficient(n, k), rank);
+        }
+    }
+
+    @Test
+    public void testScoreAllAndFirst() {
+
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(executorService, 7, 1);
+
+        int combinationsFound = 0;
+        for (int k = 1; k <= 4; k++) {
+
+            Map<Set<ProductIon>, Double> expected = new HashMap<Set<ProductIon>, Double>();
+            Set<ProductIon> expectedFirst = null;
+
+            int[] index = Combinations.unrank(0, productIons.size(), k);
+            do {
+                if (exclusionMatrix.excludesAll(index)) {
+                    expected.put(toCombination(index), exclusionMatrix.getExclusionScore(index));
+                    if (expectedFirst == null) {
+                        expectedFirst = toCombination(index);
+                    }
+                }
+            } while (Combinations.nextIndex(index, productIons.size()));
+
+            assertEquals(expected, scorer.scoreAll(exclusionMatrix, k));
+
+            Map<Set<ProductIon>, Double> first = scorer.scoreFirst(exclusionMatrix, k);
+            if (expectedFirst == null) {
+                assertTrue(first.isEmpty());
+            } else {
+                assertEquals(Collections.singleton(expectedFirst), first.keySet());
+            }
+
+            combinationsFound += expected.size();
+        }
+
+        assertTrue(combinationsFound > 0);
+    }
+
+    @Test
+    public void testScoreAllWithHandler() {
+
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(executorService, 3, 1);
+
+        for (int k = 1; k <= 4; k++) {
+
+            List<int[]> expected = new ArrayList<int[]>();
+            int[] index = Combinations.unrank(0, productIons.size(), k);
+            do {
+                if (exclusionMatrix.excludesAll(index)) {
+                    expected.add(index.clone());
+                }
+            } while (Combinations.nextIndex(index, productIons.size()));
+
+            final List<int[]> actual = new ArrayList<int[]>();
+            long count = scorer.scoreAll(exclusionMatrix, k, new ChunkedCombinationScorer.CombinationHandler() {
+                public void handleCombination(int[] productIonIndexes, double exclusionScore) {
+                    assertEquals(exclusionMatrix.getExclusionScore(productIonIndexes), exclusionScore, 0);
+                    actual.add(productIonIndexes);
+                }
+            });
+
+            //same combinations in rank order
+            assertEquals(expected.size(), count);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertTrue(Arrays.equals(expected.get(i), actual.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testInterrupted() {
+
+        //small enough to be scored in the calling thread
+        ChunkedCombinationScorer scorer = new ChunkedCombinationScorer(executorService, 4, 1000000);
+
+        Thread.currentThread().interrupt();
+        try {
+            scorer.scoreAll(exclusionMatrix, 3);
+            fail("An interrupted scorer returned a result.");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    private Set<ProductIon> toCombination(int[] index) {
+        Set<ProductIon> retVal = new HashSet<ProductIon>();
+        for (int i : index) {
+            retVal.add(productIons.get(i));
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,113 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Tests the set cover scanner against the brute force minimal combination scanner.
+ */
+public class FindMinimalSetCoverProductIonScannerTest {
+
+    private List<ProductIon> productIons;
+    private List<Peptide> backgroundPeptides;
+    private FindMinimalMapProductIonScanner bruteForceScanner;
+    private FindMinimalSetCoverProductIonScanner setCoverScanner;
+
+    @Before
+    public void methodSetup() {
+
+        PrecursorIon target = PeptideFactory.createPeptide("LTWLTPLIPSTK").getPrecursorIon();
+        productIons = target.getProductIons(ProductIonType.Y);
+
+        backgroundPeptides = new ArrayList<Peptide>();
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(7);
+        while (backgroundPeptides.size() < 70) {
+            StringBuilder sequence = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            Peptide peptide = PeptideFactory.createPeptide(sequence.toString());
+            if (!backgroundPeptides.contains(peptide)) {
+                backgroundPeptides.add(peptide);
+            }
+        }
+
+        HashSet<ProductIonType> ionTypes = new HashSet<ProductIonType>();
+        ionTypes.add(ProductIonType.Y);
+        HashSet<Integer> chargeStates = new HashSet<Integer>();
+        chargeStates.add(1);
+
+        bruteForceScanner = new FindMinimalMapProductIonScanner(ionTypes, ionTypes, chargeStates, 0.5, 1, 4);
+        setCoverScanner = new FindMinimalSetCoverProductIonScanner(ionTypes, ionTypes, chargeStates, 0.5, 1, 4);
+    }
+
+    @Test
+    public void testSameCombinations() {
+
+        Random random = new Random(11);
+        int matricesWithCombinations = 0;
+
+        for (double overlapProbability : new double[]{0.0, 0.2, 0.35, 0.5, 0.7}) {
+            for (int run = 0; run < 5; run++) {
+
+                ExclusionMatrix matrix = new MapExclusionMatrix(productIons, backgroundPeptides);
+                for (int i = 0; i < productIons.size(); i++) {
+                    for (int j = 0; j < backgroundPeptides.size(); j++) {
+                        if (random.nextDouble() < overlapProbability) {
+                            matrix.setExcludes(i, j, false);
+                        }
+                    }
+                }
+
+                for (int minSize = 1; minSize <= 3; minSize++) {
+                    Map<Set<ProductIon>, Double> expected = bruteForceScanner.getUniqueProductIonCombinations(matrix, minSize, 4);
+                    Map<Set<ProductIon>, Double> actual = setCoverScanner.getUniqueProductIonCombinations(matrix, minSize, 4);
+                    assertEquals(expected, actual);
+                    if (!expected.isEmpty()) {
+                        matricesWithCombinations++;
+                    }
+                }
+            }
+        }
+
+        assertTrue(matricesWithCombinations > 0);
+    }
+
+    @Test
+    public void testBitSetMatrix() {
+
+        ExclusionMatrix mapMatrix = new MapExclusionMatrix(productIons, backgroundPeptides);
+        ExclusionMatrix bitSetMatrix = new BitSetExclusionMatrix(productIons, backgroundPeptides);
+
+        Random random = new Random(13);
+        for (int i = 0; i < productIons.size(); i++) {
+            for (int j = 0; j < backgroundPeptides.size(); j++) {
+                if (random.nextDouble() < 0.4) {
+                    mapMatrix.setExcludes(i, j, false);
+                    bitSetMatrix.setExcludes(i, j, false);
+                }
+            }
+        }
+
+        assertEquals(setCoverScanner.getUniqueProductIonCombinations(mapMatrix, 1, 4),
+                setCoverScanner.getUniqueProductIonCombinations(bitSetMatrix, 1, 4));
+    }
+
+    @Test
+    public void testNoCover() {
+
+        ExclusionMatrix matrix = new BitSetExclusionMatrix(productIons, backgroundPeptides);
+        for (int i = 0; i < productIons.size(); i++) {
+            matrix.setExcludes(i, 0, false);
+        }
+
+        assertTrue(setCoverScanner.getUniqueProductIonCombinations(matrix, 1, 4).isEmpty());
+    }
+}
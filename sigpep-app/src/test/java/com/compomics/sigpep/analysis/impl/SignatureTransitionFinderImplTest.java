@@ -0,0 +1,160 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.analysis.SignatureTransitionHandler;
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Tests that the parallel signature transition search yields the same
+ * signature transitions as the serial one and that a finder with an updated
+ * background yields the same as one built on that background.
+ */
+public class SignatureTransitionFinderImplTest {
+
+    private Set<Peptide> backgroundPeptides;
+    private List<Peptide> targetPeptides;
+    private SignatureTransitionFinderImpl finder;
+    private Set<Integer> precursorIonChargeStates;
+
+    @Before
+    public void methodSetup() {
+
+        //permutations of the same residues are isobaric
+        backgroundPeptides = new HashSet<Peptide>();
+        targetPeptides = new ArrayList<Peptide>();
+        Random random = new Random(5);
+        for (String composition : new String[]{"LTWLTPLIPSTK", "DEFGHLLVNR", "AGSYPEIVTK"}) {
+
+            List<Character> residues = new ArrayList<Character>();
+            for (char residue : composition.toCharArray()) {
+                residues.add(residue);
+            }
+
+            for (int i = 0; i < 12; i++) {
+                Collections.shuffle(residues, random);
+                StringBuilder sequence = new StringBuilder();
+                for (Character residue : residues) {
+                    sequence.append(residue);
+                }
+                Peptide peptide = PeptideFactory.createPeptide(sequence.toString());
+                if (backgroundPeptides.add(peptide) && i % 3 == 0) {
+                    targetPeptides.add(peptide);
+                }
+            }
+        }
+
+        precursorIonChargeStates = new HashSet<Integer>();
+        precursorIonChargeStates.add(2);
+        precursorIonChargeStates.add(3);
+
+        finder = new SignatureTransitionFinderImpl(backgroundPeptides, precursorIonChargeStates, 0.5, createScanner());
+    }
+
+    private FindMinimalMapProductIonScanner createScanner() {
+
+        HashSet<ProductIonType> ionTypes = new HashSet<ProductIonType>();
+        ionTypes.add(ProductIonType.Y);
+        ionTypes.add(ProductIonType.B);
+        HashSet<Integer> productIonChargeStates = new HashSet<Integer>();
+        productIonChargeStates.add(1);
+
+        return new FindMinimalMapProductIonScanner(ionTypes, ionTypes, productIonChargeStates, 0.5, 1, 3);
+    }
+
+    @Test
+    public void testParallelSearch() {
+
+        finder.setParallelism(1);
+        List<SignatureTransition> expected = finder.findSignatureTransitions(targetPeptides);
+
+        finder.setParallelism(4);
+        List<SignatureTransition> actual = finder.findSignatureTransitions(targetPeptides);
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPeptide(), actual.get(i).getPeptide());
+            assertEquals(expected.get(i).getTargetPeptideChargeState(), actual.get(i).getTargetPeptideChargeState());
+            assertEquals(new HashSet<ProductIon>(expected.get(i).getProductIons()), new HashSet<ProductIon>(actual.get(i).getProductIons()));
+            assertEquals(expected.get(i).getExclusionScore(), actual.get(i).getExclusionScore(), 0);
+        }
+    }
+
+    @Test
+    public void testHandlerSearch() {
+
+        finder.setParallelism(1);
+        List<SignatureTransition> expected = finder.findSignatureTransitions(targetPeptides);
+
+        for (int parallelism : new int[]{1, 2}) {
+
+            finder.setParallelism(parallelism);
+
+            final Thread caller = Thread.currentThread();
+            final List<SignatureTransition> actual = new ArrayList<SignatureTransition>();
+            finder.findSignatureTransitions(targetPeptides, new SignatureTransitionHandler() {
+                public void handleSignatureTransition(SignatureTransition signatureTransition) {
+                    assertSame(caller, Thread.currentThread());
+                    actual.add(signatureTransition);
+                }
+            });
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPeptide(), actual.get(i).getPeptide());
+                assertEquals(expected.get(i).getTargetPeptideChargeState(), actual.get(i).getTargetPeptideChargeState());
+                assertEquals(new HashSet<ProductIon>(expected.get(i).getProductIons()), new HashSet<ProductIon>(actual.get(i).getProductIons()));
+            }
+        }
+    }
+
+    @Test
+    public void testBackgroundUpdates() {
+
+        finder.setParallelism(1);
+        List<SignatureTransition> expected = finder.findSignatureTransitions(targetPeptides);
+
+        //start from a background missing some peptides and having some isobaric extra ones
+        List<Peptide> missingPeptides = new ArrayList<Peptide>();
+        for (Peptide peptide : backgroundPeptides) {
+            if (!targetPeptides.contains(peptide) && missingPeptides.size() < 8) {
+                missingPeptides.add(peptide);
+            }
+        }
+        List<Peptide> extraPeptides = new ArrayList<Peptide>();
+        for (String sequence : new String[]{"KTVIEPYSGA", "RNVLLHGFED", "WLTPLIPSTKLT"}) {
+            extraPeptides.add(PeptideFactory.createPeptide(sequence));
+        }
+
+        Set<Peptide> initialBackground = new HashSet<Peptide>(backgroundPeptides);
+        initialBackground.removeAll(missingPeptides);
+        initialBackground.addAll(extraPeptides);
+        SignatureTransitionFinderImpl updatedFinder = new SignatureTransitionFinderImpl(initialBackground, precursorIonChargeStates, 0.5, createScanner());
+        updatedFinder.setParallelism(1);
+
+        assertFalse(backgroundPeptides.equals(updatedFinder.getBackgroundPeptides()));
+
+        updatedFinder.addBackgroundPeptides(missingPeptides);
+        updatedFinder.removeBackgroundPeptides(extraPeptides);
+        //repeated updates are ignored
+        updatedFinder.removeBackgroundPeptides(extraPeptides);
+
+        assertEquals(backgroundPeptides, updatedFinder.getBackgroundPeptides());
+
+        List<SignatureTransition> actual = updatedFinder.findSignatureTransitions(targetPeptides);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPeptide(), actual.get(i).getPeptide());
+            assertEquals(expected.get(i).getTargetPeptideChargeState(), actual.get(i).getTargetPeptideChargeState());
+            assertEquals(expected.get(i).getBackgroundPeptides(), actual.get(i).getBackgroundPeptides());
+            assertEquals(new HashSet<ProductIon>(expected.get(i).getProductIons()), new HashSet<ProductIon>(actual.get(i).getProductIons()));
+            assertEquals(expected.get(i).getExclusionScore(), actual.get(i).getExclusionScore(), 0);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.compomics.sigpep.analysis.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Tests the sorted array peptide ion store against the sorted map peptide ion store.
+ */
+public class SortedArrayPeptideIonStoreTest {
+
+    private List<PrecursorIon> precursorIons;
+    private SortedMapPeptideIonStore<PrecursorIon> mapStore;
+    private SortedArrayPeptideIonStore<PrecursorIon> arrayStore;
+
+    @Before
+    public void methodSetup() {
+
+        //short peptides of few residues to get plenty of identical masses
+        Set<PrecursorIon> uniquePrecursorIons = new HashSet<PrecursorIon>();
+        String residues = "AGLKEST";
+        Random random = new Random(17);
+        while (uniquePrecursorIons.size() < 500) {
+            StringBuilder sequence = new StringBuilder();
+            int length = 5 + random.nextInt(4);
+            for (int i = 0; i < length; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            uniquePrecursorIons.add(PeptideFactory.createPeptide(sequence.toString()).getPrecursorIon());
+        }
+        precursorIons = new ArrayList<PrecursorIon>(uniquePrecursorIons);
+
+        Set<Integer> chargeStates = new HashSet<Integer>();
+        chargeStates.add(2);
+        chargeStates.add(3);
+
+        mapStore = new SortedMapPeptideIonStore<PrecursorIon>(chargeStates, 0.5);
+        arrayStore = new SortedArrayPeptideIonStore<PrecursorIon>(chargeStates, 0.5);
+
+        //populate in two batches with an overlap
+        mapStore.populate(precursorIons.subList(0, 300));
+        mapStore.populate(precursorIons.subList(250, 500));
+        arrayStore.populate(precursorIons.subList(0, 300));
+        arrayStore.populate(precursorIons.subList(250, 500));
+    }
+
+    @Test
+    public void testMasses() {
+
+        assertEquals(precursorIons.size(), arrayStore.size());
+        assertEquals(new ArrayList<Double>(mapStore.getUniqueNeutralPeptideIonMasses()),
+                new ArrayList<Double>(arrayStore.getUniqueNeutralPeptideIonMasses()));
+
+        for (Double mass : mapStore.getUniqueNeutralPeptideIonMasses()) {
+            assertTrue(arrayStore.getUniqueNeutralPeptideIonMasses().contains(mass));
+            assertEquals(mapStore.getPeptideIonsWithMass(mass), arrayStore.getPeptideIonsWithMass(mass));
+        }
+
+        assertNull(arrayStore.getPeptideIonsWithMass(-1.0));
+    }
+
+    @Test
+    public void testQueries() {
+
+        Random random = new Random(19);
+        for (int i = 0; i < 100; i++) {
+
+            double lowerMassLimit = 400 + random.nextDouble() * 600;
+            double upperMassLimit = lowerMassLimit + random.nextDouble() * 50;
+            assertEquals(mapStore.getPeptideIonsInMassRange(lowerMassLimit, upperMassLimit),
+                    arrayStore.getPeptideIonsInMassRange(lowerMassLimit, upperMassLimit));
+
+            PrecursorIon precursorIon = precursorIons.get(random.nextInt(precursorIons.size()));
+            assertEquals(mapStore.getPeptideIonsWithOverlappingMassOverCharge(precursorIon),
+                    arrayStore.getPeptideIonsWithOverlappingMassOverCharge(precursorIon));
+        }
+
+        assertTrue(arrayStore.getPeptideIonsInMassRange(1000, 500).isEmpty());
+    }
+
+    @Test
+    public void testAddRemove() {
+
+        //remove and add back a third of the peptide ions in both stores
+        List<PrecursorIon> updatedPrecursorIons = new ArrayList<PrecursorIon>();
+        for (int i = 0; i < precursorIons.size(); i += 3) {
+            updatedPrecursorIons.add(precursorIons.get(i));
+        }
+
+        mapStore.remove(updatedPrecursorIons);
+        arrayStore.remove(updatedPrecursorIons);
+        arrayStore.remove(updatedPrecursorIons);
+        assertEquals(precursorIons.size() - updatedPrecursorIons.size(), arrayStore.size());
+        assertEquals(-1, arrayStore.indexOf(updatedPrecursorIons.get(0)));
+        assertEquals(new ArrayList<Double>(mapStore.getUniqueNeutralPeptideIonMasses()),
+                new ArrayList<Double>(arrayStore.getUniqueNeutralPeptideIonMasses()));
+        for (Double mass : mapStore.getUniqueNeutralPeptideIonMasses()) {
+            assertEquals(mapStore.getPeptideIonsWithMass(mass), arrayStore.getPeptideIonsWithMass(mass));
+        }
+
+        mapStore.add(updatedPrecursorIons);
+        arrayStore.add(updatedPrecursorIons);
+        arrayStore.add(updatedPrecursorIons.subList(0, 10));
+        assertEquals(precursorIons.size(), arrayStore.size());
+
+        //both stores equal a store populated at once
+        SortedArrayPeptideIonStore<PrecursorIon> rebuiltStore = new SortedArrayPeptideIonStore<PrecursorIon>(arrayStore.getChargeStates(), 0.5);
+        rebuiltStore.populate(precursorIons);
+        for (int i = 0; i < rebuiltStore.size(); i++) {
+            assertEquals(rebuiltStore.getMass(i), arrayStore.getMass(i), 0);
+        }
+        for (Double mass : rebuiltStore.getUniqueNeutralPeptideIonMasses()) {
+            assertEquals(rebuiltStore.getPeptideIonsWithMass(mass), arrayStore.getPeptideIonsWithMass(mass));
+            assertEquals(rebuiltStore.getPeptideIonsWithMass(mass), mapStore.getPeptideIonsWithMass(mass));
+        }
+        assertEquals(new ArrayList<Double>(rebuiltStore.getUniqueNeutralPeptideIonMasses()),
+                new ArrayList<Double>(mapStore.getUniqueNeutralPeptideIonMasses()));
+    }
+}
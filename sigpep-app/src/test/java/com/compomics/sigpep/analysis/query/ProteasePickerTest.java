@@ -0,0 +1,92 @@
+package com.compomics.sigpep.analysis.query;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+/**
+ * Tests the protease picker against merging the digests of each protease combination.
+ */
+public class ProteasePickerTest {
+
+    private Map<String, Map<String, Set<Integer>>> digests;
+    private Map<Integer, Set<String>> sequenceIdToProteinAccessionMap;
+    private Map<Integer, Set<String>> sequenceIdToGeneAccessionMap;
+
+    @Before
+    public void methodSetup() {
+
+        Random random = new Random(7);
+        digests = new HashMap<String, Map<String, Set<Integer>>>();
+        sequenceIdToProteinAccessionMap = new HashMap<Integer, Set<String>>();
+        sequenceIdToGeneAccessionMap = new HashMap<Integer, Set<String>>();
+
+        for (int sequenceId = 1; sequenceId <= 40; sequenceId++) {
+            sequenceIdToProteinAccessionMap.put(sequenceId, new HashSet<String>(Arrays.asList("P" + sequenceId, "Q" + sequenceId % 30)));
+            sequenceIdToGeneAccessionMap.put(sequenceId, Collections.singleton("G" + sequenceId % 25));
+        }
+
+        //peptides drawn from a small pool so that proteases share peptides and sequences
+        for (String protease : Arrays.asList("tryp", "lysc", "argc", "v8e", "cnbr")) {
+
+            Map<String, Set<Integer>> digest = new HashMap<String, Set<Integer>>();
+            for (int i = 0; i < 150; i++) {
+                Set<Integer> sequenceIds = new HashSet<Integer>();
+                sequenceIds.add(1 + random.nextInt(40));
+                if (random.nextInt(3) == 0) {
+                    sequenceIds.add(1 + random.nextInt(40));
+                }
+                digest.put("PEPTIDE" + random.nextInt(300), sequenceIds);
+            }
+            digests.put(protease, digest);
+        }
+    }
+
+    @Test
+    public void testGetProteaseCombinations() {
+
+        ProteasePicker picker = new ProteasePicker(digests, sequenceIdToProteinAccessionMap, sequenceIdToGeneAccessionMap);
+        List<ProteasePicker.ProteaseCombination> combinations = picker.getProteaseCombinations();
+
+        assertEquals(31, combinations.size());
+        assertEquals(70, picker.getProteinCount());
+        assertEquals(25, picker.getGeneCount());
+
+        Set<Set<String>> seen = new HashSet<Set<String>>();
+        for (ProteasePicker.ProteaseCombination combination : combinations) {
+
+            assertTrue(seen.add(combination.getProteaseNames()));
+
+            //merge the digests of the combination
+            Map<String, Set<Integer>> merged = new HashMap<String, Set<Integer>>();
+            for (String protease : combination.getProteaseNames()) {
+                for (Map.Entry<String, Set<Integer>> entry : digests.get(protease).entrySet()) {
+                    if (!merged.containsKey(entry.getKey())) {
+                        merged.put(entry.getKey(), new HashSet<Integer>());
+                    }
+                    merged.get(entry.getKey()).addAll(entry.getValue());
+                }
+            }
+
+            int signaturePeptideCount = 0;
+            Set<String> proteins = new HashSet<String>();
+            Set<String> genes = new HashSet<String>();
+            for (Set<Integer> sequenceIds : merged.values()) {
+                if (sequenceIds.size() == 1) {
+                    signaturePeptideCount++;
+                    Integer sequenceId = sequenceIds.iterator().next();
+                    proteins.addAll(sequenceIdToProteinAccessionMap.get(sequenceId));
+                    genes.addAll(sequenceIdToGeneAccessionMap.get(sequenceId));
+                }
+            }
+
+            assertEquals(merged.size(), combination.getPeptideCount());
+            assertEquals(signaturePeptideCount, combination.getSignaturePeptideCount());
+            assertEquals(proteins.size(), combination.getProteinCount());
+            assertEquals(genes.size(), combination.getGeneCount());
+            assertEquals(combination.toString(), picker.getProteaseCombination(combination.getProteaseNames()).toString());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.compomics.sigpep.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.model.Peptide;
+
+import java.util.*;
+
+/**
+ * Tests accession scoped peptide generator queries against filtering the proteome wide results.
+ */
+public class PeptideAccessionIndexTest {
+
+    private PeptideGeneratorImpl generator;
+
+    @Before
+    public void methodSetup() {
+
+        Random random = new Random(42);
+        Map<Integer, String> proteinSequences = new HashMap<Integer, String>();
+        Map<Integer, Set<String>> sequenceIdToProteinAccessionMap = new HashMap<Integer, Set<String>>();
+        Map<Integer, Set<String>> sequenceIdToGeneAccessionMap = new HashMap<Integer, Set<String>>();
+
+        generator = new PeptideGeneratorImpl(Collections.singleton("tryp"));
+
+        for (int sequenceId = 1; sequenceId <= 60; sequenceId++) {
+
+            //every third sequence repeats part of the previous one
+            StringBuilder sequence = new StringBuilder();
+            if (sequenceId % 3 == 0) {
+                String previous = proteinSequences.get(sequenceId - 1);
+                sequence.append(previous.substring(0, previous.length() / 2));
+            }
+            while (sequence.length() < 150) {
+                sequence.append("ACDEFGHIKLMNPQRSTVWY".charAt(random.nextInt(20)));
+            }
+            proteinSequences.put(sequenceId, sequence.toString());
+
+            //two accessions for some sequences, genes encode up to four sequences
+            Set<String> proteinAccessions = new HashSet<String>();
+            proteinAccessions.add("P" + sequenceId);
+            if (sequenceId % 7 == 0) {
+                proteinAccessions.add("Q" + sequenceId);
+            }
+            sequenceIdToProteinAccessionMap.put(sequenceId, proteinAccessions);
+            sequenceIdToGeneAccessionMap.put(sequenceId, Collections.singleton("G" + (sequenceId + 3) / 4));
+
+            //tryptic peptides
+            int start = 1;
+            for (int i = 1; i <= sequence.length(); i++) {
+                char aa = sequence.charAt(i - 1);
+                if (i == sequence.length() || ((aa == 'K' || aa == 'R') && sequence.charAt(i) != 'P')) {
+                    generator.addPeptideFeature(sequenceId, start, i);
+                    start = i + 1;
+                }
+            }
+        }
+
+        generator.setProteinSequences(proteinSequences);
+        generator.setSequenceIdToProteinAccessionMap(sequenceIdToProteinAccessionMap);
+        generator.setSequenceIdToGeneAccessionMap(sequenceIdToGeneAccessionMap);
+    }
+
+    @Test
+    public void testProteinAccessionQueries() {
+
+        Map<String, Set<Peptide>> all = generator.getProteinAccessionToPeptideMap();
+        Map<String, Set<Peptide>> signature = generator.getProteinAccessionToPeptideMap(1);
+
+        for (String accession : Arrays.asList("P1", "P3", "P14", "Q14", "P60")) {
+
+            assertEquals(all.get(accession), generator.getPeptidesByProteinAccession(accession));
+            assertEquals(signature.get(accession) == null ? new HashSet<Peptide>() : signature.get(accession),
+                    generator.getPeptidesByProteinAccessionAndProteinSequenceLevelDegeneracy(accession, 1));
+        }
+
+        Set<String> accessions = new HashSet<String>(Arrays.asList("P2", "P3", "Q21", "unknown"));
+        Map<String, Set<Peptide>> expected = new HashMap<String, Set<Peptide>>(all);
+        expected.keySet().retainAll(accessions);
+
+        assertEquals(expected, generator.getProteinAccessionToPeptideMap(accessions));
+        assertTrue(generator.getPeptidesByProteinAccession("unknown").isEmpty());
+
+        Map<String, Set<String>> sequences = generator.getPeptideSequencesByProteinAccessionAndProteinSequenceLevelDegeneracy(2);
+        sequences.keySet().retainAll(accessions);
+        assertEquals(sequences, generator.getPeptideSequencesByProteinAccessionAndProteinSequenceLevelDegeneracy(accessions, 2));
+    }
+
+    @Test
+    public void testGeneAccessionQueries() {
+
+        Set<String> genes = new HashSet<String>(Arrays.asList("G1", "G5", "G15"));
+
+        for (int degeneracy : new int[]{-1, 1, 2}) {
+
+            Map<String, Set<Peptide>> expected = generator.getPeptidesByGeneAccessionAndGeneLevelDegeneracy(null, degeneracy);
+            expected.keySet().retainAll(genes);
+
+            assertEquals(expected, generator.getPeptidesByGeneAccessionAndGeneLevelDegeneracy(genes, degeneracy));
+        }
+
+        //peptides shared by sequences of two genes
+        assertFalse(generator.getPeptidesByGeneAccessionAndGeneLevelDegeneracy(null, 2).isEmpty());
+    }
+
+    @Test
+    public void testPeptideGenes() {
+
+        //the genes of a peptide are the union of the genes of its sequences
+        Map<String, Set<String>> proteins = generator.getPeptideSequenceToProteinAccessionMap();
+        Map<String, Set<String>> genes = generator.getPeptideSequenceToGeneAccessionMap();
+        assertEquals(proteins.keySet(), genes.keySet());
+
+        boolean shared = false;
+        for (String peptideSequence : proteins.keySet()) {
+            Set<String> expected = new HashSet<String>();
+            for (String proteinAccession : proteins.get(peptideSequence)) {
+                int sequenceId = Integer.parseInt(proteinAccession.substring(1));
+                expected.add("G" + (sequenceId + 3) / 4);
+            }
+            assertEquals(expected, genes.get(peptideSequence));
+            shared |= expected.size() > 1;
+        }
+        assertTrue(shared);
+    }
+}
@@ -2,13 +2,14 @@ package com.compomics.sigpep.impl;
 
 import org.junit.*;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 import com.compomics.sigpep.*;
 import com.compomics.sigpep.model.*;
 import com.compomics.sigpep.util.SigPepUtil;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * @TODO: JavaDoc missing.
@@ -406,5 +407,62 @@ public class PeptideGeneratorImplTest {
                 + expectedModifiedPeptideCountTotal + ") for modification combination " + aStaticPtm + " AND " + aNonStaticPtm + ".", modifiedPeptideCount == expectedModifiedPeptideCountTotal);
 
     }
-}
+    @Test
+    public void testStreamPeptides() {
+
+        //AGSYPEIVTK occurs in all sequences and twice in sequence 7
+        Map<Integer, String> proteinSequences = new HashMap<Integer, String>();
+        proteinSequences.put(7, "MLTWLTPLIPSTKAGSYPEIVTKDEFGHLLVNRAGSYPEIVTK");
+        proteinSequences.put(3, "AGSYPEIVTKWWQPLR");
+        proteinSequences.put(5, "DEFGHLLVNRAGSYPEIVTK");
+
+        //tryptic peptides of at least 10 residues
+        Map<Integer, List<int[]>> peptideFeatures = new HashMap<Integer, List<int[]>>();
+        Map<Integer, Set<String>> sequenceIdToProteinAccessionMap = new HashMap<Integer, Set<String>>();
+        for (Integer sequenceId : proteinSequences.keySet()) {
+            String sequence = proteinSequences.get(sequenceId);
+            List<int[]> features = new ArrayList<int[]>();
+            int start = 1;
+            for (int i = 1; i <= sequence.length(); i++) {
+                char aa = sequence.charAt(i - 1);
+                if (i == sequence.length() || ((aa == 'K' || aa == 'R') && sequence.charAt(i) != 'P')) {
+                    if (i - start + 1 >= 10) {
+                        features.add(new int[]{start, i});
+                    }
+                    start = i + 1;
+                }
+            }
+            peptideFeatures.put(sequenceId, features);
+            sequenceIdToProteinAccessionMap.put(sequenceId, Collections.singleton("P" + sequenceId));
+        }
+
+        PeptideGeneratorImpl generator = new PeptideGeneratorImpl(Collections.singleton("tryp"));
+        generator.setProteinSequences(proteinSequences);
+        generator.setPeptideFeatures(peptideFeatures);
+        generator.setSequenceIdToProteinAccessionMap(sequenceIdToProteinAccessionMap);
 
+        Set<Peptide> expected = new HashSet<Peptide>();
+        for (Set<Peptide> peptides : generator.getProteinAccessionToPeptideMap().values()) {
+            expected.addAll(peptides);
+        }
+
+        assertEquals(expected, generator.getPeptides());
+        assertEquals(expected.size(), generator.streamPeptides().count());
+        assertEquals(expected, generator.streamPeptides().parallel().collect(Collectors.toSet()));
+
+        //pushed down filters give the same peptides as filtering the accession map
+        Set<String> accessions = Collections.singleton("P7");
+        expected = new HashSet<Peptide>(generator.getProteinAccessionToPeptideMap(1, 1000, 2000).get("P7"));
+        Set<Peptide> actual = generator.streamPeptides(accessions, 1, 1000, 2000).collect(Collectors.toSet());
+
+        assertFalse(actual.isEmpty());
+        assertEquals(expected, actual);
+
+        //P3 has a single tryptic peptide of at least 10 residues, WWQPLR is too short
+        Set<String> expectedSequences = Collections.singleton("AGSYPEIVTK");
+        assertEquals(expectedSequences, generator.streamPeptides(Collections.singleton("P3"), -1,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).map(Peptide::getSequenceString).collect(Collectors.toSet()));
+        assertEquals(1, generator.getPeptidesByProteinAccession("P3").size());
+        assertEquals("AGSYPEIVTK", generator.getPeptidesByProteinAccession("P3").iterator().next().getSequenceString());
+    }
+}
@@ -0,0 +1,103 @@
+package com.compomics.sigpep.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+/**
+ * Tests the peptide sequence index against mapping the peptide features directly.
+ */
+public class PeptideSequenceIndexTest {
+
+    private Map<Integer, String> proteinSequences;
+    private Map<Integer, List<int[]>> peptideFeatures;
+
+    @Before
+    public void methodSetup() {
+
+        proteinSequences = new HashMap<Integer, String>();
+        peptideFeatures = new HashMap<Integer, List<int[]>>();
+
+        //AGSYPEIVTK occurs in all sequences and twice in sequence 7
+        addProteinSequence(7, "MLTWLTPLIPSTKAGSYPEIVTKDEFGHLLVNRAGSYPEIVTK");
+        addProteinSequence(3, "AGSYPEIVTKWWQPLR");
+        addProteinSequence(5, "DEFGHLLVNRAGSYPEIVTK");
+    }
+
+    @Test
+    public void testIndex() {
+
+        PeptideSequenceIndex index = new PeptideSequenceIndex(new ProteinSequenceStore(proteinSequences),
+                new PeptideFeatureStore(peptideFeatures));
+
+        Map<String, Set<Integer>> expected = new HashMap<String, Set<Integer>>();
+        Map<String, Integer> expectedFeatureCounts = new HashMap<String, Integer>();
+        for (Integer sequenceId : peptideFeatures.keySet()) {
+            for (int[] coordinates : peptideFeatures.get(sequenceId)) {
+                String peptideSequence = proteinSequences.get(sequenceId).substring(coordinates[0] - 1, coordinates[1]);
+                if (!expected.containsKey(peptideSequence)) {
+                    expected.put(peptideSequence, new HashSet<Integer>());
+                    expectedFeatureCounts.put(peptideSequence, 0);
+                }
+                expected.get(peptideSequence).add(sequenceId);
+                expectedFeatureCounts.put(peptideSequence, expectedFeatureCounts.get(peptideSequence) + 1);
+            }
+        }
+
+        assertEquals(expected.size(), index.getPeptideCount());
+        for (String peptideSequence : expected.keySet()) {
+
+            int peptideId = index.getPeptideId(peptideSequence);
+            assertEquals(peptideSequence, index.getPeptideSequence(peptideId));
+            assertEquals(expected.get(peptideSequence), index.getSequenceIds(peptideId));
+            assertEquals(expected.get(peptideSequence).size(), index.getSequenceIdCount(peptideId));
+            assertEquals((int) expectedFeatureCounts.get(peptideSequence), index.getFeatureCount(peptideId));
+
+            for (int i = 1; i < index.getSequenceIdCount(peptideId); i++) {
+                assertTrue(index.getSequenceId(peptideId, i - 1) < index.getSequenceId(peptideId, i));
+            }
+        }
+
+        assertEquals(3, index.getSequenceIdCount(index.getPeptideId("AGSYPEIVTK")));
+        assertEquals(4, index.getFeatureCount(index.getPeptideId("AGSYPEIVTK")));
+        assertEquals(-1, index.getPeptideId("PEPTIDE"));
+    }
+
+    @Test
+    public void testPeptideGeneratorIndexInvalidation() {
+
+        PeptideGeneratorImpl generator = new PeptideGeneratorImpl(Collections.singleton("tryp"));
+        generator.setProteinSequences(proteinSequences);
+        generator.setPeptideFeatures(peptideFeatures);
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(5, 7)), generator.getSequenceIdsByPeptideSequence("DEFGHLLVNR"));
+        assertNull(generator.getSequenceIdsByPeptideSequence("WWQPLR"));
+
+        generator.addPeptideFeature(3, 11, 16);
+
+        assertEquals(Collections.singleton(3), generator.getSequenceIdsByPeptideSequence("WWQPLR"));
+        assertEquals(Integer.valueOf(1), generator.getPeptideSequenceDegeneracy().get("WWQPLR"));
+    }
+
+    private void addProteinSequence(int sequenceId, String sequence) {
+
+        proteinSequences.put(sequenceId, sequence);
+        List<int[]> features = new ArrayList<int[]>();
+
+        //tryptic peptides of at least 10 residues
+        int start = 1;
+        for (int i = 1; i <= sequence.length(); i++) {
+            char aa = sequence.charAt(i - 1);
+            if (i == sequence.length() || ((aa == 'K' || aa == 'R') && sequence.charAt(i) != 'P')) {
+                if (i - start + 1 >= 10) {
+                    features.add(new int[]{start, i});
+                }
+                start = i + 1;
+            }
+        }
+
+        peptideFeatures.put(sequenceId, features);
+    }
+}
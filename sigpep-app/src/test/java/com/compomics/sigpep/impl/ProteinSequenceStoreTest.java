@@ -0,0 +1,84 @@
+package com.compomics.sigpep.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests the packed protein sequence and peptide feature stores against the maps they are built from.
+ */
+public class ProteinSequenceStoreTest {
+
+    private Map<Integer, String> proteinSequences;
+    private Map<Integer, List<int[]>> peptideFeatures;
+
+    @Before
+    public void methodSetup() {
+
+        proteinSequences = new HashMap<Integer, String>();
+        proteinSequences.put(12, "MLTWLTPLIPSTKAGSYPEIVTK");
+        proteinSequences.put(3, "AGSYPEIVTKWWQPLR");
+        proteinSequences.put(7, "K");
+
+        peptideFeatures = new HashMap<Integer, List<int[]>>();
+        peptideFeatures.put(12, Arrays.asList(new int[]{1, 13}, new int[]{14, 23}));
+        peptideFeatures.put(3, Arrays.asList(new int[]{1, 10}, new int[]{11, 16}));
+    }
+
+    @Test
+    public void testProteinSequenceStore() throws Exception {
+
+        ProteinSequenceStore store = new ProteinSequenceStore(proteinSequences);
+
+        assertEquals(proteinSequences, store.toMap());
+        assertEquals("AGSYPEIVTK", store.getSubsequence(12, 14, 23));
+        assertEquals("WWQPLR", store.getSubsequence(3, 11, 16));
+        assertEquals("K", store.getSubsequence(7, 1, 1));
+
+        assertTrue(store.startsWith(3, "AGSYPEIVTK"));
+        assertFalse(store.startsWith(12, "AGSYPEIVTK"));
+        assertTrue(store.endsWith(12, "AGSYPEIVTK"));
+        assertFalse(store.endsWith(7, "AGSYPEIVTK"));
+
+        try {
+            store.getSubsequence(3, 11, 17);
+            fail("subsequence beyond the end of the protein sequence");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+
+        //the residue buffer is not serializable itself
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(store);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(proteinSequences, ((ProteinSequenceStore) in.readObject()).toMap());
+    }
+
+    @Test
+    public void testPeptideFeatureStore() {
+
+        PeptideFeatureStore store = new PeptideFeatureStore(peptideFeatures);
+
+        assertEquals(2, store.getSequenceCount());
+        assertEquals(4, store.getFeatureCount());
+        assertEquals(3, store.getSequenceId(0));
+        assertEquals(12, store.getSequenceId(1));
+        assertEquals(2, store.getFeatureOffset(1));
+        assertEquals(14, store.getStart(3));
+        assertEquals(23, store.getEnd(3));
+
+        Map<Integer, List<int[]>> unpacked = store.toMap();
+        assertEquals(peptideFeatures.keySet(), unpacked.keySet());
+        for (Integer sequenceId : peptideFeatures.keySet()) {
+            for (int i = 0; i < peptideFeatures.get(sequenceId).size(); i++) {
+                assertTrue(Arrays.equals(peptideFeatures.get(sequenceId).get(i), unpacked.get(sequenceId).get(i)));
+            }
+        }
+    }
+}
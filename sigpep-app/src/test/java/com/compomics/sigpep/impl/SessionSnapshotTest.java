@@ -0,0 +1,153 @@
+package com.compomics.sigpep.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.persistence.dao.SimpleQueryDao;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Tests writing and memory mapping session snapshots.
+ */
+public class SessionSnapshotTest {
+
+    private static final int[] FINGERPRINT = {4, 3, 3, 4, 3, "lysc".hashCode(), 6, 6, "tryp".hashCode(), 6, 12};
+
+    private File file;
+    private Map<Integer, String> proteinSequences;
+    private Map<Integer, Set<String>> sequenceIdToProteinAccessionMap;
+    private Map<String, String> proteinAccessionToGeneAccessionMap;
+    private Map<Integer, List<int[]>> peptideFeatures;
+
+    @Before
+    public void methodSetup() throws Exception {
+
+        file = File.createTempFile("sigpep", ".snapshot");
+        file.deleteOnExit();
+
+        proteinSequences = new HashMap<Integer, String>();
+        proteinSequences.put(7, "MLTWLTPLIPSTKAGSYPEIVTKDEFGHLLVNRAGSYPEIVTK");
+        proteinSequences.put(3, "AGSYPEIVTKWWQPLR");
+        proteinSequences.put(5, "DEFGHLLVNRAGSYPEIVTK");
+
+        sequenceIdToProteinAccessionMap = new HashMap<Integer, Set<String>>();
+        sequenceIdToProteinAccessionMap.put(7, new HashSet<String>(Arrays.asList("P7", "Q7")));
+        sequenceIdToProteinAccessionMap.put(3, Collections.singleton("P3"));
+        sequenceIdToProteinAccessionMap.put(5, Collections.singleton("P5"));
+
+        proteinAccessionToGeneAccessionMap = new HashMap<String, String>();
+        proteinAccessionToGeneAccessionMap.put("P7", "G1");
+        proteinAccessionToGeneAccessionMap.put("Q7", "G2");
+        proteinAccessionToGeneAccessionMap.put("P3", "G1");
+        proteinAccessionToGeneAccessionMap.put("P5", "G3");
+
+        peptideFeatures = new HashMap<Integer, List<int[]>>();
+        peptideFeatures.put(7, Arrays.asList(new int[]{14, 23}, new int[]{24, 33}, new int[]{34, 43}));
+        peptideFeatures.put(3, Collections.singletonList(new int[]{1, 10}));
+        peptideFeatures.put(5, Arrays.asList(new int[]{1, 10}, new int[]{11, 20}));
+
+        Map<String, PeptideFeatureStore> peptideFeatureStores = new HashMap<String, PeptideFeatureStore>();
+        peptideFeatureStores.put("lysc,tryp", new PeptideFeatureStore(peptideFeatures));
+
+        SessionSnapshot.write(9606, FINGERPRINT, new ProteinSequenceStore(proteinSequences),
+                sequenceIdToProteinAccessionMap, proteinAccessionToGeneAccessionMap, peptideFeatureStores, file);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+
+        SessionSnapshot snapshot = SessionSnapshot.load(file, 9606, FINGERPRINT);
+
+        assertEquals(proteinSequences, snapshot.getProteinSequenceStore().toMap());
+        assertEquals("WWQPLR", snapshot.getProteinSequenceStore().getSubsequence(3, 11, 16));
+        assertEquals(sequenceIdToProteinAccessionMap, snapshot.getSequenceIdToProteinAccessionMap());
+        assertEquals(new HashSet<String>(Arrays.asList("G1", "G2")), snapshot.getSequenceIdToGeneAccessionMap().get(7));
+        assertNull(snapshot.getPeptideFeatureStore(Collections.singleton("tryp")));
+
+        PeptideFeatureStore features = snapshot.getPeptideFeatureStore(new HashSet<String>(Arrays.asList("tryp", "lysc")));
+        assertEquals(6, features.getFeatureCount());
+        assertEquals(peptideFeatures.keySet(), features.toMap().keySet());
+
+        //a generator created from the snapshot indexes the same peptides
+        assertNull(snapshot.createPeptideGenerator(Collections.singleton("tryp")));
+        PeptideGeneratorImpl fromSnapshot = snapshot.createPeptideGenerator(new HashSet<String>(Arrays.asList("tryp", "lysc")));
+        assertEquals(new HashSet<String>(Arrays.asList("P3", "P5", "P7", "Q7")), fromSnapshot.getProteinAccessionToPeptideMap().keySet());
+        PeptideGeneratorImpl fromMaps = new PeptideGeneratorImpl(Collections.singleton("tryp"));
+        fromMaps.setProteinSequences(proteinSequences);
+        fromMaps.setPeptideFeatures(peptideFeatures);
+
+        assertEquals(fromMaps.getPeptideSequenceDegeneracy(), fromSnapshot.getPeptideSequenceDegeneracy());
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+
+        assertNull(SessionSnapshot.load(file, 10090, FINGERPRINT));
+        assertNull(SessionSnapshot.load(file, 9606, new int[]{4, 3, 3, 5, 3}));
+
+        //peptides added for a protease
+        int[] fingerprint = FINGERPRINT.clone();
+        fingerprint[fingerprint.length - 1]++;
+        assertNull(SessionSnapshot.load(file, 9606, fingerprint));
+
+        //flip a residue
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() / 2);
+        int b = raf.read();
+        raf.seek(raf.length() / 2);
+        raf.write(b ^ 1);
+        raf.close();
+
+        assertNull(SessionSnapshot.load(file, 9606, FINGERPRINT));
+    }
+
+    @Test
+    public void testFingerprint() {
+
+        Map<String, int[]> peptideCounts = new HashMap<String, int[]>();
+        peptideCounts.put("tryp", new int[]{6, 12});
+        peptideCounts.put("lysc", new int[]{6, 6});
+
+        assertEquals(Arrays.toString(FINGERPRINT), Arrays.toString(SessionSnapshot.fingerprint(createSimpleQueryDao(peptideCounts))));
+    }
+
+    @Test
+    public void testDatabaseVersion() {
+
+        Map<String, int[]> peptideCounts = new HashMap<String, int[]>();
+        peptideCounts.put("tryp", new int[]{6, 12});
+        SimpleQueryDao simpleQueryDao = createSimpleQueryDao(peptideCounts);
+
+        String version = "4-3-3-4-3-" + "tryp".hashCode() + "-6-12";
+        assertEquals(version, SessionSnapshot.getDatabaseVersion(10116, simpleQueryDao));
+
+        //the version and the fingerprint snapshots are validated against are read again after the refresh interval only
+        peptideCounts.put("tryp", new int[]{7, 13});
+        assertEquals(version, SessionSnapshot.getDatabaseVersion(10116, simpleQueryDao));
+        assertEquals("[4, 3, 3, 4, 3, " + "tryp".hashCode() + ", 6, 12]", Arrays.toString(SessionSnapshot.getFingerprint(10116, simpleQueryDao)));
+    }
+
+    /**
+     * Creates a simple query DAO stub of a database with 4 proteins, 3 genes and 3 sequences.
+     */
+    private SimpleQueryDao createSimpleQueryDao(final Map<String, int[]> peptideCounts) {
+        return (SimpleQueryDao) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{SimpleQueryDao.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getPeptideCountAndLastPeptideIdByProteaseShortName")) {
+                            return peptideCounts;
+                        } else if (method.getName().equals("getProteinCount") || method.getName().equals("getLastProteinId")) {
+                            return 4;
+                        }
+                        return 3;
+                    }
+                });
+    }
+}
@@ -0,0 +1,66 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.util.Combinations;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the enumeration of the product ion combinations the map based scanners
+ * score, as sets with the Combinations iterator, as index arrays with nextIndex and
+ * by unranking, which the chunked scorer does once per chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinationsBenchmark {
+
+    /**
+     * the number of product ions, b and y ions of a 10-mer and a 20-mer
+     */
+    @Param({"18", "38"})
+    public int elementCount;
+
+    @Param({"2", "3"})
+    public int combinationSize;
+
+    private Set<Integer> elements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        elements = new LinkedHashSet<Integer>();
+        for (int i = 0; i < elementCount; i++) {
+            elements.add(i);
+        }
+    }
+
+    @Benchmark
+    public void iterateSets(Blackhole blackhole) {
+        Combinations<Integer> combinations = new Combinations<Integer>(combinationSize, elements);
+        while (combinations.hasNext()) {
+            blackhole.consume(combinations.next());
+        }
+    }
+
+    @Benchmark
+    public void iterateIndexes(Blackhole blackhole) {
+        int[] index = Combinations.unrank(0, elementCount, combinationSize);
+        do {
+            blackhole.consume(index);
+        } while (Combinations.nextIndex(index, elementCount));
+    }
+
+    @Benchmark
+    public void unrankAll(Blackhole blackhole) {
+        long combinationCount = Combinations.binomialCoefficient(elementCount, combinationSize);
+        for (long rank = 0; rank < combinationCount; rank++) {
+            blackhole.consume(Combinations.unrank(rank, elementCount, combinationSize));
+        }
+    }
+}
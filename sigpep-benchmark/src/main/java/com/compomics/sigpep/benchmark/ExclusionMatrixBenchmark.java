@@ -0,0 +1,60 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
+import com.compomics.sigpep.analysis.impl.AbstractMapProductIonScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of the exclusion matrices of a sample of target peptides
+ * against their isobaric background, with and without the background fragment index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExclusionMatrixBenchmark {
+
+    private static final int TARGET_COUNT = 50;
+
+    @Param({"10000", "50000"})
+    public int backgroundSize;
+
+    @Param({"0.5", "1.0"})
+    public double massAccuracy;
+
+    @Param({"false", "true"})
+    public boolean backgroundIndex;
+
+    private IsobaricBackground background;
+    private AbstractMapProductIonScanner scanner;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        Set<Integer> precursorChargeStates = new HashSet<Integer>();
+        precursorChargeStates.add(2);
+        precursorChargeStates.add(3);
+
+        background = new IsobaricBackground(backgroundSize, TARGET_COUNT, precursorChargeStates, massAccuracy, 42);
+        scanner = ScannerAccess.createScanner(SignatureTransitionFinderType.ALL, massAccuracy, 3);
+        if (backgroundIndex) {
+            scanner.indexBackgroundPeptides(background.getBackgroundPeptides());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGET_COUNT)
+    public void createExclusionMatrices(Blackhole blackhole) {
+        for (int t = 0; t < background.getTargetPeptides().size(); t++) {
+            blackhole.consume(scanner.createExclusionMatrix(background.getTargetPeptides().get(t),
+                    background.getIsobaricPeptides().get(t)));
+        }
+    }
+}
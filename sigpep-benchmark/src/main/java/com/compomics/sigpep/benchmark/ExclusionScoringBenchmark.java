@@ -0,0 +1,68 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.analysis.ExclusionMatrix;
+import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
+import com.compomics.sigpep.analysis.impl.AbstractMapProductIonScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the exclusion scoring of the product ion combinations of prebuilt
+ * exclusion matrices for the FIRST, MINIMAL and ALL search strategies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExclusionScoringBenchmark {
+
+    private static final int TARGET_COUNT = 20;
+
+    @Param({"FIRST", "MINIMAL", "ALL"})
+    public SignatureTransitionFinderType finderType;
+
+    @Param({"10000"})
+    public int backgroundSize;
+
+    @Param({"0.5", "1.0"})
+    public double massAccuracy;
+
+    @Param({"2", "3"})
+    public int maximumCombinationSize;
+
+    private AbstractMapProductIonScanner scanner;
+    private List<ExclusionMatrix> exclusionMatrices;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        Set<Integer> precursorChargeStates = new HashSet<Integer>();
+        precursorChargeStates.add(2);
+        precursorChargeStates.add(3);
+
+        IsobaricBackground background = new IsobaricBackground(backgroundSize, TARGET_COUNT, precursorChargeStates, massAccuracy, 42);
+        scanner = ScannerAccess.createScanner(finderType, massAccuracy, maximumCombinationSize);
+
+        exclusionMatrices = new ArrayList<ExclusionMatrix>();
+        for (int t = 0; t < background.getTargetPeptides().size(); t++) {
+            exclusionMatrices.add(scanner.createExclusionMatrix(background.getTargetPeptides().get(t),
+                    background.getIsobaricPeptides().get(t)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TARGET_COUNT)
+    public void scoreProductIonCombinations(Blackhole blackhole) {
+        for (ExclusionMatrix exclusionMatrix : exclusionMatrices) {
+            blackhole.consume(scanner.getUniqueProductIonCombinations(exclusionMatrix));
+        }
+    }
+}
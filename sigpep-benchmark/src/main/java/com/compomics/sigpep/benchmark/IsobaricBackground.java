@@ -0,0 +1,103 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.analysis.PeptideIonStore;
+import com.compomics.sigpep.analysis.impl.SortedArrayPeptideIonStore;
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.PrecursorIon;
+
+import java.util.*;
+
+/**
+ * The background peptides of a synthetic proteome together with a sample of target
+ * peptides and the background peptides isobaric to each target, which is the input
+ * of the product ion scanners.
+ */
+public class IsobaricBackground {
+
+    /**
+     * the background peptides
+     */
+    private Set<Peptide> backgroundPeptides;
+
+    /**
+     * the target peptides, all with at least one isobaric background peptide
+     */
+    private List<Peptide> targetPeptides = new ArrayList<Peptide>();
+
+    /**
+     * the background peptides isobaric to each target peptide
+     */
+    private List<Set<Peptide>> isobaricPeptides = new ArrayList<Set<Peptide>>();
+
+    /**
+     * Creates the background and samples the target peptides.
+     *
+     * @param backgroundSize        the number of background peptides
+     * @param targetCount           the number of target peptides
+     * @param precursorChargeStates the precursor ion charge states
+     * @param massAccuracy          the mass accuracy
+     * @param seed                  the random seed
+     */
+    public IsobaricBackground(int backgroundSize,
+                              int targetCount,
+                              Set<Integer> precursorChargeStates,
+                              double massAccuracy,
+                              long seed) {
+
+        backgroundPeptides = new SyntheticProteome(backgroundSize, seed).getPeptides(backgroundSize);
+
+        List<PrecursorIon> precursorIons = new ArrayList<PrecursorIon>();
+        for (Peptide peptide : backgroundPeptides) {
+            precursorIons.add(peptide.getPrecursorIon());
+        }
+
+        PeptideIonStore<PrecursorIon> store = new SortedArrayPeptideIonStore<PrecursorIon>(precursorChargeStates, massAccuracy);
+        store.populate(precursorIons);
+
+        //every n-th precursor with isobaric background peptides is a target
+        int step = Math.max(1, precursorIons.size() / (targetCount * 2));
+        for (int i = 0; i < precursorIons.size() && targetPeptides.size() < targetCount; i += step) {
+
+            PrecursorIon target = precursorIons.get(i);
+            Set<Peptide> isobaric = new HashSet<Peptide>();
+            for (Set<PrecursorIon> overlapping : store.getPeptideIonsWithOverlappingMassOverCharge(target).values()) {
+                for (PrecursorIon precursorIon : overlapping) {
+                    isobaric.add(precursorIon.getPeptide());
+                }
+            }
+            isobaric.remove(target.getPeptide());
+
+            if (!isobaric.isEmpty()) {
+                targetPeptides.add(target.getPeptide());
+                isobaricPeptides.add(isobaric);
+            }
+        }
+    }
+
+    /**
+     * Returns the background peptides.
+     *
+     * @return the background peptides
+     */
+    public Set<Peptide> getBackgroundPeptides() {
+        return backgroundPeptides;
+    }
+
+    /**
+     * Returns the target peptides.
+     *
+     * @return the target peptides
+     */
+    public List<Peptide> getTargetPeptides() {
+        return targetPeptides;
+    }
+
+    /**
+     * Returns the background peptides isobaric to each target peptide.
+     *
+     * @return the isobaric peptides in the order of the target peptides
+     */
+    public List<Set<Peptide>> getIsobaricPeptides() {
+        return isobaricPeptides;
+    }
+}
@@ -0,0 +1,78 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.PeptideGenerator;
+import com.compomics.sigpep.impl.PeptideGeneratorFactory;
+import com.compomics.sigpep.model.Modification;
+import com.compomics.sigpep.model.ModificationFactory;
+import com.compomics.sigpep.model.Peptide;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of the peptide objects of a tryptic digest, with and
+ * without post-translational modifications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeptideGenerationBenchmark {
+
+    @Param({"10000", "100000"})
+    public int backgroundSize;
+
+    /**
+     * comma separated PTM names or unmod
+     */
+    @Param({"unmod", "metox", "metox,cyscarbamidmeth"})
+    public String ptms;
+
+    private PeptideGenerator peptideGenerator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        SyntheticProteome proteome = new SyntheticProteome(backgroundSize, 42);
+        peptideGenerator = PeptideGeneratorFactory.createPeptideGenerator(Collections.singleton("tryp"),
+                proteome.getProteinSequences(),
+                proteome.getPeptideFeatures(),
+                proteome.getSequenceIdToProteinAccessionMap(),
+                proteome.getSequenceIdToGeneAccessionMap());
+
+        Set<String> ptmNames = new HashSet<String>();
+        if (!ptms.equals("unmod")) {
+            Collections.addAll(ptmNames, ptms.split(","));
+        }
+        Set<Modification> modifications = ModificationFactory.createPostTranslationalModifications(ptmNames);
+        peptideGenerator.setPostTranslationalModifications(modifications);
+    }
+
+    @Benchmark
+    public Set<Peptide> getPeptides() {
+        return peptideGenerator.getPeptides();
+    }
+
+    @Benchmark
+    public Map<String, Set<Peptide>> getSignaturePeptides() {
+        return peptideGenerator.getProteinAccessionToPeptideMap(1);
+    }
+
+    @Benchmark
+    public Map<String, Set<Peptide>> getSignaturePeptidesInMassRange() {
+        return peptideGenerator.getProteinAccessionToPeptideMap(1, 600, 4000);
+    }
+
+    @Benchmark
+    public long streamSignaturePeptidesInMassRange() {
+        return peptideGenerator.streamPeptides(null, 1, 600, 4000).count();
+    }
+
+    @Benchmark
+    public long streamPeptidesInParallel() {
+        return peptideGenerator.streamPeptides().parallel().count();
+    }
+}
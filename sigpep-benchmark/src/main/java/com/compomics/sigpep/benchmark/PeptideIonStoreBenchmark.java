@@ -0,0 +1,85 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.analysis.PeptideIonStore;
+import com.compomics.sigpep.analysis.impl.SortedArrayPeptideIonStore;
+import com.compomics.sigpep.analysis.impl.SortedMapPeptideIonStore;
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.PrecursorIon;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the precursor ion store of a background and querying it
+ * for the precursor ions overlapping in m/z with a target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeptideIonStoreBenchmark {
+
+    @Param({"10000", "100000"})
+    public int backgroundSize;
+
+    @Param({"0.5", "1.0"})
+    public double massAccuracy;
+
+    @Param({"map", "array"})
+    public String store;
+
+    private List<PrecursorIon> precursorIons;
+    private PeptideIonStore<PrecursorIon> populatedStore;
+    private double[] queryMasses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        precursorIons = new ArrayList<PrecursorIon>();
+        for (Peptide peptide : new SyntheticProteome(backgroundSize, 42).getPeptides(backgroundSize)) {
+            precursorIons.add(peptide.getPrecursorIon());
+        }
+
+        populatedStore = createStore();
+        populatedStore.populate(precursorIons);
+
+        //1000 target masses drawn from the background
+        Random random = new Random(42);
+        queryMasses = new double[1000];
+        for (int i = 0; i < queryMasses.length; i++) {
+            queryMasses[i] = precursorIons.get(random.nextInt(precursorIons.size())).getNeutralMassPeptide();
+        }
+    }
+
+    private PeptideIonStore<PrecursorIon> createStore() {
+
+        Set<Integer> chargeStates = new HashSet<Integer>();
+        chargeStates.add(2);
+        chargeStates.add(3);
+
+        if (store.equals("map")) {
+            return new SortedMapPeptideIonStore<PrecursorIon>(chargeStates, massAccuracy);
+        } else {
+            return new SortedArrayPeptideIonStore<PrecursorIon>(chargeStates, massAccuracy);
+        }
+    }
+
+    @Benchmark
+    public PeptideIonStore<PrecursorIon> build() {
+        PeptideIonStore<PrecursorIon> retVal = createStore();
+        retVal.populate(precursorIons);
+        return retVal;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void queryOverlappingMassOverCharge(Blackhole blackhole) {
+        for (double mass : queryMasses) {
+            blackhole.consume(populatedStore.getPeptideIonsWithOverlappingMassOverCharge(mass));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.util.SigPepUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rounding masses to the configured mass precision, which happens for
+ * every product ion that goes into an exclusion matrix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundBenchmark {
+
+    @Param({"2", "4"})
+    public int decimals;
+
+    private double[] masses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        masses = new double[1024];
+        for (int i = 0; i < masses.length; i++) {
+            masses[i] = 100 + random.nextDouble() * 3900;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void round(Blackhole blackhole) {
+        for (double mass : masses) {
+            blackhole.consume(SigPepUtil.round(mass, decimals));
+        }
+    }
+}
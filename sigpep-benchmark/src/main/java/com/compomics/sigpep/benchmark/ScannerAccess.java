@@ -0,0 +1,48 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
+import com.compomics.sigpep.analysis.impl.AbstractMapProductIonScanner;
+import com.compomics.sigpep.analysis.impl.FindAllMapProductIonScanner;
+import com.compomics.sigpep.analysis.impl.FindFirstMapProductIonScanner;
+import com.compomics.sigpep.analysis.impl.FindMinimalMapProductIonScanner;
+import com.compomics.sigpep.model.ProductIonType;
+
+import java.util.HashSet;
+
+/**
+ * Creates the scanners of the benchmarks, whose exclusion matrix construction and
+ * exclusion scoring steps are measured separately.
+ */
+public class ScannerAccess {
+
+    private ScannerAccess() {
+    }
+
+    /**
+     * Creates a scanner of the specified type that uses b and y ions of charge 1.
+     *
+     * @param type                   the scanner type
+     * @param massAccuracy           the mass accuracy
+     * @param maximumCombinationSize the maximum product ion combination size
+     * @return the scanner
+     */
+    public static AbstractMapProductIonScanner createScanner(SignatureTransitionFinderType type, double massAccuracy, int maximumCombinationSize) {
+
+        HashSet<ProductIonType> ionTypes = new HashSet<ProductIonType>();
+        ionTypes.add(ProductIonType.B);
+        ionTypes.add(ProductIonType.Y);
+        HashSet<Integer> chargeStates = new HashSet<Integer>();
+        chargeStates.add(1);
+
+        switch (type) {
+            case FIRST:
+                return new FindFirstMapProductIonScanner(ionTypes, ionTypes, chargeStates, massAccuracy, 1, maximumCombinationSize);
+            case MINIMAL:
+                return new FindMinimalMapProductIonScanner(ionTypes, ionTypes, chargeStates, massAccuracy, 1, maximumCombinationSize);
+            case ALL:
+                return new FindAllMapProductIonScanner(ionTypes, ionTypes, chargeStates, massAccuracy, 1, maximumCombinationSize);
+            default:
+                throw new IllegalArgumentException("Unknown signature transition finder type " + type + ".");
+        }
+    }
+}
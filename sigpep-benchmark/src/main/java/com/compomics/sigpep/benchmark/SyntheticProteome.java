@@ -0,0 +1,209 @@
+package com.compomics.sigpep.benchmark;
+
+import com.compomics.sigpep.model.Peptide;
+import com.compomics.sigpep.model.PeptideFactory;
+
+import java.util.*;
+
+/**
+ * Deterministic synthetic proteome and tryptic digest so the benchmarks run
+ * without a SigPep database.
+ * <p/>
+ * Residues are drawn with their approximate frequency in vertebrate proteomes.
+ * Every tenth protein copies a stretch of an earlier protein, so part of the
+ * peptides are shared between protein sequences like with protein families and
+ * isoforms. The same seed and size always yield the same proteome.
+ */
+public class SyntheticProteome {
+
+    /**
+     * the amino acids drawn
+     */
+    private static final String RESIDUES = "ACDEFGHIKLMNPQRSTVWY";
+
+    /**
+     * the approximate relative frequency of each amino acid in percent
+     */
+    private static final double[] FREQUENCIES = {
+            7.0, 2.3, 4.7, 7.1, 3.7, 6.6, 2.6, 4.4, 5.7, 9.9,
+            2.1, 3.6, 6.3, 4.8, 5.6, 8.3, 5.3, 6.0, 1.2, 2.7};
+
+    /**
+     * the minimum length of a peptide
+     */
+    private static final int MINIMUM_PEPTIDE_LENGTH = 6;
+
+    /**
+     * the maximum length of a peptide
+     */
+    private static final int MAXIMUM_PEPTIDE_LENGTH = 30;
+
+    /**
+     * the protein sequences by sequence ID
+     */
+    private Map<Integer, String> proteinSequences = new LinkedHashMap<Integer, String>();
+
+    /**
+     * the start and end positions of the tryptic peptides by sequence ID
+     */
+    private Map<Integer, List<int[]>> peptideFeatures = new LinkedHashMap<Integer, List<int[]>>();
+
+    /**
+     * the distinct peptide sequences in order of appearance
+     */
+    private Set<String> peptideSequences = new LinkedHashSet<String>();
+
+    /**
+     * Creates a proteome with at least the specified number of distinct tryptic peptides.
+     *
+     * @param peptideCount the minimum number of distinct peptides
+     * @param seed         the random seed
+     */
+    public SyntheticProteome(int peptideCount, long seed) {
+
+        Random random = new Random(seed);
+        double[] cumulativeFrequencies = new double[FREQUENCIES.length];
+        double sum = 0;
+        for (int i = 0; i < FREQUENCIES.length; i++) {
+            sum += FREQUENCIES[i];
+            cumulativeFrequencies[i] = sum;
+        }
+
+        int sequenceId = 1;
+        while (peptideSequences.size() < peptideCount) {
+
+            //protein length between 100 and about 1000 residues, skewed to short proteins
+            int length = 100 + (int) (-300 * Math.log(1 - random.nextDouble() * 0.95));
+            StringBuilder sequence = new StringBuilder(length);
+            sequence.append('M');
+            while (sequence.length() < length) {
+                double r = random.nextDouble() * sum;
+                int aa = 0;
+                while (cumulativeFrequencies[aa] < r) {
+                    aa++;
+                }
+                sequence.append(RESIDUES.charAt(aa));
+            }
+
+            //copy a stretch of an earlier protein
+            if (sequenceId % 10 == 0) {
+                String template = proteinSequences.get(1 + random.nextInt(sequenceId - 1));
+                int stretch = Math.min(template.length(), sequence.length()) / 2;
+                int from = random.nextInt(template.length() - stretch + 1);
+                int to = random.nextInt(sequence.length() - stretch + 1);
+                sequence.replace(to, to + stretch, template.substring(from, from + stretch));
+            }
+
+            addProteinSequence(sequenceId++, sequence.toString());
+        }
+    }
+
+    /**
+     * Adds a protein sequence and its tryptic peptides, cleaving after K and R
+     * unless followed by P.
+     *
+     * @param sequenceId the sequence ID
+     * @param sequence   the protein sequence
+     */
+    private void addProteinSequence(int sequenceId, String sequence) {
+
+        proteinSequences.put(sequenceId, sequence);
+        List<int[]> features = new ArrayList<int[]>();
+
+        int start = 1;
+        for (int i = 1; i <= sequence.length(); i++) {
+
+            char aa = sequence.charAt(i - 1);
+            boolean cleave = i == sequence.length()
+                    || ((aa == 'K' || aa == 'R') && sequence.charAt(i) != 'P');
+
+            if (cleave) {
+                int length = i - start + 1;
+                if (length >= MINIMUM_PEPTIDE_LENGTH && length <= MAXIMUM_PEPTIDE_LENGTH) {
+                    features.add(new int[]{start, i});
+                    peptideSequences.add(sequence.substring(start - 1, i));
+                }
+                start = i + 1;
+            }
+        }
+
+        peptideFeatures.put(sequenceId, features);
+    }
+
+    /**
+     * Returns the protein sequences.
+     *
+     * @return a map of sequence IDs and protein sequences
+     */
+    public Map<Integer, String> getProteinSequences() {
+        return proteinSequences;
+    }
+
+    /**
+     * Returns the tryptic peptide features.
+     *
+     * @return a map of sequence IDs and lists of start and end positions
+     */
+    public Map<Integer, List<int[]>> getPeptideFeatures() {
+        return peptideFeatures;
+    }
+
+    /**
+     * Returns a protein accession for each protein sequence.
+     *
+     * @return a map of sequence IDs and sets of protein accessions
+     */
+    public Map<Integer, Set<String>> getSequenceIdToProteinAccessionMap() {
+
+        Map<Integer, Set<String>> retVal = new HashMap<Integer, Set<String>>();
+        for (Integer sequenceId : proteinSequences.keySet()) {
+            retVal.put(sequenceId, Collections.singleton(String.format("SYN%06d", sequenceId)));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns a gene accession for each protein sequence, each gene encodes two
+     * consecutive protein sequences.
+     *
+     * @return a map of sequence IDs and sets of gene accessions
+     */
+    public Map<Integer, Set<String>> getSequenceIdToGeneAccessionMap() {
+
+        Map<Integer, Set<String>> retVal = new HashMap<Integer, Set<String>>();
+        for (Integer sequenceId : proteinSequences.keySet()) {
+            retVal.put(sequenceId, Collections.singleton(String.format("SYNG%06d", (sequenceId + 1) / 2)));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the distinct peptide sequences in order of appearance.
+     *
+     * @return the peptide sequences
+     */
+    public Set<String> getPeptideSequences() {
+        return peptideSequences;
+    }
+
+    /**
+     * Returns the first distinct peptides of the digest.
+     *
+     * @param peptideCount the number of peptides
+     * @return the unmodified peptides
+     */
+    public Set<Peptide> getPeptides(int peptideCount) {
+
+        Set<Peptide> retVal = new LinkedHashSet<Peptide>();
+        for (String peptideSequence : peptideSequences) {
+            if (retVal.size() == peptideCount) {
+                break;
+            }
+            retVal.add(PeptideFactory.createPeptide(peptideSequence));
+        }
+
+        return retVal;
+    }
+}
@@ -481,55 +481,13 @@ public abstract class AbstractPeptide implements Peptide {
      * A residue can only carry one modification. Modifications that affect residues that
      * have already been modified by a preceeding PTM will be ignored. If the set contains variable
      * modifications the returned peptide set will also containe peptides with none of the variably
-     * modified residues modified.
+     * modified residues modified. The isoforms are enumerated by a {@link PeptideIsoformEnumerator}.
      *
      * @param modifications the modifications
      * @return a list of modified peptides
      */
     public Set<Peptide> applyModifications(Set<Modification> modifications) {
-
-        Set<Peptide> retVal = new HashSet<Peptide>();
-        if (modifications == null || modifications.size() == 0) {
-            retVal.add(this);
-            return retVal;
-        }
-
-        LinkedHashSet<Modification> ptmsWithStaticPtmsFirst = new LinkedHashSet<Modification>();
-        for (Modification ptm : modifications) {
-            if (ptm.isStatic()) {
-                ptmsWithStaticPtmsFirst.add(ptm);
-            }
-        }
-
-        for (Modification ptm : modifications) {
-            if (!ptm.isStatic()) {
-                ptmsWithStaticPtmsFirst.add(ptm);
-            }
-        }
-
-        Iterator<Modification> ptms = ptmsWithStaticPtmsFirst.iterator();
-
-        if (ptms.hasNext()) {
-            Modification ptm = ptms.next();
-            Set<Peptide> modifiedPeptides = this.applyModification(this, ptm);
-            //as there might be no modifiable residue
-            //we have to check if we got anything back...
-            if (modifiedPeptides.size() == 0) {
-                //...if not we have to add a 'dummy' to pass to
-                //the recursive method
-                modifiedPeptides.add(this);
-            }
-
-            //retVal.addAll(modifiedPeptides);
-
-            retVal.addAll(applyModififcationsRecursively(modifiedPeptides, ptms));
-        }
-
-        //because we might have added an unmodified 'dummy'
-        //we have to check and remove it before we return
-
-        return retVal;
-//        return removeUnmodified(retVal);
+        return new PeptideIsoformEnumerator(modifications).createIsoforms(this);
     }
 
     /**
@@ -550,33 +508,6 @@ public abstract class AbstractPeptide implements Peptide {
         return retVal;
     }
 
-    /**
-     * @param peptides
-     * @param ptms
-     * @return
-     * @TODO: JavaDoc missing
-     */
-    private Set<Peptide> applyModififcationsRecursively(Set<Peptide> peptides, Iterator<Modification> ptms) {
-
-        if (ptms.hasNext()) {
-
-            Modification ptm = ptms.next();
-            Set<Peptide> modifiedPeptides = new HashSet<Peptide>();
-            for (Peptide peptide : peptides) {
-                Set<Peptide> mp = this.applyModification(peptide, ptm);
-                if (mp.size() == 0) {
-                    modifiedPeptides.add(peptide);
-                }
-                modifiedPeptides.addAll(mp);
-            }
-
-            return applyModififcationsRecursively(modifiedPeptides, ptms);
-
-        } else {
-            return peptides;
-        }
-    }
-
     /**
      * Returns whether the peptide is modified.
      *
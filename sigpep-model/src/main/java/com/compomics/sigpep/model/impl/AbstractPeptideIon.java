@@ -5,6 +5,7 @@ import com.compomics.sigpep.model.ProductIonType;
 import com.compomics.sigpep.model.constants.MonoAminoAcidMasses;
 import com.compomics.sigpep.model.constants.MonoElementMasses;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -48,6 +49,12 @@ public abstract class AbstractPeptideIon implements PeptideIon {
      */
     protected static double massH = elementMasses.getDouble("H");
 
+    /**
+     * the monoisotopic amino acid masses indexed by residue character, NaN for characters
+     * not covered by the amino acid masses
+     */
+    private static final double[] residueMasses = createResidueMassTable();
+
     /**
      * the charge states the peptide ion is allowed to be in
      */
@@ -95,7 +102,6 @@ public abstract class AbstractPeptideIon implements PeptideIon {
                             + fragmentLength + " > " + sequence.length() + ")");
         }
 
-        String fragmentSequence;
         double fragmentResidueMass;
         double retVal;
 
@@ -103,8 +109,7 @@ public abstract class AbstractPeptideIon implements PeptideIon {
 
             case A:
 
-                fragmentSequence = sequence.substring(0, fragmentLength);
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, 0, fragmentLength);
                 retVal = massNTerm + fragmentResidueMass - (massC + massH + massO);
                 break;
 
@@ -120,8 +125,7 @@ public abstract class AbstractPeptideIon implements PeptideIon {
 
             case B:
 
-                fragmentSequence = sequence.substring(0, fragmentLength);
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, 0, fragmentLength);
                 retVal = massNTerm + fragmentResidueMass - massH;
                 break;
 
@@ -137,22 +141,19 @@ public abstract class AbstractPeptideIon implements PeptideIon {
 
             case C:
 
-                fragmentSequence = sequence.substring(0, fragmentLength);
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, 0, fragmentLength);
                 retVal = massNTerm + fragmentResidueMass + (massN + 2 * massH);
                 break;
 
             case X:
 
-                fragmentSequence = sequence.substring(sequence.length() - fragmentLength, sequence.length());
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, sequence.length() - fragmentLength, sequence.length());
                 retVal = massCTerm + fragmentResidueMass + (massC + massO) - massH;
                 break;
 
             case Y:
 
-                fragmentSequence = sequence.substring(sequence.length() - fragmentLength, sequence.length());
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, sequence.length() - fragmentLength, sequence.length());
                 retVal = massCTerm + fragmentResidueMass + massH;
                 break;
 
@@ -168,8 +169,7 @@ public abstract class AbstractPeptideIon implements PeptideIon {
 
             case Z:
 
-                fragmentSequence = sequence.substring(sequence.length() - fragmentLength, sequence.length());
-                fragmentResidueMass = calculateResidueMass(fragmentSequence);
+                fragmentResidueMass = calculateResidueMass(sequence, sequence.length() - fragmentLength, sequence.length());
                 retVal = massCTerm + fragmentResidueMass + (massN + 2 * massH);
                 break;
 
@@ -190,15 +190,93 @@ public abstract class AbstractPeptideIon implements PeptideIon {
      * @return the monoisotopic mass in Da
      */
     public static double calculateResidueMass(String peptideSequence) {
+        return calculateResidueMass(peptideSequence, 0, peptideSequence.length());
+    }
+
+    /**
+     * Calculates the molecular mass of the neutral residues of a part of a peptide
+     * excluding N-terminal group and C-terminal group.
+     *
+     * @param peptideSequence the peptide proteinSequence
+     * @param beginIndex      the index of the first residue, inclusive
+     * @param endIndex        the index of the last residue, exclusive
+     * @return the monoisotopic mass in Da
+     */
+    public static double calculateResidueMass(String peptideSequence, int beginIndex, int endIndex) {
 
         //sum up residue masses
         double totalResidueMass = 0;
-        for (char aa : peptideSequence.toCharArray())
-            totalResidueMass += aaMasses.getDouble("" + aa);
+        for (int i = beginIndex; i < endIndex; i++)
+            totalResidueMass += getResidueMass(peptideSequence.charAt(i));
 
         return totalResidueMass;
     }
 
+    /**
+     * Calculates the residue mass ladder of a peptide, element i of the ladder is the
+     * molecular mass of the neutral residues 1 to i, element 0 is 0.
+     *
+     * @param peptideSequence the peptide proteinSequence
+     * @return the residue mass ladder of length sequence length + 1
+     */
+    public static double[] calculateResidueMassLadder(String peptideSequence) {
+
+        double[] retVal = new double[peptideSequence.length() + 1];
+        for (int i = 0; i < peptideSequence.length(); i++) {
+            retVal[i + 1] = retVal[i] + getResidueMass(peptideSequence.charAt(i));
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the monoisotopic mass of an amino acid residue.
+     *
+     * @param aa the one letter code of the amino acid
+     * @return the monoisotopic mass in Da
+     */
+    public static double getResidueMass(char aa) {
+
+        if (aa < residueMasses.length && !Double.isNaN(residueMasses[aa])) {
+            return residueMasses[aa];
+        }
+
+        //unknown residues fail the way they always did
+        return aaMasses.getDouble("" + aa);
+    }
+
+    /**
+     * Returns the table of monoisotopic amino acid masses indexed by residue character,
+     * NaN for characters not covered by the amino acid masses. The table must not be modified.
+     *
+     * @return the residue mass table
+     */
+    static double[] getResidueMassTable() {
+        return residueMasses;
+    }
+
+    /**
+     * Creates the table of monoisotopic amino acid masses indexed by residue character.
+     *
+     * @return the residue mass table
+     */
+    private static double[] createResidueMassTable() {
+
+        double[] retVal = new double[128];
+        Arrays.fill(retVal, Double.NaN);
+
+        if (aaMasses != null) {
+            for (char aa = 0; aa < retVal.length; aa++) {
+                String key = "" + aa;
+                if (aaMasses.containsKey(key)) {
+                    retVal[aa] = aaMasses.getDouble(key);
+                }
+            }
+        }
+
+        return retVal;
+    }
+
     /**
      * Returns the neutral molecular mass of a peptide.
      *
@@ -210,9 +288,7 @@ public abstract class AbstractPeptideIon implements PeptideIon {
     public static double calculatePeptideMass(String peptideSequence, double massNTerm, double massCTerm) {
 
         //sum up residue masses
-        double totalResidueMass = 0;
-        for (char aa : peptideSequence.toCharArray())
-            totalResidueMass += aaMasses.getDouble("" + aa);
+        double totalResidueMass = calculateResidueMass(peptideSequence);
 
         //add H2O mass
         return totalResidueMass + massNTerm + massCTerm;
@@ -0,0 +1,117 @@
+package com.compomics.sigpep.model.impl;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Calculates the neutral masses of many unmodified peptides in one pass without
+ * creating peptide or precursor ion objects.
+ * <p/>
+ * The peptides are passed as coordinates on protein sequences, the way the peptide
+ * features of a digest are stored. Residue masses are read from a table indexed by
+ * residue character and the masses of large batches are calculated in parallel.
+ * The masses are identical to the ones returned by
+ * <code>PrecursorIon.getNeutralMassPeptide()</code> for the unmodified peptide.
+ */
+public class BatchMassCalculator {
+
+    /**
+     * the number of peptides below which the masses are calculated by the calling thread
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * the monoisotopic mass of the N-terminal group (hydrogen)
+     */
+    private static final double massNTerminalGroup = AbstractPeptideIon.massH;
+
+    /**
+     * the monoisotopic mass of the C-terminal group (hydroxy group)
+     */
+    private static final double massCTerminalGroup = AbstractPeptideIon.massH + AbstractPeptideIon.massO;
+
+    /**
+     * Calculates the neutral masses of peptides located on protein sequences.
+     *
+     * @param proteinSequences the protein sequences
+     * @param sequenceIndices  the index of the protein sequence of each peptide in proteinSequences
+     * @param starts           the start position of each peptide (1-based, inclusive)
+     * @param ends             the end position of each peptide (1-based, inclusive)
+     * @return the monoisotopic neutral peptide masses in Da in the order of the coordinates
+     */
+    public static double[] calculateNeutralPeptideMasses(final String[] proteinSequences,
+                                                         final int[] sequenceIndices,
+                                                         final int[] starts,
+                                                         final int[] ends) {
+
+        if (sequenceIndices.length != starts.length || starts.length != ends.length) {
+            throw new IllegalArgumentException("The number of sequence indices (" + sequenceIndices.length
+                    + "), start positions (" + starts.length + ") and end positions (" + ends.length
+                    + ") has to be equal.");
+        }
+
+        final double[] residueMasses = AbstractPeptideIon.getResidueMassTable();
+        double[] retVal = new double[starts.length];
+
+        IntToDoubleFunction massFunction = new IntToDoubleFunction() {
+            public double applyAsDouble(int i) {
+                return calculateNeutralPeptideMass(residueMasses, proteinSequences[sequenceIndices[i]], starts[i], ends[i]);
+            }
+        };
+
+        if (retVal.length < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < retVal.length; i++) {
+                retVal[i] = massFunction.applyAsDouble(i);
+            }
+        } else {
+            Arrays.parallelSetAll(retVal, massFunction);
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Calculates the neutral masses of peptide sequences.
+     *
+     * @param peptideSequences the peptide sequences
+     * @return the monoisotopic neutral peptide masses in Da in the order of the sequences
+     */
+    public static double[] calculateNeutralPeptideMasses(String[] peptideSequences) {
+
+        int[] starts = new int[peptideSequences.length];
+        int[] ends = new int[peptideSequences.length];
+        int[] sequenceIndices = new int[peptideSequences.length];
+        for (int i = 0; i < peptideSequences.length; i++) {
+            sequenceIndices[i] = i;
+            starts[i] = 1;
+            ends[i] = peptideSequences[i].length();
+        }
+
+        return calculateNeutralPeptideMasses(peptideSequences, sequenceIndices, starts, ends);
+    }
+
+    /**
+     * Calculates the neutral mass of a peptide located on a protein sequence.
+     *
+     * @param residueMasses   the residue mass table
+     * @param proteinSequence the protein sequence
+     * @param start           the start position of the peptide (1-based, inclusive)
+     * @param end             the end position of the peptide (1-based, inclusive)
+     * @return the monoisotopic mass in Da
+     */
+    private static double calculateNeutralPeptideMass(double[] residueMasses, String proteinSequence, int start, int end) {
+
+        //sum up residue masses in the same order as the precursor ion does
+        double residueMass = 0;
+        for (int i = start - 1; i < end; i++) {
+            char aa = proteinSequence.charAt(i);
+            double mass = aa < residueMasses.length ? residueMasses[aa] : Double.NaN;
+            if (Double.isNaN(mass)) {
+                mass = AbstractPeptideIon.getResidueMass(aa);
+            }
+            residueMass += mass;
+        }
+
+        return massNTerminalGroup + residueMass + massCTerminalGroup;
+    }
+}
@@ -0,0 +1,409 @@
+package com.compomics.sigpep.model.impl;
+
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Enumerates the post-translationally modified isoforms of peptides without recursion.
+ * <p/>
+ * Static modifications are applied first and in the order they occur in the set. The
+ * positions left free for the variable modifications are mapped to the bits of a long,
+ * each variable modification then occupies any subset of the positions still free,
+ * in the order the variable modifications occur in the set. The subsets are enumerated
+ * as bit masks and a peptide object is only created for each resulting isoform. The
+ * isoforms are the same as the ones created by applying the modifications one after
+ * another.
+ * <p/>
+ * Optionally the number of variably modified positions per isoform can be limited and
+ * isoforms with identical precursor and fragment masses can be collapsed into the first
+ * one enumerated.
+ * <p/>
+ * The setters are not thread safe. Configure an enumerator before sharing it, after that
+ * it is only read and can be shared by threads.
+ */
+public class PeptideIsoformEnumerator {
+
+    /**
+     * the maximum number of variably modifiable positions, one per bit of a long
+     */
+    private static final int MAXIMUM_POSITION_COUNT = 64;
+
+    /**
+     * the precision of the modification mass differences when collapsing mass identical isoforms
+     */
+    private static final double MASS_PRECISION = 1e-6;
+
+    /**
+     * the static modifications in the order they are applied
+     */
+    private Modification[] staticModifications;
+
+    /**
+     * the variable modifications in the order they are applied
+     */
+    private Modification[] variableModifications;
+
+    /**
+     * the modifications as passed to the constructor
+     */
+    private Set<Modification> modifications;
+
+    /**
+     * the maximum number of variably modified positions per isoform, -1 for no limit
+     */
+    private int maximumVariableModificationCount = -1;
+
+    /**
+     * whether to collapse isoforms with identical precursor and fragment masses
+     */
+    private boolean collapseMassIdenticalIsoforms = false;
+
+    /**
+     * Creates an enumerator for a set of modifications.
+     *
+     * @param modifications the modifications
+     */
+    public PeptideIsoformEnumerator(Set<Modification> modifications) {
+
+        this.modifications = modifications;
+
+        List<Modification> staticPtms = new ArrayList<Modification>();
+        List<Modification> variablePtms = new ArrayList<Modification>();
+        if (modifications != null) {
+            for (Modification ptm : modifications) {
+                if (ptm.isStatic()) {
+                    staticPtms.add(ptm);
+                } else {
+                    variablePtms.add(ptm);
+                }
+            }
+        }
+
+        staticModifications = staticPtms.toArray(new Modification[staticPtms.size()]);
+        variableModifications = variablePtms.toArray(new Modification[variablePtms.size()]);
+    }
+
+    /**
+     * Returns the maximum number of variably modified positions per isoform.
+     *
+     * @return the maximum number of variable modifications, -1 if not limited
+     */
+    public int getMaximumVariableModificationCount() {
+        return maximumVariableModificationCount;
+    }
+
+    /**
+     * Sets the maximum number of variably modified positions per isoform.
+     *
+     * @param maximumVariableModificationCount
+     *         the maximum number of variable modifications, -1 for no limit
+     */
+    public void setMaximumVariableModificationCount(int maximumVariableModificationCount) {
+        this.maximumVariableModificationCount = maximumVariableModificationCount;
+    }
+
+    /**
+     * Returns whether isoforms with identical precursor and fragment masses are collapsed.
+     *
+     * @return true if mass identical isoforms are collapsed
+     */
+    public boolean isCollapseMassIdenticalIsoforms() {
+        return collapseMassIdenticalIsoforms;
+    }
+
+    /**
+     * Sets whether isoforms with identical precursor and fragment masses are collapsed
+     * into the first one enumerated.
+     *
+     * @param collapseMassIdenticalIsoforms true to collapse mass identical isoforms
+     */
+    public void setCollapseMassIdenticalIsoforms(boolean collapseMassIdenticalIsoforms) {
+        this.collapseMassIdenticalIsoforms = collapseMassIdenticalIsoforms;
+    }
+
+    /**
+     * Creates the isoforms of a peptide. If the peptide is already modified the
+     * modifications are added to its modifications. The peptide itself is part of
+     * the returned set if it is not modified by the static modifications and the
+     * variable modifications can leave it unmodified.
+     *
+     * @param peptide the peptide
+     * @return the peptide isoforms
+     */
+    public Set<Peptide> createIsoforms(Peptide peptide) {
+
+        if (modifications == null || modifications.size() == 0) {
+            Set<Peptide> retVal = new LinkedHashSet<Peptide>();
+            retVal.add(peptide);
+            return retVal;
+        }
+
+        Peptide unmodifiedPeptide = peptide;
+        Map<Integer, Modification> existingPtms = Collections.emptyMap();
+        if (peptide instanceof ModifiedPeptide) {
+            unmodifiedPeptide = ((ModifiedPeptide) peptide).getUnmodifiedPeptide();
+            existingPtms = ((ModifiedPeptide) peptide).getPostTranslationalModifications();
+        }
+
+        //static modifications occupy all of their free candidate positions
+        Map<Integer, Modification> fixedPtms = new TreeMap<Integer, Modification>(existingPtms);
+        boolean staticallyModified = false;
+        for (Modification ptm : staticModifications) {
+            for (int position : getCandidatePositions(peptide, ptm)) {
+                if (!fixedPtms.containsKey(position)) {
+                    fixedPtms.put(position, ptm);
+                    staticallyModified = true;
+                }
+            }
+        }
+
+        //map the positions left for the variable modifications to bits
+        int[][] variablePositions = new int[variableModifications.length][];
+        SortedSet<Integer> positionSet = new TreeSet<Integer>();
+        for (int i = 0; i < variableModifications.length; i++) {
+            variablePositions[i] = getCandidatePositions(peptide, variableModifications[i]);
+            for (int position : variablePositions[i]) {
+                if (!fixedPtms.containsKey(position)) {
+                    positionSet.add(position);
+                }
+            }
+        }
+
+        if (positionSet.size() > MAXIMUM_POSITION_COUNT) {
+            throw new IllegalArgumentException("Peptide has more than " + MAXIMUM_POSITION_COUNT
+                    + " variably modifiable positions: " + peptide.getSequenceString());
+        }
+
+        int[] positions = new int[positionSet.size()];
+        Map<Integer, Integer> bits = new HashMap<Integer, Integer>();
+        for (Integer position : positionSet) {
+            positions[bits.size()] = position;
+            bits.put(position, bits.size());
+        }
+
+        long[] candidateMasks = new long[variableModifications.length];
+        for (int i = 0; i < variableModifications.length; i++) {
+            candidateMasks[i] = toMask(variablePositions[i], bits);
+        }
+
+        Set<Peptide> retVal = new LinkedHashSet<Peptide>();
+        Set<MassSignature> massSignatures = null;
+        if (collapseMassIdenticalIsoforms) {
+            massSignatures = new HashSet<MassSignature>();
+        }
+
+        //enumerate the subsets of free positions of each variable modification
+        //like an odometer, the subsets of one modification are visited in
+        //ascending bit mask order starting with the empty subset
+        int variableCount = variableModifications.length;
+        long[] available = new long[variableCount];
+        long[] chosen = new long[variableCount];
+        long[] occupiedBefore = new long[variableCount + 1];
+        int[] modifiedBefore = new int[variableCount + 1];
+
+        int level = 0;
+        if (variableCount > 0) {
+            available[0] = candidateMasks[0];
+        }
+
+        while (level >= 0) {
+
+            if (level < variableCount) {
+                occupiedBefore[level + 1] = occupiedBefore[level] | chosen[level];
+                modifiedBefore[level + 1] = modifiedBefore[level] + Long.bitCount(chosen[level]);
+            }
+
+            boolean withinLimit = maximumVariableModificationCount < 0
+                    || modifiedBefore[Math.min(level + 1, variableCount)] <= maximumVariableModificationCount;
+
+            if (withinLimit) {
+                if (level + 1 < variableCount) {
+                    //descend to the next modification starting with the empty subset
+                    level++;
+                    available[level] = candidateMasks[level] & ~occupiedBefore[level];
+                    chosen[level] = 0;
+                    continue;
+                }
+
+                addIsoform(retVal, massSignatures, peptide, unmodifiedPeptide, fixedPtms, staticallyModified, positions, chosen);
+            }
+
+            //advance to the next subset, backtracking when the subsets of a modification are exhausted
+            while (level >= 0) {
+                if (level == variableCount || chosen[level] == available[level]) {
+                    level--;
+                } else {
+                    chosen[level] = (chosen[level] - available[level]) & available[level];
+                    break;
+                }
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Adds an isoform to the result unless a mass identical isoform is already part of it
+     * and mass identical isoforms are collapsed.
+     *
+     * @param isoforms          the isoforms found so far
+     * @param massSignatures    the mass signatures of the isoforms found so far or null if
+     *                          mass identical isoforms are not collapsed
+     * @param peptide           the peptide the isoforms are created for
+     * @param unmodifiedPeptide the unmodified peptide
+     * @param fixedPtms         the modifications of the peptide the isoforms are created for
+     *                          and the static modifications
+     * @param staticallyModified whether any static modification has been applied
+     * @param positions         the positions by bit
+     * @param variableMasks     the positions occupied by the variable modifications
+     */
+    private void addIsoform(Set<Peptide> isoforms,
+                            Set<MassSignature> massSignatures,
+                            Peptide peptide,
+                            Peptide unmodifiedPeptide,
+                            Map<Integer, Modification> fixedPtms,
+                            boolean staticallyModified,
+                            int[] positions,
+                            long[] variableMasks) {
+
+        boolean modified = staticallyModified;
+        for (long mask : variableMasks) {
+            modified = modified || mask != 0;
+        }
+
+        Peptide isoform = peptide;
+        Map<Integer, Modification> ptms = fixedPtms;
+        if (modified) {
+            ModifiedPeptide modifiedPeptide = new ModifiedPeptideImpl(unmodifiedPeptide);
+            ptms = modifiedPeptide.getPostTranslationalModifications();
+            ptms.putAll(fixedPtms);
+            for (int i = 0; i < variableMasks.length; i++) {
+                putAll(ptms, positions, variableMasks[i], variableModifications[i]);
+            }
+            isoform = modifiedPeptide;
+        }
+
+        if (massSignatures == null || massSignatures.add(new MassSignature(ptms, peptide.getSequenceLength()))) {
+            isoforms.add(isoform);
+        }
+    }
+
+    /**
+     * Returns the positions a modification can occupy in a peptide. Residue positions
+     * are 1-based, the protein termini are given by the integer value of the
+     * respective modification position.
+     *
+     * @param peptide      the peptide
+     * @param modification the modification
+     * @return the candidate positions
+     */
+    private int[] getCandidatePositions(Peptide peptide, Modification modification) {
+
+        String residue = modification.getResidue();
+        ModificationPosition position = modification.getPosition();
+
+        if (residue.equalsIgnoreCase("protein")) {
+
+            if (!modification.isPositional()) {
+                return new int[0];
+            } else if (position == ModificationPosition.N_TERMINAL
+                    && peptide.getOrigins().contains(PeptideOrigin.N_TERMINAL)) {
+                return new int[]{ModificationPosition.N_TERMINAL.getIntegerValue()};
+            } else if (position == ModificationPosition.C_TERMINAL
+                    && peptide.getOrigins().contains(PeptideOrigin.C_TERMINAL)) {
+                return new int[]{ModificationPosition.C_TERMINAL.getIntegerValue()};
+            }
+            return new int[0];
+        }
+
+        Set<Integer> residuePositions = peptide.getResiduePositions(residue);
+        int peptideLength = peptide.getSequenceLength();
+
+        if (!modification.isPositional()) {
+            return toArray(residuePositions);
+        } else if (position == ModificationPosition.N_TERMINAL) {
+            return residuePositions.contains(1) ? new int[]{1} : new int[0];
+        } else if (position == ModificationPosition.C_TERMINAL) {
+            return residuePositions.contains(peptideLength) ? new int[]{peptideLength} : new int[0];
+        } else if (position == ModificationPosition.INTERNAL) {
+
+            //static internal modifications skip the terminal residues,
+            //variable ones have always been applied to all residues
+            if (modification.isStatic()) {
+                residuePositions = new TreeSet<Integer>(residuePositions);
+                residuePositions.remove(1);
+                residuePositions.remove(peptideLength);
+            }
+            return toArray(residuePositions);
+        }
+
+        return new int[0];
+    }
+
+    private static int[] toArray(Set<Integer> positions) {
+        int[] retVal = new int[positions.size()];
+        int i = 0;
+        for (Integer position : positions) {
+            retVal[i++] = position;
+        }
+        return retVal;
+    }
+
+    private static long toMask(int[] positions, Map<Integer, Integer> bits) {
+        long retVal = 0;
+        for (int position : positions) {
+            if (bits.containsKey(position)) {
+                retVal |= 1L << bits.get(position);
+            }
+        }
+        return retVal;
+    }
+
+    private static void putAll(Map<Integer, Modification> ptms, int[] positions, long mask, Modification modification) {
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            ptms.put(positions[Long.numberOfTrailingZeros(remaining)], modification);
+        }
+    }
+
+    /**
+     * The mass differences of the modifications of an isoform by residue position,
+     * isoforms with equal signatures have the same precursor and fragment masses.
+     * A modification of the protein N-terminus is part of the same fragments as a
+     * modification of the first residue and is added to position 1, a modification
+     * of the protein C-terminus is added to the last residue likewise.
+     */
+    private static final class MassSignature {
+
+        private final long[] massDifferences;
+
+        private MassSignature(Map<Integer, Modification> ptms, int peptideLength) {
+
+            double[] masses = new double[peptideLength];
+            for (Map.Entry<Integer, Modification> ptm : ptms.entrySet()) {
+                int position = ptm.getKey();
+                if (position == ModificationPosition.N_TERMINAL.getIntegerValue()) {
+                    position = 1;
+                } else if (position == ModificationPosition.C_TERMINAL.getIntegerValue()) {
+                    position = peptideLength;
+                }
+                masses[position - 1] += ptm.getValue().getMassDifference();
+            }
+
+            massDifferences = new long[masses.length];
+            for (int i = 0; i < masses.length; i++) {
+                massDifferences[i] = Math.round(masses[i] / MASS_PRECISION);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MassSignature && Arrays.equals(massDifferences, ((MassSignature) o).massDifferences);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(massDifferences);
+        }
+    }
+}
@@ -2,9 +2,14 @@ package com.compomics.sigpep.model.impl;
 
 import com.compomics.sigpep.model.*;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Implementation of PrecursorIon
@@ -21,6 +26,28 @@ public class PrecursorIonImpl extends AbstractPeptideIon implements PrecursorIon
      */
     private double residueMass;
 
+    /**
+     * the residue mass ladder, element i is the neutral mass of the residues 1 to i
+     */
+    private double[] residueMassLadder;
+
+    /**
+     * the modification mass ladder, element i is the mass of the PTMs at positions 1 to i,
+     * null until requested or if the peptide is not modified
+     */
+    private double[] modificationMassLadder;
+
+    /**
+     * the PTMs the modification mass ladder has been built from
+     */
+    private Map<Integer, Modification> modificationLadderPtms;
+
+    /**
+     * the product ions of each type, softly referenced so large backgrounds can be reclaimed
+     */
+    private Map<ProductIonType, SoftReference<List<ProductIon>>> productIons =
+            new EnumMap<ProductIonType, SoftReference<List<ProductIon>>>(ProductIonType.class);
+
     /**
      * default mass of the N-terminal group (default is mass of hydrogen)
      */
@@ -43,7 +70,8 @@ public class PrecursorIonImpl extends AbstractPeptideIon implements PrecursorIon
      */
     PrecursorIonImpl(Peptide peptide) {
         this.peptide = peptide;
-        this.residueMass = calculateResidueMass(peptide.getSequenceString());
+        this.residueMassLadder = calculateResidueMassLadder(peptide.getSequenceString());
+        this.residueMass = residueMassLadder[residueMassLadder.length - 1];
     }
 
     /**
@@ -104,22 +132,90 @@ public class PrecursorIonImpl extends AbstractPeptideIon implements PrecursorIon
 
     /**
      * Returns all product ions of the specified type that can be emitted by the precursor ion.
+     * <p/>
+     * The product ions are created once per type and returned as unmodifiable list.
      *
      * @param type the product ion type
      * @return the product ions
      */
-    public List<ProductIon> getProductIons(ProductIonType type) {
+    public synchronized List<ProductIon> getProductIons(ProductIonType type) {
+
+        SoftReference<List<ProductIon>> reference = productIons.get(type);
+        List<ProductIon> retVal = reference == null ? null : reference.get();
 
-        List<ProductIon> retVal = new ArrayList<ProductIon>();
+        if (retVal == null) {
 
-        for (int l = 1; l <= this.getSequenceLength(); l++) {
-            ProductIon pi = getProductIon(type, l);
-            retVal.add(pi);
+            List<ProductIon> ions = new ArrayList<ProductIon>(this.getSequenceLength());
+            for (int l = 1; l <= this.getSequenceLength(); l++) {
+                ProductIon pi = getProductIon(type, l);
+                ions.add(pi);
+            }
+
+            retVal = Collections.unmodifiableList(ions);
+            productIons.put(type, new SoftReference<List<ProductIon>>(retVal));
         }
 
         return retVal;
     }
 
+    /**
+     * Returns the neutral mass of the residues between two positions
+     * excluding N- and C-terminal groups and modifications.
+     *
+     * @param startCoordinate the position of the first residue (1-based, inclusive)
+     * @param endCoordinate   the position of the last residue (1-based, inclusive)
+     * @return the monoisotopic mass in Da
+     */
+    double getResidueMass(int startCoordinate, int endCoordinate) {
+        return residueMassLadder[endCoordinate] - residueMassLadder[startCoordinate - 1];
+    }
+
+    /**
+     * Returns the mass of the post-translational modifications between two positions.
+     *
+     * @param startCoordinate the position of the first residue (1-based, inclusive)
+     * @param endCoordinate   the position of the last residue (1-based, inclusive)
+     * @return the monoisotopic mass in Da
+     */
+    double getModificationMass(int startCoordinate, int endCoordinate) {
+
+        if (!(peptide instanceof ModifiedPeptide)) {
+            return 0;
+        }
+
+        double[] ladder = getModificationMassLadder(((ModifiedPeptide) peptide).getPostTranslationalModifications());
+        return ladder[endCoordinate] - ladder[startCoordinate - 1];
+    }
+
+    /**
+     * Returns the modification mass ladder, rebuilding it if the PTMs of the
+     * peptide have changed since it was last built.
+     *
+     * @param ptms the PTMs of the peptide by position
+     * @return the modification mass ladder
+     */
+    private synchronized double[] getModificationMassLadder(Map<Integer, Modification> ptms) {
+
+        if (modificationMassLadder == null || !ptms.equals(modificationLadderPtms)) {
+
+            double[] ladder = new double[getSequenceLength() + 1];
+            for (Integer pos : ptms.keySet()) {
+                //terminal modifications are not located on a residue position
+                if (pos >= 1 && pos <= getSequenceLength()) {
+                    ladder[pos] += ptms.get(pos).getMassDifference();
+                }
+            }
+            for (int i = 1; i < ladder.length; i++) {
+                ladder[i] += ladder[i - 1];
+            }
+
+            modificationMassLadder = ladder;
+            modificationLadderPtms = new TreeMap<Integer, Modification>(ptms);
+        }
+
+        return modificationMassLadder;
+    }
+
     /**
      * Returns the neutral molecular mass of the (uncharged) N-terminal group.
      *
@@ -164,7 +164,7 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
      * @return the monoisotopic mass in Da
      */
     public double getNeutralMassResidues() {
-        double unmodifiedMass = calculateResidueMass(this.getSequenceString());
+        double unmodifiedMass = getFragmentResidueMass();
         double modificationMass = getModificationMass();
         return unmodifiedMass + modificationMass;
     }
@@ -199,6 +199,11 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
      * @return the monoisotopic mass in Da
      */
     public double getModificationMass() {
+
+        if (precursorIon instanceof PrecursorIonImpl) {
+            return ((PrecursorIonImpl) precursorIon).getModificationMass(startCoordinate, endCoordinate);
+        }
+
         double retVal = 0;
 
         if (precursorIon.getPeptide() instanceof ModifiedPeptide) {
@@ -217,6 +222,21 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
         return retVal;
     }
 
+    /**
+     * Returns the neutral molecular mass of the (uncharged) amino acid residues of the
+     * fragment excluding modifications, read from the mass ladder of the precursor ion if available.
+     *
+     * @return the monoisotopic mass in Da
+     */
+    private double getFragmentResidueMass() {
+
+        if (precursorIon instanceof PrecursorIonImpl) {
+            return ((PrecursorIonImpl) precursorIon).getResidueMass(startCoordinate, endCoordinate);
+        }
+
+        return calculateResidueMass(precursorIon.getSequenceString(), startCoordinate - 1, endCoordinate);
+    }
+
     /**
      * Returns the neutral molecular mass of the product ion.
      * </p>
@@ -256,7 +276,7 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
 
             case A:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassNTerminalGroup() + fragmentResidueMass - (massC + massH + massO);
                 break;
 
@@ -272,7 +292,7 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
 
             case B:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassNTerminalGroup() + fragmentResidueMass - massH;
                 break;
 
@@ -288,19 +308,19 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
 
             case C:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassNTerminalGroup() + fragmentResidueMass + (massN + 2 * massH);
                 break;
 
             case X:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassCTerminalGroup() + fragmentResidueMass + (massC + massO) - massH;
                 break;
 
             case Y:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassCTerminalGroup() + fragmentResidueMass + massH;
                 break;
 
@@ -317,7 +337,7 @@ public class ProductIonImpl extends AbstractPeptideIon implements ProductIon {
 
             case Z:
 
-                fragmentResidueMass = calculateResidueMass(this.getSequenceString());
+                fragmentResidueMass = getFragmentResidueMass();
                 retVal = this.getNeutralMassCTerminalGroup() + fragmentResidueMass + (massN + 2 * massH);
                 break;
 
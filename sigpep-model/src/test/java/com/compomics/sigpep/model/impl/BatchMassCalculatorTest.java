@@ -0,0 +1,85 @@
+package com.compomics.sigpep.model.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.model.*;
+
+import java.util.Random;
+
+/**
+ * Tests that the batch mass calculation yields the masses of the precursor ions.
+ */
+public class BatchMassCalculatorTest {
+
+    private String[] proteinSequences;
+    private int[] sequenceIndices;
+    private int[] starts;
+    private int[] ends;
+
+    @Before
+    public void methodSetup() {
+
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(29);
+
+        proteinSequences = new String[50];
+        for (int s = 0; s < proteinSequences.length; s++) {
+            StringBuilder sequence = new StringBuilder();
+            int length = 100 + random.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            proteinSequences[s] = sequence.toString();
+        }
+
+        //enough peptides to be calculated in parallel
+        int peptideCount = 20000;
+        sequenceIndices = new int[peptideCount];
+        starts = new int[peptideCount];
+        ends = new int[peptideCount];
+        for (int i = 0; i < peptideCount; i++) {
+            sequenceIndices[i] = random.nextInt(proteinSequences.length);
+            int proteinLength = proteinSequences[sequenceIndices[i]].length();
+            starts[i] = 1 + random.nextInt(proteinLength - 30);
+            ends[i] = starts[i] + random.nextInt(30);
+        }
+    }
+
+    @Test
+    public void testCalculateNeutralPeptideMasses() {
+
+        double[] masses = BatchMassCalculator.calculateNeutralPeptideMasses(proteinSequences, sequenceIndices, starts, ends);
+        assertEquals(starts.length, masses.length);
+
+        for (int i = 0; i < masses.length; i++) {
+            String peptideSequence = proteinSequences[sequenceIndices[i]].substring(starts[i] - 1, ends[i]);
+            double expected = PeptideFactory.createPeptide(peptideSequence).getPrecursorIon().getNeutralMassPeptide();
+            assertEquals(expected, masses[i], 0);
+        }
+    }
+
+    @Test
+    public void testCalculateNeutralPeptideMassesOfSequences() {
+
+        String[] peptideSequences = {"LTWLTPLIPSTLLSLGGLPPLTGFLPK", "YDQLMHLLWK", "G"};
+        double[] masses = BatchMassCalculator.calculateNeutralPeptideMasses(peptideSequences);
+
+        for (int i = 0; i < peptideSequences.length; i++) {
+            double expected = PeptideFactory.createPeptide(peptideSequences[i]).getPrecursorIon().getNeutralMassPeptide();
+            assertEquals(expected, masses[i], 0);
+        }
+
+        //unequal coordinate arrays are rejected
+        try {
+
+            BatchMassCalculator.calculateNeutralPeptideMasses(peptideSequences, new int[2], new int[3], new int[3]);
+
+            fail("IllegalArgumentException - passed coordinate arrays of unequal length");
+
+        } catch (IllegalArgumentException e) {
+            // Expected - intentional
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.compomics.sigpep.model.impl;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.model.*;
+
+import java.util.*;
+
+/**
+ * Tests the peptide isoform enumerator against applying the modifications one after another.
+ */
+public class PeptideIsoformEnumeratorTest {
+
+    private Peptide peptide;
+    private Set<Modification> modifications;
+
+    @Before
+    public void methodSetup() {
+
+        peptide = PeptideFactory.createPeptide("QMLCAMTPCMLR");
+        peptide.setOrigins(new HashSet<PeptideOrigin>(Arrays.asList(PeptideOrigin.N_TERMINAL)));
+
+        modifications = new LinkedHashSet<Modification>();
+        modifications.add(ModificationFactory.createPostTranslationalModification("metox"));
+        modifications.add(ModificationFactory.createPostTranslationalModification("cyscarbamidmeth"));
+        modifications.add(ModificationFactory.createPostTranslationalModification("glnpyroglu"));
+        modifications.add(ModificationFactory.createPostTranslationalModification("protacetyl"));
+    }
+
+    @Test
+    public void testCreateIsoforms() {
+
+        //static modifications first, then the variable ones
+        List<Modification> ordered = new ArrayList<Modification>();
+        for (Modification ptm : modifications) {
+            if (ptm.isStatic()) {
+                ordered.add(ptm);
+            }
+        }
+        for (Modification ptm : modifications) {
+            if (!ptm.isStatic()) {
+                ordered.add(ptm);
+            }
+        }
+
+        Set<Peptide> expected = new HashSet<Peptide>();
+        expected.add(peptide);
+        for (Modification ptm : ordered) {
+            Set<Peptide> modified = new HashSet<Peptide>();
+            for (Peptide p : expected) {
+                Set<Peptide> isoforms = ((AbstractPeptide) peptide).applyModification(p, ptm);
+                if (isoforms.size() == 0) {
+                    modified.add(p);
+                }
+                modified.addAll(isoforms);
+            }
+            expected = modified;
+        }
+
+        Set<Peptide> actual = new PeptideIsoformEnumerator(modifications).createIsoforms(peptide);
+
+        //3 oxidizable methionines, optional pyro-Glu and optional N-terminal acetylation
+        assertEquals(8 * 2 * 2, actual.size());
+        assertEquals(expected, actual);
+        assertEquals(expected, peptide.applyModifications(modifications));
+    }
+
+    @Test
+    public void testMaximumVariableModificationCount() {
+
+        PeptideIsoformEnumerator enumerator = new PeptideIsoformEnumerator(modifications);
+        enumerator.setMaximumVariableModificationCount(1);
+
+        Set<Peptide> isoforms = enumerator.createIsoforms(peptide);
+
+        //unmodified apart from the static carbamidomethylation, or one of 3 + 2 variable sites
+        assertEquals(6, isoforms.size());
+        for (Peptide isoform : isoforms) {
+            int variableCount = 0;
+            for (Modification ptm : ((ModifiedPeptide) isoform).getPostTranslationalModifications().values()) {
+                if (!ptm.isStatic()) {
+                    variableCount++;
+                }
+            }
+            assertTrue(variableCount <= 1);
+        }
+    }
+
+    @Test
+    public void testCollapseMassIdenticalIsoforms() {
+
+        Modification oxidation = new ModificationImpl("oxA", "oxidation", "M", "O(1)", 15.994915, true, false, ModificationPosition.NON_POSITIONAL);
+        Modification isobaricOxidation = new ModificationImpl("oxB", "oxidation", "M", "O(1)", 15.994915, true, false, ModificationPosition.NON_POSITIONAL);
+        Set<Modification> ptms = new LinkedHashSet<Modification>(Arrays.asList(oxidation, isobaricOxidation));
+        Peptide methionines = PeptideFactory.createPeptide("AMLMK");
+
+        PeptideIsoformEnumerator enumerator = new PeptideIsoformEnumerator(ptms);
+
+        //each methionine unmodified, oxA or oxB
+        assertEquals(9, enumerator.createIsoforms(methionines).size());
+
+        enumerator.setCollapseMassIdenticalIsoforms(true);
+
+        //each methionine unmodified or oxidized
+        assertEquals(4, enumerator.createIsoforms(methionines).size());
+    }
+    @Test
+    public void testCollapseTerminalModifications() {
+
+        Modification nTerminal = new ModificationImpl("ntermX", "N-terminal", "protein", "O(1)", 15.994915, true, false, ModificationPosition.N_TERMINAL);
+        Modification cTerminal = new ModificationImpl("ctermX", "C-terminal", "protein", "O(1)", 15.994915, true, false, ModificationPosition.C_TERMINAL);
+        Modification lysine = new ModificationImpl("lysX", "lysine", "K", "O(1)", 15.994915, true, false, ModificationPosition.NON_POSITIONAL);
+        Peptide terminal = PeptideFactory.createPeptide("AGLSK");
+        terminal.setOrigins(new HashSet<PeptideOrigin>(Arrays.asList(PeptideOrigin.N_TERMINAL, PeptideOrigin.C_TERMINAL)));
+
+        PeptideIsoformEnumerator enumerator = new PeptideIsoformEnumerator(new LinkedHashSet<Modification>(Arrays.asList(nTerminal, cTerminal)));
+        enumerator.setCollapseMassIdenticalIsoforms(true);
+
+        //an N-terminal modification is part of the b ions, a C-terminal one of the y ions
+        assertEquals(4, enumerator.createIsoforms(terminal).size());
+
+        enumerator = new PeptideIsoformEnumerator(new LinkedHashSet<Modification>(Arrays.asList(cTerminal, lysine)));
+        enumerator.setCollapseMassIdenticalIsoforms(true);
+
+        //the C-terminal modification and the one of the C-terminal lysine give the same fragments
+        assertEquals(3, enumerator.createIsoforms(terminal).size());
+    }
+
+    @Test
+    public void testCollapseRandomIsoforms() {
+
+        Set<Modification> ptms = new LinkedHashSet<Modification>();
+        ptms.add(new ModificationImpl("oxM", "oxidation", "M", "O(1)", 15.994915, true, false, ModificationPosition.NON_POSITIONAL));
+        ptms.add(new ModificationImpl("ctermO", "C-terminal", "protein", "O(1)", 15.994915, true, false, ModificationPosition.C_TERMINAL));
+        ptms.add(new ModificationImpl("phosS", "phosphorylation", "S", "H(1)O(3)P(1)", 79.966331, true, false, ModificationPosition.NON_POSITIONAL));
+        ptms.add(new ModificationImpl("phosT", "phosphorylation", "T", "H(1)O(3)P(1)", 79.966331, true, false, ModificationPosition.NON_POSITIONAL));
+        ptms.add(new ModificationImpl("ntermAc", "N-terminal", "protein", "H(2)C(2)O(1)", 42.010565, true, false, ModificationPosition.N_TERMINAL));
+        ptms.add(new ModificationImpl("acK", "acetylation", "K", "H(2)C(2)O(1)", 42.010565, true, false, ModificationPosition.NON_POSITIONAL));
+
+        Random random = new Random(42);
+        String residues = "AKMSTG";
+        for (int n = 0; n < 200; n++) {
+
+            StringBuilder sequence = new StringBuilder();
+            int length = 4 + random.nextInt(7);
+            for (int i = 0; i < length; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+
+            Peptide randomPeptide = PeptideFactory.createPeptide(sequence.toString());
+            Set<PeptideOrigin> origins = new HashSet<PeptideOrigin>();
+            if (random.nextBoolean()) {
+                origins.add(PeptideOrigin.N_TERMINAL);
+            }
+            if (random.nextBoolean()) {
+                origins.add(PeptideOrigin.C_TERMINAL);
+            }
+            randomPeptide.setOrigins(origins);
+
+            PeptideIsoformEnumerator enumerator = new PeptideIsoformEnumerator(ptms);
+            Set<List<Long>> expected = new HashSet<List<Long>>();
+            for (Peptide isoform : enumerator.createIsoforms(randomPeptide)) {
+                expected.add(getFragmentMasses(isoform));
+            }
+
+            enumerator.setCollapseMassIdenticalIsoforms(true);
+            Set<Peptide> collapsed = enumerator.createIsoforms(randomPeptide);
+            Set<List<Long>> actual = new HashSet<List<Long>>();
+            for (Peptide isoform : collapsed) {
+                actual.add(getFragmentMasses(isoform));
+            }
+
+            //one isoform for each distinct set of precursor and fragment masses
+            assertEquals(sequence.toString(), expected, actual);
+            assertEquals(sequence.toString(), expected.size(), collapsed.size());
+        }
+    }
+
+    /**
+     * Returns the modification mass of the precursor and of the b and y ions of an isoform,
+     * the protein N-terminal modifications are part of all b ions, the C-terminal ones of all
+     * y ions.
+     *
+     * @param isoform the isoform
+     * @return the precursor and fragment modification masses rounded to 1e-6 Da
+     */
+    private static List<Long> getFragmentMasses(Peptide isoform) {
+
+        int length = isoform.getSequenceLength();
+        double[] residueMasses = new double[length + 2];
+        if (isoform instanceof ModifiedPeptide) {
+            for (Map.Entry<Integer, Modification> ptm : ((ModifiedPeptide) isoform).getPostTranslationalModifications().entrySet()) {
+                int position = ptm.getKey();
+                if (position == ModificationPosition.N_TERMINAL.getIntegerValue()) {
+                    position = 0;
+                } else if (position == ModificationPosition.C_TERMINAL.getIntegerValue()) {
+                    position = length + 1;
+                }
+                residueMasses[position] += ptm.getValue().getMassDifference();
+            }
+        }
+
+        double total = 0;
+        for (double mass : residueMasses) {
+            total += mass;
+        }
+
+        List<Long> retVal = new ArrayList<Long>();
+        retVal.add(Math.round(total * 1e6));
+        double b = residueMasses[0];
+        for (int i = 1; i < length; i++) {
+            b += residueMasses[i];
+            retVal.add(Math.round(b * 1e6));
+            retVal.add(Math.round((total - b) * 1e6));
+        }
+
+        return retVal;
+    }
+}
@@ -127,6 +127,87 @@ public class PrecursorIonImplTest {
 
     }
 
+    @Test
+    public void testGetProductIonsCached() {
+
+        List<ProductIon> products = aPrecursorIon.getProductIons(ProductIonType.B);
+
+        //make sure the product ions are created once...
+        assertSame(products, aPrecursorIon.getProductIons(ProductIonType.B));
+
+        //...and cannot be modified
+        try {
+
+            products.clear();
+
+            fail("UnsupportedOperationException - cleared cached product ion list");
+
+        } catch (UnsupportedOperationException e) {
+            // Expected - intentional
+        }
+
+    }
+
+    @Test
+    public void testGetProductIonMasses() {
+
+        ProductIonType[] types = {ProductIonType.A, ProductIonType.A_STAR, ProductIonType.A_CIRCLE,
+                ProductIonType.B, ProductIonType.B_STAR, ProductIonType.B_CIRCLE, ProductIonType.C,
+                ProductIonType.X, ProductIonType.Y, ProductIonType.Y_STAR, ProductIonType.Y_CIRCLE,
+                ProductIonType.Z};
+
+        //make sure the mass ladder yields the same masses as the sequence based calculation
+        for (PrecursorIon precursorIon : new PrecursorIon[]{aPrecursorIon, anotherPeptide.getPrecursorIon()}) {
+            for (ProductIonType type : types) {
+                for (ProductIon product : precursorIon.getProductIons(type)) {
+
+                    double expected = AbstractPeptideIon.calculateProductIonMass(precursorIon.getSequenceString(),
+                            type, product.getSequenceLength(),
+                            precursorIon.getNeutralMassNTerminalGroup(),
+                            precursorIon.getNeutralMassCTerminalGroup());
+
+                    assertEquals(expected, product.getNeutralMassPeptide(), 1e-9);
+                    assertEquals(AbstractPeptideIon.calculateResidueMass(product.getSequenceString()),
+                            product.getNeutralMassResidues(), 1e-9);
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void testGetProductIonModificationMass() {
+
+        ModifiedPeptideImpl modifiedPeptide = new ModifiedPeptideImpl(anotherPeptide);
+        Modification oxidation = new ModificationImpl("metox", "oxidation", "M", "O", 15.994915,
+                true, false, ModificationPosition.INTERNAL);
+        Modification acetylation = new ModificationImpl("nterm", "acetylation", "", "C2H2O", 42.010565,
+                true, false, ModificationPosition.N_TERMINAL);
+        modifiedPeptide.getPostTranslationalModifications().put(5, oxidation);
+
+        PrecursorIon precursorIon = modifiedPeptide.getPrecursorIon();
+        int length = precursorIon.getSequenceLength();
+
+        for (int l = 1; l <= length; l++) {
+
+            //the oxidised methionine is residue 5 of YDQLMHLLWK
+            double expected = l >= 5 ? oxidation.getMassDifference() : 0;
+            assertEquals(expected, precursorIon.getProductIon(ProductIonType.B, l).getModificationMass(), 1e-9);
+
+            expected = l >= length - 4 ? oxidation.getMassDifference() : 0;
+            assertEquals(expected, precursorIon.getProductIon(ProductIonType.Y, l).getModificationMass(), 1e-9);
+        }
+
+        //make sure changes to the modifications are picked up and terminal modifications are ignored
+        modifiedPeptide.getPostTranslationalModifications().put(ModificationPosition.N_TERMINAL.getIntegerValue(), acetylation);
+        modifiedPeptide.getPostTranslationalModifications().put(1, oxidation);
+        assertEquals(2 * oxidation.getMassDifference(),
+                precursorIon.getProductIon(ProductIonType.B, length).getModificationMass(), 1e-9);
+        assertEquals(oxidation.getMassDifference(),
+                precursorIon.getProductIon(ProductIonType.B, 1).getModificationMass(), 1e-9);
+
+    }
+
     @Test
     public void testGetNeutralMassNTerminalGroup() {
 
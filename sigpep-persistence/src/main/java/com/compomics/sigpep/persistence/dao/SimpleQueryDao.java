@@ -176,6 +176,15 @@ public interface SimpleQueryDao {
      */
     int getLastGeneId();
 
+    /**
+     * Returns the number of peptide features and the primary key of the last peptide
+     * entry of each protease that has peptides in the database.
+     *
+     * @return a map with protease short names as key and the feature count and last
+     *         peptide ID as value
+     */
+    Map<String, int[]> getPeptideCountAndLastPeptideIdByProteaseShortName();
+
     /**
      * Returns a map of protease IDs and protease shortnames.
      *
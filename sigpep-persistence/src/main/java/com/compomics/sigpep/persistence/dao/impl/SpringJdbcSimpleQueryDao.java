@@ -47,6 +47,7 @@ public class SpringJdbcSimpleQueryDao extends JdbcDaoSupport implements SimpleQu
     private static final String SQL_SELECT_SIGNATURE_PEPTIDE_IDS_BY_PROTEASE_SHORTNAME_GENE_LEVEL = namedQueries.getString("query.signaturePeptideIdsByProteaseShortNameGeneLevel");
     private static final String SQL_SELECT_LAST_PROTEIN_ID = namedQueries.getString("query.lastProteinId");
     private static final String SQL_SELECT_LAST_GENE_ID = namedQueries.getString("query.lastGeneId");
+    private static final String SQL_SELECT_PEPTIDE_COUNT_AND_LAST_PEPTIDE_ID_BY_PROTEASE = namedQueries.getString("query.peptideCountAndLastPeptideIdByProtease");
     private static final String SQL_SELECT_PROTEASE_IDS_AND_SHORTNAMES = namedQueries.getString("query.proteaseIds");
     private static final String SQL_SELECT_PROTEASE_NAMES_AND_IDS = namedQueries.getString("query.proteaseNameToIds");
 
@@ -429,6 +430,32 @@ public class SpringJdbcSimpleQueryDao extends JdbcDaoSupport implements SimpleQu
         return this.getJdbcTemplate().queryForObject(SQL_SELECT_LAST_GENE_ID, Integer.class);
     }
 
+    /**
+     * Returns the number of peptide features and the primary key of the last peptide
+     * entry of each protease that has peptides in the database.
+     *
+     * @return a map with protease short names as key and the feature count and last
+     *         peptide ID as value
+     */
+    public Map<String, int[]> getPeptideCountAndLastPeptideIdByProteaseShortName() {
+
+        return (Map<String, int[]>) this.getJdbcTemplate().query(
+                SQL_SELECT_PEPTIDE_COUNT_AND_LAST_PEPTIDE_ID_BY_PROTEASE,
+                new ResultSetExtractor() {
+
+                    public Object extractData(ResultSet resultSet) throws SQLException, DataAccessException {
+
+                        Map<String, int[]> retVal = new HashMap<String, int[]>();
+                        while (resultSet.next()) {
+                            retVal.put(resultSet.getString("name"), new int[]{resultSet.getInt("count"), resultSet.getInt("id")});
+                        }
+
+                        return retVal;
+                    }
+                }
+        );
+    }
+
     /**
      * Returns a map of protease IDs and protease shortnames.
      *
@@ -36,4 +36,12 @@ public interface DigestProcessor {
     boolean processFiles();
 
     void setProteases(Map<String, Integer> aProteases);
+
+    /**
+     * Sets in memory digests to generate the peptides from the protein sequences
+     * while processing them, instead of reading the digest files.
+     *
+     * @param proteolyticDigests a map of protease names and digests, null to read the digest files
+     */
+    void setProteolyticDigests(Map<String, StreamingProteolyticDigest> proteolyticDigests);
 }
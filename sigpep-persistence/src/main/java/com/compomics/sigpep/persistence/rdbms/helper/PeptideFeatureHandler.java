@@ -0,0 +1,16 @@
+package com.compomics.sigpep.persistence.rdbms.helper;
+
+/**
+ * Receives the peptide features of an in memory proteolytic digest.
+ */
+public interface PeptideFeatureHandler {
+
+    /**
+     * Handles a peptide feature.
+     *
+     * @param sequenceIndex the index of the digested protein sequence in the list passed to the digest
+     * @param start         the start position of the peptide on the protein sequence (1-based, inclusive)
+     * @param end           the end position of the peptide on the protein sequence (1-based, inclusive)
+     */
+    void handlePeptideFeature(int sequenceIndex, int start, int end);
+}
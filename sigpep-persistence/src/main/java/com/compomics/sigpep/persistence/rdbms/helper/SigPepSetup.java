@@ -213,7 +213,7 @@ public class SigPepSetup {
         logger.info("-----------------------------------------------------");
         logger.info("processing sequences...");
 
-        digestsProcessed = processDigests(workingDirectory, organismScientificName, organismNcbiTaxonId, sequenceDatabaseName, sequenceDatabaseVersion, protease);
+        digestsProcessed = processDigests(workingDirectory, organismScientificName, organismNcbiTaxonId, sequenceDatabaseName, sequenceDatabaseVersion, lowMass, highMass, missedCleavages, protease);
         digestsProcessed = true;
 
         if (!digestsProcessed) {
@@ -785,6 +785,12 @@ public class SigPepSetup {
 
         ProteolyticDigest digest = createProteolyticDigest();
 
+        //in memory digests generate the peptides while the digests are processed
+        if (digest instanceof StreamingProteolyticDigest) {
+            logger.info("sequences are digested in memory while processing the digests");
+            return true;
+        }
+
         try {
 
             String sequenceFilename = buildSequenceFilename(organismScientificName, organismNcbiTaxonId, sequenceDatabaseName, sequenceDatabaseVersion);
@@ -824,6 +830,9 @@ public class SigPepSetup {
      * @param organismNcbiTaxonId
      * @param sequenceDatabaseName
      * @param sequenceDatabaseVersion
+     * @param lowMass
+     * @param highMass
+     * @param missedCleavages
      * @param protease
      * @return
      * @TODO: JavaDoc missing
@@ -834,6 +843,9 @@ public class SigPepSetup {
             int organismNcbiTaxonId,
             String sequenceDatabaseName,
             String sequenceDatabaseVersion,
+            double lowMass,
+            double highMass,
+            int missedCleavages,
             String... protease) {
 
         Connection sigPepDatabaseConnection = null;
@@ -850,9 +862,24 @@ public class SigPepSetup {
             URL outputDirectoryURL = new File(workingDirectory + "/" + subFolderOrganism + "/" + subFolderDatabase).toURI().toURL();
 
             Map<String, URL> protease2Url = new HashMap<String, URL>();
+            Map<String, StreamingProteolyticDigest> protease2Digest = null;
 
             for (String p : protease) {
 
+                //digest in memory instead of reading the digest files if configured
+                ProteolyticDigest digest = createProteolyticDigest();
+                if (digest instanceof StreamingProteolyticDigest) {
+                    digest.setEnzyme(p);
+                    digest.setLowMass(lowMass);
+                    digest.setHighMass(highMass);
+                    digest.setMissedCleavages(missedCleavages);
+
+                    if (protease2Digest == null) {
+                        protease2Digest = new HashMap<String, StreamingProteolyticDigest>();
+                    }
+                    protease2Digest.put(p, (StreamingProteolyticDigest) digest);
+                }
+
                 String digestFilename = buildDigestFilename(organismScientificName, organismNcbiTaxonId, sequenceDatabaseName, sequenceDatabaseVersion, p);
                 String subFolderDigest = config.getString("sigpep.db.setup.folder.digest");
                 File digestFile = new File(workingDirectory + "/" + subFolderOrganism + "/" + subFolderDigest + "/" + digestFilename);
@@ -880,6 +907,7 @@ public class SigPepSetup {
             processor.setDigestFileUrl(protease2Url);
             processor.setOutputDirectoryUrl(outputDirectoryURL);
             processor.setProteases(proteases);
+            processor.setProteolyticDigests(protease2Digest);
 
             return processor.processFiles();
 
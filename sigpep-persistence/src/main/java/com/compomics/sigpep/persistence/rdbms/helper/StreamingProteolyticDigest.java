@@ -0,0 +1,21 @@
+package com.compomics.sigpep.persistence.rdbms.helper;
+
+import java.util.List;
+
+/**
+ * A proteolytic digest that cleaves protein sequences in memory and passes the
+ * peptide features to a handler instead of writing a database of peptide sequences
+ * in FASTA format.
+ */
+public interface StreamingProteolyticDigest extends ProteolyticDigest {
+
+    /**
+     * Digests protein sequences with the enzyme, missed cleavages and mass limits set
+     * and passes the peptide features to the handler. The handler is called by the
+     * calling thread in the order of the protein sequences.
+     *
+     * @param proteinSequences the protein sequences to digest
+     * @param handler          the handler receiving the peptide features
+     */
+    void digestSequences(List<String> proteinSequences, PeptideFeatureHandler handler);
+}
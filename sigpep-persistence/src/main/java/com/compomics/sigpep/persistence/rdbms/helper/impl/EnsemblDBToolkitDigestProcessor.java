@@ -5,6 +5,8 @@ import com.compomics.dbtoolkit.io.interfaces.DBLoader;
 import com.compomics.util.protein.Protein;
 import com.compomics.sigpep.persistence.rdbms.SigPepDatabase;
 import com.compomics.sigpep.persistence.rdbms.helper.DigestProcessor;
+import com.compomics.sigpep.persistence.rdbms.helper.PeptideFeatureHandler;
+import com.compomics.sigpep.persistence.rdbms.helper.StreamingProteolyticDigest;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
@@ -36,6 +38,7 @@ public class EnsemblDBToolkitDigestProcessor implements DigestProcessor {
     private URL sequenceFileUrl;
     private Map<String, URL> digestFileUrl;
     private URL outputDirectoryUrl;
+    private Map<String, StreamingProteolyticDigest> proteolyticDigests;
 
     private int organismId = 1;
     private int proteaseId = 1;
@@ -194,6 +197,16 @@ public class EnsemblDBToolkitDigestProcessor implements DigestProcessor {
 
     }
 
+    /**
+     * Sets in memory digests to generate the peptides from the protein sequences
+     * while processing them, instead of reading the digest files.
+     *
+     * @param proteolyticDigests a map of protease names and digests, null to read the digest files
+     */
+    public void setProteolyticDigests(Map<String, StreamingProteolyticDigest> proteolyticDigests) {
+        this.proteolyticDigests = proteolyticDigests;
+    }
+
     /**
      * @throws IOException
      * @TODO: JavaDoc missing
@@ -398,6 +411,11 @@ public class EnsemblDBToolkitDigestProcessor implements DigestProcessor {
      */
     private void processPeptides() throws IOException {
 
+        if (proteolyticDigests != null) {
+            digestPeptides();
+            return;
+        }
+
         logger.info("Extracting peptide information:");
         //count input files to process
         int fileCount = 0;
@@ -482,6 +500,50 @@ public class EnsemblDBToolkitDigestProcessor implements DigestProcessor {
         writeProteaseTables();
     }
 
+    /**
+     * Digests the distinct protein sequences with the in memory digests and writes the
+     * peptides straight to the peptide tables, without a FASTA file in between. Each
+     * distinct sequence is digested once, no matter how many proteins share it.
+     */
+    private void digestPeptides() {
+
+        logger.info("Digesting protein sequences:");
+
+        //the distinct sequences and their IDs
+        final List<String> sequenceList = new ArrayList<String>(sequences.size());
+        final int[] sequenceIds = new int[sequences.size()];
+        for (Map.Entry<String, Integer> sequence : sequences.entrySet()) {
+            sequenceIds[sequenceList.size()] = sequence.getValue();
+            sequenceList.add(sequence.getKey());
+        }
+
+        final PrintWriter peptide2proteaseTable = outputFiles.get(fileNamePeptide2proteaseTable);
+        final PrintWriter peptideTable = outputFiles.get(fileNamePeptideTable);
+
+        for (String protease : proteolyticDigests.keySet()) {
+
+            logger.info("digesting " + sequenceList.size() + " sequences with " + protease + "...");
+
+            final int proteaseId = getProteaseId(protease);
+            final int[] counter = new int[1];
+
+            proteolyticDigests.get(protease).digestSequences(sequenceList, new PeptideFeatureHandler() {
+                public void handlePeptideFeature(int sequenceIndex, int start, int end) {
+
+                    int peptideId = getPeptideId(sequenceList.get(sequenceIndex).substring(start - 1, end));
+
+                    peptide2proteaseTable.println(peptideId + "\t" + proteaseId);
+                    peptideTable.println(peptideId + "\t" + sequenceIds[sequenceIndex] + "\t" + start + "\t" + end);
+                    counter[0]++;
+                }
+            });
+
+            logger.info("done (" + counter[0] + " peptides processed; " + peptides.size() + " unique peptides in memory).");
+        }
+
+        writeProteaseTables();
+    }
+
     /**
      * Extracts the name of the protease from an in silico digest file name
      *
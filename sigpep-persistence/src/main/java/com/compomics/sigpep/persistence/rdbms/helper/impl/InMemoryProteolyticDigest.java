@@ -0,0 +1,463 @@
+package com.compomics.sigpep.persistence.rdbms.helper.impl;
+
+import com.compomics.sigpep.model.impl.AbstractPeptideIon;
+import com.compomics.sigpep.model.impl.BatchMassCalculator;
+import com.compomics.sigpep.persistence.config.Configuration;
+import com.compomics.sigpep.persistence.rdbms.helper.PeptideFeatureHandler;
+import com.compomics.sigpep.persistence.rdbms.helper.StreamingProteolyticDigest;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Proteolytic digest that cleaves the protein sequences in memory, in parallel across
+ * protein sequences.
+ * <p/>
+ * The cleavage rule of an enzyme is read from the property
+ * sigpep.db.setup.digest.cleavage.rule.&lt;enzyme&gt; in the sigpep-persistence.properties
+ * file as &lt;cleavage residues&gt;;&lt;restricting residues&gt;;&lt;C|N&gt;, e.g. KR;P;C for
+ * trypsin, or set with <code>setCleavageRule()</code>. Peptides are kept if their
+ * monoisotopic neutral mass lies within the mass limits (inclusive). Peptides containing
+ * residues without a known mass are dropped.
+ */
+public class InMemoryProteolyticDigest implements StreamingProteolyticDigest {
+
+    /**
+     * the log4j logger
+     */
+    private static Logger logger = Logger.getLogger(InMemoryProteolyticDigest.class);
+
+    /**
+     * provides access to the persistence layer configuration
+     */
+    private static Configuration config = Configuration.getInstance();
+
+    /**
+     * the number of protein sequences digested by one task
+     */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * the residues with a known mass, indexed by residue character
+     */
+    private static final boolean[] knownResidues = createKnownResidueTable();
+
+    private String enzyme = null;
+
+    private int missedCleavages = 0;
+
+    private double lowMass = 600;
+
+    private double highMass = 4000;
+
+    /**
+     * the residues after (C-terminal) or before (N-terminal) which the enzyme cleaves, indexed by residue character
+     */
+    private boolean[] cleavageResidues;
+
+    /**
+     * the residues that prevent cleavage when next to the cleavage site, indexed by residue character
+     */
+    private boolean[] restrictingResidues;
+
+    /**
+     * true if the enzyme cleaves C-terminal of the cleavage residues, false if N-terminal
+     */
+    private boolean cTerminal;
+
+    /**
+     * the number of threads digesting protein sequences, 0 for the number of available processors
+     */
+    private int parallelism = config.getInt("sigpep.db.setup.digest.parallelism", 0);
+
+    /**
+     * Default constructor.
+     */
+    public InMemoryProteolyticDigest() {
+    }
+
+    /**
+     * Constructs a digest for an enzyme with a cleavage rule in the sigpep-persistence.properties file.
+     *
+     * @param enzyme          the enzyme name
+     * @param missedCleavages the maximum number of missed cleavages
+     */
+    public InMemoryProteolyticDigest(String enzyme, int missedCleavages) {
+        setEnzyme(enzyme);
+        this.missedCleavages = missedCleavages;
+    }
+
+    /**
+     * Constructs a digest for an enzyme with a cleavage rule in the sigpep-persistence.properties file.
+     *
+     * @param enzyme          the enzyme name
+     * @param missedCleavages the maximum number of missed cleavages
+     * @param lowMass         the lower peptide mass limit
+     * @param highMass        the upper peptide mass limit
+     */
+    public InMemoryProteolyticDigest(String enzyme, int missedCleavages, double lowMass, double highMass) {
+        setEnzyme(enzyme);
+        this.missedCleavages = missedCleavages;
+        this.lowMass = lowMass;
+        this.highMass = highMass;
+    }
+
+    /**
+     * Digests a database of protein sequences in FASTA format and generates a
+     * database of proteolytic peptide sequences in FASTA format. The header of each
+     * peptide entry is the protein accession followed by the peptide location,
+     * e.g. &gt;ENSP00000386319 (12-25).
+     *
+     * @param sequenceDatabaseInput the protein sequences to digest
+     * @param digestDestination     the generated peptide sequences
+     * @return true if the digest was successful
+     */
+    public boolean digestSequenceDatabase(URL sequenceDatabaseInput, URL digestDestination) {
+
+        final List<String> accessions = new ArrayList<String>();
+        final List<String> sequences = new ArrayList<String>();
+
+        try {
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(sequenceDatabaseInput.openStream()));
+            StringBuilder sequence = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+
+                if (line.startsWith(">")) {
+                    if (sequence != null) {
+                        sequences.add(sequence.toString());
+                    }
+                    accessions.add(line.substring(1).trim().split("\\s")[0]);
+                    sequence = new StringBuilder();
+                } else if (sequence != null) {
+                    sequence.append(line.trim().replace("*", ""));
+                }
+            }
+            if (sequence != null) {
+                sequences.add(sequence.toString());
+            }
+            reader.close();
+
+            final PrintWriter output = new PrintWriter(new BufferedWriter(new FileWriter(digestDestination.getPath())));
+            final int[] peptideCount = new int[1];
+
+            digestSequences(sequences, new PeptideFeatureHandler() {
+                public void handlePeptideFeature(int sequenceIndex, int start, int end) {
+                    output.println(">" + accessions.get(sequenceIndex) + " (" + start + "-" + end + ")");
+                    output.println(sequences.get(sequenceIndex).substring(start - 1, end));
+                    peptideCount[0]++;
+                }
+            });
+
+            output.close();
+
+            logger.info(peptideCount[0] + " peptides generated from " + sequences.size() + " protein sequences with " + enzyme);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Exception while digesting proteins in file " + sequenceDatabaseInput.getPath() + ".", e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Digests protein sequences with the enzyme, missed cleavages and mass limits set
+     * and passes the peptide features to the handler. The protein sequences are digested
+     * in batches by a pool of threads, at most twice the number of threads batches are
+     * digested or waiting for the handler at any time. The handler is called by the
+     * calling thread in the order of the protein sequences.
+     *
+     * @param proteinSequences the protein sequences to digest
+     * @param handler          the handler receiving the peptide features
+     */
+    public void digestSequences(List<String> proteinSequences, PeptideFeatureHandler handler) {
+
+        if (cleavageResidues == null) {
+            throw new RuntimeException("Exception while digesting protein sequences. No enzyme set.");
+        }
+
+        int threadCount = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+        if (threadCount == 1 || proteinSequences.size() <= BATCH_SIZE) {
+            for (int i = 0; i < proteinSequences.size(); i++) {
+                handlePeptideFeatures(new int[][]{digestSequence(proteinSequences.get(i))}, i, handler);
+            }
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        LinkedList<Future<int[][]>> results = new LinkedList<Future<int[][]>>();
+        int maximumPendingBatches = threadCount * 2;
+        int nextStart = 0;
+        int handledStart = 0;
+
+        try {
+
+            while (nextStart < proteinSequences.size() || !results.isEmpty()) {
+
+                while (nextStart < proteinSequences.size() && results.size() < maximumPendingBatches) {
+                    int end = Math.min(nextStart + BATCH_SIZE, proteinSequences.size());
+                    results.add(executorService.submit(new BatchDigest(proteinSequences, nextStart, end)));
+                    nextStart = end;
+                }
+
+                //hand over the oldest batch in protein sequence order
+                int[][] features = results.removeFirst().get();
+                handlePeptideFeatures(features, handledStart, handler);
+                handledStart += features.length;
+            }
+
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Exception while digesting protein sequences.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Exception while digesting protein sequences.", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Passes the peptide features of a batch of protein sequences to the handler.
+     *
+     * @param features   the start and end positions of the peptides of each protein sequence, alternating
+     * @param firstIndex the index of the first protein sequence of the batch
+     * @param handler    the handler
+     */
+    private void handlePeptideFeatures(int[][] features, int firstIndex, PeptideFeatureHandler handler) {
+        for (int i = 0; i < features.length; i++) {
+            for (int f = 0; f < features[i].length; f += 2) {
+                handler.handlePeptideFeature(firstIndex + i, features[i][f], features[i][f + 1]);
+            }
+        }
+    }
+
+    /**
+     * Digests a protein sequence.
+     *
+     * @param proteinSequence the protein sequence
+     * @return the start and end positions of the peptides (1-based, inclusive), alternating
+     */
+    int[] digestSequence(String proteinSequence) {
+
+        int length = proteinSequence.length();
+        if (length == 0) {
+            return new int[0];
+        }
+
+        //positions after which the sequence is cleaved, including the sequence termini
+        int[] sites = new int[length + 1];
+        int siteCount = 0;
+        sites[siteCount++] = 0;
+        for (int p = 1; p < length; p++) {
+            if (isCleaved(proteinSequence.charAt(p - 1), proteinSequence.charAt(p))) {
+                sites[siteCount++] = p;
+            }
+        }
+        sites[siteCount++] = length;
+
+        //count residues without a known mass so peptides containing one can be skipped
+        int[] unknownResidueCount = new int[length + 1];
+        for (int p = 0; p < length; p++) {
+            char aa = proteinSequence.charAt(p);
+            unknownResidueCount[p + 1] = unknownResidueCount[p] + (aa < knownResidues.length && knownResidues[aa] ? 0 : 1);
+        }
+
+        //candidate peptides with up to the maximum number of missed cleavages
+        int candidateCount = 0;
+        int[] starts = new int[(siteCount - 1) * (missedCleavages + 1)];
+        int[] ends = new int[starts.length];
+        for (int s = 0; s < siteCount - 1; s++) {
+            for (int e = s + 1; e < siteCount && e <= s + 1 + missedCleavages; e++) {
+                if (unknownResidueCount[sites[e]] == unknownResidueCount[sites[s]]) {
+                    starts[candidateCount] = sites[s] + 1;
+                    ends[candidateCount] = sites[e];
+                    candidateCount++;
+                }
+            }
+        }
+
+        starts = Arrays.copyOf(starts, candidateCount);
+        ends = Arrays.copyOf(ends, candidateCount);
+        double[] masses = BatchMassCalculator.calculateNeutralPeptideMasses(
+                new String[]{proteinSequence}, new int[candidateCount], starts, ends);
+
+        int[] retVal = new int[2 * candidateCount];
+        int peptideCount = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            if (masses[c] >= lowMass && masses[c] <= highMass) {
+                retVal[2 * peptideCount] = starts[c];
+                retVal[2 * peptideCount + 1] = ends[c];
+                peptideCount++;
+            }
+        }
+
+        return Arrays.copyOf(retVal, 2 * peptideCount);
+    }
+
+    /**
+     * Returns true if the enzyme cleaves between two residues.
+     *
+     * @param before the residue before the bond
+     * @param after  the residue after the bond
+     * @return true if the bond is cleaved
+     */
+    private boolean isCleaved(char before, char after) {
+        if (cTerminal) {
+            return isContained(cleavageResidues, before) && !isContained(restrictingResidues, after);
+        }
+        return isContained(cleavageResidues, after) && !isContained(restrictingResidues, before);
+    }
+
+    private static boolean isContained(boolean[] residues, char aa) {
+        return aa < residues.length && residues[aa];
+    }
+
+    /**
+     * Creates a table of residue characters set for the residues in a string.
+     *
+     * @param residues the residues
+     * @return the residue table
+     */
+    private static boolean[] createResidueTable(String residues) {
+        boolean[] retVal = new boolean[128];
+        for (char aa : residues.toCharArray()) {
+            if (aa < retVal.length) {
+                retVal[aa] = true;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Creates the table of residues with a known mass.
+     *
+     * @return the residue table
+     */
+    private static boolean[] createKnownResidueTable() {
+
+        boolean[] retVal = new boolean[128];
+        for (char aa = 'A'; aa <= 'Z'; aa++) {
+            try {
+                retVal[aa] = !Double.isNaN(AbstractPeptideIon.getResidueMass(aa));
+            } catch (RuntimeException e) {
+                retVal[aa] = false;
+            }
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Sets the cleavage rule of the enzyme.
+     *
+     * @param cleavage  the residues the enzyme cleaves at
+     * @param restrict  the residues preventing cleavage when following (C-terminal) or
+     *                  preceding (N-terminal) the cleavage residue
+     * @param cTerminal true if the enzyme cleaves C-terminal of the cleavage residues,
+     *                  false if N-terminal
+     */
+    public void setCleavageRule(String cleavage, String restrict, boolean cTerminal) {
+        this.cleavageResidues = createResidueTable(cleavage);
+        this.restrictingResidues = createResidueTable(restrict);
+        this.cTerminal = cTerminal;
+    }
+
+    public String getEnzyme() {
+        return enzyme;
+    }
+
+    /**
+     * Sets the enzyme and reads its cleavage rule from the sigpep-persistence.properties file.
+     *
+     * @param enzyme the enzyme name
+     * @throws RuntimeException if there is no cleavage rule for the enzyme
+     */
+    public void setEnzyme(String enzyme) {
+
+        String rule = config.getString("sigpep.db.setup.digest.cleavage.rule." + enzyme);
+        if (rule == null) {
+            throw new RuntimeException("No cleavage rule for enzyme " + enzyme + ".");
+        }
+
+        String[] tokens = rule.split(";", -1);
+        if (tokens.length != 3) {
+            throw new RuntimeException("Invalid cleavage rule for enzyme " + enzyme + ": " + rule + ".");
+        }
+
+        setCleavageRule(tokens[0].trim(), tokens[1].trim(), !tokens[2].trim().equalsIgnoreCase("N"));
+        this.enzyme = enzyme;
+    }
+
+    public int getMissedCleavages() {
+        return missedCleavages;
+    }
+
+    public void setMissedCleavages(int missedCleavages) {
+        this.missedCleavages = missedCleavages;
+    }
+
+    public double getLowMass() {
+        return lowMass;
+    }
+
+    public void setLowMass(double lowMass) {
+        this.lowMass = lowMass;
+    }
+
+    public double getHighMass() {
+        return highMass;
+    }
+
+    public void setHighMass(double highMass) {
+        this.highMass = highMass;
+    }
+
+    /**
+     * Returns the number of threads digesting protein sequences.
+     *
+     * @return the parallelism, 0 for the number of available processors
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads digesting protein sequences. Defaults to
+     * sigpep.db.setup.digest.parallelism in the sigpep-persistence.properties file.
+     *
+     * @param parallelism the parallelism, 0 for the number of available processors
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Digests a contiguous range of protein sequences.
+     */
+    private class BatchDigest implements Callable<int[][]> {
+
+        private List<String> proteinSequences;
+        private int start;
+        private int end;
+
+        private BatchDigest(List<String> proteinSequences, int start, int end) {
+            this.proteinSequences = proteinSequences;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int[][] call() {
+
+            int[][] retVal = new int[end - start][];
+            for (int i = start; i < end; i++) {
+                retVal[i - start] = digestSequence(proteinSequences.get(i));
+            }
+
+            return retVal;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.compomics.sigpep.persistence.rdbms.helper.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.persistence.rdbms.helper.StreamingProteolyticDigest;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Tests that processing the protein sequences with an in memory digest writes the same
+ * peptide rows as processing the FASTA digest file of the same digest.
+ * <p/>
+ * The FASTA digest holds one entry per peptide and protein, the in memory digest
+ * generates the peptides once per distinct protein sequence. The peptide table rows
+ * reference the protein sequence, so both yield the same rows once the redundant rows
+ * are removed, only the peptide IDs are numbered in a different order.
+ */
+public class EnsemblDBToolkitDigestProcessorTest {
+
+    private File directory;
+    private URL sequenceFileUrl;
+    private InMemoryProteolyticDigest digest;
+
+    @Before
+    public void methodSetup() throws IOException {
+
+        directory = createTempDirectory();
+
+        File sequenceFile = new File(directory, "proteins.fa");
+        writeProteinSequences(sequenceFile);
+        sequenceFileUrl = sequenceFile.toURI().toURL();
+
+        digest = new InMemoryProteolyticDigest("Trypsin", 1);
+    }
+
+    @After
+    public void methodTearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testSamePeptideRows() throws IOException {
+
+        //the peptides read from the FASTA digest file
+        File digestFile = new File(directory, "Trypsin.fa");
+        digest.digestSequenceDatabase(sequenceFileUrl, digestFile.toURI().toURL());
+
+        File fileOutput = createOutputDirectory("file");
+        new EnsemblDBToolkitDigestProcessor(sequenceFileUrl,
+                Collections.singletonMap("Trypsin", digestFile.toURI().toURL()),
+                fileOutput.toURI().toURL()).processFiles();
+
+        //the peptides streamed from the in memory digest
+        File streamOutput = createOutputDirectory("stream");
+        EnsemblDBToolkitDigestProcessor processor = new EnsemblDBToolkitDigestProcessor(sequenceFileUrl,
+                new HashMap<String, URL>(),
+                streamOutput.toURI().toURL());
+        processor.setProteolyticDigests(Collections.<String, StreamingProteolyticDigest>singletonMap("Trypsin", digest));
+        processor.processFiles();
+
+        assertEquals(readTable(new File(fileOutput, "protein_sequence.tsv")), readTable(new File(streamOutput, "protein_sequence.tsv")));
+        assertEquals(readTable(new File(fileOutput, "protein2sequence.tsv")), readTable(new File(streamOutput, "protein2sequence.tsv")));
+
+        Set<String> filePeptideRows = readPeptideRows(fileOutput);
+        Set<String> streamPeptideRows = readPeptideRows(streamOutput);
+        assertFalse(filePeptideRows.isEmpty());
+        assertEquals(filePeptideRows, streamPeptideRows);
+
+        //one row per peptide and distinct protein sequence, the shared sequence is digested once
+        assertEquals(countLines(new File(fileOutput, "peptide.tsv")), countLines(new File(streamOutput, "peptide.tsv")));
+        assertEquals(streamPeptideRows.size(), countLines(new File(streamOutput, "peptide.tsv")));
+        assertEquals(countLines(new File(fileOutput, "peptide2protease.tsv")), countLines(new File(streamOutput, "peptide2protease.tsv")));
+    }
+
+    private File createOutputDirectory(String name) throws IOException {
+        File retVal = new File(directory, name);
+        if (!retVal.mkdir()) {
+            throw new IOException("Could not create directory " + retVal + ".");
+        }
+        return retVal;
+    }
+
+    /**
+     * Reads the peptide table rows with the peptide sequence in place of the peptide ID,
+     * checking that each peptide ID stands for one peptide sequence.
+     *
+     * @param outputDirectory the output directory of the digest processor
+     * @return the rows as protein sequence ID, start, end and peptide sequence
+     * @throws IOException if a table cannot be read
+     */
+    private Set<String> readPeptideRows(File outputDirectory) throws IOException {
+
+        Map<String, String> proteinSequences = new HashMap<String, String>();
+        for (String row : readTable(new File(outputDirectory, "protein_sequence.tsv"))) {
+            String[] columns = row.split("\t");
+            proteinSequences.put(columns[0], columns[1]);
+        }
+
+        Map<String, String> peptideSequences = new HashMap<String, String>();
+        Set<String> retVal = new HashSet<String>();
+        for (String row : readTable(new File(outputDirectory, "peptide.tsv"))) {
+
+            String[] columns = row.split("\t");
+            int start = Integer.parseInt(columns[2]);
+            int end = Integer.parseInt(columns[3]);
+            String peptideSequence = proteinSequences.get(columns[1]).substring(start - 1, end);
+
+            String previous = peptideSequences.put(columns[0], peptideSequence);
+            assertTrue(previous == null || previous.equals(peptideSequence));
+
+            retVal.add(columns[1] + "\t" + start + "\t" + end + "\t" + peptideSequence);
+        }
+
+        //one peptide ID per peptide sequence
+        assertEquals(peptideSequences.size(), new HashSet<String>(peptideSequences.values()).size());
+
+        return retVal;
+    }
+
+    private Set<String> readTable(File table) throws IOException {
+        return new HashSet<String>(readLines(table));
+    }
+
+    private int countLines(File table) throws IOException {
+        return readLines(table).size();
+    }
+
+    private List<String> readLines(File table) throws IOException {
+
+        List<String> retVal = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(table));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            retVal.add(line);
+        }
+        reader.close();
+
+        return retVal;
+    }
+
+    /**
+     * Returns the protein sequences by accession. ENSP00000000003 shares its sequence
+     * with ENSP00000000001, ENSP00000000004 contains a residue without a known mass.
+     *
+     * @return the protein sequences in database order
+     */
+    private static Map<String, String> createProteinSequences() {
+
+        Map<String, String> retVal = new LinkedHashMap<String, String>();
+        retVal.put("ENSP00000000001", "MKWVTFISLLRPAAKGVFRRDAHKSEVAHRFKDLGEENFKALVLIAFAQYLQQCPFEDHVK");
+        retVal.put("ENSP00000000002", "MRWVTFISLLFLFSSAYSRGVFRRDTHKSEIAHRFKDLGEEHFKGLVLIAFSQYLQQCPFDEHVK");
+        retVal.put("ENSP00000000003", "MKWVTFISLLRPAAKGVFRRDAHKSEVAHRFKDLGEENFKALVLIAFAQYLQQCPFEDHVK");
+        retVal.put("ENSP00000000004", "MSELIKXNGTPVELLKDEEGAVSSSPEFLGKPLLEAVHNR");
+        return retVal;
+    }
+
+    /**
+     * Writes the protein sequences to a FASTA file with Ensembl headers.
+     *
+     * @param file the FASTA file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeProteinSequences(File file) throws IOException {
+
+        PrintWriter output = new PrintWriter(new FileWriter(file));
+        int gene = 1;
+        for (Map.Entry<String, String> protein : createProteinSequences().entrySet()) {
+            output.println(">" + protein.getKey() + " pep:known chromosome:NCBI36:1:" + gene + ":" + (gene + 100)
+                    + ":1 gene:ENSG0000000000" + gene + " transcript:ENST0000000000" + gene);
+            output.println(protein.getValue());
+            gene++;
+        }
+        output.close();
+    }
+
+    /**
+     * Creates a temporary directory.
+     *
+     * @return the directory
+     * @throws IOException if the directory cannot be created
+     */
+    private static File createTempDirectory() throws IOException {
+
+        File retVal = File.createTempFile("sigpep", "");
+        if (!retVal.delete() || !retVal.mkdir()) {
+            throw new IOException("Could not create temporary directory " + retVal + ".");
+        }
+        return retVal;
+    }
+}
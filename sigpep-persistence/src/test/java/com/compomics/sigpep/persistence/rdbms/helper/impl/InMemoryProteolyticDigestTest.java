@@ -0,0 +1,193 @@
+package com.compomics.sigpep.persistence.rdbms.helper.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+import com.compomics.sigpep.persistence.rdbms.helper.PeptideFeatureHandler;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests the cleavage rules, missed cleavages and mass limits of the in memory digest,
+ * that the parallel digest hands over the same peptide features in the same order as
+ * the sequential one, and that the streamed peptide features equal the peptides of
+ * the FASTA digest file.
+ */
+public class InMemoryProteolyticDigestTest {
+
+    private File directory;
+
+    @Before
+    public void methodSetup() throws IOException {
+        directory = createTempDirectory();
+    }
+
+    @After
+    public void methodTearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testCleavageRule() {
+
+        //cleaves after K and R, but not before P: MK|WVTFISLLRPAAK|GVFR
+        InMemoryProteolyticDigest digest = new InMemoryProteolyticDigest("Trypsin", 0, 0, 100000);
+        assertFeatures(new int[]{1, 2, 3, 15, 16, 19}, digest.digestSequence("MKWVTFISLLRPAAKGVFR"));
+
+        digest.setMissedCleavages(1);
+        assertFeatures(new int[]{1, 2, 1, 15, 3, 15, 3, 19, 16, 19}, digest.digestSequence("MKWVTFISLLRPAAKGVFR"));
+
+        //cleaves before K: M|KWVTFISLLRPAA|KGVFR
+        InMemoryProteolyticDigest nTerminalDigest = new InMemoryProteolyticDigest("Lys-N", 0, 0, 100000);
+        assertFeatures(new int[]{1, 1, 2, 14, 15, 19}, nTerminalDigest.digestSequence("MKWVTFISLLRPAAKGVFR"));
+
+        assertFeatures(new int[0], digest.digestSequence(""));
+    }
+
+    @Test
+    public void testMassLimitsAndUnknownResidues() {
+
+        //MK and GVFR are lighter than 600 Da
+        InMemoryProteolyticDigest digest = new InMemoryProteolyticDigest("Trypsin", 1);
+        assertFeatures(new int[]{1, 15, 3, 15, 3, 19}, digest.digestSequence("MKWVTFISLLRPAAKGVFR"));
+
+        //the peptides containing X are dropped
+        int[] features = digest.digestSequence("MSELIKXNGTPVELLKDEEGAVSSSPEFLGKPLLEAVHNR");
+        for (int f = 0; f < features.length; f += 2) {
+            assertTrue(features[f] > 7 || features[f + 1] < 7);
+        }
+        assertTrue(features.length > 0);
+    }
+
+    @Test
+    public void testParallelDigest() {
+
+        List<String> sequences = new ArrayList<String>();
+        String residues = "ACDEFGHIKLMNPQRSTVWY";
+        Random random = new Random(31);
+        while (sequences.size() < 2000) {
+            StringBuilder sequence = new StringBuilder();
+            int length = 50 + random.nextInt(300);
+            for (int i = 0; i < length; i++) {
+                sequence.append(residues.charAt(random.nextInt(residues.length())));
+            }
+            sequences.add(sequence.toString());
+        }
+
+        InMemoryProteolyticDigest digest = new InMemoryProteolyticDigest("Trypsin", 1);
+        digest.setParallelism(1);
+        List<int[]> expected = collectFeatures(digest, sequences);
+        digest.setParallelism(3);
+        List<int[]> actual = collectFeatures(digest, sequences);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertFeatures(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testFileDigest() throws IOException {
+
+        File sequenceFile = new File(directory, "proteins.fa");
+        File digestFile = new File(directory, "Trypsin.fa");
+        writeProteinSequences(sequenceFile);
+
+        InMemoryProteolyticDigest digest = new InMemoryProteolyticDigest("Trypsin", 1);
+        digest.digestSequenceDatabase(sequenceFile.toURI().toURL(), digestFile.toURI().toURL());
+
+        //the peptides in the FASTA digest by protein accession
+        Map<String, List<String>> filePeptides = new HashMap<String, List<String>>();
+        BufferedReader reader = new BufferedReader(new FileReader(digestFile));
+        String header;
+        while ((header = reader.readLine()) != null) {
+            String accession = header.substring(1, header.indexOf(' '));
+            if (!filePeptides.containsKey(accession)) {
+                filePeptides.put(accession, new ArrayList<String>());
+            }
+            filePeptides.get(accession).add(header.substring(header.indexOf(' ') + 1) + " " + reader.readLine());
+        }
+        reader.close();
+
+        for (Map.Entry<String, String> protein : createProteinSequences().entrySet()) {
+
+            List<String> streamedPeptides = new ArrayList<String>();
+            int[] features = digest.digestSequence(protein.getValue());
+            for (int f = 0; f < features.length; f += 2) {
+                streamedPeptides.add("(" + features[f] + "-" + features[f + 1] + ") "
+                        + protein.getValue().substring(features[f] - 1, features[f + 1]));
+            }
+
+            assertEquals(streamedPeptides, filePeptides.get(protein.getKey()));
+        }
+    }
+
+    private void assertFeatures(int[] expected, int[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    private List<int[]> collectFeatures(InMemoryProteolyticDigest digest, List<String> sequences) {
+
+        final List<int[]> retVal = new ArrayList<int[]>();
+        digest.digestSequences(sequences, new PeptideFeatureHandler() {
+            public void handlePeptideFeature(int sequenceIndex, int start, int end) {
+                retVal.add(new int[]{sequenceIndex, start, end});
+            }
+        });
+
+        return retVal;
+    }
+
+    /**
+     * Returns the protein sequences by accession. ENSP00000000003 shares its sequence
+     * with ENSP00000000001, ENSP00000000004 contains a residue without a known mass.
+     *
+     * @return the protein sequences in database order
+     */
+    private static Map<String, String> createProteinSequences() {
+
+        Map<String, String> retVal = new LinkedHashMap<String, String>();
+        retVal.put("ENSP00000000001", "MKWVTFISLLRPAAKGVFRRDAHKSEVAHRFKDLGEENFKALVLIAFAQYLQQCPFEDHVK");
+        retVal.put("ENSP00000000002", "MRWVTFISLLFLFSSAYSRGVFRRDTHKSEIAHRFKDLGEEHFKGLVLIAFSQYLQQCPFDEHVK");
+        retVal.put("ENSP00000000003", "MKWVTFISLLRPAAKGVFRRDAHKSEVAHRFKDLGEENFKALVLIAFAQYLQQCPFEDHVK");
+        retVal.put("ENSP00000000004", "MSELIKXNGTPVELLKDEEGAVSSSPEFLGKPLLEAVHNR");
+        return retVal;
+    }
+
+    /**
+     * Writes the protein sequences to a FASTA file with Ensembl headers.
+     *
+     * @param file the FASTA file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeProteinSequences(File file) throws IOException {
+
+        PrintWriter output = new PrintWriter(new FileWriter(file));
+        int gene = 1;
+        for (Map.Entry<String, String> protein : createProteinSequences().entrySet()) {
+            output.println(">" + protein.getKey() + " pep:known chromosome:NCBI36:1:" + gene + ":" + (gene + 100)
+                    + ":1 gene:ENSG0000000000" + gene + " transcript:ENST0000000000" + gene);
+            output.println(protein.getValue());
+            gene++;
+        }
+        output.close();
+    }
+
+    /**
+     * Creates a temporary directory.
+     *
+     * @return the directory
+     * @throws IOException if the directory cannot be created
+     */
+    private static File createTempDirectory() throws IOException {
+
+        File retVal = File.createTempFile("sigpep", "");
+        if (!retVal.delete() || !retVal.mkdir()) {
+            throw new IOException("Could not create temporary directory " + retVal + ".");
+        }
+        return retVal;
+    }
+}
@@ -156,6 +156,90 @@ public class Combinations<T> implements Enumeration<Set<T>>, Iterator<Set<T>> {
         return -1;
     }
 
+    /**
+     * Returns the number of subsets of k elements of a group of n elements.
+     *
+     * @param n the number of elements
+     * @param k the number to select in each choice
+     * @return the binomial coefficient n over k
+     * @throws ArithmeticException if the number of subsets exceeds the range of a long
+     */
+    public static long binomialCoefficient(int n, int k) {
+
+        if (k < 0 || k > n) {
+            return 0;
+        }
+
+        k = Math.min(k, n - k);
+
+        long retVal = 1;
+        for (int i = 1; i <= k; i++) {
+            //the product of i consecutive integers is divisible by i!
+            retVal = Math.multiplyExact(retVal, n - k + i) / i;
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Returns the index of the subset at the specified position in the
+     * lexicographic order in which the subsets are enumerated, e.g. the index
+     * of rank 3 of 5 things taken 3 at a time is {0, 2, 3}.
+     *
+     * @param rank the position of the subset, starting at 0
+     * @param n    the number of elements
+     * @param k    the number to select in each choice
+     * @return the positions of the selected elements in ascending order
+     * @throws IllegalArgumentException if the rank is out of range
+     */
+    public static int[] unrank(long rank, int n, int k) {
+
+        if (rank < 0 || rank >= binomialCoefficient(n, k)) {
+            throw new IllegalArgumentException("Rank " + rank + " out of range for " + n + " elements taken " + k + " at a time.");
+        }
+
+        int[] retVal = new int[k];
+
+        int element = 0;
+        for (int i = 0; i < k; i++) {
+
+            //skip all subsets that have the current element at position i
+            long subsetsStartingWithElement = binomialCoefficient(n - element - 1, k - i - 1);
+            while (rank >= subsetsStartingWithElement) {
+                rank = rank - subsetsStartingWithElement;
+                element++;
+                subsetsStartingWithElement = binomialCoefficient(n - element - 1, k - i - 1);
+            }
+
+            retVal[i] = element++;
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Moves a subset index to the next subset in lexicographic order.
+     *
+     * @param index the positions of the selected elements in ascending order
+     * @param n     the number of elements
+     * @return true if the index has been moved, false if it already was the last subset
+     */
+    public static boolean nextIndex(int[] index, int n) {
+
+        int k = index.length;
+        for (int i = k - 1; i >= 0; i--) {
+            if (index[i] < n - k + i) {
+                index[i]++;
+                for (int j = i + 1; j < k; j++) {
+                    index[j] = index[j - 1] + 1;
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Removes from the underlying collection the last element returned by the
      * iterator (optional operation).  This method can be called only once per
@@ -65,22 +65,24 @@ public interface SigPepQueryService {
      * Returns the product ions discriminating a target peptide from the background peptides
      * generated by a protease.
      *
+     * @param ncbiTaxonId                    the NCBI taxon ID identifying the species
      * @param peptide                        the target peptide
      * @param postTranslationalModifications the post translational modifications to take into account
      * @param proteaseName                   the name(s) of the peptide generating protease(s)
      * @return a map of product ion names and masses in Da
      */
-    HashMap<String, Double> getSignatureTransitionForPeptideWithPTM(String peptide, HashSet<String> postTranslationalModifications, String... proteaseName);
+    HashMap<String, Double> getSignatureTransitionForPeptideWithPTM(int ncbiTaxonId, String peptide, HashSet<String> postTranslationalModifications, String... proteaseName);
 
     /**
      * Returns the product ions discriminating a target peptide from the background peptides
      * generated by a protease.
      *
+     * @param ncbiTaxonId  the NCBI taxon ID identifying the species
      * @param peptide      the target peptide
      * @param proteaseName the name(s) of the peptide generating protease(s)
      * @return a map of product ion names and masses in Da
      */
-    HashMap<String, Double> getSignatureTransitionForPeptide(String peptide, String... proteaseName);
+    HashMap<String, Double> getSignatureTransitionForPeptide(int ncbiTaxonId, String peptide, String... proteaseName);
 
     @WebMethod
     String sayHello(String name);
@@ -3,14 +3,13 @@ package com.compomics.sigpep.web.service;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import com.compomics.sigpep.ApplicationLocator;
+import com.compomics.sigpep.analysis.SignatureTransitionLibrary;
 import com.compomics.sigpep.model.*;
 import com.compomics.sigpep.persistence.util.HibernateUtil;
 
 import javax.jws.WebService;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.*;
 
 /**
  * Exposes namedQueries of the SigPep database.
@@ -134,27 +133,70 @@ public class SigPepQueryServiceImpl implements SigPepQueryService {
 
     /**
      * Returns the product ions discriminating a target peptide from the background peptides
-     * generated by a protease.
+     * generated by a protease. The product ions are taken from the precomputed signature
+     * transition library of the organism, protease(s) and modifications computed from the
+     * current version of the organism's database.
      *
+     * @param ncbiTaxonId                    the NCBI taxon ID identifying the species
      * @param peptide                        the target peptide
      * @param postTranslationalModifications the post translational modifications to take into account
      * @param proteaseName                   the name(s) of the peptide generating protease(s)
-     * @return a map of product ion names and masses in Da
+     * @return a map of product ion names and masses in Da or null if no library holds the peptide
      */
-    public HashMap<String, Double> getSignatureTransitionForPeptideWithPTM(String peptide, HashSet<String> postTranslationalModifications, String... proteaseName) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public HashMap<String, Double> getSignatureTransitionForPeptideWithPTM(int ncbiTaxonId, String peptide, HashSet<String> postTranslationalModifications, String... proteaseName) {
+
+        Set<String> proteaseNames = new TreeSet<String>();
+        Collections.addAll(proteaseNames, proteaseName);
+
+        String databaseVersion = ApplicationLocator.getInstance().getApplication().getSigPepSessionFactory()
+                .createSigPepSession(ncbiTaxonId).getDatabaseVersion();
+
+        //answer from the precomputed signature transition libraries of the organism, proteases
+        //and modifications, libraries of an older database version are not used
+        for (SignatureTransitionLibrary library : SignatureTransitionLibrary.getLibraries(ncbiTaxonId, databaseVersion)) {
+
+            Set<String> modificationNames = new HashSet<String>();
+            for (Modification modification : library.getKey().getModifications()) {
+                modificationNames.add(modification.getName());
+            }
+            if (!library.getKey().getProteaseShortNames().equals(proteaseNames)
+                    || !modificationNames.equals(postTranslationalModifications)) {
+                continue;
+            }
+
+            List<SignatureTransition> transitions = library.getSignatureTransitions(peptide);
+            if (transitions != null && !transitions.isEmpty()) {
+
+                //the transition discriminating best against the background
+                SignatureTransition best = transitions.get(0);
+                for (SignatureTransition transition : transitions) {
+                    if (transition.getExclusionScore() > best.getExclusionScore()) {
+                        best = transition;
+                    }
+                }
+
+                HashMap<String, Double> retVal = new HashMap<String, Double>();
+                for (ProductIon productIon : best.getProductIons()) {
+                    retVal.put(productIon.getType().getName() + productIon.getSequenceLength(), productIon.getNeutralMassPeptide());
+                }
+                return retVal;
+            }
+        }
+
+        return null;
     }
 
     /**
      * Returns the product ions discriminating a target peptide from the background peptides
      * generated by a protease.
      *
+     * @param ncbiTaxonId  the NCBI taxon ID identifying the species
      * @param peptide      the target peptide
      * @param proteaseName the name(s) of the peptide generating protease(s)
      * @return a map of product ion names and masses in Da
      */
-    public HashMap<String, Double> getSignatureTransitionForPeptide(String peptide, String... proteaseName) {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    public HashMap<String, Double> getSignatureTransitionForPeptide(int ncbiTaxonId, String peptide, String... proteaseName) {
+        return getSignatureTransitionForPeptideWithPTM(ncbiTaxonId, peptide, new HashSet<String>(), proteaseName);
     }
 
     public String sayHello(String name) {
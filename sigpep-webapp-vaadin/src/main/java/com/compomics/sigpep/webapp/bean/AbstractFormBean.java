@@ -1,8 +1,13 @@
 package com.compomics.sigpep.webapp.bean;
 
+import com.compomics.sigpep.analysis.SignatureTransitionFinderPool;
 import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
+import com.compomics.sigpep.model.Modification;
 import com.compomics.sigpep.model.Organism;
+import com.compomics.sigpep.model.ProductIonType;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -69,4 +74,40 @@ public abstract class AbstractFormBean {
         iProteaseName = aProteaseName;
     }
 
+    /**
+     * Creates the key of the pooled signature transition finder for the form parameters:
+     * y target ions against y and b background ions of doubly and triply charged precursors
+     * and singly charged product ions, without post-translational modifications.
+     *
+     * @param aTaxonId           the NCBI taxon ID of the organism
+     * @param aProteaseShortName the short name of the protease
+     * @return the finder key
+     */
+    public SignatureTransitionFinderPool.Key createSignatureTransitionFinderKey(int aTaxonId, String aProteaseShortName) {
+
+        Set<Integer> lPrecursorChargeStates = new HashSet<Integer>();
+        lPrecursorChargeStates.add(2);
+        lPrecursorChargeStates.add(3);
+
+        Set<ProductIonType> lTargetProductIonTypes = new HashSet<ProductIonType>();
+        lTargetProductIonTypes.add(ProductIonType.Y);
+
+        Set<ProductIonType> lBackgroundProductIonTypes = new HashSet<ProductIonType>();
+        lBackgroundProductIonTypes.add(ProductIonType.Y);
+        lBackgroundProductIonTypes.add(ProductIonType.B);
+
+        return new SignatureTransitionFinderPool.Key(
+                aTaxonId,
+                Collections.singleton(aProteaseShortName),
+                Collections.<Modification>emptySet(),
+                lTargetProductIonTypes,
+                lBackgroundProductIonTypes,
+                lPrecursorChargeStates,
+                Collections.singleton(1),
+                iMassAccuracy,
+                iMinimumCombinationSize,
+                iMaximumCombinationSize,
+                iSignatureTransitionFinderType);
+    }
+
 }
@@ -51,4 +51,13 @@ public class CustomProgressIndicator extends VerticalLayout {
             iProgressIndicator.setValue(1f);
         }
     }
+
+    /**
+     * Shows a message without proceeding to the next step.
+     *
+     * @param aMessage the message
+     */
+    public void hold(String aMessage) {
+        iLabel.setCaption(aMessage);
+    }
 }
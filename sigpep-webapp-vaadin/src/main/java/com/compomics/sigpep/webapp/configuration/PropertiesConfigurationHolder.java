@@ -1,9 +1,12 @@
 package com.compomics.sigpep.webapp.configuration;
 
+import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -62,4 +65,37 @@ public class PropertiesConfigurationHolder extends PropertiesConfiguration {
     public static boolean doAnalytics() {
         return ourInstance.getBoolean("sigpep.analytics");
     }
+
+    /**
+     * Returns the datasets to load at deployment as TAXON_ID:PROTEASE_SHORT_NAME.
+     *
+     * @return the datasets, empty if none are preloaded
+     */
+    public static String[] getPreloadDatasets() {
+        return ourInstance.getStringArray("preload.datasets");
+    }
+
+    /**
+     * Returns the maximum time a job waits for its dataset to be preloaded.
+     *
+     * @return the timeout in minutes
+     */
+    public static long getPreloadAwaitTimeout() {
+        return ourInstance.getLong("preload.await.timeout", 30);
+    }
+
+    /**
+     * Returns the signature transition finder types to build when preloading a dataset.
+     *
+     * @return the finder types
+     */
+    public static List<SignatureTransitionFinderType> getPreloadSignatureTransitionFinderTypes() {
+        List<SignatureTransitionFinderType> lTypes = new ArrayList<SignatureTransitionFinderType>();
+        for (String lType : ourInstance.getStringArray("preload.signature.transition.finder.types")) {
+            if (lType.trim().length() > 0) {
+                lTypes.add(SignatureTransitionFinderType.valueOf(lType.trim().toUpperCase()));
+            }
+        }
+        return lTypes;
+    }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import com.compomics.sigpep.webapp.bean.PeptideFormBean;
 import com.compomics.sigpep.webapp.component.CustomProgressIndicator;
 import com.compomics.sigpep.webapp.configuration.PropertiesConfigurationHolder;
 import com.compomics.sigpep.webapp.form.factory.PeptideCheckFormFieldFactory;
+import com.compomics.sigpep.webapp.preload.DatasetPreloader;
 import com.google.common.base.Joiner;
 import com.vaadin.data.Validator;
 import com.vaadin.data.util.BeanItem;
@@ -134,7 +135,10 @@ public class PeptideCheckForm extends Form {
 
             Protease aProtease = iApplication.getSigPepQueryService().getProteaseByFullName(iPeptideFormBean.getProteaseName());
 
-            //create peptide generator for protease
+            //hold the job until the dataset preloaded at deployment is loaded
+            DatasetPreloader.getInstance().hold(iCustomProgressIndicator, iApplication, lSigPepSession, aProtease);
+
+            //create peptide generator for protease, from the datasets the sessions share
             iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_generator"), aProtease.getFullName()));
             logger.info("creating peptide generator for protease " + aProtease.getFullName());
             PeptideGenerator lGenerator = lSigPepSession.createPeptideGenerator(aProtease);
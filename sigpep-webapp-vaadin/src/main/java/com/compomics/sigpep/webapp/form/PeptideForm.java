@@ -1,10 +1,10 @@
 package com.compomics.sigpep.webapp.form;
 
-import com.compomics.sigpep.PeptideGenerator;
 import com.compomics.sigpep.SigPepSession;
-import com.compomics.sigpep.analysis.SignatureTransitionFinder;
+import com.compomics.sigpep.analysis.SignatureTransitionFinderPool;
+import com.compomics.sigpep.analysis.SignatureTransitionLibrary;
+import com.compomics.sigpep.analysis.SignatureTransitionResultCache;
 import com.compomics.sigpep.model.Peptide;
-import com.compomics.sigpep.model.ProductIonType;
 import com.compomics.sigpep.model.Protease;
 import com.compomics.sigpep.model.SignatureTransition;
 import com.compomics.sigpep.report.SignatureTransitionMassMatrix;
@@ -16,6 +16,7 @@ import com.compomics.sigpep.webapp.component.InfoLink;
 import com.compomics.sigpep.webapp.component.ResultsTable;
 import com.compomics.sigpep.webapp.configuration.PropertiesConfigurationHolder;
 import com.compomics.sigpep.webapp.form.factory.PeptideFormFieldFactory;
+import com.compomics.sigpep.webapp.preload.DatasetPreloader;
 import com.google.common.io.Files;
 import com.vaadin.data.Validator;
 import com.vaadin.data.util.BeanItem;
@@ -154,52 +155,56 @@ public class PeptideForm extends Form {
 
             Protease aProtease = iApplication.getSigPepQueryService().getProteaseByFullName(iPeptideFormBean.getProteaseName());
 
-            //create peptide generator for protease
-            iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_generator"), aProtease.getFullName()));
-            logger.info("creating peptide generator");
-            PeptideGenerator lGenerator = iPeptideFormBean.getPeptideGenerator();
-
-            //get peptides generated by protease
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.background_peptides"));
-            logger.info("generating lBackgroundPeptides");
-            Set<Peptide> lBackgroundPeptides = iPeptideFormBean.getBackgroundPeptides();
+            //hold the job until the dataset preloaded at deployment is loaded
+            DatasetPreloader.getInstance().hold(iCustomProgressIndicator, iApplication, lSigPepSession, aProtease);
 
             //add the peptide to the signature peptides set
             Set<Peptide> lSignaturepeptides = new HashSet<Peptide>();
             lSignaturepeptides.add(iPeptide);
 
-            //create signature transition finder
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_1"));
-            logger.info("creating signature transition finder");
-
-            HashSet lChargeStates = new HashSet();
-            lChargeStates.add(2);
-            lChargeStates.add(3);
-
-            Set<ProductIonType> lTargetProductIonTypes = new HashSet<ProductIonType>();
-            lTargetProductIonTypes.add(ProductIonType.Y);
-
-            Set<ProductIonType> lBackgroundProductIonTypes = new HashSet<ProductIonType>();
-            lBackgroundProductIonTypes.add(ProductIonType.Y);
-            lBackgroundProductIonTypes.add(ProductIonType.B);
-
-            Set<Integer> lProductIonChargeStates = new HashSet<Integer>();
-            lProductIonChargeStates.add(1);
-
-            SignatureTransitionFinder finder = lSigPepSession.createSignatureTransitionFinder(
-                    lBackgroundPeptides,
-                    lTargetProductIonTypes,
-                    lBackgroundProductIonTypes,
-                    lChargeStates,
-                    lProductIonChargeStates,
-                    iPeptideFormBean.getMassAccuracy(),
-                    iPeptideFormBean.getMinimumCombinationSize(),
-                    iPeptideFormBean.getMaximumCombinationSize(),
-                    iPeptideFormBean.getSignatureTransitionFinderType());
-
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_2"));
-            logger.info("finding signature transitions");
-            List<SignatureTransition> st = finder.findSignatureTransitions(lSignaturepeptides);
+            SignatureTransitionFinderPool.Key lFinderKey = iPeptideFormBean.createSignatureTransitionFinderKey(
+                    lSigPepSession.getOrganism().getTaxonId(), aProtease.getShortName());
+
+            //look up the signature transitions in the library precomputed for the protease
+            //and parameters or in the results of earlier identical queries
+            SignatureTransitionResultCache lResultCache = SignatureTransitionResultCache.getInstance();
+            String lDatabaseVersion = null;
+            List<SignatureTransition> st = null;
+            if (lResultCache != null || SignatureTransitionLibrary.getDirectory() != null) {
+                lDatabaseVersion = lSigPepSession.getDatabaseVersion();
+            }
+            SignatureTransitionLibrary lLibrary = SignatureTransitionLibrary.getInstance(lFinderKey, lDatabaseVersion);
+            if (lLibrary != null) {
+                st = lLibrary.getSignatureTransitions(iPeptide);
+            }
+            if (st == null && lResultCache != null) {
+                st = lResultCache.get(lFinderKey, lDatabaseVersion, iPeptide);
+            }
+
+            if (st != null) {
+                logger.info("found " + st.size() + " precomputed signature transitions");
+            } else {
+                //lease the background peptides and signature transition finder for protease
+                //and parameters from the pool shared by all users
+                iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_generator"), aProtease.getFullName()));
+                logger.info("leasing signature transition finder for protease " + aProtease.getFullName());
+                SignatureTransitionFinderPool.Lease lFinder = SignatureTransitionFinderPool.getInstance().acquire(lSigPepSession, lFinderKey);
+
+                try {
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.background_peptides"));
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_1"));
+
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_2"));
+                    logger.info("finding signature transitions");
+                    st = lFinder.findSignatureTransitions(lSignaturepeptides);
+                } finally {
+                    lFinder.release();
+                }
+
+                if (lResultCache != null) {
+                    lResultCache.putAll(lFinderKey, lDatabaseVersion, lSignaturepeptides, st);
+                }
+            }
 
             HashSet lResultFiles = new HashSet();
             for (SignatureTransition t : st) {
@@ -2,9 +2,10 @@ package com.compomics.sigpep.webapp.form;
 
 import com.compomics.sigpep.PeptideGenerator;
 import com.compomics.sigpep.SigPepSession;
-import com.compomics.sigpep.analysis.SignatureTransitionFinder;
+import com.compomics.sigpep.analysis.SignatureTransitionFinderPool;
+import com.compomics.sigpep.analysis.SignatureTransitionLibrary;
+import com.compomics.sigpep.analysis.SignatureTransitionResultCache;
 import com.compomics.sigpep.model.Peptide;
-import com.compomics.sigpep.model.ProductIonType;
 import com.compomics.sigpep.model.Protease;
 import com.compomics.sigpep.model.SignatureTransition;
 import com.compomics.sigpep.report.SignatureTransitionMassMatrix;
@@ -16,6 +17,7 @@ import com.compomics.sigpep.webapp.component.InfoLink;
 import com.compomics.sigpep.webapp.component.ResultsTable;
 import com.compomics.sigpep.webapp.configuration.PropertiesConfigurationHolder;
 import com.compomics.sigpep.webapp.form.factory.ProteinFormFieldFactory;
+import com.compomics.sigpep.webapp.preload.DatasetPreloader;
 import com.google.common.io.Files;
 import com.vaadin.data.Validator;
 import com.vaadin.data.util.BeanItem;
@@ -153,55 +155,81 @@ public class ProteinForm extends Form {
 
             Protease aProtease = iApplication.getSigPepQueryService().getProteaseByFullName(iProteinFormBean.getProteaseName());
 
-            //create peptide generator for protease
-            iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_generator"), aProtease.getFullName()));
-            logger.info("creating peptide generator for protease " + aProtease.getFullName());
-            PeptideGenerator lGenerator = lSigPepSession.createPeptideGenerator(aProtease);
-
-            //create background peptides
-            iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_background"), aProtease.getFullName()));
-            logger.info("creating background peptides for protease " + aProtease.getFullName());
-            Set<Peptide> lBackgroundPeptides = lGenerator.getPeptides();
-
-            logger.info("generating signature peptides");
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_peptides"));
-            Set<Peptide> lSignaturepeptides = lGenerator.getPeptidesByProteinAccessionAndProteinSequenceLevelDegeneracy(iProteinFormBean.getProteinAccession(), 1);
-            for (Peptide peptide : lSignaturepeptides) {
-                logger.info(peptide.getSequenceString());
+            //hold the job until the dataset preloaded at deployment is loaded
+            DatasetPreloader.getInstance().hold(iCustomProgressIndicator, iApplication, lSigPepSession, aProtease);
+
+            SignatureTransitionFinderPool.Key lFinderKey = iProteinFormBean.createSignatureTransitionFinderKey(
+                    lSigPepSession.getOrganism().getTaxonId(), aProtease.getShortName());
+
+            //answer from the library precomputed for the protease and parameters, it holds
+            //all signature peptides so a protein it doesn't list has no signature peptides
+            SignatureTransitionResultCache lResultCache = SignatureTransitionResultCache.getInstance();
+            String lDatabaseVersion = null;
+            if (lResultCache != null || SignatureTransitionLibrary.getDirectory() != null) {
+                lDatabaseVersion = lSigPepSession.getDatabaseVersion();
+            }
+            List<SignatureTransition> st = null;
+            SignatureTransitionLibrary lLibrary = SignatureTransitionLibrary.getInstance(lFinderKey, lDatabaseVersion);
+            if (lLibrary != null) {
+                st = lLibrary.getSignatureTransitionsByAccession(iProteinFormBean.getProteinAccession());
+                if (st == null) {
+                    st = new ArrayList<SignatureTransition>();
+                }
+            }
+
+            if (st != null) {
+                logger.info("found " + st.size() + " precomputed signature transitions");
+            } else {
+                //lease the peptide generator, background peptides and signature transition finder
+                //for protease and parameters from the pool shared by all users
+                iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_generator"), aProtease.getFullName()));
+                logger.info("leasing signature transition finder for protease " + aProtease.getFullName());
+                SignatureTransitionFinderPool.Lease lFinder = SignatureTransitionFinderPool.getInstance().acquire(lSigPepSession, lFinderKey);
+
+                st = new ArrayList<SignatureTransition>();
+                try {
+                    iCustomProgressIndicator.proceed(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.peptide_background"), aProtease.getFullName()));
+                    PeptideGenerator lGenerator = lFinder.getPeptideGenerator();
+
+                    logger.info("generating signature peptides");
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_peptides"));
+                    Set<Peptide> lSignaturepeptides = lGenerator.getPeptidesByProteinAccessionAndProteinSequenceLevelDegeneracy(iProteinFormBean.getProteinAccession(), 1);
+                    for (Peptide peptide : lSignaturepeptides) {
+                        logger.info(peptide.getSequenceString());
+                    }
+
+                    //take the signature transitions of signature peptides queried before from the
+                    //result cache and only search the others
+                    Set<Peptide> lUncachedPeptides = lSignaturepeptides;
+                    if (lResultCache != null) {
+                        lUncachedPeptides = new HashSet<Peptide>();
+                        for (Peptide peptide : lSignaturepeptides) {
+                            List<SignatureTransition> lCached = lResultCache.get(lFinderKey, lDatabaseVersion, peptide);
+                            if (lCached == null) {
+                                lUncachedPeptides.add(peptide);
+                            } else {
+                                st.addAll(lCached);
+                            }
+                        }
+                        logger.info("found cached signature transitions for " + (lSignaturepeptides.size() - lUncachedPeptides.size()) + " of " + lSignaturepeptides.size() + " signature peptides");
+                    }
+
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_1"));
+
+                    logger.info("finding signature transitions");
+                    iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_2"));
+                    if (!lUncachedPeptides.isEmpty()) {
+                        List<SignatureTransition> lFound = lFinder.findSignatureTransitions(lUncachedPeptides);
+                        if (lResultCache != null) {
+                            lResultCache.putAll(lFinderKey, lDatabaseVersion, lUncachedPeptides, lFound);
+                        }
+                        st.addAll(lFound);
+                    }
+                } finally {
+                    lFinder.release();
+                }
             }
 
-            //create signature transition finder
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_1"));
-            logger.info("creating signature transition finder");
-
-            HashSet lPrecursorChargeStates = new HashSet();
-            lPrecursorChargeStates.add(2);
-            lPrecursorChargeStates.add(3);
-
-            Set<ProductIonType> lTargetProductIonTypes = new HashSet<ProductIonType>();
-            lTargetProductIonTypes.add(ProductIonType.Y);
-
-            Set<ProductIonType> lBackgroundProductIonTypes = new HashSet<ProductIonType>();
-            lBackgroundProductIonTypes.add(ProductIonType.Y);
-            lBackgroundProductIonTypes.add(ProductIonType.B);
-
-            Set<Integer> lProductIonChargeStates = new HashSet<Integer>();
-            lProductIonChargeStates.add(1);
-
-            SignatureTransitionFinder finder = lSigPepSession.createSignatureTransitionFinder(
-                    lBackgroundPeptides,
-                    lTargetProductIonTypes,
-                    lBackgroundProductIonTypes,
-                    lPrecursorChargeStates,
-                    lProductIonChargeStates,
-                    iProteinFormBean.getMassAccuracy(),
-                    iProteinFormBean.getMinimumCombinationSize(),
-                    iProteinFormBean.getMaximumCombinationSize(),
-                    iProteinFormBean.getSignatureTransitionFinderType());
-
-            logger.info("finding signature transitions");
-            iCustomProgressIndicator.proceed(PropertiesConfigurationHolder.getInstance().getString("form_progress.signature_transition_finder_2"));
-            List<SignatureTransition> st = finder.findSignatureTransitions(lSignaturepeptides);
             HashSet lResultFiles = new HashSet();
 
             for (SignatureTransition t : st) {
@@ -246,4 +274,4 @@ public class ProteinForm extends Form {
         }
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
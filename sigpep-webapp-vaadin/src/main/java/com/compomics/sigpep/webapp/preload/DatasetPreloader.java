@@ -0,0 +1,366 @@
+package com.compomics.sigpep.webapp.preload;
+
+import com.compomics.sigpep.ApplicationLocator;
+import com.compomics.sigpep.SigPepSession;
+import com.compomics.sigpep.SigPepSessionFactory;
+import com.compomics.sigpep.analysis.SignatureTransitionFinderPool;
+import com.compomics.sigpep.analysis.SignatureTransitionFinderType;
+import com.compomics.sigpep.analysis.SignatureTransitionLibrary;
+import com.compomics.sigpep.model.Organism;
+import com.compomics.sigpep.model.Protease;
+import com.compomics.sigpep.webapp.MyVaadinApplication;
+import com.compomics.sigpep.webapp.bean.ProteinFormBean;
+import com.compomics.sigpep.webapp.component.CustomProgressIndicator;
+import com.compomics.sigpep.webapp.configuration.PropertiesConfigurationHolder;
+import org.apache.log4j.Logger;
+
+import java.text.MessageFormat;
+import java.util.*;
+
+/**
+ * Loads the datasets of the organisms and proteases listed by preload.datasets in
+ * sigPepWebApp.properties in the background when the application is deployed, so the
+ * first users don't pay for loading them.
+ * <p/>
+ * For each organism and protease the session datasets are loaded into the dataset cache
+ * shared by all sessions and the peptide generator, background peptides and signature
+ * transition finder are built into the finder pool for the finder types listed by
+ * preload.signature.transition.finder.types with the default form parameters, unless a
+ * signature transition library of the current database version answers the forms. The
+ * preloaded finders stay leased, so the pool doesn't evict them, until the preloader is
+ * stopped when the application is undeployed. The datasets are loaded one after the other
+ * by a single thread, which is interrupted and stops loading when the preloader is stopped.
+ * <p/>
+ * Jobs of a listed dataset wait with hold until it is loaded, at most the number of minutes
+ * configured by preload.await.timeout. Jobs don't fail if loading fails or takes longer,
+ * they continue and load what they need.
+ */
+public class DatasetPreloader {
+
+    private static final Logger logger = Logger.getLogger(DatasetPreloader.class);
+
+    /**
+     * The loading states of a dataset.
+     */
+    public enum State {
+        /**
+         * waiting to be loaded
+         */
+        PENDING,
+        /**
+         * being loaded
+         */
+        LOADING,
+        /**
+         * loaded
+         */
+        READY,
+        /**
+         * loading failed, jobs load the dataset themselves
+         */
+        FAILED
+    }
+
+    private static DatasetPreloader ourInstance = new DatasetPreloader();
+
+    /**
+     * the state of the datasets by "taxon ID:protease short name", guarded by this
+     */
+    private final Map<String, State> iStates = new LinkedHashMap<String, State>();
+
+    /**
+     * the leases of the preloaded finders, guarded by this
+     */
+    private final List<SignatureTransitionFinderPool.Lease> iLeases = new ArrayList<SignatureTransitionFinderPool.Lease>();
+
+    private Thread iThread;
+
+    private boolean iStopped = false;
+
+    /**
+     * Returns the preloader instance.
+     *
+     * @return the preloader
+     */
+    public static DatasetPreloader getInstance() {
+        return ourInstance;
+    }
+
+    private DatasetPreloader() {
+    }
+
+    /**
+     * Starts loading the configured datasets in the background. Only the first call has an effect.
+     */
+    public synchronized void start() {
+
+        if (iThread != null) {
+            return;
+        }
+
+        for (String lDataset : PropertiesConfigurationHolder.getPreloadDatasets()) {
+            if (lDataset.trim().length() == 0) {
+                continue;
+            }
+            String[] lTaxonAndProtease = lDataset.trim().split(":");
+            if (lTaxonAndProtease.length != 2 || !lTaxonAndProtease[0].trim().matches("\\d+")) {
+                logger.warn("Ignoring preload dataset '" + lDataset + "', expected TAXON_ID:PROTEASE_SHORT_NAME.");
+                continue;
+            }
+            iStates.put(createDatasetKey(new Integer(lTaxonAndProtease[0].trim()), lTaxonAndProtease[1].trim()), State.PENDING);
+        }
+
+        iThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    preload();
+                } catch (Error e) {
+                    logger.error("Preloading the datasets stopped.", e);
+                    throw e;
+                } finally {
+                    failUnfinished();
+                }
+            }
+        }, "sigpep-dataset-preloader");
+        iThread.setDaemon(true);
+        iThread.start();
+    }
+
+    /**
+     * Stops loading the datasets and releases the leases of the preloaded finders so the
+     * pool can evict them. Finders preloaded after the preloader has been stopped are
+     * released right away.
+     */
+    public synchronized void stop() {
+        iStopped = true;
+        if (iThread != null) {
+            iThread.interrupt();
+        }
+        for (SignatureTransitionFinderPool.Lease lLease : iLeases) {
+            lLease.release();
+        }
+        iLeases.clear();
+    }
+
+    /**
+     * Returns the state of the dataset of an organism and protease.
+     *
+     * @param aTaxonId           the NCBI taxon ID of the organism
+     * @param aProteaseShortName the short name of the protease
+     * @return the state or null if the dataset isn't preloaded
+     */
+    public synchronized State getState(int aTaxonId, String aProteaseShortName) {
+        return iStates.get(createDatasetKey(aTaxonId, aProteaseShortName));
+    }
+
+    /**
+     * Returns the states of the preloaded datasets.
+     *
+     * @return the states by "taxon ID:protease short name" in loading order
+     */
+    public synchronized Map<String, State> getStates() {
+        return new LinkedHashMap<String, State>(iStates);
+    }
+
+    /**
+     * Returns true if jobs for the dataset of an organism and protease can run, that is if the
+     * dataset isn't preloaded or preloading it has finished.
+     *
+     * @param aTaxonId           the NCBI taxon ID of the organism
+     * @param aProteaseShortName the short name of the protease
+     * @return true if the dataset is ready
+     */
+    public synchronized boolean isReady(int aTaxonId, String aProteaseShortName) {
+        State lState = getState(aTaxonId, aProteaseShortName);
+        return lState == null || lState == State.READY || lState == State.FAILED;
+    }
+
+    /**
+     * Returns true if preloading of all datasets has finished.
+     *
+     * @return true if all datasets are ready
+     */
+    public synchronized boolean isReady() {
+        for (State lState : iStates.values()) {
+            if (lState == State.PENDING || lState == State.LOADING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the dataset of an organism and protease is ready.
+     *
+     * @param aTaxonId           the NCBI taxon ID of the organism
+     * @param aProteaseShortName the short name of the protease
+     * @param aTimeout           the maximum number of milliseconds to wait
+     * @return true if the dataset is ready, false if the wait timed out
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean awaitDataset(int aTaxonId, String aProteaseShortName, long aTimeout) throws InterruptedException {
+        long lDeadline = System.currentTimeMillis() + aTimeout;
+        while (!isReady(aTaxonId, aProteaseShortName)) {
+            long lRemaining = lDeadline - System.currentTimeMillis();
+            if (lRemaining <= 0) {
+                return false;
+            }
+            wait(lRemaining);
+        }
+        return true;
+    }
+
+    /**
+     * Holds a form job until the dataset of its organism and protease is ready, showing that
+     * it waits in the progress indicator of the job. Returns without waiting if the dataset
+     * isn't preloaded and after preload.await.timeout minutes at most, the job then loads
+     * what it needs.
+     *
+     * @param aProgressIndicator the progress indicator of the job
+     * @param aApplication       the application the job runs for
+     * @param aSession           the session of the job
+     * @param aProtease          the protease of the job
+     */
+    public void hold(CustomProgressIndicator aProgressIndicator, MyVaadinApplication aApplication, SigPepSession aSession, Protease aProtease) {
+
+        int lTaxonId = aSession.getOrganism().getTaxonId();
+        if (isReady(lTaxonId, aProtease.getShortName())) {
+            return;
+        }
+
+        aProgressIndicator.hold(MessageFormat.format(PropertiesConfigurationHolder.getInstance().getString("form_progress.dataset_preloading"), aSession.getOrganism().getScientificName(), aProtease.getFullName()));
+        aApplication.push();
+        try {
+            if (!awaitDataset(lTaxonId, aProtease.getShortName(), PropertiesConfigurationHolder.getPreloadAwaitTimeout() * 60 * 1000)) {
+                logger.warn("timed out waiting for the dataset of organism " + lTaxonId + " and protease " + aProtease.getShortName() + " to be loaded, loading it for the job");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("interrupted while waiting for the dataset to be loaded, loading it for the job");
+        }
+    }
+
+    private synchronized void setState(String aDataset, State aState) {
+        iStates.put(aDataset, aState);
+        notifyAll();
+    }
+
+    /**
+     * Marks the datasets that have not been loaded as failed, so jobs waiting for them continue.
+     */
+    private synchronized void failUnfinished() {
+        for (Map.Entry<String, State> lState : iStates.entrySet()) {
+            if (lState.getValue() == State.PENDING || lState.getValue() == State.LOADING) {
+                lState.setValue(State.FAILED);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Keeps the lease of a preloaded finder until the preloader is stopped.
+     *
+     * @param aLease the lease
+     */
+    private synchronized void pin(SignatureTransitionFinderPool.Lease aLease) {
+        if (iStopped) {
+            aLease.release();
+        } else {
+            iLeases.add(aLease);
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return iStopped;
+    }
+
+    private static String createDatasetKey(int aTaxonId, String aProteaseShortName) {
+        return aTaxonId + ":" + aProteaseShortName;
+    }
+
+    /**
+     * Loads the datasets one after the other.
+     */
+    private void preload() {
+
+        SigPepSessionFactory lSessionFactory = null;
+        try {
+            lSessionFactory = ApplicationLocator.getInstance().getApplication().getSigPepSessionFactory();
+        } catch (RuntimeException e) {
+            logger.error("Could not locate the sigpep application, the datasets are not preloaded.", e);
+        }
+
+        Map<Integer, SigPepSession> lSessions = new HashMap<Integer, SigPepSession>();
+        for (String lDataset : getStates().keySet()) {
+
+            //the datasets that are not loaded are marked as failed when the thread ends
+            if (isStopped()) {
+                return;
+            }
+
+            if (lSessionFactory == null) {
+                setState(lDataset, State.FAILED);
+                continue;
+            }
+
+            int lTaxonId = new Integer(lDataset.substring(0, lDataset.indexOf(':')));
+            String lProteaseShortName = lDataset.substring(lDataset.indexOf(':') + 1);
+
+            setState(lDataset, State.LOADING);
+            long lStart = System.currentTimeMillis();
+            logger.info("preloading dataset of organism " + lTaxonId + " and protease " + lProteaseShortName);
+            boolean lReady = false;
+            try {
+
+                SigPepSession lSession = lSessions.get(lTaxonId);
+                if (lSession == null) {
+                    Organism lOrganism = lSessionFactory.getOrganism(lTaxonId);
+                    lSession = lSessionFactory.createSigPepSession(lOrganism);
+                    lSessions.put(lTaxonId, lSession);
+                }
+                String lDatabaseVersion = lSession.getDatabaseVersion();
+
+                //load the session datasets into the shared dataset cache
+                lSession.createPeptideGenerator(Collections.singleton(lProteaseShortName));
+
+                //build the background peptides and finder of the forms into the shared pool
+                //unless a library answers them
+                for (SignatureTransitionFinderType lType : PropertiesConfigurationHolder.getPreloadSignatureTransitionFinderTypes()) {
+                    if (isStopped()) {
+                        return;
+                    }
+                    SignatureTransitionFinderPool.Key lFinderKey = createFinderKey(lTaxonId, lProteaseShortName, lType);
+                    if (SignatureTransitionLibrary.getInstance(lFinderKey, lDatabaseVersion) != null) {
+                        logger.info("signature transition library covers the " + lType + " finder of organism " + lTaxonId
+                                + " and protease " + lProteaseShortName + ", not preloading it");
+                        continue;
+                    }
+                    pin(SignatureTransitionFinderPool.getInstance().acquire(lSession, lFinderKey));
+                }
+
+                lReady = true;
+                logger.info("preloaded dataset of organism " + lTaxonId + " and protease " + lProteaseShortName
+                        + " in " + (System.currentTimeMillis() - lStart) / 1000 + " s");
+
+            } catch (RuntimeException e) {
+                logger.error("Could not preload dataset of organism " + lTaxonId + " and protease " + lProteaseShortName + ".", e);
+            } finally {
+                setState(lDataset, lReady ? State.READY : State.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Creates the finder key of the protein and peptide forms with the default form parameters.
+     *
+     * @param aTaxonId           the NCBI taxon ID of the organism
+     * @param aProteaseShortName the short name of the protease
+     * @param aType              the signature transition finder type
+     * @return the finder key
+     */
+    private static SignatureTransitionFinderPool.Key createFinderKey(int aTaxonId, String aProteaseShortName, SignatureTransitionFinderType aType) {
+        ProteinFormBean lDefaults = new ProteinFormBean();
+        lDefaults.setSignatureTransitionFinderType(aType);
+        return lDefaults.createSignatureTransitionFinderKey(aTaxonId, aProteaseShortName);
+    }
+}
@@ -0,0 +1,19 @@
+package com.compomics.sigpep.webapp.preload;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Starts the {@link DatasetPreloader} when the web application is deployed and stops it
+ * when the web application is undeployed.
+ */
+public class DatasetPreloaderContextListener implements ServletContextListener {
+
+    public void contextInitialized(ServletContextEvent aServletContextEvent) {
+        DatasetPreloader.getInstance().start();
+    }
+
+    public void contextDestroyed(ServletContextEvent aServletContextEvent) {
+        DatasetPreloader.getInstance().stop();
+    }
+}